@@ -0,0 +1,318 @@
+package com.wearableintelligencesystem.androidsmartphone.database.benchmark;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.wearableintelligencesystem.androidsmartphone.database.WearableAiRoomDatabase;
+import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileDao;
+import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileEntity;
+import com.wearableintelligencesystem.androidsmartphone.database.person.PersonDao;
+import com.wearableintelligencesystem.androidsmartphone.database.person.PersonEntity;
+import com.wearableintelligencesystem.androidsmartphone.database.phrase.Phrase;
+import com.wearableintelligencesystem.androidsmartphone.database.phrase.PhraseDao;
+import com.wearableintelligencesystem.androidsmartphone.database.summary.MemorySummary;
+import com.wearableintelligencesystem.androidsmartphone.database.summary.MemorySummaryDao;
+import com.wearableintelligencesystem.androidsmartphone.database.voicecommand.VoiceCommandDao;
+import com.wearableintelligencesystem.androidsmartphone.database.voicecommand.VoiceCommandEntity;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//debug only: fills a throwaway copy of the real schema with a synthetic lifelog and times the queries the UIs run against it
+//the data is generated from a fixed seed, so two runs on the same phone are directly comparable - run it before and after a schema change
+//results go to logcat and to a csv under the app's external files dir, see LifelogBenchmarkReceiver for how to start it
+//there are no fixed budgets, each run is compared against the newest earlier csv made at the same scale and the p95 change is written next
+//to it. Nothing passes or fails, read the change column yourself until there are recorded baselines worth turning into budgets
+public class LifelogBenchmark {
+    private static final String TAG = "WearableAi_LifelogBenchmark";
+
+    private static final String DATABASE_NAME = "wearableai_benchmark";
+    private static final long SEED = 20220101L;
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    private static final int AWAKE_HOURS = 16;
+    private static final int QUERY_ITERATIONS = 200;
+    private static final int EXPORT_CHUNK = 500;
+
+    private static final String[] WORDS = {"meeting", "coffee", "project", "deadline", "lunch", "remember", "call", "idea", "paper", "glasses",
+            "design", "tomorrow", "email", "budget", "demo", "review", "camera", "model", "train", "walk"};
+    private static final String[] TAGS = {"work", "ideas", "todo", "family", "research", "books", "groceries", "health"};
+
+    private static final String RESULT_PREFIX = "lifelog_benchmark_";
+    private static final String HEADER = "query,iterations,avg_rows,first_ms,median_ms,p95_ms,max_ms,previous_p95_ms,p95_change";
+
+    //how much of a lifelog to make, the defaults are roughly a year of someone wearing the glasses all day
+    public static class Scale {
+        public int days = 365;
+        public int phrasesPerHour = 240;
+        public int imageIntervalSeconds = 5;
+        public int sightingsPerHour = 60;
+        public int voiceNotesPerDay = 10;
+        public int people = 200;
+
+        //goes in the csv, runs are only compared when this matches
+        String describe(){
+            return "days=" + days + " phrases_per_hour=" + phrasesPerHour + " image_interval_s=" + imageIntervalSeconds
+                    + " sightings_per_hour=" + sightingsPerHour + " voice_notes_per_day=" + voiceNotesPerDay + " people=" + people;
+        }
+    }
+
+    private final Context mContext;
+    private final Scale mScale;
+    private final Random random = new Random(SEED);
+
+    private WearableAiRoomDatabase mDatabase;
+    private PhraseDao mPhraseDao;
+    private MediaFileDao mMediaFileDao;
+    private PersonDao mPersonDao;
+    private VoiceCommandDao mVoiceCommandDao;
+    private MemorySummaryDao mMemorySummaryDao;
+
+    private long startTime;
+    private long endTime;
+    private final List<String> report = new ArrayList<>();
+    private File previousResults;
+    private Map<String, Double> previousP95 = new HashMap<>();
+
+    public LifelogBenchmark(Context context, Scale scale) {
+        mContext = context.getApplicationContext();
+        mScale = scale;
+    }
+
+    //the earlier csv this run was compared against, null if there was none at the same scale
+    public File getPreviousResults(){
+        return previousResults;
+    }
+
+    //blocking, takes minutes at full scale. Returns the csv the results were written to
+    public File run() throws IOException {
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDatabase = WearableAiRoomDatabase.databaseBuilder(mContext, DATABASE_NAME).build();
+        mPhraseDao = mDatabase.phraseDao();
+        mMediaFileDao = mDatabase.mediaFileDao();
+        mPersonDao = mDatabase.personDao();
+        mVoiceCommandDao = mDatabase.voiceCommandDao();
+        mMemorySummaryDao = mDatabase.memorySummaryDao();
+        loadPreviousResults();
+        try {
+            long genStart = System.nanoTime();
+            generate();
+            Log.d(TAG, "Generated " + mScale.days + " days of data in " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - genStart) + "s");
+            mDatabase.getOpenHelper().getWritableDatabase().execSQL("ANALYZE");
+
+            timeQueries();
+            return writeReport();
+        } finally {
+            mDatabase.close();
+            mContext.deleteDatabase(DATABASE_NAME);
+        }
+    }
+
+    private void generate() {
+        endTime = System.currentTimeMillis() / DAY_MS * DAY_MS;
+        startTime = endTime - mScale.days * DAY_MS;
+
+        //people first, sightings point at them
+        long[] personIds = new long[mScale.people];
+        mDatabase.runInTransaction(() -> {
+            for (int i = 0; i < personIds.length; i++) {
+                personIds[i] = mPersonDao.insert(new PersonEntity(null, "new_face_name", "person_" + i, startTime, null));
+            }
+        });
+
+        for (int day = 0; day < mScale.days; day++) {
+            long dayStart = startTime + day * DAY_MS + 7 * HOUR_MS;
+            long dayEnd = dayStart + AWAKE_HOURS * HOUR_MS;
+            mDatabase.runInTransaction(() -> generateDay(dayStart, dayEnd, personIds));
+        }
+    }
+
+    private void generateDay(long dayStart, long dayEnd, long[] personIds) {
+        List<Long> dayPhraseIds = new ArrayList<>();
+        long phraseGap = HOUR_MS / mScale.phrasesPerHour;
+        for (long t = dayStart; t < dayEnd; t += phraseGap) {
+            Phrase phrase = new Phrase(sentence(), t + random.nextInt((int) phraseGap), "transcript_ASG");
+            if (random.nextInt(4) != 0) {
+                phrase.setLatitude(43.65 + random.nextGaussian() * 0.05);
+                phrase.setLongitude(-79.38 + random.nextGaussian() * 0.05);
+            }
+            dayPhraseIds.add(mPhraseDao.insert(phrase));
+        }
+
+        long imageGap = TimeUnit.SECONDS.toMillis(mScale.imageIntervalSeconds);
+        for (long t = dayStart; t < dayEnd; t += imageGap) {
+            mMediaFileDao.insert(new MediaFileEntity("/benchmark/pov/" + t + ".jpg", "image", t, t));
+        }
+
+        long sightingGap = HOUR_MS / mScale.sightingsPerHour;
+        for (long t = dayStart; t < dayEnd; t += sightingGap) {
+            //a few people show up most of the time, like real life
+            int person = Math.min(personIds.length - 1, (int) Math.abs(random.nextGaussian() * personIds.length / 8));
+            mPersonDao.insert(new PersonEntity(personIds[person], "event", "seen", t, null));
+        }
+
+        for (int i = 0; i < mScale.voiceNotesPerDay && !dayPhraseIds.isEmpty(); i++) {
+            long transcriptId = dayPhraseIds.get(random.nextInt(dayPhraseIds.size()));
+            long t = dayStart + (long) (random.nextDouble() * (dayEnd - dayStart));
+            mVoiceCommandDao.insert(new VoiceCommandEntity("save speech", "save speech", "hey computer", true, null, null, t, "", sentence(), "asg_transcript", transcriptId));
+            int tags = random.nextInt(3);
+            for (int j = 0; j < tags; j++) {
+                mVoiceCommandDao.insert(new VoiceCommandEntity("save speech", "save speech", "hey computer", false, "tag", TAGS[random.nextInt(TAGS.length)], t, "", sentence(), "asg_transcript", transcriptId));
+            }
+        }
+    }
+
+    private String sentence() {
+        int length = 3 + random.nextInt(10);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private interface Query {
+        //returns the number of rows it got back
+        int run(long time);
+    }
+
+    private void timeQueries() {
+        time("phrase_range_1h", t -> mPhraseDao.getPhraseRangeSnapshot(t, t + HOUR_MS).size());
+        time("phrase_nearest_timestamp", t -> mPhraseDao.getByNearestTimestamp(t) == null ? 0 : 1);
+        time("image_nearest_timestamp", t -> mMediaFileDao.getClosestMediaFileSnapshot("image", t) == null ? 0 : 1);
+        time("voice_notes", t -> mVoiceCommandDao.getVoiceCommandPhrasesSnapshot("save speech", true).size());
+        time("tag_bin", t -> mVoiceCommandDao.getTagBinSnapshot(TAGS[(int) (t % TAGS.length)]).size());
+        time("tag_bin_phrases", t -> mVoiceCommandDao.getTagBinPhrasesSnapshot(TAGS[(int) (t % TAGS.length)]).size());
+        time("persons_in_period_1d", t -> mPersonDao.getAllPersonsSnapshotTimePeriod(t - DAY_MS, t).size());
+        time("people_seen_in_period_1d", t -> mPersonDao.getPeopleSeenInPeriod(t - DAY_MS, t).size());
+        time("timeline_days_30", t -> mMemorySummaryDao.getRecentSummaries(MemorySummary.DAY, 30).size());
+        time("summary_hours_1d", t -> mMemorySummaryDao.getSummaries(MemorySummary.HOUR, t - DAY_MS, t).size());
+        time("export_phrases_1d", t -> {
+            int rows = 0;
+            long afterId = 0;
+            while (true) {
+                int chunk = 0;
+                try (Cursor cursor = mPhraseDao.getPhraseRangeCursor(t - DAY_MS, t, afterId, EXPORT_CHUNK)) {
+                    int idIdx = cursor.getColumnIndexOrThrow("id");
+                    while (cursor.moveToNext()) {
+                        afterId = cursor.getLong(idIdx);
+                        chunk++;
+                    }
+                }
+                rows += chunk;
+                if (chunk < EXPORT_CHUNK) {
+                    return rows;
+                }
+            }
+        });
+    }
+
+    private void time(String name, Query query) {
+        //the first call pays for statement compilation and a cold page cache, keep it apart from the steady state numbers
+        long first = System.nanoTime();
+        query.run(randomTime());
+        double firstMs = (System.nanoTime() - first) / 1e6;
+
+        double[] samples = new double[QUERY_ITERATIONS];
+        long rows = 0;
+        for (int i = 0; i < QUERY_ITERATIONS; i++) {
+            long t = randomTime();
+            long start = System.nanoTime();
+            rows += query.run(t);
+            samples[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(samples);
+        double p95 = samples[(int) (QUERY_ITERATIONS * 0.95)];
+        Double previous = previousP95.get(name);
+        String line = String.format(Locale.US, "%s,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%s,%s", name, QUERY_ITERATIONS, (double) rows / QUERY_ITERATIONS,
+                firstMs, samples[QUERY_ITERATIONS / 2], p95, samples[QUERY_ITERATIONS - 1],
+                previous == null ? "" : String.format(Locale.US, "%.3f", previous),
+                previous == null || previous <= 0 ? "" : String.format(Locale.US, "%+.0f%%", (p95 / previous - 1) * 100));
+        Log.d(TAG, line);
+        report.add(line);
+    }
+
+    private long randomTime() {
+        return startTime + (long) (random.nextDouble() * (endTime - startTime));
+    }
+
+    private File resultsDir() {
+        return new File(mContext.getExternalFilesDir(null), "benchmark");
+    }
+
+    //finds the newest earlier csv at the same scale and keeps its p95 per query. The schema version is left out of the match on purpose,
+    //comparing across a schema change is the whole point
+    private void loadPreviousResults() {
+        File[] files = resultsDir().listFiles((dir, name) -> name.startsWith(RESULT_PREFIX) && name.endsWith(".csv"));
+        if (files == null) {
+            return;
+        }
+        //the names end in a timestamp, newest first
+        Arrays.sort(files, (a, b) -> b.getName().compareTo(a.getName()));
+        for (File file : files) {
+            Map<String, Double> p95 = new HashMap<>();
+            boolean sameScale = false;
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("#")) {
+                        sameScale = sameScale || line.endsWith(" " + mScale.describe());
+                        continue;
+                    }
+                    String[] fields = line.split(",");
+                    if (fields.length < 6 || fields[0].equals("query")) {
+                        continue;
+                    }
+                    try {
+                        p95.put(fields[0], Double.parseDouble(fields[5]));
+                    } catch (NumberFormatException e) {
+                        Log.d(TAG, "Skipping unreadable line in " + file + ": " + line);
+                    }
+                }
+            } catch (IOException e) {
+                Log.d(TAG, "Could not read " + file, e);
+                continue;
+            }
+            if (sameScale && !p95.isEmpty()) {
+                previousResults = file;
+                previousP95 = p95;
+                Log.d(TAG, "Comparing against " + file);
+                return;
+            }
+        }
+    }
+
+    private File writeReport() throws IOException {
+        File dir = resultsDir();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        File out = new File(dir, RESULT_PREFIX + System.currentTimeMillis() + ".csv");
+        try (PrintWriter writer = new PrintWriter(new FileWriter(out))) {
+            writer.println("# schema_version=" + mDatabase.getOpenHelper().getReadableDatabase().getVersion() + " " + mScale.describe());
+            if (previousResults != null) {
+                writer.println("# compared_to=" + previousResults.getName());
+            }
+            writer.println(HEADER);
+            for (String line : report) {
+                writer.println(line);
+            }
+        }
+        Log.d(TAG, "Benchmark results written to " + out);
+        return out;
+    }
+}
@@ -0,0 +1,53 @@
+package com.wearableintelligencesystem.androidsmartphone.database.benchmark;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+//debug builds only, starts the LifelogBenchmark from adb:
+//  adb shell am broadcast -n com.wearableintelligencesystem.androidsmartphone.debug/com.wearableintelligencesystem.androidsmartphone.database.benchmark.LifelogBenchmarkReceiver --ei days 30
+//every Scale field can be overridden with an int extra of the same name. Watch logcat for WearableAi_LifelogBenchmark, each query's line
+//ends with its p95 change against the previous run at the same scale, if there was one
+public class LifelogBenchmarkReceiver extends BroadcastReceiver {
+    private static final String TAG = "WearableAi_LifelogBenchmarkReceiver";
+
+    private static volatile boolean running = false;
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (running) {
+            Log.d(TAG, "Benchmark already running");
+            return;
+        }
+        LifelogBenchmark.Scale scale = new LifelogBenchmark.Scale();
+        scale.days = intent.getIntExtra("days", scale.days);
+        scale.phrasesPerHour = intent.getIntExtra("phrasesPerHour", scale.phrasesPerHour);
+        scale.imageIntervalSeconds = intent.getIntExtra("imageIntervalSeconds", scale.imageIntervalSeconds);
+        scale.sightingsPerHour = intent.getIntExtra("sightingsPerHour", scale.sightingsPerHour);
+        scale.voiceNotesPerDay = intent.getIntExtra("voiceNotesPerDay", scale.voiceNotesPerDay);
+        scale.people = intent.getIntExtra("people", scale.people);
+
+        //this takes minutes, far longer than a receiver is allowed, so it gets its own thread
+        Context appContext = context.getApplicationContext();
+        running = true;
+        new Thread(() -> {
+            try {
+                LifelogBenchmark benchmark = new LifelogBenchmark(appContext, scale);
+                File results = benchmark.run();
+                if (benchmark.getPreviousResults() == null) {
+                    Log.d(TAG, "Benchmark finished, no earlier run at this scale to compare with: " + results);
+                } else {
+                    Log.d(TAG, "Benchmark finished, compared with " + benchmark.getPreviousResults() + ": " + results);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Benchmark failed", e);
+            } finally {
+                running = false;
+            }
+        }, "WearableAiLifelogBenchmark").start();
+    }
+}
@@ -37,6 +37,7 @@ import java.nio.ByteOrder;
 import com.wearableintelligencesystem.androidsmartphone.comms.MessageTypes;
 
 import com.wearableintelligencesystem.androidsmartphone.utils.FileUtils;
+import com.wearableintelligencesystem.androidsmartphone.utils.PovImageStore;
 
 import com.wearableintelligencesystem.androidsmartphone.comms.AspWebsocketServer;
 import com.wearableintelligencesystem.androidsmartphone.comms.AudioSystem;
@@ -73,6 +74,7 @@ class ASGRepresentative {
 
     //database
     private MediaFileRepository mMediaFileRepository = null;
+    private PovImageStore povImageStore;
 
     // HYBRID INTEGRATION - New components for WIS + EdgeGallery
     private HybridAiCoordinator hybridCoordinator;
@@ -118,6 +120,9 @@ class ASGRepresentative {
         this.context = context;
         this.mMediaFileRepository = mMediaFileRepository;
 
+        //saves POV images off the socket thread, then sends them to everyone else
+        povImageStore = new PovImageStore(context, mMediaFileRepository, (jpeg, imageId, imageTime) -> sendPovImage(jpeg, imageId, imageTime));
+
         //create a new queue to hold outbound message
         queue = new ArrayBlockingQueue<byte[]>(50);
 
@@ -298,6 +303,9 @@ class ASGRepresentative {
         //stop sockets
         heart_beat_handler.removeCallbacksAndMessages(null);
 
+        //stop saving images
+        povImageStore.destroy();
+
         //kill this socket
 //        try {
 //            SocketThread.join();
@@ -500,21 +508,13 @@ class ASGRepresentative {
     //        //convert to jpg
     //        byte [] raw_data = Base64.decode(raw_data_b64, Base64.DEFAULT);
     public void handleImage(byte [] raw_data, long imageTime){
-        //convert to bitmap
-        Bitmap bitmap = BitmapFactory.decodeByteArray(raw_data, 0, raw_data.length);
-
         //save and process 1 image at set frequency
         long currTime = System.currentTimeMillis();
         if (((currTime - lastImageSave) / 1000) >= (1 / imageSaveFrequency)){ // divide by 1000 to convert to fps (per second) instead of per millisecond
-            //save image
-            Long imageId = FileUtils.savePicture(context, raw_data, imageTime, mMediaFileRepository);
-            if (imageId == null){
-                return;
+            //hand it to the image store, it saves it on its own thread and sends it to everyone else once it has an id
+            if (povImageStore.offer(raw_data, imageTime)){
+                lastImageSave = currTime;
             }
-            lastImageSave = currTime;
-
-            //send to everyone else
-            sendPovImage(raw_data, imageId, imageTime);
         }
     }
 
@@ -7,6 +7,7 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Binder;
@@ -25,7 +26,9 @@ import androidx.lifecycle.LifecycleService;
 import com.wearableintelligencesystem.androidsmartphone.comms.MessageTypes;
 import com.wearableintelligencesystem.androidsmartphone.comms.SmsComms;
 import com.wearableintelligencesystem.androidsmartphone.contextualsearch.ContextualSearchSystem;
+import com.wearableintelligencesystem.androidsmartphone.database.DatabaseWarmup;
 import com.wearableintelligencesystem.androidsmartphone.database.WearableAiRoomDatabase;
+import com.wearableintelligencesystem.androidsmartphone.database.retention.RetentionScheduler;
 import com.wearableintelligencesystem.androidsmartphone.database.facialemotion.FacialEmotion;
 import com.wearableintelligencesystem.androidsmartphone.database.facialemotion.FacialEmotionCreator;
 import com.wearableintelligencesystem.androidsmartphone.database.facialemotion.FacialEmotionRepository;
@@ -90,6 +93,7 @@ public class WearableAiAspService extends LifecycleService {
     //speech recognition
     private SpeechRecVosk speechRecVosk;
     private SpeechRecVosk speechRecVoskForeignLanguage;
+    private static final String LOW_POWER_LISTENING_PREF = "low_power_listening"; //set from SettingsUi, kept across restarts
 
     //Text to Speech
     private TextToSpeechSystem textToSpeechSystem;
@@ -140,6 +144,7 @@ public class WearableAiAspService extends LifecycleService {
     private MemoryCacheRepository mMemoryCacheRepository = null;
     private MediaFileRepository mMediaFileRepository = null;
     private PersonRepository mPersonRepository = null;
+    private RetentionScheduler mRetentionScheduler = null;
 
     //representatives of the other pieces of the system
     ASGRepresentative asgRep;
@@ -160,6 +165,16 @@ public class WearableAiAspService extends LifecycleService {
     mMediaFileRepository = new MediaFileRepository(getApplication());
     mPersonRepository = new PersonRepository(getApplication());
 
+    //open the database and get it ready before the first transcript comes in, while Vosk and the models are still loading
+    DatabaseWarmup.start(getApplication()).exceptionally(e -> {
+        Log.e(TAG, "Database warmup failed", e);
+        return null;
+    });
+
+    //summarize and compact old data while the phone is charging
+    mRetentionScheduler = new RetentionScheduler(getApplication());
+    mRetentionScheduler.start();
+
     //setup data observable which passes information (transcripts, commands, etc. around our app using mutlicasting
     dataObservable = PublishSubject.create();
     audioObservable = PublishSubject.create();
@@ -206,7 +221,7 @@ public class WearableAiAspService extends LifecycleService {
     objectDetectionSystem.setDataObservable(dataObservable);
 
     //start contextual search system
-    contextualSearchSystem = new ContextualSearchSystem();
+    contextualSearchSystem = new ContextualSearchSystem(this, mPhraseRepository);
     contextualSearchSystem.setDataObservable(dataObservable);
 
     //start voice command server to parse transcript for voice command
@@ -219,6 +234,13 @@ public class WearableAiAspService extends LifecycleService {
     mWearableReferencerAutocite = new WearableReferencerAutocite(this);
     mWearableReferencerAutocite.setObservable(dataObservable);
 
+    //with low power listening on, the recognizer only sleeps when none of these need everything that's said
+    speechRecVosk.setConversationCaptureCheck(() -> mWearableReferencerAutocite.getIsActive()
+            || contextualSearchSystem.isActive()
+            || speechRecVoskForeignLanguage != null
+            || mMemoryCacheRepository.getActiveCache() != null);
+    speechRecVosk.setLowPowerListening(getPreferences().getBoolean(LOW_POWER_LISTENING_PREF, false));
+
     //start sms system
     smsComms = SmsComms.getInstance();
     smsComms.setObservable(dataObservable);
@@ -393,6 +415,20 @@ public class WearableAiAspService extends LifecycleService {
             speechRecVoskForeignLanguage.destroy();
         }
 
+        //close the local semantic index
+        contextualSearchSystem.destroy();
+
+        //stop the autociter's matching and library loading threads
+        mWearableReferencerAutocite.destroy();
+
+        //close the face gallery index - face rec is set up on a handler, so it might not exist yet
+        if (faceRecApi != null) {
+            faceRecApi.destroy();
+        }
+
+        //stop compacting before the database goes away
+        mRetentionScheduler.destroy();
+
         //close room database(s)
         WearableAiRoomDatabase.destroy();
 
@@ -433,6 +469,20 @@ public class WearableAiAspService extends LifecycleService {
     }
     //^^^^^^allow ui to control Autociter/wearable referencer
 
+    //allow ui to turn on low power listening, the full speech recognizer sleeping until the wake word is spotted
+    public void setLowPowerListening(boolean enabled){
+        getPreferences().edit().putBoolean(LOW_POWER_LISTENING_PREF, enabled).apply();
+        speechRecVosk.setLowPowerListening(enabled);
+    }
+
+    public boolean getLowPowerListening(){
+        return speechRecVosk.getLowPowerListening();
+    }
+
+    private SharedPreferences getPreferences(){
+        return getSharedPreferences(getString(R.string.app_name), Context.MODE_PRIVATE);
+    }
+
     //takes in a natural language name for a language and gives back the code
     public NaturalLanguage getLanguageFromName(String languageName){
       for (NaturalLanguage nl : supportedLanguages){
@@ -44,6 +44,15 @@ public class MessageTypes {
     public static final String INPUT_WAKE_WORD = "INPUT_WAKE_WORD";
     public static final String INPUT_VOICE_COMMAND_NAME = "INPUT_VOICE_COMMAND_NAME";
 
+    //command mode, a recognizer that only knows the voice commands, run while one is being said
+    public static final String START_COMMAND_RECOGNITION = "START_COMMAND_RECOGNITION";
+    public static final String STOP_COMMAND_RECOGNITION = "STOP_COMMAND_RECOGNITION";
+    public static final String COMMAND_GRAMMAR = "COMMAND_GRAMMAR";
+    public static final String FINAL_COMMAND_TRANSCRIPT = "FINAL_COMMAND_TRANSCRIPT";
+
+    //the keyword spotter heard the wake word, TIMESTAMP is when it ended in the audio
+    public static final String KEYWORD_SPOTTED = "KEYWORD_SPOTTED";
+
     //FACE/PERSON SIGHTING
     public static final String FACE_SIGHTING_EVENT = "FACE_SIGHTING_EVENT";
     public static final String FACE_NAME = "FACE_NAME";
@@ -1,16 +1,65 @@
 package com.wearableintelligencesystem.androidsmartphone.contextualsearch;
 
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.text.format.DateUtils;
+import android.util.Log;
+
 import com.wearableintelligencesystem.androidsmartphone.comms.MessageTypes;
+import com.wearableintelligencesystem.androidsmartphone.database.phrase.PhraseRepository;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.subjects.PublishSubject;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 public class ContextualSearchSystem {
+    private static final String TAG = "WearableAi_ContextualSearchSystem";
+
+    //how close in meaning an earlier phrase has to be to answer locally, otherwise we ask the GLBOX
+    private static final float LOCAL_HIT_SIMILARITY = 0.8f;
+    //what was said a few minutes ago is the same conversation, not context the user needs reminding of
+    private static final long MIN_HIT_AGE_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final int TOP_K = 5;
+    //most of a conversation stays on the topic of what was just said, so the GLBOX is only asked when the topic changes or something new
+    //comes up, see TopicShiftDetector. Short finals are batched for a few seconds first, so a thought split over utterances is one search
+    private static final long BATCH_WINDOW_MS = 4000;
+    private static final int BATCH_CONTENT_WORDS = 8; //a batch with this many words is enough to search on now
+
     private PublishSubject<JSONObject> dataObservable;
     private Disposable dataSubscriber;
-    private boolean iAmActive = false;
+    private volatile boolean iAmActive = false;
+
+    //embedding and searching take tens of milliseconds, so they get their own thread
+    private HandlerThread handlerThread;
+    private Handler handler;
+    private LocalSemanticSearch localSearch; //null if there's no model, then everything goes to the GLBOX
+
+    //the finals waiting to be a remote search, on the handler thread
+    private final TopicShiftDetector topicShiftDetector = new TopicShiftDetector();
+    private final StringBuilder pendingBatch = new StringBuilder();
+    private JSONObject pendingBatchLast; //the latest final in the batch, the request is for its phrase
+    private final Runnable batchFlush = this::flushBatch;
+    private long remoteCandidates = 0;
+    private long remoteSearches = 0;
+
+    public ContextualSearchSystem(Context context, PhraseRepository phraseRepository){
+        handlerThread = new HandlerThread("ContextualSearchHandler");
+        handlerThread.start();
+        handler = new Handler(handlerThread.getLooper());
+        handler.post(() -> {
+            try {
+                localSearch = new LocalSemanticSearch(context, phraseRepository);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "No local semantic search, contextual search will only use the GLBOX", e);
+            }
+        });
+    }
 
     public void setDataObservable(PublishSubject<JSONObject> observable){
         dataObservable = observable;
@@ -25,6 +74,20 @@ public class ContextualSearchSystem {
         iAmActive = false;
     }
 
+    public boolean isActive(){
+        return iAmActive;
+    }
+
+    public void destroy(){
+        handler.post(() -> {
+            if (localSearch != null) {
+                localSearch.close();
+                localSearch = null;
+            }
+        });
+        handlerThread.quitSafely();
+    }
+
     private void handleDataStream(JSONObject data){
         try {
             String dataType = data.getString(MessageTypes.MESSAGE_TYPE_LOCAL);
@@ -32,21 +95,121 @@ public class ContextualSearchSystem {
                 setActive();
             } else if (dataType.equals(MessageTypes.STOP_CONTEXTUAL_SEARCH)) {
                 setInactive();
+                handler.post(topicShiftDetector::clearWindow);
             }
 
-            //then, if we're active, check for things to do
+            //nothing is embedded or indexed while contextual search is off
             if (iAmActive && dataType.equals(MessageTypes.FINAL_TRANSCRIPT)) {
-                //build and send a contextual search request to the GLBOX
-                JSONObject contextualSearchRequest = new JSONObject();
-                contextualSearchRequest.put(MessageTypes.MESSAGE_TYPE_LOCAL, MessageTypes.CONTEXTUAL_SEARCH_REQUEST);
-                contextualSearchRequest.put(MessageTypes.TRANSCRIPT_TEXT, data.getString(MessageTypes.TRANSCRIPT_TEXT).toLowerCase());
-                contextualSearchRequest.put(MessageTypes.TIMESTAMP, data.getString(MessageTypes.TIMESTAMP));
-                contextualSearchRequest.put(MessageTypes.TRANSCRIPT_ID, data.getString(MessageTypes.TRANSCRIPT_ID));
-                dataObservable.onNext(contextualSearchRequest);
+                handler.post(() -> handleFinalTranscript(data));
+            }
+        } catch (JSONException e){
+            e.printStackTrace();
+        }
+    }
+
+    //on the handler thread. Looks the transcript up locally first, and only asks the GLBOX when nothing said before is close enough
+    private void handleFinalTranscript(JSONObject data){
+        try {
+            String transcript = data.getString(MessageTypes.TRANSCRIPT_TEXT).toLowerCase();
+            boolean search = true;
+            float[] embedding = null;
+            if (localSearch != null) {
+                long start = System.nanoTime();
+                embedding = localSearch.embed(transcript);
+                List<LocalSemanticSearch.Result> results = localSearch.search(embedding, TOP_K);
+                Log.d(TAG, "Local search took " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms (" + localSearch.getLastQueryMillis() + "ms in the index)");
+                LocalSemanticSearch.Result hit = bestHit(results);
+                if (hit != null) {
+                    sendLocalResult(hit);
+                    search = false;
+                }
+            }
+
+            if (search) {
+                batchRemoteSearch(data, transcript);
             }
+
+            //only base language transcripts are saved phrases, with an id
+            if (embedding != null && data.has(MessageTypes.TRANSCRIPT_ID)) {
+                localSearch.add(data.getLong(MessageTypes.TRANSCRIPT_ID), embedding);
+            }
+        } catch (JSONException | IOException e){
+            e.printStackTrace();
+        }
+    }
+
+    private void batchRemoteSearch(JSONObject data, String transcript){
+        remoteCandidates++;
+        if (pendingBatch.length() == 0) {
+            handler.postDelayed(batchFlush, BATCH_WINDOW_MS);
+        } else {
+            pendingBatch.append(' ');
+        }
+        pendingBatch.append(transcript);
+        pendingBatchLast = data;
+        if (TopicShiftDetector.contentWordCount(pendingBatch.toString()) >= BATCH_CONTENT_WORDS) {
+            flushBatch();
+        }
+    }
+
+    //asks the GLBOX about the batch, if it's a new topic or brings up something new
+    private void flushBatch(){
+        handler.removeCallbacks(batchFlush);
+        if (pendingBatch.length() == 0) {
+            return;
+        }
+        String batch = pendingBatch.toString();
+        JSONObject last = pendingBatchLast;
+        pendingBatch.setLength(0);
+        pendingBatchLast = null;
+        if (!iAmActive) {
+            return;
+        }
+        try {
+            if (!topicShiftDetector.isNewTopic(batch, last.getLong(MessageTypes.TIMESTAMP))) {
+                Log.d(TAG, "Same topic, not searching: " + batch);
+                return;
+            }
+            remoteSearches++;
+            Log.d(TAG, "Asking the GLBOX, " + remoteSearches + " searches for " + remoteCandidates + " transcripts");
+
+            //build and send a contextual search request to the GLBOX
+            JSONObject contextualSearchRequest = new JSONObject();
+            contextualSearchRequest.put(MessageTypes.MESSAGE_TYPE_LOCAL, MessageTypes.CONTEXTUAL_SEARCH_REQUEST);
+            contextualSearchRequest.put(MessageTypes.TRANSCRIPT_TEXT, batch);
+            contextualSearchRequest.put(MessageTypes.TIMESTAMP, last.getString(MessageTypes.TIMESTAMP));
+            contextualSearchRequest.put(MessageTypes.TRANSCRIPT_ID, last.getString(MessageTypes.TRANSCRIPT_ID));
+            dataObservable.onNext(contextualSearchRequest);
         } catch (JSONException e){
             e.printStackTrace();
         }
     }
 
+    private LocalSemanticSearch.Result bestHit(List<LocalSemanticSearch.Result> results){
+        long now = System.currentTimeMillis();
+        for (LocalSemanticSearch.Result result : results) {
+            if (result.similarity < LOCAL_HIT_SIMILARITY) {
+                break;
+            }
+            if (now - result.timestamp >= MIN_HIT_AGE_MS) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    //same shape as the GLBOX's contextual search response, so the glasses show it the same way
+    private void sendLocalResult(LocalSemanticSearch.Result hit) throws JSONException {
+        JSONObject result = new JSONObject();
+        result.put("success", true);
+        result.put("result", true);
+        result.put("title", "You said, " + DateUtils.getRelativeTimeSpanString(hit.timestamp));
+        result.put("body", hit.text);
+
+        JSONObject searchEngineResult = new JSONObject();
+        searchEngineResult.put(MessageTypes.MESSAGE_TYPE_LOCAL, MessageTypes.SEARCH_ENGINE_RESULT);
+        searchEngineResult.put(MessageTypes.SEARCH_ENGINE_RESULT_DATA, result.toString());
+        dataObservable.onNext(searchEngineResult);
+    }
+
 }
@@ -0,0 +1,473 @@
+package com.wearableintelligencesystem.androidsmartphone.contextualsearch;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+//approximate nearest neighbour search (HNSW) over unit length vectors, scored by dot product (cosine similarity), kept in a memory mapped file
+//nodes are fixed size records, so the graph is never loaded or rebuilt - opening maps the file and the kernel pages in the parts a search touches
+//a record is [long key][int level][float vector[dimension]][int count][int links[M0]] then [int count][int links[M]] for each upper layer
+//the header's node count is written after a node is linked in, so a crash mid insert leaves links to a node past the count, which searches skip
+//the header also keeps a fingerprint of the (key, node) sequence added, so an owner that adds in a known order can tell the file is of its data
+//not thread safe, inserts and searches should come from one thread
+public class HnswIndex {
+    private static final String TAG = "WearableAi_HnswIndex";
+
+    private static final int MAGIC = 0x484e5357; //"HNSW"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    //magic, version, dimension, then the node count, entry point, top layer and fingerprint
+    //files from before the fingerprint have 0 there, which is only the fingerprint of an empty index
+    private static final int COUNT_POSITION = 12;
+    private static final int ENTRY_POSITION = 16;
+    private static final int TOP_LEVEL_POSITION = 20;
+    private static final int FINGERPRINT_POSITION = 24;
+
+    private static final int M = 12; //links per node on the upper layers
+    private static final int M0 = 2 * M; //and on the bottom one
+    private static final int MAX_LEVEL = 4;
+    private static final int EF_CONSTRUCTION = 80;
+    private static final double LEVEL_MULTIPLIER = 1 / Math.log(M);
+    private static final int GROW_NODES = 1024;
+
+    //mapped pages are written back whenever the kernel likes, at most this long before we force them
+    private static final long FORCE_INTERVAL_MS = 5000;
+
+    public static class Hit {
+        public final long key;
+        public final float similarity;
+        Hit(long key, float similarity){
+            this.key = key;
+            this.similarity = similarity;
+        }
+    }
+
+    private final File file;
+    private final int dimension;
+    private final int recordSize;
+    private final Random random = new Random();
+    private RandomAccessFile raf;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int count;
+    private int entry;
+    private int topLevel;
+    private long fingerprint;
+    private long lastForce;
+
+    //scratch for searches
+    private int[] visited = new int[0];
+    private int visitGeneration = 0;
+    private final NodeHeap candidates = new NodeHeap(false);
+    private final NodeHeap results = new NodeHeap(true);
+
+    private HnswIndex(File file, int dimension){
+        this.file = file;
+        this.dimension = dimension;
+        this.recordSize = 8 + 4 + 4 * dimension + (4 + 4 * M0) + MAX_LEVEL * (4 + 4 * M);
+    }
+
+    //opens the index at file, or starts a new one. An index made for vectors of another size (a different model) is started over
+    public static HnswIndex open(File file, int dimension) throws IOException {
+        HnswIndex index = new HnswIndex(file, dimension);
+        index.load();
+        return index;
+    }
+
+    private void load() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        if (raf.length() >= HEADER_SIZE) {
+            map(Math.max(0, (int) ((raf.length() - HEADER_SIZE) / recordSize)));
+            if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && buffer.getInt(8) == dimension) {
+                count = Math.min(buffer.getInt(COUNT_POSITION), capacity);
+                entry = buffer.getInt(ENTRY_POSITION);
+                topLevel = buffer.getInt(TOP_LEVEL_POSITION);
+                fingerprint = buffer.getLong(FINGERPRINT_POSITION);
+                return;
+            }
+            Log.w(TAG, "Starting over " + file + ", it was made for other vectors");
+            buffer = null;
+            raf.setLength(0);
+        }
+        map(GROW_NODES);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, dimension);
+        count = 0;
+        fingerprint = 0;
+        writeHeader();
+    }
+
+    //mapping past the end of the file grows it. A mapping can't be over 2GB, so neither can the index
+    private void map(int nodes) throws IOException {
+        long size = HEADER_SIZE + (long) nodes * recordSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(file + " is full at " + count + " nodes");
+        }
+        capacity = nodes;
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (visited.length < nodes) {
+            visited = new int[nodes];
+            visitGeneration = 0;
+        }
+    }
+
+    public int size(){
+        return count;
+    }
+
+    public int getDimension(){
+        return dimension;
+    }
+
+    //of every (key, node) added so far, in order. See fingerprint
+    public long getFingerprint(){
+        return fingerprint;
+    }
+
+    //the fingerprint after adding key as node to an index whose fingerprint was previous, starting from 0 for an empty one
+    //so an owner can work out what the fingerprint of its own data would be and compare it with getFingerprint
+    public static long fingerprint(long previous, long key, int node){
+        return mix(previous ^ mix(key + 0x9e3779b97f4a7c15L * (node + 1)));
+    }
+
+    //splitmix64's finalizer
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    //vector has to be unit length
+    public void add(long key, float[] vector) throws IOException {
+        if (count == capacity) {
+            map(capacity + GROW_NODES);
+        }
+        int node = count;
+        int level = Math.min(MAX_LEVEL, (int) (-Math.log(1 - random.nextDouble()) * LEVEL_MULTIPLIER));
+        int record = recordOffset(node);
+        buffer.putLong(record, key);
+        buffer.putInt(record + 8, level);
+        for (int i = 0; i < dimension; i++) {
+            buffer.putFloat(record + 12 + 4 * i, vector[i]);
+        }
+        for (int l = 0; l <= MAX_LEVEL; l++) {
+            buffer.putInt(linksOffset(node, l), 0);
+        }
+
+        if (count > 0) {
+            int ep = entry;
+            float epSimilarity = dot(vector, ep);
+            for (int l = topLevel; l > level; l--) {
+                ep = greedy(vector, ep, l);
+                epSimilarity = dot(vector, ep);
+            }
+            for (int l = Math.min(level, topLevel); l >= 0; l--) {
+                searchLayer(vector, ep, epSimilarity, EF_CONSTRUCTION, l);
+                int[] found = new int[results.size()];
+                float[] similarities = new float[results.size()];
+                drainDescending(found, similarities);
+                int[] links = selectNeighbours(found, similarities, found.length, l == 0 ? M0 : M);
+                setLinks(node, l, links, links.length);
+                for (int link : links) {
+                    addLink(link, node, l);
+                }
+                ep = found[0];
+                epSimilarity = similarities[0];
+            }
+        }
+
+        fingerprint = fingerprint(fingerprint, key, node);
+        count++;
+        if (count == 1 || level > topLevel) {
+            entry = node;
+            topLevel = level;
+        }
+        writeHeader();
+        long now = System.currentTimeMillis();
+        if (now - lastForce > FORCE_INTERVAL_MS) {
+            buffer.force();
+            lastForce = now;
+        }
+    }
+
+    //the k nodes most similar to query, best first. ef is how wide the bottom layer search is, at least k
+    public List<Hit> search(float[] query, int k, int ef){
+        List<Hit> hits = new ArrayList<>();
+        if (count == 0) {
+            return hits;
+        }
+        int ep = entry;
+        for (int l = topLevel; l > 0; l--) {
+            ep = greedy(query, ep, l);
+        }
+        searchLayer(query, ep, dot(query, ep), Math.max(ef, k), 0);
+        int[] found = new int[results.size()];
+        float[] similarities = new float[results.size()];
+        drainDescending(found, similarities);
+        for (int i = 0; i < Math.min(k, found.length); i++) {
+            hits.add(new Hit(buffer.getLong(recordOffset(found[i])), similarities[i]));
+        }
+        return hits;
+    }
+
+    public void close(){
+        try {
+            if (buffer != null) {
+                buffer.force();
+            }
+            raf.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not close " + file, e);
+        }
+    }
+
+    //walks one layer towards the query, one best neighbour at a time
+    private int greedy(float[] query, int ep, int level){
+        float best = dot(query, ep);
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            int links = linksOffset(ep, level);
+            int linkCount = buffer.getInt(links);
+            for (int i = 0; i < linkCount; i++) {
+                int neighbour = buffer.getInt(links + 4 + 4 * i);
+                if (neighbour >= count) {
+                    continue;
+                }
+                float similarity = dot(query, neighbour);
+                if (similarity > best) {
+                    best = similarity;
+                    ep = neighbour;
+                    moved = true;
+                }
+            }
+        }
+        return ep;
+    }
+
+    //best first search of one layer, leaves the ef most similar nodes found in results
+    private void searchLayer(float[] query, int ep, float epSimilarity, int ef, int level){
+        if (++visitGeneration == 0) {
+            Arrays.fill(visited, 0);
+            visitGeneration = 1;
+        }
+        candidates.clear();
+        results.clear();
+        visited[ep] = visitGeneration;
+        candidates.push(epSimilarity, ep);
+        results.push(epSimilarity, ep);
+        while (candidates.size() > 0) {
+            float similarity = candidates.topScore();
+            int node = candidates.pop();
+            if (results.size() >= ef && similarity < results.topScore()) {
+                break;
+            }
+            int links = linksOffset(node, level);
+            int linkCount = buffer.getInt(links);
+            for (int i = 0; i < linkCount; i++) {
+                int neighbour = buffer.getInt(links + 4 + 4 * i);
+                if (neighbour >= count || visited[neighbour] == visitGeneration) {
+                    continue;
+                }
+                visited[neighbour] = visitGeneration;
+                float neighbourSimilarity = dot(query, neighbour);
+                if (results.size() < ef || neighbourSimilarity > results.topScore()) {
+                    candidates.push(neighbourSimilarity, neighbour);
+                    results.push(neighbourSimilarity, neighbour);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+    }
+
+    //results, most similar first
+    private void drainDescending(int[] nodes, float[] similarities){
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            similarities[i] = results.topScore();
+            nodes[i] = results.pop();
+        }
+    }
+
+    //the HNSW heuristic: take candidates best first, skipping any that's closer to one already taken than to the node itself,
+    //so links spread out in different directions instead of bunching up in one cluster
+    private int[] selectNeighbours(int[] nodes, float[] similarities, int available, int max){
+        int[] selected = new int[Math.min(max, available)];
+        int selectedCount = 0;
+        for (int i = 0; i < available && selectedCount < selected.length; i++) {
+            boolean keep = true;
+            for (int j = 0; j < selectedCount && keep; j++) {
+                keep = dotNodes(nodes[i], selected[j]) <= similarities[i];
+            }
+            if (keep) {
+                selected[selectedCount++] = nodes[i];
+            }
+        }
+        return selectedCount == selected.length ? selected : Arrays.copyOf(selected, selectedCount);
+    }
+
+    //links node to link on a layer, re-picking node's links with the heuristic when it's full
+    private void addLink(int node, int link, int level){
+        int max = level == 0 ? M0 : M;
+        int links = linksOffset(node, level);
+        int linkCount = buffer.getInt(links);
+        if (linkCount < max) {
+            buffer.putInt(links + 4 + 4 * linkCount, link);
+            buffer.putInt(links, linkCount + 1);
+            return;
+        }
+        int[] nodes = new int[linkCount + 1];
+        float[] similarities = new float[linkCount + 1];
+        for (int i = 0; i < linkCount; i++) {
+            nodes[i] = buffer.getInt(links + 4 + 4 * i);
+        }
+        nodes[linkCount] = link;
+        for (int i = 0; i < nodes.length; i++) {
+            similarities[i] = dotNodes(node, nodes[i]);
+        }
+        //insertion sort, most similar first - there are at most M0 + 1
+        for (int i = 1; i < nodes.length; i++) {
+            int n = nodes[i];
+            float s = similarities[i];
+            int j = i - 1;
+            while (j >= 0 && similarities[j] < s) {
+                nodes[j + 1] = nodes[j];
+                similarities[j + 1] = similarities[j];
+                j--;
+            }
+            nodes[j + 1] = n;
+            similarities[j + 1] = s;
+        }
+        int[] selected = selectNeighbours(nodes, similarities, nodes.length, max);
+        setLinks(node, level, selected, selected.length);
+    }
+
+    private void setLinks(int node, int level, int[] links, int linkCount){
+        int offset = linksOffset(node, level);
+        for (int i = 0; i < linkCount; i++) {
+            buffer.putInt(offset + 4 + 4 * i, links[i]);
+        }
+        buffer.putInt(offset, linkCount);
+    }
+
+    private float dot(float[] vector, int node){
+        int offset = recordOffset(node) + 12;
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += vector[i] * buffer.getFloat(offset + 4 * i);
+        }
+        return sum;
+    }
+
+    private float dotNodes(int a, int b){
+        int offsetA = recordOffset(a) + 12;
+        int offsetB = recordOffset(b) + 12;
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += buffer.getFloat(offsetA + 4 * i) * buffer.getFloat(offsetB + 4 * i);
+        }
+        return sum;
+    }
+
+    //nodes are below capacity, so this fits in an int, see map
+    private int recordOffset(int node){
+        return (int) (HEADER_SIZE + (long) node * recordSize);
+    }
+
+    private int linksOffset(int node, int level){
+        int offset = recordOffset(node) + 12 + 4 * dimension;
+        return level == 0 ? offset : offset + (4 + 4 * M0) + (level - 1) * (4 + 4 * M);
+    }
+
+    private void writeHeader(){
+        buffer.putInt(COUNT_POSITION, count);
+        buffer.putInt(ENTRY_POSITION, entry);
+        buffer.putInt(TOP_LEVEL_POSITION, topLevel);
+        buffer.putLong(FINGERPRINT_POSITION, fingerprint);
+    }
+
+    //binary heap of nodes by score, the lowest on top or the highest
+    private static class NodeHeap {
+        private final boolean lowestOnTop;
+        private float[] scores = new float[64];
+        private int[] nodes = new int[64];
+        private int size;
+
+        NodeHeap(boolean lowestOnTop){
+            this.lowestOnTop = lowestOnTop;
+        }
+
+        int size(){
+            return size;
+        }
+
+        void clear(){
+            size = 0;
+        }
+
+        float topScore(){
+            return scores[0];
+        }
+
+        void push(float score, int node){
+            if (size == scores.length) {
+                scores = Arrays.copyOf(scores, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!above(score, scores[parent])) {
+                    break;
+                }
+                scores[i] = scores[parent];
+                nodes[i] = nodes[parent];
+                i = parent;
+            }
+            scores[i] = score;
+            nodes[i] = node;
+        }
+
+        int pop(){
+            int top = nodes[0];
+            size--;
+            float score = scores[size];
+            int node = nodes[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && above(scores[child + 1], scores[child])) {
+                    child++;
+                }
+                if (!above(scores[child], score)) {
+                    break;
+                }
+                scores[i] = scores[child];
+                nodes[i] = nodes[child];
+                i = child;
+            }
+            scores[i] = score;
+            nodes[i] = node;
+            return top;
+        }
+
+        private boolean above(float a, float b){
+            return lowestOnTop ? a < b : a > b;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.wearableintelligencesystem.androidsmartphone.contextualsearch;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.wearableintelligencesystem.androidsmartphone.database.phrase.Phrase;
+import com.wearableintelligencesystem.androidsmartphone.database.phrase.PhraseRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+//semantic search over what the user has said before, on the phone - phrases saved while contextual search is on are embedded and added to
+//an HNSW index on disk, and a new transcript is looked up against them without a network round trip
+//the index only holds vectors keyed by phrase id, the text and time of a hit are read from the PhraseTable. So a phrase that has been
+//deleted, or dropped by retention, since it was indexed is never a result - its vector stays in the index, but nothing else of it does
+//not thread safe, use it from one thread
+public class LocalSemanticSearch {
+    private static final String TAG = "WearableAi_LocalSemanticSearch";
+
+    private static final String DIR = "semantic_search";
+    private static final String INDEX_FILE = "phrases.hnsw";
+    //where the text used to be copied to, before the index was keyed by phrase id
+    private static final String LEGACY_PHRASES_FILE = "phrases.txt";
+
+    private static final int EF_SEARCH = 64;
+
+    public static class Result {
+        public final long phraseId;
+        public final long timestamp;
+        public final String text;
+        public final float similarity;
+        Result(long phraseId, long timestamp, String text, float similarity){
+            this.phraseId = phraseId;
+            this.timestamp = timestamp;
+            this.text = text;
+            this.similarity = similarity;
+        }
+    }
+
+    private final SentenceEmbedder embedder;
+    private final HnswIndex index;
+    private final PhraseRepository phraseRepository;
+    private long lastQueryMillis = -1;
+
+    //throws if the embedding model isn't in assets, in which case contextual search stays remote only
+    public LocalSemanticSearch(Context context, PhraseRepository phraseRepository) throws IOException {
+        this.phraseRepository = phraseRepository;
+        File dir = new File(context.getFilesDir(), DIR);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        embedder = new SentenceEmbedder(context);
+        File indexFile = new File(dir, INDEX_FILE);
+        File legacyPhrasesFile = new File(dir, LEGACY_PHRASES_FILE);
+        if (legacyPhrasesFile.exists()) {
+            //that index's keys are offsets into the old text copy, not phrase ids
+            indexFile.delete();
+            legacyPhrasesFile.delete();
+        }
+        index = HnswIndex.open(indexFile, embedder.getDimension());
+        Log.d(TAG, "Opened semantic index of " + index.size() + " phrases, " + embedder.getDimension() + " dimensions");
+    }
+
+    public float[] embed(String text){
+        return embedder.embed(text);
+    }
+
+    //the k phrases closest in meaning that are still in the database, best first
+    public List<Result> search(float[] embedding, int k) throws IOException {
+        long start = System.nanoTime();
+        List<HnswIndex.Hit> hits = index.search(embedding, k, EF_SEARCH);
+        lastQueryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (hits.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> ids = new ArrayList<>();
+        for (HnswIndex.Hit hit : hits) {
+            ids.add(hit.key);
+        }
+        Map<Long, Phrase> phrases = new HashMap<>();
+        try {
+            for (Phrase phrase : phraseRepository.getPhrases(ids)) {
+                phrases.put(phrase.getId(), phrase);
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Could not read the phrases found", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted reading the phrases found", e);
+        }
+        List<Result> results = new ArrayList<>();
+        for (HnswIndex.Hit hit : hits) {
+            Phrase phrase = phrases.get(hit.key);
+            if (phrase != null) {
+                results.add(new Result(phrase.getId(), phrase.getTimestamp(), phrase.getPhrase(), hit.similarity));
+            }
+        }
+        return results;
+    }
+
+    public void add(long phraseId, float[] embedding) throws IOException {
+        index.add(phraseId, embedding);
+    }
+
+    public int size(){
+        return index.size();
+    }
+
+    //how long the last index lookup took, not counting the embedding
+    public long getLastQueryMillis(){
+        return lastQueryMillis;
+    }
+
+    public void close(){
+        index.close();
+        embedder.close();
+    }
+}
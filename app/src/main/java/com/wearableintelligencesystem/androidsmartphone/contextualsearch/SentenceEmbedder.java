@@ -0,0 +1,238 @@
+package com.wearableintelligencesystem.androidsmartphone.contextualsearch;
+
+import android.content.Context;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+import org.tensorflow.lite.support.common.FileUtil;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//turns a sentence into a unit length vector with a BERT style sentence embedding model (e.g. all-MiniLM-L6-v2 exported to TFLite), so
+//sentences about the same thing end up close together
+//the model goes in assets with its WordPiece vocabulary. It takes token ids (plus an attention mask and token types if it has inputs named
+//like that), and gives either one embedding or one per token, which are mean pooled over the real tokens like sentence-transformers does
+//not thread safe, the interpreter isn't
+public class SentenceEmbedder {
+    public static final String MODEL_FILE = "sentence_embedder.tflite";
+    public static final String VOCAB_FILE = "sentence_embedder_vocab.txt";
+
+    private static final int MAX_WORD_LENGTH = 100; //longer "words" are [UNK], like BERT's tokenizer
+
+    private final Interpreter interpreter;
+    private final Map<String, Integer> vocab = new HashMap<>();
+    private final int sequenceLength;
+    private final int dimension;
+    private final int outputIndex;
+    private final boolean pooled; //the model gives one embedding rather than one per token
+    private final int clsId, sepId, padId, unkId;
+
+    public SentenceEmbedder(Context context) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(context.getAssets().open(VOCAB_FILE), StandardCharsets.UTF_8))) {
+            String token;
+            while ((token = reader.readLine()) != null) {
+                vocab.put(token.trim(), vocab.size());
+            }
+        }
+        clsId = vocabId("[CLS]");
+        sepId = vocabId("[SEP]");
+        padId = vocabId("[PAD]");
+        unkId = vocabId("[UNK]");
+
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(2);
+        interpreter = new Interpreter(FileUtil.loadMappedFile(context, MODEL_FILE), options);
+        sequenceLength = interpreter.getInputTensor(0).shape()[1];
+
+        //per token embeddings if the model has them (that's what sentence-transformers pools), else its single embedding
+        int chosen = 0;
+        for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+            if (interpreter.getOutputTensor(i).shape().length == 3) {
+                chosen = i;
+                break;
+            }
+        }
+        outputIndex = chosen;
+        int[] outputShape = interpreter.getOutputTensor(outputIndex).shape();
+        pooled = outputShape.length == 2;
+        dimension = outputShape[outputShape.length - 1];
+    }
+
+    public int getDimension(){
+        return dimension;
+    }
+
+    public float[] embed(String sentence){
+        int[] ids = tokenize(sentence);
+        int tokens = 0;
+        while (tokens < ids.length && ids[tokens] != padId) {
+            tokens++;
+        }
+
+        Object[] inputs = new Object[interpreter.getInputTensorCount()];
+        for (int i = 0; i < inputs.length; i++) {
+            Tensor input = interpreter.getInputTensor(i);
+            String name = input.name().toLowerCase();
+            int[] values = new int[sequenceLength];
+            if (name.contains("mask")) {
+                for (int t = 0; t < tokens; t++) {
+                    values[t] = 1;
+                }
+            } else if (!name.contains("type") && !name.contains("segment")) {
+                values = ids;
+            }
+            inputs[i] = input.dataType() == DataType.INT64 ? new long[][]{toLongs(values)} : new int[][]{values};
+        }
+
+        Map<Integer, Object> outputs = new HashMap<>();
+        float[] embedding = new float[dimension];
+        if (pooled) {
+            float[][] output = new float[1][dimension];
+            outputs.put(outputIndex, output);
+            interpreter.runForMultipleInputsOutputs(inputs, outputs);
+            System.arraycopy(output[0], 0, embedding, 0, dimension);
+        } else {
+            float[][][] output = new float[1][sequenceLength][dimension];
+            outputs.put(outputIndex, output);
+            interpreter.runForMultipleInputsOutputs(inputs, outputs);
+            for (int t = 0; t < tokens; t++) {
+                for (int d = 0; d < dimension; d++) {
+                    embedding[d] += output[0][t][d];
+                }
+            }
+        }
+        return normalize(embedding);
+    }
+
+    public void close(){
+        interpreter.close();
+    }
+
+    //[CLS] wordpieces [SEP] then padding, cut to the model's sequence length
+    int[] tokenize(String sentence){
+        List<Integer> pieces = new ArrayList<>();
+        for (String word : basicTokens(sentence)) {
+            wordPieces(word, pieces);
+        }
+        int[] ids = new int[sequenceLength];
+        int length = Math.min(pieces.size(), sequenceLength - 2);
+        ids[0] = clsId;
+        for (int i = 0; i < length; i++) {
+            ids[i + 1] = pieces.get(i);
+        }
+        ids[length + 1] = sepId;
+        for (int i = length + 2; i < sequenceLength; i++) {
+            ids[i] = padId;
+        }
+        return ids;
+    }
+
+    //lowercased, accents stripped, split on whitespace with punctuation as tokens of its own - what an uncased BERT tokenizer does first
+    private static List<String> basicTokens(String sentence){
+        String text = Normalizer.normalize(sentence.toLowerCase(), Normalizer.Form.NFD);
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isWhitespace(c) || isPunctuation(c)) {
+                if (current.length() > 0) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                }
+                if (isPunctuation(c)) {
+                    tokens.add(String.valueOf(c));
+                }
+            } else {
+                current.append(c);
+            }
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    private static boolean isPunctuation(char c){
+        if ((c >= 33 && c <= 47) || (c >= 58 && c <= 64) || (c >= 91 && c <= 96) || (c >= 123 && c <= 126)) {
+            return true;
+        }
+        int type = Character.getType(c);
+        return type == Character.CONNECTOR_PUNCTUATION || type == Character.DASH_PUNCTUATION || type == Character.START_PUNCTUATION
+                || type == Character.END_PUNCTUATION || type == Character.INITIAL_QUOTE_PUNCTUATION || type == Character.FINAL_QUOTE_PUNCTUATION
+                || type == Character.OTHER_PUNCTUATION;
+    }
+
+    //greedy longest match first, continuation pieces start with ##. A word that can't be split into known pieces is one [UNK]
+    private void wordPieces(String word, List<Integer> pieces){
+        if (word.length() > MAX_WORD_LENGTH) {
+            pieces.add(unkId);
+            return;
+        }
+        int added = pieces.size();
+        int start = 0;
+        while (start < word.length()) {
+            int end = word.length();
+            Integer id = null;
+            while (start < end) {
+                String piece = (start > 0 ? "##" : "") + word.substring(start, end);
+                id = vocab.get(piece);
+                if (id != null) {
+                    break;
+                }
+                end--;
+            }
+            if (id == null) {
+                while (pieces.size() > added) {
+                    pieces.remove(pieces.size() - 1);
+                }
+                pieces.add(unkId);
+                return;
+            }
+            pieces.add(id);
+            start = end;
+        }
+    }
+
+    private int vocabId(String token) throws IOException {
+        Integer id = vocab.get(token);
+        if (id == null) {
+            throw new IOException(VOCAB_FILE + " has no " + token);
+        }
+        return id;
+    }
+
+    private static long[] toLongs(int[] values){
+        long[] longs = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            longs[i] = values[i];
+        }
+        return longs;
+    }
+
+    private static float[] normalize(float[] vector){
+        double sum = 0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        if (sum == 0) {
+            return vector;
+        }
+        float scale = (float) (1 / Math.sqrt(sum));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+}
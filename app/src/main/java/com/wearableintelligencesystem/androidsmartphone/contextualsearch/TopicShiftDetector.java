@@ -0,0 +1,163 @@
+package com.wearableintelligencesystem.androidsmartphone.contextualsearch;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+//decides whether what was just said is worth a contextual search, or the conversation is still on what we already searched for
+//keeps a sliding window of the terms said lately, and measures how much of new text, by TF-IDF weight, is terms from the window - when
+//little of it is, the topic changed. Text that stays on topic is still worth a search if it brings in a term we've never heard before,
+//e.g. a name or a place, but not more often than every so often, since early in a session most words are ones we've never heard
+//document frequencies are learned from every utterance it sees, so the words this user says all the time stop counting for much
+//not thread safe, ContextualSearchSystem uses it from its handler thread
+public class TopicShiftDetector {
+    //the recent conversation, by utterance count and age
+    private static final int WINDOW_UTTERANCES = 8;
+    private static final long WINDOW_MS = 90 * 1000;
+    //when less than this much of the text is on the window's terms, it's a new topic
+    private static final double MIN_TOPIC_COVERAGE = 0.2;
+    //a new salient term is a word at least this long we haven't heard before, and it's only searched for this long after the last search
+    private static final int MIN_SALIENT_LENGTH = 4;
+    private static final long SALIENT_SEARCH_INTERVAL_MS = 30 * 1000;
+    //past this many distinct terms we start learning document frequencies over, so a long session doesn't grow without bound
+    private static final int MAX_VOCABULARY = 20000;
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "about", "above", "after", "again", "all", "also", "am", "an", "and", "any", "are", "as", "at", "be", "because", "been",
+            "before", "being", "below", "between", "both", "but", "by", "can", "could", "did", "do", "does", "doing", "done", "down", "during",
+            "each", "even", "few", "for", "from", "further", "get", "gets", "getting", "go", "goes", "going", "gonna", "got", "had", "has",
+            "have", "having", "he", "her", "here", "hers", "him", "his", "how", "i", "if", "in", "into", "is", "it", "its", "just", "know",
+            "like", "make", "me", "more", "most", "much", "my", "no", "nor", "not", "now", "of", "off", "oh", "okay", "on", "once", "one",
+            "only", "or", "other", "our", "ours", "out", "over", "own", "really", "right", "said", "same", "say", "says", "see", "she", "should",
+            "so", "some", "something", "such", "than", "that", "the", "their", "them", "then", "there", "these", "they", "thing", "things",
+            "think", "this", "those", "through", "to", "too", "under", "until", "up", "us", "very", "want", "was", "way", "we", "well", "were",
+            "what", "when", "where", "which", "while", "who", "whom", "why", "will", "with", "would", "yeah", "yes", "you", "your", "yours",
+            "uh", "um", "huh", "hmm"));
+
+    private static final class Utterance {
+        final long time;
+        final Map<String, Integer> termCounts;
+        Utterance(long time, Map<String, Integer> termCounts){
+            this.time = time;
+            this.termCounts = termCounts;
+        }
+    }
+
+    private final ArrayDeque<Utterance> window = new ArrayDeque<>();
+    private final Map<String, Integer> documentFrequency = new HashMap<>();
+    private int documents = 0;
+    private long lastNewTopicTime = Long.MIN_VALUE / 2;
+
+    //whether text is a new topic, or brings something new to this one. Either way it joins the window
+    public boolean isNewTopic(String text, long time){
+        Map<String, Integer> terms = termCounts(text);
+        while (!window.isEmpty() && (window.size() >= WINDOW_UTTERANCES || time - window.peekFirst().time > WINDOW_MS)) {
+            window.removeFirst();
+        }
+
+        boolean newTopic;
+        if (terms.isEmpty()) {
+            newTopic = false; //nothing to search for
+        } else if (window.isEmpty()) {
+            newTopic = true;
+        } else {
+            Map<String, Integer> windowTerms = new HashMap<>();
+            for (Utterance utterance : window) {
+                for (Map.Entry<String, Integer> term : utterance.termCounts.entrySet()) {
+                    windowTerms.merge(term.getKey(), term.getValue(), Integer::sum);
+                }
+            }
+            newTopic = coverage(terms, windowTerms) < MIN_TOPIC_COVERAGE
+                    || (hasNewSalientTerm(terms) && time - lastNewTopicTime >= SALIENT_SEARCH_INTERVAL_MS);
+        }
+
+        learn(terms);
+        window.addLast(new Utterance(time, terms));
+        if (newTopic) {
+            lastNewTopicTime = time;
+        }
+        return newTopic;
+    }
+
+    //forget the conversation, e.g. contextual search was turned off, but keep what we learned about which words are common
+    public void clearWindow(){
+        window.clear();
+    }
+
+    //how many words in text aren't stop words
+    public static int contentWordCount(String text){
+        int count = 0;
+        for (int termCount : termCounts(text).values()) {
+            count += termCount;
+        }
+        return count;
+    }
+
+    private boolean hasNewSalientTerm(Map<String, Integer> terms){
+        for (String term : terms.keySet()) {
+            if (term.length() >= MIN_SALIENT_LENGTH && !documentFrequency.containsKey(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //how much of the TF-IDF weight of terms is on terms in windowTerms, 0 to 1
+    private double coverage(Map<String, Integer> terms, Map<String, Integer> windowTerms){
+        double covered = 0;
+        double total = 0;
+        for (Map.Entry<String, Integer> term : terms.entrySet()) {
+            double weight = term.getValue() * idf(term.getKey());
+            total += weight;
+            if (windowTerms.containsKey(term.getKey())) {
+                covered += weight;
+            }
+        }
+        return total == 0 ? 0 : covered / total;
+    }
+
+    //smoothed, so a term we've never seen is the rarest there is rather than infinite
+    private double idf(String term){
+        Integer df = documentFrequency.get(term);
+        return Math.log((1.0 + documents) / (1.0 + (df == null ? 0 : df))) + 1;
+    }
+
+    private void learn(Map<String, Integer> terms){
+        if (documentFrequency.size() > MAX_VOCABULARY) {
+            documentFrequency.clear();
+            documents = 0;
+        }
+        documents++;
+        for (String term : terms.keySet()) {
+            documentFrequency.merge(term, 1, Integer::sum);
+        }
+    }
+
+    private static Map<String, Integer> termCounts(String text){
+        Map<String, Integer> counts = new HashMap<>();
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}']+")) {
+            if (!word.isEmpty() && !STOP_WORDS.contains(word)) {
+                counts.merge(singular(word), 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    //just enough stemming that "galaxies" is "galaxy" and "tomatoes" is "tomato"
+    private static String singular(String word){
+        int length = word.length();
+        if (length <= 3 || !word.endsWith("s") || word.endsWith("ss") || word.endsWith("us") || word.endsWith("is")) {
+            return word;
+        }
+        if (word.endsWith("ies")) {
+            return word.substring(0, length - 3) + "y";
+        }
+        if (word.endsWith("oes") || word.endsWith("xes") || word.endsWith("ches") || word.endsWith("shes") || word.endsWith("sses")) {
+            return word.substring(0, length - 2);
+        }
+        return word.substring(0, length - 1);
+    }
+}
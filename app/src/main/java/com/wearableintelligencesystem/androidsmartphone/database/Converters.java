@@ -12,7 +12,6 @@ import androidx.room.TypeConverter;
 import com.google.gson.Gson;
 
 import java.util.Date;
-import java.util.Dictionary;
 import java.util.Hashtable;
 
 public class Converters {
@@ -27,7 +26,7 @@ public class Converters {
         return time == null ? null : time.getTime();
     }
 
-    @TypeConverter
+    //locations used to be stored as a json blob in a single column, this is only kept to read those rows during the migration to real latitude/longitude columns
     public static Location fromLocation(String value){
         if(value != null) {
             Gson gson = new Gson();
@@ -42,19 +41,4 @@ public class Converters {
             return null;
         }
     }
-
-    @TypeConverter
-    public static String toLocation(Location location){
-        if(location != null) {
-            Dictionary stash = new Hashtable();
-            stash.put("lat", location.getLatitude());
-            stash.put("lon", location.getLongitude());
-            stash.put("altitude", location.getAltitude());
-            Gson gson = new Gson();
-            return gson.toJson(stash);
-        }
-        else{
-            return null;
-        }
-    }
 }
@@ -0,0 +1,100 @@
+package com.wearableintelligencesystem.androidsmartphone.database;
+
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//the one place database work is scheduled from, shared by every repository and by Room itself
+//reads go to a small bounded pool, writes go to a single thread so they're applied in the order they were issued
+//everything hands back a CompletableFuture. Callers that really need the value right away can still .get() it, but nothing here creates a thread per call anymore
+public final class DatabaseExecutors {
+    private static final String TAG = "WearableAi_DatabaseExecutors";
+
+    private static final int READ_THREADS = 3;
+    private static final long IDLE_TIMEOUT_SECONDS = 30;
+
+    private static final ThreadPoolExecutor readExecutor = new ThreadPoolExecutor(READ_THREADS, READ_THREADS, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), namedThreads("WearableAiDbRead"));
+    private static final ThreadPoolExecutor writeExecutor = new ThreadPoolExecutor(1, 1, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), namedThreads("WearableAiDbWrite"));
+
+    //first query latency: from the first read/write being asked for to it finishing, -1 until it has. Opening the database lands on these
+    private static final AtomicLong firstReadMillis = new AtomicLong(-1);
+    private static final AtomicLong firstWriteMillis = new AtomicLong(-1);
+
+    static {
+        //don't keep idle database threads around while the phone is doing nothing
+        readExecutor.allowCoreThreadTimeOut(true);
+        writeExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private DatabaseExecutors() {
+    }
+
+    public static ExecutorService getReadExecutor(){
+        return readExecutor;
+    }
+
+    public static ExecutorService getWriteExecutor(){
+        return writeExecutor;
+    }
+
+    public static <T> CompletableFuture<T> read(Callable<T> callable){
+        return submit(readExecutor, callable, firstReadMillis, "read");
+    }
+
+    public static <T> CompletableFuture<T> write(Callable<T> callable){
+        return submit(writeExecutor, callable, firstWriteMillis, "write");
+    }
+
+    public static long getFirstReadMillis(){
+        return firstReadMillis.get();
+    }
+
+    public static long getFirstWriteMillis(){
+        return firstWriteMillis.get();
+    }
+
+    //fire and forget write, failures are logged since nobody is waiting on the result
+    public static void execute(Runnable runnable){
+        writeExecutor.execute(() -> {
+            try {
+                runnable.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Database write failed", e);
+            }
+        });
+    }
+
+    private static <T> CompletableFuture<T> submit(ExecutorService executor, Callable<T> callable, AtomicLong firstMillis, String kind){
+        CompletableFuture<T> future = new CompletableFuture<>();
+        boolean timeIt = firstMillis.get() < 0;
+        long queued = timeIt ? System.nanoTime() : 0;
+        executor.execute(() -> {
+            try {
+                future.complete(callable.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+            if (timeIt && firstMillis.compareAndSet(-1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queued))) {
+                Log.d(TAG, "First database " + kind + " took " + firstMillis.get() + "ms");
+            }
+        });
+        return future;
+    }
+
+    private static ThreadFactory namedThreads(String name){
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
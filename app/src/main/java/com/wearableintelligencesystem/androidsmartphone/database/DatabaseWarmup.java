@@ -0,0 +1,118 @@
+package com.wearableintelligencesystem.androidsmartphone.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.wearableintelligencesystem.androidsmartphone.database.summary.MemorySummary;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+//connection settings for our database, and a warm-up run at service start
+//the first transcript used to arrive while the database was still being opened (and migrated) on whichever thread asked first, fighting Vosk
+//unpacking its model and TFLite loading for the disk. Now the writer opens it straight away and loads the planner stats, so the first real
+//query finds everything ready
+public final class DatabaseWarmup {
+    private static final String TAG = "WearableAi_DatabaseWarmup";
+
+    //negative cache_size is in KiB rather than pages
+    private static final int CACHE_SIZE_KIB = 8 * 1024;
+    private static final long MMAP_SIZE_BYTES = 64L * 1024 * 1024;
+    private static final long WARM_RANGE_MS = TimeUnit.MINUTES.toMillis(1);
+    //where schema 7's event log kept its segments, see WearableAiRoomDatabase.MIGRATION_7_8
+    private static final String LEGACY_EVENT_LOG_DIR = "eventlog";
+
+    private static volatile long openMillis = -1;
+    private static volatile long warmupMillis = -1;
+
+    private DatabaseWarmup() {
+    }
+
+    //run whenever Room opens the database, through RoomDatabase.Callback.onOpen. These apply to the connection Room hands us (the one writes use),
+    //the extra WAL read connections Android opens itself keep its defaults
+    //synchronous=NORMAL only risks the last commits on power loss (never corruption) in WAL mode, and saves an fsync per lifelog write.
+    //it's a connection setting, not a per table one, so it covers every table
+    static void configure(SupportSQLiteDatabase db){
+        pragma(db, "PRAGMA synchronous = NORMAL");
+        pragma(db, "PRAGMA cache_size = -" + CACHE_SIZE_KIB);
+        //a no-op where SQLite was built without mmap support
+        pragma(db, "PRAGMA mmap_size = " + MMAP_SIZE_BYTES);
+    }
+
+    //setting some pragmas returns a row, which execSQL refuses
+    private static void pragma(SupportSQLiteDatabase db, String pragma){
+        try (Cursor cursor = db.query(pragma)) {
+            while (cursor.moveToNext()) {
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not run " + pragma, e);
+        }
+    }
+
+    //queued on the database writer, so it runs ahead of any write the service makes and never alongside one
+    public static CompletableFuture<Void> start(Context context){
+        long queued = System.nanoTime();
+        return DatabaseExecutors.write(() -> {
+            long start = System.nanoTime();
+            WearableAiRoomDatabase database = WearableAiRoomDatabase.getDatabase(context);
+            SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+            openMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            analyze(db);
+            deleteLegacyEventLog(context);
+
+            //the reads the service and the main screens make first. Each is one or two index probes (see MIGRATION_8_9), so the writer is only held up briefly
+            long now = System.currentTimeMillis();
+            database.phraseDao().getPhraseRangeSnapshot(now - WARM_RANGE_MS, now);
+            database.mediaFileDao().getClosestMediaFileSnapshot("image", now);
+            database.personDao().getPeopleSeenInPeriod(now - WARM_RANGE_MS, now);
+            database.memorySummaryDao().getRecentSummaries(MemorySummary.DAY, 1);
+
+            warmupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queued);
+            Log.d(TAG, "Database open in " + openMillis + "ms, warm " + warmupMillis + "ms after service start");
+            return null;
+        });
+    }
+
+    //a full ANALYZE only when there are no stats yet, afterwards the retention run refreshes them while charging and PRAGMA optimize
+    //only redoes the tables that need it (it's ignored on SQLite versions from before it existed)
+    private static void analyze(SupportSQLiteDatabase db){
+        boolean hasStats;
+        try (Cursor cursor = db.query("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'sqlite_stat1'")) {
+            hasStats = cursor.moveToFirst();
+        }
+        if (hasStats) {
+            pragma(db, "PRAGMA optimize");
+        } else {
+            db.execSQL("ANALYZE");
+        }
+    }
+
+    private static void deleteLegacyEventLog(Context context){
+        File dir = new File(context.getFilesDir(), LEGACY_EVENT_LOG_DIR);
+        File[] segments = dir.listFiles();
+        if (segments == null) {
+            return;
+        }
+        for (File segment : segments) {
+            segment.delete();
+        }
+        if (!dir.delete()) {
+            Log.w(TAG, "Could not delete the old event log at " + dir);
+        }
+    }
+
+    //how long opening (and migrating) the database took, -1 until the warm-up has run
+    public static long getOpenMillis(){
+        return openMillis;
+    }
+
+    //from the service asking for the warm-up to it being done, -1 until then
+    public static long getWarmupMillis(){
+        return warmupMillis;
+    }
+}
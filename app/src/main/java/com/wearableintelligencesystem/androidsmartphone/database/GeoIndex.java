@@ -0,0 +1,99 @@
+package com.wearableintelligencesystem.androidsmartphone.database;
+
+import android.database.SQLException;
+import android.util.Log;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//spatial index over where transcripts were said and where media was captured
+//PhraseGeoIndex and MediaGeoIndex are SQLite R*Tree virtual tables keyed by the phrase/media row id, kept in sync by triggers on the source tables
+//Room can't declare virtual tables other than FTS, so these are created here (on create and in the migration) and the DAO queries skip verification
+//if the SQLite build on the phone has no rtree module, we fall back to a plain table with the same columns and a (minLat, minLon) index, so the same queries still work
+public final class GeoIndex {
+    private static final String TAG = "WearableAi_GeoIndex";
+
+    public static final String PHRASE_GEO_INDEX = "PhraseGeoIndex";
+    public static final String MEDIA_GEO_INDEX = "MediaGeoIndex";
+
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+
+    private GeoIndex() {
+    }
+
+    public static void create(SupportSQLiteDatabase db){
+        createIndex(db, PHRASE_GEO_INDEX, "PhraseTable");
+        createIndex(db, MEDIA_GEO_INDEX, "MediaFileTable");
+    }
+
+    private static void createIndex(SupportSQLiteDatabase db, String index, String table){
+        try {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `" + index + "` USING rtree(id, minLat, maxLat, minLon, maxLon)");
+        } catch (SQLException e) {
+            Log.w(TAG, "No rtree module in this SQLite, using a plain indexed table for " + index, e);
+            db.execSQL("CREATE TABLE IF NOT EXISTS `" + index + "` (id INTEGER PRIMARY KEY, minLat REAL, maxLat REAL, minLon REAL, maxLon REAL)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_" + index + "_minLat_minLon` ON `" + index + "` (minLat, minLon)");
+        }
+
+        String insertRow = "INSERT OR REPLACE INTO `" + index + "` (id, minLat, maxLat, minLon, maxLon) SELECT NEW.id, NEW.latitude, NEW.latitude, NEW.longitude, NEW.longitude WHERE NEW.latitude IS NOT NULL AND NEW.longitude IS NOT NULL;";
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `" + index + "_insert` AFTER INSERT ON `" + table + "` BEGIN " + insertRow + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `" + index + "_update` AFTER UPDATE OF latitude, longitude ON `" + table + "` BEGIN DELETE FROM `" + index + "` WHERE id = OLD.id; " + insertRow + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `" + index + "_delete` AFTER DELETE ON `" + table + "` BEGIN DELETE FROM `" + index + "` WHERE id = OLD.id; END");
+
+        //pick up any rows that were already there
+        db.execSQL("INSERT OR REPLACE INTO `" + index + "` (id, minLat, maxLat, minLon, maxLon) SELECT id, latitude, latitude, longitude, longitude FROM `" + table + "` WHERE latitude IS NOT NULL AND longitude IS NOT NULL");
+    }
+
+    //{minLat, maxLat, minLon, maxLon} boxes that together contain the circle of radiusMeters around the point, query each and merge
+    //one box, or two when the circle crosses the antimeridian
+    public static List<double[]> boundingBoxes(double latitude, double longitude, double radiusMeters){
+        //same sphere as distanceMeters, so a point it puts inside the radius is always inside a box
+        double angle = radiusMeters / EARTH_RADIUS_METERS;
+        double dLat = Math.toDegrees(angle);
+        double minLat = latitude - dLat;
+        double maxLat = latitude + dLat;
+        //over a pole every longitude is in reach
+        if (minLat <= -90.0 || maxLat >= 90.0) {
+            return splitAtAntimeridian(Math.max(-90.0, minLat), Math.min(90.0, maxLat), -180.0, 180.0);
+        }
+        //the widest the circle gets in longitude, which is poleward of its centre, not at it
+        double sinDLon = Math.sin(angle) / Math.cos(Math.toRadians(latitude));
+        if (sinDLon >= 1.0) {
+            return splitAtAntimeridian(minLat, maxLat, -180.0, 180.0);
+        }
+        double dLon = Math.toDegrees(Math.asin(sinDLon));
+        return splitAtAntimeridian(minLat, maxLat, wrapLongitude(longitude - dLon), wrapLongitude(longitude + dLon));
+    }
+
+    //a box with minLon > maxLon goes east across ±180, the index can only answer it as the two halves either side
+    public static List<double[]> splitAtAntimeridian(double minLat, double maxLat, double minLon, double maxLon){
+        List<double[]> boxes = new ArrayList<>(2);
+        if (minLon <= maxLon) {
+            boxes.add(new double[]{minLat, maxLat, minLon, maxLon});
+        } else {
+            boxes.add(new double[]{minLat, maxLat, minLon, 180.0});
+            boxes.add(new double[]{minLat, maxLat, -180.0, maxLon});
+        }
+        return boxes;
+    }
+
+    //into [-180, 180)
+    static double wrapLongitude(double longitude){
+        double wrapped = (longitude + 180.0) % 360.0;
+        if (wrapped < 0) {
+            wrapped += 360.0;
+        }
+        return wrapped - 180.0;
+    }
+
+    //great circle distance in meters
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2){
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+}
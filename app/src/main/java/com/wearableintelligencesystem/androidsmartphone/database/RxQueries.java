@@ -0,0 +1,71 @@
+package com.wearableintelligencesystem.androidsmartphone.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+import androidx.room.RoomDatabase;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.BackpressureStrategy;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+//RxJava 3 versions of the repository snapshot calls, for UI code that must not block on the database
+//Room 2.2 only generates RxJava 2 types, so instead of DAO return types these wrap the plain DAO calls and listen to Room's InvalidationTracker directly
+//every query runs on the DatabaseExecutors read pool, callers only have to observeOn the main thread
+public final class RxQueries {
+
+    //a voice note or a face sighting is several writes in a row, wait for them to settle before re-querying
+    public static final long INVALIDATION_DEBOUNCE_MS = 300;
+
+    private static final Scheduler readScheduler = Schedulers.from(DatabaseExecutors.getReadExecutor());
+    private static final Object INVALIDATED = new Object();
+
+    private RxQueries() {
+    }
+
+    public static Scheduler getReadScheduler(){
+        return readScheduler;
+    }
+
+    //one query, run once
+    public static <T> Single<T> single(Callable<T> query){
+        return Single.fromCallable(query).subscribeOn(readScheduler);
+    }
+
+    //one query that may legitimately find nothing (RxJava doesn't allow null values)
+    public static <T> Maybe<T> maybe(Callable<T> query){
+        return Maybe.fromCallable(query).subscribeOn(readScheduler);
+    }
+
+    //runs the query now and again whenever one of the tables changes, bursts of writes are debounced into one re-query
+    //every re-query is emitted, the entities don't implement equals - list UIs diff what they get, see ReferenceListAdapter
+    public static <T> Flowable<T> flowable(RoomDatabase db, String[] tables, Callable<T> query){
+        return invalidations(db, tables)
+                .debounce(INVALIDATION_DEBOUNCE_MS, TimeUnit.MILLISECONDS, readScheduler)
+                .startWithItem(INVALIDATED)
+                .observeOn(readScheduler)
+                .map(invalidated -> query.call());
+    }
+
+    //one item per change to any of the tables, for as long as someone is subscribed
+    public static Flowable<Object> invalidations(RoomDatabase db, String... tables){
+        return Flowable.create(emitter -> {
+            InvalidationTracker.Observer observer = new InvalidationTracker.Observer(tables) {
+                @Override
+                public void onInvalidated(@NonNull Set<String> invalidatedTables) {
+                    emitter.onNext(INVALIDATED);
+                }
+            };
+            db.getInvalidationTracker().addObserver(observer);
+            emitter.setCancellable(() -> db.getInvalidationTracker().removeObserver(observer));
+        }, BackpressureStrategy.LATEST)
+                //addObserver syncs the tracking triggers, which touches the database
+                .subscribeOn(readScheduler);
+    }
+}
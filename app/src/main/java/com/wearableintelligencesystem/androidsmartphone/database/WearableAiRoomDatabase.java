@@ -3,13 +3,18 @@ package com.wearableintelligencesystem.androidsmartphone.database;
 import android.util.Log;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.location.Location;
+
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import com.wearableintelligencesystem.androidsmartphone.database.Converters;
 
@@ -25,21 +30,30 @@ import com.wearableintelligencesystem.androidsmartphone.database.facialemotion.F
 
 import com.wearableintelligencesystem.androidsmartphone.database.voicecommand.VoiceCommandDao;
 import com.wearableintelligencesystem.androidsmartphone.database.voicecommand.VoiceCommandEntity;
+import com.wearableintelligencesystem.androidsmartphone.database.voicecommand.TagBinEntry;
 
 import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileDao;
 import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileEntity;
 
+import com.wearableintelligencesystem.androidsmartphone.database.person.FaceSighting;
+import com.wearableintelligencesystem.androidsmartphone.database.person.Person;
+import com.wearableintelligencesystem.androidsmartphone.database.person.PersonAlias;
 import com.wearableintelligencesystem.androidsmartphone.database.person.PersonDao;
-import com.wearableintelligencesystem.androidsmartphone.database.person.PersonEntity;
 
-@Database(entities = {FacialEmotion.class, Phrase.class, VoiceCommandEntity.class, MediaFileEntity.class, PersonEntity.class, MemoryCache.class, MemoryCacheTimes.class}, version = 2, exportSchema = false)
+import com.wearableintelligencesystem.androidsmartphone.database.summary.EmotionSummary;
+import com.wearableintelligencesystem.androidsmartphone.database.summary.MemorySummary;
+import com.wearableintelligencesystem.androidsmartphone.database.summary.MemorySummaryDao;
+import com.wearableintelligencesystem.androidsmartphone.database.summary.MemorySummaryTriggers;
+import com.wearableintelligencesystem.androidsmartphone.database.summary.PersonSummary;
+
+@Database(entities = {FacialEmotion.class, Phrase.class, VoiceCommandEntity.class, TagBinEntry.class, MediaFileEntity.class, Person.class, FaceSighting.class, PersonAlias.class, MemoryCache.class, MemoryCacheTimes.class, MemorySummary.class, PersonSummary.class, EmotionSummary.class}, version = 9, exportSchema = false)
 @TypeConverters({Converters.class})
 public abstract class WearableAiRoomDatabase extends RoomDatabase {
     private static final String TAG = "WearableAi_WearableAiRoomDatabase";
 
     private static volatile WearableAiRoomDatabase INSTANCE;
-    private static final int NUMBER_OF_THREADS = 4;
-    public static final ExecutorService databaseWriteExecutor = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+    //kept for older callers, this is the same single writer every repository uses, see DatabaseExecutors
+    public static final ExecutorService databaseWriteExecutor = DatabaseExecutors.getWriteExecutor();
 
     public abstract PhraseDao phraseDao();
     public abstract FacialEmotionDao facialEmotionDao();
@@ -48,13 +62,161 @@ public abstract class WearableAiRoomDatabase extends RoomDatabase {
     public abstract PersonDao personDao();
     public abstract MemoryCacheDao memoryCacheDao();
     public abstract MemoryCacheTimesDao memoryCacheTimesDao();
+    public abstract MemorySummaryDao memorySummaryDao();
+
+    //split the key/value PersonTable into PeopleTable, FaceSightingTable and PersonAliasTable
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `PeopleTable` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `name` TEXT NOT NULL, `firstSeen` INTEGER NOT NULL, `mediaId` INTEGER, `badForFaceRec` INTEGER NOT NULL)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_PeopleTable_name` ON `PeopleTable` (`name`)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `FaceSightingTable` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `personId` INTEGER NOT NULL, `timestamp` INTEGER NOT NULL, `mediaId` INTEGER, FOREIGN KEY(`personId`) REFERENCES `PeopleTable`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_FaceSightingTable_timestamp` ON `FaceSightingTable` (`timestamp`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_FaceSightingTable_personId_timestamp` ON `FaceSightingTable` (`personId`, `timestamp`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_FaceSightingTable_mediaId` ON `FaceSightingTable` (`mediaId`)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `PersonAliasTable` (`aliasId` INTEGER NOT NULL, `personId` INTEGER NOT NULL, `timestamp` INTEGER NOT NULL, PRIMARY KEY(`aliasId`), FOREIGN KEY(`personId`) REFERENCES `PeopleTable`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_PersonAliasTable_personId` ON `PersonAliasTable` (`personId`)");
+
+            //a person's id is the row id of their new_face_name row (personId can still be null if the app died before updatePersonId ran)
+            database.execSQL("INSERT OR IGNORE INTO PeopleTable (id, name, firstSeen, mediaId, badForFaceRec) " +
+                    "SELECT COALESCE(personId, id), argValue, timestamp, mediaId, 0 FROM PersonTable WHERE argKey = 'new_face_name'");
+            database.execSQL("UPDATE PeopleTable SET badForFaceRec = 1 WHERE id IN " +
+                    "(SELECT personId FROM PersonTable WHERE argKey = 'meta' AND argValue = 'bad_for_face_rec')");
+            //"changed" rows kept their original row id (the old personId) and hold the new personId as a string
+            database.execSQL("INSERT OR REPLACE INTO PersonAliasTable (aliasId, personId, timestamp) " +
+                    "SELECT id, CAST(argValue AS INTEGER), timestamp FROM PersonTable WHERE argKey = 'changed' AND CAST(argValue AS INTEGER) IN (SELECT id FROM PeopleTable)");
+            database.execSQL("INSERT INTO FaceSightingTable (personId, timestamp, mediaId) " +
+                    "SELECT personId, timestamp, mediaId FROM PersonTable WHERE argKey = 'event' AND argValue = 'seen' AND personId IN (SELECT id FROM PeopleTable)");
+            database.execSQL("DROP TABLE PersonTable");
+        }
+    };
+
+    //move the json location blob into real latitude/longitude/altitude/accuracy columns and build the rtree geo index over them (see GeoIndex)
+    //sqlite can't drop a column, so PhraseTable and FacialEmotionTable are rebuilt. MediaFileTable never had a location, it just gets the new columns
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `PhraseTable_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `phrase` TEXT NOT NULL, `timestamp` INTEGER NOT NULL, `medium` TEXT NOT NULL, `latitude` REAL, `longitude` REAL, `altitude` REAL, `accuracy` REAL, `address` TEXT)");
+            database.execSQL("INSERT INTO PhraseTable_new (id, phrase, timestamp, medium, address) SELECT id, phrase, timestamp, medium, address FROM PhraseTable");
+            copyLegacyLocations(database, "PhraseTable", "PhraseTable_new");
+            database.execSQL("DROP TABLE PhraseTable");
+            database.execSQL("ALTER TABLE PhraseTable_new RENAME TO PhraseTable");
+
+            database.execSQL("CREATE TABLE IF NOT EXISTS `FacialEmotionTable_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `facial_emotion` TEXT NOT NULL, `timestamp` INTEGER NOT NULL, `medium` TEXT NOT NULL, `latitude` REAL, `longitude` REAL, `altitude` REAL, `accuracy` REAL, `address` TEXT)");
+            database.execSQL("INSERT INTO FacialEmotionTable_new (id, facial_emotion, timestamp, medium, address) SELECT id, facial_emotion, timestamp, medium, address FROM FacialEmotionTable");
+            copyLegacyLocations(database, "FacialEmotionTable", "FacialEmotionTable_new");
+            database.execSQL("DROP TABLE FacialEmotionTable");
+            database.execSQL("ALTER TABLE FacialEmotionTable_new RENAME TO FacialEmotionTable");
+
+            database.execSQL("ALTER TABLE MediaFileTable ADD COLUMN `latitude` REAL");
+            database.execSQL("ALTER TABLE MediaFileTable ADD COLUMN `longitude` REAL");
+            database.execSQL("ALTER TABLE MediaFileTable ADD COLUMN `altitude` REAL");
+            database.execSQL("ALTER TABLE MediaFileTable ADD COLUMN `accuracy` REAL");
+
+            GeoIndex.create(database);
+        }
+    };
+
+    private static void copyLegacyLocations(SupportSQLiteDatabase database, String from, String to){
+        try (Cursor cursor = database.query("SELECT id, location FROM " + from + " WHERE location IS NOT NULL")) {
+            while (cursor.moveToNext()) {
+                Location location;
+                try {
+                    location = Converters.fromLocation(cursor.getString(1));
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Dropping unreadable location on " + from + " row " + cursor.getLong(0), e);
+                    continue;
+                }
+                database.execSQL("UPDATE " + to + " SET latitude = ?, longitude = ?, altitude = ? WHERE id = ?",
+                        new Object[]{location.getLatitude(), location.getLongitude(), location.getAltitude(), cursor.getLong(0)});
+            }
+        }
+    }
+
+    //covering indexes on VoiceCommandTable and the denormalized TagBinTable, backfilled from the existing tag rows
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_VoiceCommandTable_commandName_isMaster_argKey_argValue_transcriptId` ON `VoiceCommandTable` (`commandName`, `isMaster`, `argKey`, `argValue`, `transcriptId`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_VoiceCommandTable_commandName_isMaster_timestamp` ON `VoiceCommandTable` (`commandName`, `isMaster`, `timestamp`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_VoiceCommandTable_transcriptId` ON `VoiceCommandTable` (`transcriptId`)");
+
+            database.execSQL("CREATE TABLE IF NOT EXISTS `TagBinTable` (`voiceCommandId` INTEGER NOT NULL, `tag` TEXT NOT NULL, `transcriptId` INTEGER NOT NULL, `timestamp` INTEGER NOT NULL, PRIMARY KEY(`voiceCommandId`), FOREIGN KEY(`voiceCommandId`) REFERENCES `VoiceCommandTable`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_TagBinTable_tag_timestamp` ON `TagBinTable` (`tag`, `timestamp`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_TagBinTable_transcriptId` ON `TagBinTable` (`transcriptId`)");
+            database.execSQL("INSERT OR REPLACE INTO TagBinTable (voiceCommandId, tag, transcriptId, timestamp) " +
+                    "SELECT id, argValue, transcriptId, timestamp FROM VoiceCommandTable WHERE commandName = 'save speech' AND isMaster = 0 AND argKey = 'tag' AND argValue IS NOT NULL");
+        }
+    };
+
+    //per day and per hour summary tables for the timeline, filled from what's already there and kept up to date by triggers from then on
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `MemorySummaryTable` (`granularity` TEXT NOT NULL, `bucketStart` INTEGER NOT NULL, `phraseCount` INTEGER NOT NULL, `voiceNoteCount` INTEGER NOT NULL, `mediaCount` INTEGER NOT NULL, `sightingCount` INTEGER NOT NULL, `memoryCacheCount` INTEGER NOT NULL, PRIMARY KEY(`granularity`, `bucketStart`))");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `PersonSummaryTable` (`granularity` TEXT NOT NULL, `bucketStart` INTEGER NOT NULL, `personId` INTEGER NOT NULL, `sightings` INTEGER NOT NULL, PRIMARY KEY(`granularity`, `bucketStart`, `personId`), FOREIGN KEY(`personId`) REFERENCES `PeopleTable`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_PersonSummaryTable_personId` ON `PersonSummaryTable` (`personId`)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `EmotionSummaryTable` (`granularity` TEXT NOT NULL, `bucketStart` INTEGER NOT NULL, `emotion` TEXT NOT NULL, `occurrences` INTEGER NOT NULL, PRIMARY KEY(`granularity`, `bucketStart`, `emotion`))");
+            MemorySummaryTriggers.backfill(database);
+            MemorySummaryTriggers.create(database);
+        }
+    };
+
+    //where the lifelog tables were up to in the event log, which 7 -> 8 removed again
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `ProjectionCheckpointTable` (`name` TEXT NOT NULL, `position` INTEGER NOT NULL, PRIMARY KEY(`name`))");
+        }
+    };
+
+    //the event log is gone again, the tables are the only record. Its segment files are deleted by DatabaseWarmup
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("DROP TABLE IF EXISTS `ProjectionCheckpointTable`");
+        }
+    };
+
+    //the time range and nearest timestamp reads on phrases and media were scanning the whole table
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_PhraseTable_timestamp` ON `PhraseTable` (`timestamp`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_MediaFileTable_mediaType_startTimestamp` ON `MediaFileTable` (`mediaType`, `startTimestamp`)");
+        }
+    };
+
+    //the geo index and the summary triggers aren't things Room manages, so a fresh database needs them made too
+    //every open also gets our connection settings, see DatabaseWarmup
+    private static final RoomDatabase.Callback extraSchemaCallback = new RoomDatabase.Callback() {
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase db) {
+            GeoIndex.create(db);
+            MemorySummaryTriggers.create(db);
+        }
+
+        @Override
+        public void onOpen(@NonNull SupportSQLiteDatabase db) {
+            DatabaseWarmup.configure(db);
+        }
+    };
+
+    //everything a database file of ours needs, also used to build throwaway databases (e.g. the debug benchmark) with the exact same schema
+    public static RoomDatabase.Builder<WearableAiRoomDatabase> databaseBuilder(final Context context, String name) {
+        return Room.databaseBuilder(context.getApplicationContext(), WearableAiRoomDatabase.class, name)
+                .setQueryExecutor(DatabaseExecutors.getReadExecutor())
+                .setTransactionExecutor(DatabaseExecutors.getWriteExecutor())
+                .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                .addMigrations(MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9)
+                .addCallback(extraSchemaCallback);
+    }
 
     public static WearableAiRoomDatabase getDatabase(final Context context) {
         if (INSTANCE == null) {
             synchronized (WearableAiRoomDatabase.class) {
                 if (INSTANCE == null) {
-                    INSTANCE = Room.databaseBuilder(context.getApplicationContext(), WearableAiRoomDatabase.class, "wearableai_database")
-                            .build();
+                    INSTANCE = databaseBuilder(context, "wearableai_database").build();
                 }
             }
         }
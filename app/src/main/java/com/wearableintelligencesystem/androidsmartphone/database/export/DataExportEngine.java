@@ -0,0 +1,292 @@
+package com.wearableintelligencesystem.androidsmartphone.database.export;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.opencsv.CSVWriter;
+import com.wearableintelligencesystem.androidsmartphone.database.WearableAiRoomDatabase;
+import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileDao;
+import com.wearableintelligencesystem.androidsmartphone.database.person.PersonDao;
+import com.wearableintelligencesystem.androidsmartphone.database.phrase.PhraseDao;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+//streams database rows out to gzipped CSV or NDJSON files without ever holding a whole table in memory
+//rows are read from Room cursors in id ordered chunks, so an interrupted export can pick up after the last row it wrote
+//progress of an unfinished export is kept in a small ".progress" file next to the output files. Re-running the same export resumes it
+//each chunk is appended as its own gzip member, which every gzip reader treats as one continuous stream
+public class DataExportEngine {
+    private static final String TAG = "WearableAi_DataExportEngine";
+
+    public enum Format {
+        CSV("csv"),
+        NDJSON("ndjson");
+
+        private final String extension;
+        Format(String extension){ this.extension = extension; }
+        public String getExtension(){ return extension; }
+    }
+
+    private static final int CHUNK_SIZE = 500;
+    private static final String PROGRESS_EXTENSION = ".progress";
+
+    private final PhraseDao mPhraseDao;
+    private final MediaFileDao mMediaFileDao;
+    private final PersonDao mPersonDao;
+
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    //every export gets the next id, cancel() cancels every export up to the last one asked for, so a new export can't un-cancel a running one
+    private final AtomicLong lastExportId = new AtomicLong();
+    private volatile long cancelledThrough = 0;
+
+    //one table we know how to export
+    private interface ChunkSource {
+        Cursor getChunk(long startTime, long endTime, long afterId, int limit);
+        long count(long startTime, long endTime, long afterId);
+    }
+
+    private static class TableSpec {
+        final String name;
+        final ChunkSource source;
+        TableSpec(String name, ChunkSource source){
+            this.name = name;
+            this.source = source;
+        }
+    }
+
+    public DataExportEngine(Context context) {
+        WearableAiRoomDatabase db = WearableAiRoomDatabase.getDatabase(context);
+        mPhraseDao = db.phraseDao();
+        mMediaFileDao = db.mediaFileDao();
+        mPersonDao = db.personDao();
+    }
+
+    //the export name is derived from the request, so asking for the same export again resumes the unfinished one
+    public static String getExportName(long startTime, long endTime, Format format, boolean includeMedia, boolean includePersons){
+        return "WIS_data_export_" + startTime + "_" + endTime + "_" + format.getExtension() + (includeMedia ? "_m" : "") + (includePersons ? "_p" : "");
+    }
+
+    public void export(File outputDir, long startTime, long endTime, Format format, boolean includeMedia, boolean includePersons, DataExportListener listener){
+        long exportId = lastExportId.incrementAndGet();
+        exportExecutor.execute(() -> {
+            try {
+                List<File> files = runExport(exportId, outputDir, startTime, endTime, format, includeMedia, includePersons, listener);
+                if (files != null) {
+                    mainHandler.post(() -> listener.onComplete(files));
+                }
+            } catch (Exception e) {
+                //anything, Room and the cursors throw runtime exceptions too, the UI waits for one of onComplete or onFailure
+                Log.e(TAG, "Data export failed, can be resumed", e);
+                mainHandler.post(() -> listener.onFailure(e));
+            }
+        });
+    }
+
+    //stop after the current chunk, the progress file is left behind so the export can be resumed
+    public void cancel(){
+        cancelledThrough = lastExportId.get();
+    }
+
+    public void destroy(){
+        cancel();
+        exportExecutor.shutdown();
+    }
+
+    private List<File> runExport(long exportId, File outputDir, long startTime, long endTime, Format format, boolean includeMedia, boolean includePersons, DataExportListener listener) throws IOException, JSONException {
+        List<TableSpec> tables = new ArrayList<>();
+        tables.add(new TableSpec("phrases", new ChunkSource() {
+            public Cursor getChunk(long s, long e, long afterId, int limit){ return mPhraseDao.getPhraseRangeCursor(s, e, afterId, limit); }
+            public long count(long s, long e, long afterId){ return mPhraseDao.countPhraseRange(s, e, afterId); }
+        }));
+        if (includeMedia) {
+            tables.add(new TableSpec("media", new ChunkSource() {
+                public Cursor getChunk(long s, long e, long afterId, int limit){ return mMediaFileDao.getMediaFileRangeCursor(s, e, afterId, limit); }
+                public long count(long s, long e, long afterId){ return mMediaFileDao.countMediaFileRange(s, e, afterId); }
+            }));
+        }
+        if (includePersons) {
+            tables.add(new TableSpec("persons", new ChunkSource() {
+                public Cursor getChunk(long s, long e, long afterId, int limit){ return mPersonDao.getPersonRangeCursor(s, e, afterId, limit); }
+                public long count(long s, long e, long afterId){ return mPersonDao.countPersonRange(s, e, afterId); }
+            }));
+        }
+
+        if (!outputDir.exists() && !outputDir.mkdirs()) {
+            throw new IOException("Could not create export directory " + outputDir);
+        }
+
+        String exportName = getExportName(startTime, endTime, format, includeMedia, includePersons);
+        File progressFile = new File(outputDir, exportName + PROGRESS_EXTENSION);
+        Properties progress = loadProgress(progressFile);
+        boolean resuming = !progress.isEmpty();
+        if (resuming) {
+            Log.d(TAG, "Resuming data export " + exportName);
+        }
+
+        //total is only used for the progress bar, count what's left to write
+        long totalRows = 0;
+        for (TableSpec table : tables) {
+            totalRows += table.source.count(startTime, endTime, getLastId(progress, table.name));
+        }
+        final long total = totalRows;
+        long rowsWritten = 0;
+
+        List<File> files = new ArrayList<>();
+        for (TableSpec table : tables) {
+            File outFile = new File(outputDir, exportName + "_" + table.name + "." + format.getExtension() + ".gz");
+            files.add(outFile);
+            long lastId = getLastId(progress, table.name);
+            if (Boolean.parseBoolean(progress.getProperty(table.name + ".done"))) {
+                continue;
+            }
+
+            //a fresh table (no progress recorded) overwrites whatever stale file is there
+            //a resumed one is cut back to the last chunk we know was written completely
+            long committedBytes = Long.parseLong(progress.getProperty(table.name + ".bytes", "0"));
+            try (RandomAccessFile raf = new RandomAccessFile(outFile, "rw")) {
+                raf.setLength(committedBytes);
+            }
+            boolean headerWritten = committedBytes > 0;
+
+            while (true) {
+                if (exportId <= cancelledThrough) {
+                    Log.d(TAG, "Data export cancelled at " + table.name + " id " + lastId);
+                    return null;
+                }
+
+                //every chunk is its own complete gzip member, so a crash mid chunk never corrupts what's already on disk
+                int rowsInChunk = 0;
+                try (Cursor cursor = table.source.getChunk(startTime, endTime, lastId, CHUNK_SIZE)) {
+                    if (cursor.getCount() == 0) {
+                        break;
+                    }
+                    int idIdx = cursor.getColumnIndexOrThrow("id");
+                    try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outFile, true)), StandardCharsets.UTF_8))) {
+                        CSVWriter csvWriter = format == Format.CSV ? new CSVWriter(writer) : null;
+                        if (csvWriter != null && !headerWritten) {
+                            csvWriter.writeNext(cursor.getColumnNames());
+                            headerWritten = true;
+                        }
+                        while (cursor.moveToNext()) {
+                            if (csvWriter != null) {
+                                csvWriter.writeNext(csvRow(cursor));
+                            } else {
+                                writer.write(jsonRow(cursor).toString());
+                                writer.write('\n');
+                            }
+                            lastId = cursor.getLong(idIdx);
+                            rowsInChunk++;
+                        }
+                        if (csvWriter != null) {
+                            csvWriter.flush();
+                        }
+                    }
+                }
+
+                progress.setProperty(table.name + ".lastId", Long.toString(lastId));
+                progress.setProperty(table.name + ".bytes", Long.toString(outFile.length()));
+                saveProgress(progressFile, progress);
+
+                rowsWritten += rowsInChunk;
+                final long written = rowsWritten;
+                mainHandler.post(() -> listener.onProgress(written, total));
+
+                if (rowsInChunk < CHUNK_SIZE) {
+                    break;
+                }
+            }
+            progress.setProperty(table.name + ".done", "true");
+            saveProgress(progressFile, progress);
+        }
+
+        //finished, nothing to resume anymore. Don't hand back files for tables that had no rows in the range
+        progressFile.delete();
+        List<File> exported = new ArrayList<>();
+        for (File f : files) {
+            if (f.length() > 0) {
+                exported.add(f);
+            } else {
+                f.delete();
+            }
+        }
+        return exported;
+    }
+
+    private static String[] csvRow(Cursor cursor){
+        String[] row = new String[cursor.getColumnCount()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = cursor.isNull(i) ? "" : cursor.getString(i);
+        }
+        return row;
+    }
+
+    //one row as a flat json object, also used for the retention archive segments
+    public static JSONObject jsonRow(Cursor cursor) throws JSONException {
+        JSONObject row = new JSONObject();
+        for (int i = 0; i < cursor.getColumnCount(); i++) {
+            String column = cursor.getColumnName(i);
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    row.put(column, JSONObject.NULL);
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    row.put(column, cursor.getLong(i));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    row.put(column, cursor.getDouble(i));
+                    break;
+                default:
+                    row.put(column, cursor.getString(i));
+                    break;
+            }
+        }
+        return row;
+    }
+
+    private static long getLastId(Properties progress, String table){
+        return Long.parseLong(progress.getProperty(table + ".lastId", "0"));
+    }
+
+    private static Properties loadProgress(File progressFile) throws IOException {
+        Properties progress = new Properties();
+        if (progressFile.exists()) {
+            try (FileInputStream in = new FileInputStream(progressFile)) {
+                progress.load(in);
+            }
+        }
+        return progress;
+    }
+
+    private static void saveProgress(File progressFile, Properties progress) throws IOException {
+        File tmp = new File(progressFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            progress.store(out, null);
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(progressFile)) {
+            throw new IOException("Could not save export progress to " + progressFile);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.wearableintelligencesystem.androidsmartphone.database.export;
+
+import java.io.File;
+import java.util.List;
+
+//callbacks from the DataExportEngine, always delivered on the main thread
+public interface DataExportListener {
+    void onProgress(long rowsWritten, long totalRows);
+    void onComplete(List<File> files);
+    void onFailure(Exception e);
+}
@@ -1,6 +1,7 @@
 package com.wearableintelligencesystem.androidsmartphone.database.facialemotion;
 
 import android.location.Location;
+import android.location.LocationManager;
 
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
@@ -27,21 +28,31 @@ public class FacialEmotion {
     @ColumnInfo(name = "medium")
     private String medium;
 
-    @ColumnInfo(name = "location")
-    private Location location;
+    //where it happened, null if we never got a location
+    @ColumnInfo(name = "latitude")
+    private Double latitude;
+
+    @ColumnInfo(name = "longitude")
+    private Double longitude;
+
+    @ColumnInfo(name = "altitude")
+    private Double altitude;
+
+    @ColumnInfo(name = "accuracy")
+    private Float accuracy;
 
     @ColumnInfo(name = "address")
     private String address;
 
+    @Ignore
     public FacialEmotion(@NonNull String facialEmotion, @NonNull long timestamp, @NonNull String medium, Location location, String address) {
         this.facialEmotion = facialEmotion;
         this.timestamp = timestamp;
         this.medium = medium;
-        this.location = location;
+        setLocation(location);
         this.address = address;
     }
 
-    @Ignore
      public FacialEmotion(@NonNull String facialEmotion, @NonNull long timestamp, @NonNull String medium){
         this.facialEmotion = facialEmotion;
         this.timestamp = timestamp;
@@ -51,8 +62,31 @@ public class FacialEmotion {
     public String getFacialEmotion(){return this.facialEmotion;}
     public long getTimestamp(){return this.timestamp;}
     public String getMedium(){return this.medium;}
-    public Location getLocation(){return this.location;}
-    public void setLocation(Location location){this.location = location;}
+    public Location getLocation(){
+        if (this.latitude == null || this.longitude == null) {
+            return null;
+        }
+        Location location = new Location(LocationManager.GPS_PROVIDER);
+        location.setLatitude(this.latitude);
+        location.setLongitude(this.longitude);
+        if (this.altitude != null) location.setAltitude(this.altitude);
+        if (this.accuracy != null) location.setAccuracy(this.accuracy);
+        return location;
+    }
+    public void setLocation(Location location){
+        this.latitude = location == null ? null : location.getLatitude();
+        this.longitude = location == null ? null : location.getLongitude();
+        this.altitude = location == null ? null : location.getAltitude();
+        this.accuracy = location == null || !location.hasAccuracy() ? null : location.getAccuracy();
+    }
+    public Double getLatitude(){return this.latitude;}
+    public void setLatitude(Double latitude){this.latitude = latitude;}
+    public Double getLongitude(){return this.longitude;}
+    public void setLongitude(Double longitude){this.longitude = longitude;}
+    public Double getAltitude(){return this.altitude;}
+    public void setAltitude(Double altitude){this.altitude = altitude;}
+    public Float getAccuracy(){return this.accuracy;}
+    public void setAccuracy(Float accuracy){this.accuracy = accuracy;}
     public String getAddress(){return this.address;}
     public void setAddress(String address){this.address = address;}
     public int getId(){return this.id;}
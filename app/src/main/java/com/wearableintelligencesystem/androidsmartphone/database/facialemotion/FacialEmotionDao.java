@@ -1,6 +1,6 @@
 package com.wearableintelligencesystem.androidsmartphone.database.facialemotion;
 
-import android.location.Location;
+import android.database.Cursor;
 
 import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
@@ -16,8 +16,8 @@ public interface FacialEmotionDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     long insert(FacialEmotion facialEmotion);
 
-    @Query("UPDATE FacialEmotionTable SET location = :location, address = :address WHERE id = :id")
-    void update(long id, Location location, String address);
+    @Query("UPDATE FacialEmotionTable SET latitude = :latitude, longitude = :longitude, altitude = :altitude, accuracy = :accuracy, address = :address WHERE id = :id")
+    void update(long id, Double latitude, Double longitude, Double altitude, Float accuracy, String address);
 
     @Query("DELETE FROM FacialEmotionTable")
     void deleteAll();
@@ -33,4 +33,11 @@ public interface FacialEmotionDao {
 
     @Query("SELECT * FROM FacialEmotionTable WHERE ID = :id")
     LiveData<FacialEmotion> get_by_id(int id);
+
+    //retention, see RetentionEngine
+    @Query("SELECT * FROM FacialEmotionTable WHERE timestamp < :before ORDER BY id ASC LIMIT :limit")
+    Cursor getArchivableFacialEmotionCursor(long before, int limit);
+
+    @Query("DELETE FROM FacialEmotionTable WHERE id IN (:ids)")
+    int deleteFacialEmotions(List<Long> ids);
 }
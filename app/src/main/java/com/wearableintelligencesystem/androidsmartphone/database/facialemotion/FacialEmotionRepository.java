@@ -7,12 +7,12 @@ import androidx.lifecycle.LiveData;
 
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.lang.InterruptedException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import com.wearableintelligencesystem.androidsmartphone.database.DatabaseExecutors;
 import com.wearableintelligencesystem.androidsmartphone.database.WearableAiRoomDatabase;
 
 public class FacialEmotionRepository {
@@ -42,7 +42,7 @@ public class FacialEmotionRepository {
             }
         };
 
-        Future<List<FacialEmotion>> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<List<FacialEmotion>> future = DatabaseExecutors.read(callable);
 
         return future.get();
     }
@@ -56,16 +56,18 @@ public class FacialEmotionRepository {
             }
         };
 
-        Future<List<FacialEmotion>> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<List<FacialEmotion>> future = DatabaseExecutors.read(callable);
 
         return future.get();
     }
 
 
+    public CompletableFuture<Long> insertAsync(FacialEmotion facialEmotion) {
+        return DatabaseExecutors.write(() -> mFacialEmotionDao.insert(facialEmotion));
+    }
+
     public long insert(FacialEmotion facialEmotion) {
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        Callable<Long> insertCallable = () -> mFacialEmotionDao.insert(facialEmotion);
-        Future<Long> future = executorService.submit(insertCallable);
+        Future<Long> future = DatabaseExecutors.write(() -> mFacialEmotionDao.insert(facialEmotion));
         long rowId = 0;
         try{
             rowId = future.get();
@@ -77,8 +79,12 @@ public class FacialEmotionRepository {
     }
 
     public void update(long id, Location location, String address) {
-        WearableAiRoomDatabase.databaseWriteExecutor.execute(() -> {
-            mFacialEmotionDao.update(id, location, address);
+        DatabaseExecutors.execute(() -> {
+            if (location == null) {
+                mFacialEmotionDao.update(id, null, null, null, null, address);
+            } else {
+                mFacialEmotionDao.update(id, location.getLatitude(), location.getLongitude(), location.getAltitude(), location.hasAccuracy() ? location.getAccuracy() : null, address);
+            }
         });
     }
 
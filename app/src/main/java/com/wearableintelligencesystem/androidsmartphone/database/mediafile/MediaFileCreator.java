@@ -26,4 +26,15 @@ public class MediaFileCreator {
         long id = repo.insert(mediaFile);  // This insert blocks until database write has completed
         return id;
     }
+
+    //same idea as PhraseCreator, the location may take a while so the media row is inserted first and tagged whenever it arrives
+    public static void addLocation(long id, Context context, MediaFileRepository repo) {
+        FusedLocationProviderClient fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
+        Task<Location> task = fusedLocationClient.getLastLocation();
+        task.addOnSuccessListener(location -> {
+            if (location != null) {
+                repo.updateLocation(id, location);
+            }
+        });
+    }
 }
@@ -4,13 +4,14 @@ package com.wearableintelligencesystem.androidsmartphone.database.mediafile;
 //Jeremy Stairs (stairs1) and Cayden Pierce
 //https://github.com/stairs1/memory-expansion-tools
 
-import android.location.Location;
+import android.database.Cursor;
 
 import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.SkipQueryVerification;
 import java.util.Date;
 
 import java.util.List;
@@ -24,9 +25,19 @@ public interface MediaFileDao {
     @Query("DELETE FROM MediaFileTable")
     void deleteAll();
 
-    @Query("SELECT * from MediaFileTable WHERE mediaType=:mediaType ORDER BY abs(:timestamp - startTimestamp) LIMIT 1")
+    //the closest media on each side of the timestamp, two probes of the (mediaType, startTimestamp) index rather than sorting the whole table
+    @Query("SELECT * FROM (SELECT * FROM (SELECT * FROM MediaFileTable WHERE mediaType = :mediaType AND startTimestamp <= :timestamp ORDER BY startTimestamp DESC LIMIT 1) " +
+            "UNION ALL SELECT * FROM (SELECT * FROM MediaFileTable WHERE mediaType = :mediaType AND startTimestamp >= :timestamp ORDER BY startTimestamp ASC LIMIT 1)) " +
+            "ORDER BY abs(:timestamp - startTimestamp) LIMIT 1")
     MediaFileEntity getClosestMediaFileSnapshot(String mediaType, long timestamp);
 
+    //keyset paged cursor for streaming export, resumes after the last exported row id
+    @Query("SELECT * from MediaFileTable WHERE startTimestamp BETWEEN :startTime AND :endTime AND id > :afterId ORDER BY id ASC LIMIT :limit")
+    Cursor getMediaFileRangeCursor(long startTime, long endTime, long afterId, int limit);
+
+    @Query("SELECT COUNT(*) from MediaFileTable WHERE startTimestamp BETWEEN :startTime AND :endTime AND id > :afterId")
+    long countMediaFileRange(long startTime, long endTime, long afterId);
+
 //    @Query("SELECT * from MediaFileTable ORDER BY timestamp DESC")
 //    LiveData<List<MediaFileEntity>> getAllMediaFiles();
 //
@@ -41,6 +52,24 @@ public interface MediaFileDao {
 //
     @Query("SELECT * FROM MediaFileTable WHERE ID = :id")
     MediaFileEntity getMediaFilebyId(long id);
+
+    //old images that can be shrunk down, images a known face was learned from are kept at full size. See RetentionEngine
+    @Query("SELECT * FROM MediaFileTable WHERE mediaType = 'image' AND startTimestamp < :before AND id > :afterId " +
+            "AND id NOT IN (SELECT mediaId FROM PeopleTable WHERE mediaId IS NOT NULL) ORDER BY id ASC LIMIT :limit")
+    List<MediaFileEntity> getImagesToDownsample(long before, long afterId, int limit);
+
+    @Query("UPDATE MediaFileTable SET localPath = :newPath WHERE localPath = :oldPath")
+    void updateLocalPath(String oldPath, String newPath);
+
+    @Query("UPDATE MediaFileTable SET latitude = :latitude, longitude = :longitude, altitude = :altitude, accuracy = :accuracy WHERE id = :id")
+    void updateLocation(long id, Double latitude, Double longitude, Double altitude, Float accuracy);
+
+    //media captured in this area, read off the MediaGeoIndex rtree (see GeoIndex), which Room doesn't know about
+    @SkipQueryVerification
+    @Query("SELECT MediaFileTable.* FROM MediaGeoIndex INNER JOIN MediaFileTable ON MediaFileTable.id = MediaGeoIndex.id " +
+            "WHERE MediaFileTable.mediaType = :mediaType AND MediaGeoIndex.maxLat >= :minLat AND MediaGeoIndex.minLat <= :maxLat AND MediaGeoIndex.maxLon >= :minLon AND MediaGeoIndex.minLon <= :maxLon " +
+            "ORDER BY MediaFileTable.startTimestamp DESC")
+    List<MediaFileEntity> getMediaFilesInBoundingBox(String mediaType, double minLat, double maxLat, double minLon, double maxLon);
 //
 //    @Query("SELECT * from MediaFileTable WHERE commandName=:commandName AND isMaster=:isMaster ORDER BY timestamp DESC")
 //    LiveData<List<MediaFileEntity>> getMediaFiles(String commandName, boolean isMaster);
@@ -5,14 +5,16 @@ package com.wearableintelligencesystem.androidsmartphone.database.mediafile;
 //https://github.com/stairs1/memory-expansion-tools
 
 import android.location.Location;
+import android.location.LocationManager;
 
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity(tableName = "MediaFileTable")
+@Entity(tableName = "MediaFileTable", indices = {@Index({"mediaType", "startTimestamp"})})
 public class MediaFileEntity {
 
     @PrimaryKey(autoGenerate = true)
@@ -34,6 +36,19 @@ public class MediaFileEntity {
     @ColumnInfo(name = "endTimestamp")
     private long endTimestamp;
 
+    //where the media was captured, null if we never got a location
+    @ColumnInfo(name = "latitude")
+    private Double latitude;
+
+    @ColumnInfo(name = "longitude")
+    private Double longitude;
+
+    @ColumnInfo(name = "altitude")
+    private Double altitude;
+
+    @ColumnInfo(name = "accuracy")
+    private Float accuracy;
+
     public MediaFileEntity(@NonNull String localPath, @NonNull String mediaType, @NonNull long startTimestamp, long endTimestamp) {
         this.localPath = localPath;
         this.mediaType = mediaType;
@@ -47,4 +62,29 @@ public class MediaFileEntity {
     public long getEndTimestamp(){return this.endTimestamp;}
     public int getId(){return this.id;}
     public void setId(int id){this.id = id;}
+    public Location getLocation(){
+        if (this.latitude == null || this.longitude == null) {
+            return null;
+        }
+        Location location = new Location(LocationManager.GPS_PROVIDER);
+        location.setLatitude(this.latitude);
+        location.setLongitude(this.longitude);
+        if (this.altitude != null) location.setAltitude(this.altitude);
+        if (this.accuracy != null) location.setAccuracy(this.accuracy);
+        return location;
+    }
+    public void setLocation(Location location){
+        this.latitude = location == null ? null : location.getLatitude();
+        this.longitude = location == null ? null : location.getLongitude();
+        this.altitude = location == null ? null : location.getAltitude();
+        this.accuracy = location == null || !location.hasAccuracy() ? null : location.getAccuracy();
+    }
+    public Double getLatitude(){return this.latitude;}
+    public void setLatitude(Double latitude){this.latitude = latitude;}
+    public Double getLongitude(){return this.longitude;}
+    public void setLongitude(Double longitude){this.longitude = longitude;}
+    public Double getAltitude(){return this.altitude;}
+    public void setAltitude(Double altitude){this.altitude = altitude;}
+    public Float getAccuracy(){return this.accuracy;}
+    public void setAccuracy(Float accuracy){this.accuracy = accuracy;}
 }
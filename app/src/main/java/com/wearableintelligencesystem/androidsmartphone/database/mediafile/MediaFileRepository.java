@@ -5,21 +5,29 @@ package com.wearableintelligencesystem.androidsmartphone.database.mediafile;
 //https://github.com/stairs1/memory-expansion-tools
 
 import android.app.Application;
+import android.location.Location;
 
 import androidx.lifecycle.LiveData;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.lang.InterruptedException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import com.wearableintelligencesystem.androidsmartphone.database.phrase.Phrase;
 
+import com.wearableintelligencesystem.androidsmartphone.database.DatabaseExecutors;
+import com.wearableintelligencesystem.androidsmartphone.database.GeoIndex;
+import com.wearableintelligencesystem.androidsmartphone.database.RxQueries;
 import com.wearableintelligencesystem.androidsmartphone.database.WearableAiRoomDatabase;
 
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Single;
+
 public class MediaFileRepository {
 
     private MediaFileDao mMediaFileDao;
@@ -41,15 +49,36 @@ public class MediaFileRepository {
             }
         };
 
-        Future<MediaFileEntity> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<MediaFileEntity> future = DatabaseExecutors.read(callable);
 
         return future.get();
     }
 
+    public Maybe<MediaFileEntity> getClosestMediaFileMaybe(String mediaType, long timestamp) {
+        return RxQueries.maybe(() -> mMediaFileDao.getClosestMediaFileSnapshot(mediaType, timestamp));
+    }
+
+    //the closest file to each of the timestamps, in the same order (null if there isn't one), all in one trip to the read pool
+    public Single<List<MediaFileEntity>> getClosestMediaFilesSingle(String mediaType, List<Long> timestamps) {
+        return RxQueries.single(() -> {
+            List<MediaFileEntity> mediaFiles = new ArrayList<>(timestamps.size());
+            for (long timestamp : timestamps) {
+                mediaFiles.add(mMediaFileDao.getClosestMediaFileSnapshot(mediaType, timestamp));
+            }
+            return mediaFiles;
+        });
+    }
+
+    public CompletableFuture<MediaFileEntity> getClosestMediaFileAsync(String mediaType, long timestamp) {
+        return DatabaseExecutors.read(() -> mMediaFileDao.getClosestMediaFileSnapshot(mediaType, timestamp));
+    }
+
+    public CompletableFuture<Long> insertAsync(MediaFileEntity mediaFile) {
+        return DatabaseExecutors.write(() -> mMediaFileDao.insert(mediaFile));
+    }
+
     public long insert(MediaFileEntity mediaFile) {
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        Callable<Long> insertCallable = () -> mMediaFileDao.insert(mediaFile);
-        Future<Long> future = executorService.submit(insertCallable);
+        Future<Long> future = DatabaseExecutors.write(() -> mMediaFileDao.insert(mediaFile));
         long rowId = 0;
         try{
             rowId = future.get();
@@ -60,6 +89,32 @@ public class MediaFileRepository {
         return rowId;
     }
 
+    public void updateLocation(long id, Location location) {
+        if (location == null) {
+            return;
+        }
+        DatabaseExecutors.execute(() -> {
+            mMediaFileDao.updateLocation(id, location.getLatitude(), location.getLongitude(), location.getAltitude(), location.hasAccuracy() ? location.getAccuracy() : null);
+        });
+    }
+
+    //media of the given type captured within radiusMeters of a point
+    public CompletableFuture<List<MediaFileEntity>> getMediaFilesNearAsync(String mediaType, double latitude, double longitude, double radiusMeters) {
+        return DatabaseExecutors.read(() -> {
+            //one box, or the two halves either side of the antimeridian
+            List<MediaFileEntity> near = new ArrayList<>();
+            for (double[] box : GeoIndex.boundingBoxes(latitude, longitude, radiusMeters)) {
+                for (MediaFileEntity mediaFile : mMediaFileDao.getMediaFilesInBoundingBox(mediaType, box[0], box[1], box[2], box[3])) {
+                    if (GeoIndex.distanceMeters(latitude, longitude, mediaFile.getLatitude(), mediaFile.getLongitude()) <= radiusMeters) {
+                        near.add(mediaFile);
+                    }
+                }
+            }
+            near.sort(Comparator.comparingLong(MediaFileEntity::getStartTimestamp).reversed());
+            return near;
+        });
+    }
+
     public MediaFileEntity getMediaFilebyId(long id) throws ExecutionException, InterruptedException {
 
         Callable<MediaFileEntity> callable = new Callable<MediaFileEntity>() {
@@ -69,7 +124,7 @@ public class MediaFileRepository {
             }
         };
 
-        Future<MediaFileEntity> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<MediaFileEntity> future = DatabaseExecutors.read(callable);
 
         return future.get();
     }
@@ -15,6 +15,9 @@ import com.wearableintelligencesystem.androidsmartphone.database.phrase.Phrase;
 
 import java.util.List;
 
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Single;
+
 public class MediaFileViewModel extends AndroidViewModel {
 
     private MediaFileRepository mRepository;
@@ -33,6 +36,14 @@ public class MediaFileViewModel extends AndroidViewModel {
         }
     }
 
+    public Maybe<MediaFileEntity> getClosestMediaFileMaybe(String mediaType, long timestamp){
+        return mRepository.getClosestMediaFileMaybe(mediaType, timestamp);
+    }
+
+    public Single<List<MediaFileEntity>> getClosestMediaFilesSingle(String mediaType, List<Long> timestamps){
+        return mRepository.getClosestMediaFilesSingle(mediaType, timestamps);
+    }
+
 //    public LiveData<List<MediaFileEntity>> getAllMediaFiles() {return mAllMediaFiles;}
 //    public LiveData<MediaFileEntity> getMediaFile(int id) {return mRepository.getMediaFile(id);}
 //
@@ -14,10 +14,9 @@ import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.lang.InterruptedException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import com.wearableintelligencesystem.androidsmartphone.database.DatabaseExecutors;
 import com.wearableintelligencesystem.androidsmartphone.database.WearableAiRoomDatabase;
 import com.wearableintelligencesystem.androidsmartphone.database.person.PersonEntity;
 import com.wearableintelligencesystem.androidsmartphone.database.phrase.Phrase;
@@ -40,15 +39,13 @@ public class MemoryCacheRepository {
     }
 
     public void updateCacheName(long id, String name) {
-        WearableAiRoomDatabase.databaseWriteExecutor.execute(() -> {
+        DatabaseExecutors.execute(() -> {
             mMemoryCacheDao.updateCacheName(id, name);
         });
     }
 
     public long insert(MemoryCache cache) {
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        Callable<Long> insertCallable = () -> mMemoryCacheDao.insert(cache);
-        Future<Long> future = executorService.submit(insertCallable);
+        Future<Long> future = DatabaseExecutors.write(() -> mMemoryCacheDao.insert(cache));
         long rowId = 0;
         try{
             rowId = future.get();
@@ -60,9 +57,7 @@ public class MemoryCacheRepository {
     }
 
     public long addCacheTime(MemoryCacheTimes cacheTime) {
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        Callable<Long> insertCallable = () -> mMemoryCacheTimesDao.insert(cacheTime);
-        Future<Long> future = executorService.submit(insertCallable);
+        Future<Long> future = DatabaseExecutors.write(() -> mMemoryCacheTimesDao.insert(cacheTime));
         long rowId = 0;
         try{
             rowId = future.get();
@@ -86,7 +81,7 @@ public class MemoryCacheRepository {
             }
         };
 
-        Future<List<MemoryCache>> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<List<MemoryCache>> future = DatabaseExecutors.read(callable);
 
         try {
             return future.get();
@@ -0,0 +1,41 @@
+package com.wearableintelligencesystem.androidsmartphone.database.person;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+//every time face rec recognizes someone in a POV image
+//indexed on timestamp for "who did I see in this period" and on (personId, timestamp) for "when did I last see them"
+@Entity(tableName = "FaceSightingTable",
+        foreignKeys = @ForeignKey(entity = Person.class, parentColumns = "id", childColumns = "personId", onDelete = ForeignKey.CASCADE),
+        indices = {@Index("timestamp"), @Index({"personId", "timestamp"}), @Index("mediaId")})
+public class FaceSighting {
+
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "id")
+    private long id = 0;
+
+    @ColumnInfo(name = "personId")
+    private long personId;
+
+    @ColumnInfo(name = "timestamp")
+    private long timestamp;
+
+    //id of the image the face was seen in
+    @ColumnInfo(name = "mediaId")
+    private Long mediaId;
+
+    public FaceSighting(long personId, long timestamp, Long mediaId) {
+        this.personId = personId;
+        this.timestamp = timestamp;
+        this.mediaId = mediaId;
+    }
+
+    public long getId(){return this.id;}
+    public void setId(long id){this.id = id;}
+    public long getPersonId(){return this.personId;}
+    public long getTimestamp(){return this.timestamp;}
+    public Long getMediaId(){return this.mediaId;}
+}
@@ -0,0 +1,48 @@
+package com.wearableintelligencesystem.androidsmartphone.database.person;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+//one row per person face rec has ever met
+//name is the person's name, or "unknown", "confirmed_unknown" or "deleted", same values the old new_face_name rows used
+@Entity(tableName = "PeopleTable", indices = {@Index("name")})
+public class Person {
+
+    //this is the personId everything else refers to
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "id")
+    private long id = 0;
+
+    @NonNull
+    @ColumnInfo(name = "name")
+    private String name;
+
+    //when we first saw this face
+    @ColumnInfo(name = "firstSeen")
+    private long firstSeen;
+
+    //the image we first saw this face in
+    @ColumnInfo(name = "mediaId")
+    private Long mediaId;
+
+    //the first image wasn't good enough to run facial recognition with
+    @ColumnInfo(name = "badForFaceRec")
+    private boolean badForFaceRec;
+
+    public Person(@NonNull String name, long firstSeen, Long mediaId, boolean badForFaceRec) {
+        this.name = name;
+        this.firstSeen = firstSeen;
+        this.mediaId = mediaId;
+        this.badForFaceRec = badForFaceRec;
+    }
+
+    public long getId(){return this.id;}
+    public void setId(long id){this.id = id;}
+    public String getName(){return this.name;}
+    public long getFirstSeen(){return this.firstSeen;}
+    public Long getMediaId(){return this.mediaId;}
+    public boolean isBadForFaceRec(){return this.badForFaceRec;}
+}
@@ -0,0 +1,37 @@
+package com.wearableintelligencesystem.androidsmartphone.database.person;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+//an old personId that turned out to be someone we already knew (the old "changed" rows)
+//face rec still holds encodings under the old id, so sightings and name lookups resolve through here
+@Entity(tableName = "PersonAliasTable",
+        foreignKeys = @ForeignKey(entity = Person.class, parentColumns = "id", childColumns = "personId", onDelete = ForeignKey.CASCADE),
+        indices = {@Index("personId")})
+public class PersonAlias {
+
+    //the personId that is no longer used
+    @PrimaryKey
+    @ColumnInfo(name = "aliasId")
+    private long aliasId;
+
+    //the person it actually is
+    @ColumnInfo(name = "personId")
+    private long personId;
+
+    @ColumnInfo(name = "timestamp")
+    private long timestamp;
+
+    public PersonAlias(long aliasId, long personId, long timestamp) {
+        this.aliasId = aliasId;
+        this.personId = personId;
+        this.timestamp = timestamp;
+    }
+
+    public long getAliasId(){return this.aliasId;}
+    public long getPersonId(){return this.personId;}
+    public long getTimestamp(){return this.timestamp;}
+}
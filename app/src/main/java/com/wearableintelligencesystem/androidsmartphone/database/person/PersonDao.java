@@ -4,7 +4,7 @@ package com.wearableintelligencesystem.androidsmartphone.database.person;
 //Jeremy Stairs (stairs1) and Cayden Pierce
 //https://github.com/stairs1/memory-expansion-tools
 
-import android.location.Location;
+import android.database.Cursor;
 
 import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
@@ -16,104 +16,189 @@ import java.util.Date;
 
 import java.util.List;
 
-import com.wearableintelligencesystem.androidsmartphone.database.phrase.Phrase;
-
-//some of the ways we are structuring this may not be best practices for relational databases (argKey and argValue, for one). However, in the name of not having a 100s of files for every table, we've abstracted a bit here and tried to make it a bit broader. Perhaps this is ok, or perhaps we'll redesign once we have a better idea of all the data we're actually going to need to store
-
-//this one is abstract class instead of interface so we can use @Transaction
-
-//new_face_name - the first time we have seen this face, 
-    //value is the person's name, 
-    //"unknown" if not known by the system, 
-    //"confirmed_unknown" if the user also doesn't know who they are
-    //"changed" if the person id was changed to a new one - the argValue is the id of the new personId cast to a string - this is inefficient, but allows us to stick to one table, and this should only be rarely used as the face rec api will update its internal memory after one hit 
-    //
-//event - when someone does something
-//meta - a descriptor of something - for example "meta" : "bad_for_face_rec" means the image is not good enough to run facial recognition with
+//people used to be stored as argKey/argValue rows in one PersonTable. They now live in three tables:
+//PeopleTable - one row per person, holds what the old "new_face_name" and "meta" rows said
+//FaceSightingTable - one row per "event"/"seen", indexed by timestamp and by (personId, timestamp)
+//PersonAliasTable - what the old "changed" rows said, an old personId and the person it turned out to be
 //
+//the methods taking/returning PersonEntity are the compatibility layer, they accept and hand back the old key/value row shape
+//so face rec and the UIs didn't have to change. New code should prefer the typed queries at the bottom
 //
-//PersonCreator.create(null, "meta", "bad_for_face_rec", timestamp, mediaId, mPersonRepository);
-//for this, the personId is the original personId - the row id of the "new_face_name" row
+//this one is abstract class instead of interface so we can use @Transaction
 
 @Dao
 public abstract class PersonDao {
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    abstract long insert(PersonEntity person);
-
-    //set the personId to the row id
-    @Query("UPDATE PersonTable SET personId = :personId WHERE id = :personId")
-    abstract void updatePersonId(long personId);
-
-    //set the unknownPersonId to the to the given knownPersonid
-    @Query("UPDATE PersonTable SET personId = :knownPersonId WHERE personId = :unknownPersonId")
-    abstract void changePersonIdSubQuery(long unknownPersonId, long knownPersonId);
+    //the old row shapes, projected out of the new tables
+    static final String PEOPLE_AS_PERSON_ENTITY = "SELECT id, id AS personId, 'new_face_name' AS argKey, name AS argValue, firstSeen AS timestamp, mediaId FROM PeopleTable";
+    static final String BAD_FOR_FACE_REC_AS_PERSON_ENTITY = "SELECT id, id AS personId, 'meta' AS argKey, 'bad_for_face_rec' AS argValue, firstSeen AS timestamp, mediaId FROM PeopleTable";
+    static final String SIGHTINGS_AS_PERSON_ENTITY = "SELECT id, personId, 'event' AS argKey, 'seen' AS argValue, timestamp, mediaId FROM FaceSightingTable";
+    static final String ALIASES_AS_PERSON_ENTITY = "SELECT aliasId AS id, personId, 'changed' AS argKey, CAST(personId AS TEXT) AS argValue, timestamp, NULL AS mediaId FROM PersonAliasTable";
 
-    //remove the 'new_face_name' row - should only be used as part of 'changePersonId' - or it will break things
-    @Query("UPDATE PersonTable SET argKey = 'changed', argValue = :newPersonIdString WHERE personId = :unknownPersonId AND argKey = 'new_face_name'")
-    abstract void changeNewFaceName(long unknownPersonId, String newPersonIdString);
+    @Insert
+    abstract long insertPerson(Person person);
 
-   @Transaction
-   void changePersonId(long unknownPersonId, long knownPersonId) {
-     String knownPersonIdString = Long.toString(knownPersonId);
-     changeNewFaceName(unknownPersonId, knownPersonIdString);
-     changePersonIdSubQuery(unknownPersonId, knownPersonId);
-   }
+    @Insert
+    abstract long insertSighting(FaceSighting sighting);
 
-   //get references to a person that was changed/updated
-   @Query("SELECT * from PersonTable WHERE argKey = 'changed' AND id = :rowId LIMIT 1")
-   abstract PersonEntity getChangedPersonId(long rowId);
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract void insertAlias(PersonAlias alias);
+
+    @Query("SELECT personId FROM PersonAliasTable WHERE aliasId = :personId")
+    abstract Long getAliasTarget(long personId);
+
+    @Query("UPDATE PeopleTable SET badForFaceRec = 1 WHERE id = :personId")
+    abstract void setBadForFaceRec(long personId);
+
+    //face rec may still hold an encoding under an id that was merged into someone else
+    long resolvePersonId(long personId) {
+        Long target = getAliasTarget(personId);
+        return target == null ? personId : target;
+    }
+
+    //compatibility insert - takes an old style key/value row and writes it to the table it belongs in
+    //returns the personId for "new_face_name" rows (which is the same as the old row id), the new row id otherwise
+    @Transaction
+    public long insert(PersonEntity person) {
+        String argKey = person.getArgKey();
+        String argValue = person.getArgValue();
+        if (argKey.equals("new_face_name")) {
+            return insertPerson(new Person(argValue, person.getTimestamp(), person.getMediaId(), false));
+        } else if (argKey.equals("event") && argValue.equals("seen")) {
+            long personId = resolvePersonId(person.getPersonId());
+            return insertSighting(new FaceSighting(personId, person.getTimestamp(), person.getMediaId()));
+        } else if (argKey.equals("meta") && argValue.equals("bad_for_face_rec")) {
+            long personId = resolvePersonId(person.getPersonId());
+            setBadForFaceRec(personId);
+            return personId;
+        }
+        throw new IllegalArgumentException("Unsupported person row: " + argKey + "=" + argValue);
+    }
+
+    @Query("UPDATE PersonAliasTable SET personId = :knownPersonId WHERE personId = :unknownPersonId")
+    abstract void repointAliases(long unknownPersonId, long knownPersonId);
+
+    @Query("UPDATE FaceSightingTable SET personId = :knownPersonId WHERE personId = :unknownPersonId")
+    abstract void repointSightings(long unknownPersonId, long knownPersonId);
+
+    @Query("DELETE FROM PeopleTable WHERE id = :personId")
+    abstract void deletePersonRow(long personId);
+
+    //merge a face rec we thought was a new person into a known person
+    //only the unknown person's sightings move (through the personId index), and the old id is kept as an alias
+    @Transaction
+    void changePersonId(long unknownPersonId, long knownPersonId) {
+        if (unknownPersonId == knownPersonId) {
+            return;
+        }
+        insertAlias(new PersonAlias(unknownPersonId, knownPersonId, System.currentTimeMillis()));
+        repointAliases(unknownPersonId, knownPersonId);
+        repointSightings(unknownPersonId, knownPersonId);
+        deletePersonRow(unknownPersonId);
+    }
+
+    //get references to a person that was changed/updated
+    @Query(ALIASES_AS_PERSON_ENTITY + " WHERE aliasId = :rowId LIMIT 1")
+    abstract PersonEntity getChangedPersonId(long rowId);
 
     //set memory of person as deleted
-    @Query("UPDATE PersonTable SET argValue = 'deleted' WHERE personId = :personId AND argKey = 'new_face_name'")
+    @Query("UPDATE PeopleTable SET name = 'deleted' WHERE id = :personId")
     abstract void setPersonDeleted(long personId);
 
-    //delete a person, but keep the reference to their name so we don't create another person with the same id
-    @Query("DELETE FROM PersonTable WHERE personId = :personId AND argKey != 'new_face_name'")
-    abstract void deletePersonInit(long personId);
+    @Query("DELETE FROM FaceSightingTable WHERE personId = :personId")
+    abstract void deleteSightings(long personId);
 
     //delete a person, but keep the reference to their name so we don't create another person with the same id
-   @Transaction
-   void deletePerson(long personId) {
-     deletePersonInit(personId);
-     setPersonDeleted(personId);
-   }
+    @Transaction
+    void deletePerson(long personId) {
+        deleteSightings(personId);
+        setPersonDeleted(personId);
+    }
 
     //update the person's name
-    @Query("UPDATE PersonTable SET argValue = :name WHERE id = :personId AND argKey = 'new_face_name'")
+    @Query("UPDATE PeopleTable SET name = :name WHERE id = :personId")
     abstract void updatePersonName(String name, long personId);
 
-    @Query("DELETE FROM PersonTable")
-    abstract void deleteAll();
+    @Query("DELETE FROM PeopleTable")
+    abstract void deleteAllPeople();
+
+    @Query("DELETE FROM FaceSightingTable")
+    abstract void deleteAllSightings();
+
+    @Query("DELETE FROM PersonAliasTable")
+    abstract void deleteAllAliases();
 
-    @Query("SELECT * from PersonTable ORDER BY timestamp DESC")
+    @Transaction
+    void deleteAll() {
+        deleteAllSightings();
+        deleteAllAliases();
+        deleteAllPeople();
+    }
+
+    @Query(PEOPLE_AS_PERSON_ENTITY + " UNION ALL " + SIGHTINGS_AS_PERSON_ENTITY + " ORDER BY timestamp DESC")
     abstract LiveData<List<PersonEntity>> getAllPersons();
 
-    @Query("SELECT * from PersonTable WHERE argKey = 'meta' AND argValue = 'bad_for_face_rec' ORDER BY timestamp DESC")
+    @Query(BAD_FOR_FACE_REC_AS_PERSON_ENTITY + " WHERE badForFaceRec = 1 ORDER BY firstSeen DESC")
     abstract LiveData<List<PersonEntity>> getBadForFaceRec();
 
-    @Query("SELECT * from PersonTable ORDER BY timestamp DESC")
+    @Query(PEOPLE_AS_PERSON_ENTITY + " UNION ALL " + SIGHTINGS_AS_PERSON_ENTITY + " ORDER BY timestamp DESC")
     abstract List<PersonEntity> getAllPersonsSnapshot();
-    
-    @Query("SELECT * from PersonTable WHERE argKey = 'new_face_name' AND (argValue != 'unknown') AND (argValue != 'confirmed_unknown') ORDER BY timestamp DESC")
+
+    @Query(PEOPLE_AS_PERSON_ENTITY + " WHERE name != 'unknown' AND name != 'confirmed_unknown' ORDER BY firstSeen DESC")
     abstract List<PersonEntity> getAllKnownPersonsNamesSnapshot();
-    
-    @Query("SELECT * from PersonTable WHERE timestamp BETWEEN :startTime AND :endTime ORDER BY timestamp DESC")
+
+    @Query(SIGHTINGS_AS_PERSON_ENTITY + " WHERE timestamp BETWEEN :startTime AND :endTime ORDER BY timestamp DESC")
     abstract List<PersonEntity> getPersonRange(Date startTime, Date endTime);
 
-    @Query("SELECT * FROM PersonTable WHERE ID = :id")
+    //keyset paged cursor for streaming export, resumes after the last exported sighting id
+    @Query("SELECT FaceSightingTable.id AS id, FaceSightingTable.personId AS personId, PeopleTable.name AS name, FaceSightingTable.timestamp AS timestamp, FaceSightingTable.mediaId AS mediaId " +
+            "FROM FaceSightingTable INNER JOIN PeopleTable ON PeopleTable.id = FaceSightingTable.personId " +
+            "WHERE FaceSightingTable.timestamp BETWEEN :startTime AND :endTime AND FaceSightingTable.id > :afterId ORDER BY FaceSightingTable.id ASC LIMIT :limit")
+    public abstract Cursor getPersonRangeCursor(long startTime, long endTime, long afterId, int limit);
+
+    @Query("SELECT COUNT(*) from FaceSightingTable WHERE timestamp BETWEEN :startTime AND :endTime AND id > :afterId")
+    public abstract long countPersonRange(long startTime, long endTime, long afterId);
+
+    //retention, see RetentionEngine. Same row shape as the export so archive segments read the same
+    @Query("SELECT FaceSightingTable.id AS id, FaceSightingTable.personId AS personId, PeopleTable.name AS name, FaceSightingTable.timestamp AS timestamp, FaceSightingTable.mediaId AS mediaId " +
+            "FROM FaceSightingTable INNER JOIN PeopleTable ON PeopleTable.id = FaceSightingTable.personId " +
+            "WHERE FaceSightingTable.timestamp < :before ORDER BY FaceSightingTable.id ASC LIMIT :limit")
+    public abstract Cursor getArchivableSightingCursor(long before, int limit);
+
+    @Query("DELETE FROM FaceSightingTable WHERE id IN (:ids)")
+    public abstract int deleteSightingsById(List<Long> ids);
+
+    @Query(PEOPLE_AS_PERSON_ENTITY + " WHERE id = :id")
     abstract LiveData<PersonEntity> get_by_id(int id);
 
-    @Query("SELECT * FROM PersonTable WHERE ID = :id AND argKey = 'new_face_name' ORDER BY timestamp DESC LIMIT 1") //should always be only one entry anyway, but if we mess up, get the latest name
+    @Query(PEOPLE_AS_PERSON_ENTITY + " WHERE id = :id LIMIT 1")
     abstract PersonEntity getPersonsName(long id);
 
-    @Query("SELECT * FROM PersonTable WHERE ID = :id AND argKey= 'event' AND argValue = 'seen' ORDER BY timestamp DESC LIMIT 1") //the last time we saw this person
+    @Query(SIGHTINGS_AS_PERSON_ENTITY + " WHERE personId = :id ORDER BY timestamp DESC LIMIT 1") //the last time we saw this person
     abstract PersonEntity getPersonLastSeen(long id);
 
-    @Query("SELECT * from PersonTable WHERE argKey= 'event' AND argValue = 'seen' AND (timestamp > :startTime) AND (timestamp < :endTime) ORDER BY timestamp DESC")
-    abstract List<PersonEntity> getAllPersonsSnapshotTimePeriod(long startTime, long endTime);
+    @Query(SIGHTINGS_AS_PERSON_ENTITY + " WHERE timestamp > :startTime AND timestamp < :endTime ORDER BY timestamp DESC")
+    public abstract List<PersonEntity> getAllPersonsSnapshotTimePeriod(long startTime, long endTime);
 
-    @Query("SELECT * FROM PersonTable WHERE argKey = 'new_face_name' AND argValue = 'unknown' ORDER BY timestamp DESC")
+    @Query(PEOPLE_AS_PERSON_ENTITY + " WHERE name = 'unknown' ORDER BY firstSeen DESC")
     abstract List<PersonEntity> getUnknownPersonsSnapshot();
 
+    //typed queries over the normalized tables
+
+    //who did I see in this period - an index range read over sightings, each person once
+    @Query("SELECT * FROM PeopleTable WHERE id IN (SELECT personId FROM FaceSightingTable WHERE timestamp BETWEEN :startTime AND :endTime)")
+    public abstract List<Person> getPeopleSeenInPeriod(long startTime, long endTime);
+
+    //when anyone was seen, newest first, straight off the timestamp index
+    @Query("SELECT timestamp FROM FaceSightingTable WHERE timestamp BETWEEN :startTime AND :endTime ORDER BY timestamp DESC")
+    public abstract List<Long> getSightingTimesInPeriod(long startTime, long endTime);
+
+    @Query("SELECT * FROM FaceSightingTable WHERE timestamp BETWEEN :startTime AND :endTime ORDER BY timestamp DESC")
+    abstract List<FaceSighting> getSightingsInPeriod(long startTime, long endTime);
+
+    @Query("SELECT * FROM FaceSightingTable WHERE personId = :personId ORDER BY timestamp DESC LIMIT 1")
+    abstract FaceSighting getLastSighting(long personId);
+
+    @Query("SELECT * FROM PeopleTable WHERE id = :personId")
+    abstract Person getPersonById(long personId);
 }
@@ -4,17 +4,15 @@ import android.location.Location;
 
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
-import androidx.room.Entity;
 import androidx.room.Ignore;
-import androidx.room.PrimaryKey;
 
 import java.util.Date;
 
-@Entity(tableName = "PersonTable")
+//this used to be the key/value PersonTable. People, sightings and id changes now live in PeopleTable, FaceSightingTable and PersonAliasTable
+//PersonEntity stays as the row shape the PersonDao compatibility queries project those tables into, so existing callers keep working
 public class PersonEntity {
 
     //row id
-    @PrimaryKey(autoGenerate = true)
     @ColumnInfo(name = "id")
     private int id = 0;
 
@@ -10,23 +10,35 @@ import androidx.lifecycle.LiveData;
 
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.lang.InterruptedException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import com.wearableintelligencesystem.androidsmartphone.database.phrase.Phrase;
 
+import com.wearableintelligencesystem.androidsmartphone.database.DatabaseExecutors;
+import com.wearableintelligencesystem.androidsmartphone.database.RxQueries;
 import com.wearableintelligencesystem.androidsmartphone.database.WearableAiRoomDatabase;
 
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Single;
+
 public class PersonRepository {
 
+    //guards against a cycle of 'changed' rows
+    private static final int MAX_CHANGED_ID_HOPS = 8;
+
+    private static final String[] SIGHTING_TABLES = {"FaceSightingTable", "PeopleTable"};
+
+    private WearableAiRoomDatabase mDatabase;
     private PersonDao mPersonDao;
     private LiveData<List<PersonEntity>> mAllPersons;
 
     public PersonRepository(Application application) {
         WearableAiRoomDatabase db = WearableAiRoomDatabase.getDatabase(application);
+        mDatabase = db;
         mPersonDao = db.personDao();
         mAllPersons = mPersonDao.getAllPersons();
     }
@@ -48,7 +60,7 @@ public class PersonRepository {
             }
         };
 
-        Future<List<PersonEntity>> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<List<PersonEntity>> future = DatabaseExecutors.read(callable);
 
         try {
             return future.get();
@@ -58,6 +70,27 @@ public class PersonRepository {
         }
     }
 
+    public CompletableFuture<List<PersonEntity>> getAllPersonsTimePeriodAsync(long startTime, long endTime) {
+        return DatabaseExecutors.read(() -> mPersonDao.getAllPersonsSnapshotTimePeriod(startTime, endTime));
+    }
+
+    public Single<List<PersonEntity>> getAllPersonsTimePeriodSingle(long startTime, long endTime) {
+        return RxQueries.single(() -> mPersonDao.getAllPersonsSnapshotTimePeriod(startTime, endTime));
+    }
+
+    public Single<List<Long>> getSightingTimesInPeriodSingle(long startTime, long endTime) {
+        return RxQueries.single(() -> mPersonDao.getSightingTimesInPeriod(startTime, endTime));
+    }
+
+    //re-emits when someone is seen or renamed, face rec writes a sighting and its person in quick succession so these are debounced
+    public Flowable<List<PersonEntity>> getAllPersonsTimePeriodFlowable(long startTime, long endTime) {
+        return RxQueries.flowable(mDatabase, SIGHTING_TABLES, () -> mPersonDao.getAllPersonsSnapshotTimePeriod(startTime, endTime));
+    }
+
+    public Flowable<List<Person>> getPeopleSeenInPeriodFlowable(long startTime, long endTime) {
+        return RxQueries.flowable(mDatabase, SIGHTING_TABLES, () -> mPersonDao.getPeopleSeenInPeriod(startTime, endTime));
+    }
+
     public List<PersonEntity> getAllPersonsSnapshotTimePeriod(long startTime, long endTime) throws ExecutionException, InterruptedException {
 
         Callable<List<PersonEntity>> callable = new Callable<List<PersonEntity>>() {
@@ -67,11 +100,15 @@ public class PersonRepository {
             }
         };
 
-        Future<List<PersonEntity>> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<List<PersonEntity>> future = DatabaseExecutors.read(callable);
 
         return future.get();
     }
 
+    public CompletableFuture<List<PersonEntity>> getAllKnownPersonsNamesAsync() {
+        return DatabaseExecutors.read(() -> mPersonDao.getAllKnownPersonsNamesSnapshot());
+    }
+
     public List<PersonEntity> getAllKnownPersonsNamesSnapshot() throws ExecutionException, InterruptedException {
 
         Callable<List<PersonEntity>> callable = new Callable<List<PersonEntity>>() {
@@ -81,15 +118,17 @@ public class PersonRepository {
             }
         };
 
-        Future<List<PersonEntity>> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<List<PersonEntity>> future = DatabaseExecutors.read(callable);
 
         return future.get();
     }
 
+    public CompletableFuture<Long> insertAsync(PersonEntity person) {
+        return DatabaseExecutors.write(() -> mPersonDao.insert(person));
+    }
+
     public long insert(PersonEntity person) {
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        Callable<Long> insertCallable = () -> mPersonDao.insert(person);
-        Future<Long> future = executorService.submit(insertCallable);
+        Future<Long> future = DatabaseExecutors.write(() -> mPersonDao.insert(person));
         long rowId = 0;
         try{
             rowId = future.get();
@@ -100,6 +139,11 @@ public class PersonRepository {
         return rowId;
     }
 
+    //each person seen in the period once, read off the sighting timestamp index
+    public CompletableFuture<List<Person>> getPeopleSeenInPeriodAsync(long startTime, long endTime) {
+        return DatabaseExecutors.read(() -> mPersonDao.getPeopleSeenInPeriod(startTime, endTime));
+    }
+
     public LiveData<PersonEntity> getPerson(int id) {
         return mPersonDao.get_by_id(id);
     }
@@ -110,30 +154,36 @@ public class PersonRepository {
     }
 
     public String getPersonsName(long id) throws ExecutionException, InterruptedException {
+        try{
+            return getPersonsNameAsync(id).get();
+        } catch (InterruptedException | ExecutionException e){
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-       try{
-            Callable<PersonEntity> callable = new Callable<PersonEntity>() {
-                @Override
-                public PersonEntity call() throws Exception {
-                    return mPersonDao.getPersonsName(id);
-                }
-            };
+    public Maybe<String> getPersonsNameMaybe(long id) {
+        return Maybe.fromCompletionStage(getPersonsNameAsync(id));
+    }
 
-            Future<PersonEntity> future = Executors.newSingleThreadExecutor().submit(callable);
-            PersonEntity person = future.get();
-            if (person == null){
+    //follows any 'changed' id references to the person's current name, all in one trip to the read pool
+    public CompletableFuture<String> getPersonsNameAsync(long id) {
+        return DatabaseExecutors.read(() -> {
+            long currentId = id;
+            for (int hops = 0; hops < MAX_CHANGED_ID_HOPS; hops++) {
+                PersonEntity person = mPersonDao.getPersonsName(currentId);
+                if (person != null) {
+                    return person.getArgValue();
+                }
                 //if null, we should check if the person exists but their name was changed
-                Long newId = getChangedPersonId(id);
-                //call this function with the new id and return that value
-                return getPersonsName(newId);
-            } else {
-                String name = person.getArgValue();
-                return name;
+                PersonEntity changed = mPersonDao.getChangedPersonId(currentId);
+                if (changed == null) {
+                    return null;
+                }
+                currentId = Long.parseLong(changed.getArgValue());
             }
-        } catch (InterruptedException | ExecutionException e){
-            e.printStackTrace();
             return null;
-        }
+        });
     }
 
     public Long getChangedPersonId(long id) throws ExecutionException, InterruptedException {
@@ -146,7 +196,7 @@ public class PersonRepository {
                 }
             };
 
-            Future<PersonEntity> future = Executors.newSingleThreadExecutor().submit(callable);
+            Future<PersonEntity> future = DatabaseExecutors.read(callable);
             PersonEntity person = future.get();
             if (person == null){
                 return null;
@@ -170,39 +220,32 @@ public class PersonRepository {
             }
         };
 
-        Future<PersonEntity> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<PersonEntity> future = DatabaseExecutors.read(callable);
 
         return future.get();
     }
 
-    //this just updates the personId to match the row id, for a new person
-    public void updatePersonId(long personId){
-        WearableAiRoomDatabase.databaseWriteExecutor.execute(() -> {
-            mPersonDao.updatePersonId(personId);
-        });
-    }
-
     //this is used to change the personId to a different, GIVEN person id, so that a face rec we thought was a new person can be updated as a known person
     public void changePersonId(long unknownPersonId, long knownPersonId){
-        WearableAiRoomDatabase.databaseWriteExecutor.execute(() -> {
+        DatabaseExecutors.execute(() -> {
             mPersonDao.changePersonId(unknownPersonId, knownPersonId);
         });
     }
 
     public void setPersonConfirmedUnknown(long personId){
-        WearableAiRoomDatabase.databaseWriteExecutor.execute(() -> {
+        DatabaseExecutors.execute(() -> {
             mPersonDao.updatePersonName("confirmed_unknown", personId);
         });
     }
 
     public void updatePersonName(long personId, String name){
-        WearableAiRoomDatabase.databaseWriteExecutor.execute(() -> {
+        DatabaseExecutors.execute(() -> {
             mPersonDao.updatePersonName(name, personId);
         });
     }
 
     public void deletePerson(long personId){
-        WearableAiRoomDatabase.databaseWriteExecutor.execute(() -> {
+        DatabaseExecutors.execute(() -> {
             mPersonDao.deletePerson(personId);
         });
     }
@@ -216,7 +259,7 @@ public class PersonRepository {
             }
         };
 
-        Future<List<PersonEntity>> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<List<PersonEntity>> future = DatabaseExecutors.read(callable);
 
         return future.get();
     }
@@ -14,6 +14,10 @@ import java.util.List;
 
 import java.util.concurrent.ExecutionException;
 
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Single;
+
 public class PersonViewModel extends AndroidViewModel {
 
     private PersonRepository mRepository;
@@ -27,6 +31,26 @@ public class PersonViewModel extends AndroidViewModel {
 
     public LiveData<PersonEntity> getPerson(int id) {return mRepository.getPerson(id);}
 
+    public Single<List<PersonEntity>> getAllPersonsTimePeriodSingle(long startTime, long endTime) {
+        return mRepository.getAllPersonsTimePeriodSingle(startTime, endTime);
+    }
+
+    public Single<List<Long>> getSightingTimesInPeriodSingle(long startTime, long endTime) {
+        return mRepository.getSightingTimesInPeriodSingle(startTime, endTime);
+    }
+
+    public Flowable<List<PersonEntity>> getAllPersonsTimePeriodFlowable(long startTime, long endTime) {
+        return mRepository.getAllPersonsTimePeriodFlowable(startTime, endTime);
+    }
+
+    public Flowable<List<Person>> getPeopleSeenInPeriodFlowable(long startTime, long endTime) {
+        return mRepository.getPeopleSeenInPeriodFlowable(startTime, endTime);
+    }
+
+    public Maybe<String> getPersonsNameMaybe(long id) {
+        return mRepository.getPersonsNameMaybe(id);
+    }
+
 //    public String getPersonsName(long id) { //get the name of the person given their id
 //        try{
 //            return mRepository.getPersonsName(id).getArgValue();
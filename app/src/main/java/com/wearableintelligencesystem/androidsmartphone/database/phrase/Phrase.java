@@ -5,16 +5,18 @@ package com.wearableintelligencesystem.androidsmartphone.database.phrase;
 //https://github.com/stairs1/memory-expansion-tools
 
 import android.location.Location;
+import android.location.LocationManager;
 
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import java.io.Serializable;
 
 //this is serializable so we can pass it through a bundle or turn it into json. In the future, making is parecebable may make sense for program speed. Right now, serializable makes sense as it's faster to implement and we are nowhere near performance issues for the one or two phrases we must pass around
-@Entity(tableName = "PhraseTable")
+@Entity(tableName = "PhraseTable", indices = {@Index("timestamp")})
 public class Phrase implements Serializable {
 
     @PrimaryKey(autoGenerate = true)
@@ -33,22 +35,32 @@ public class Phrase implements Serializable {
     @ColumnInfo(name = "medium")
     private String medium;
 
-    @ColumnInfo(name = "location")
-    private Location location;
+    //where it happened, stored as plain columns so reading a row doesn't go through a converter. null if we never got a location
+    @ColumnInfo(name = "latitude")
+    private Double latitude;
+
+    @ColumnInfo(name = "longitude")
+    private Double longitude;
+
+    @ColumnInfo(name = "altitude")
+    private Double altitude;
+
+    @ColumnInfo(name = "accuracy")
+    private Float accuracy;
 
     @ColumnInfo(name = "address")
     private String address;
 
+    @Ignore
     public Phrase(@NonNull String phrase, @NonNull long timestamp, @NonNull String medium, Location location, String address) {
         super(); //serializable
         this.phrase = phrase;
         this.timestamp = timestamp;
         this.medium = medium;
-        this.location = location;
+        setLocation(location);
         this.address = address;
     }
 
-    @Ignore
      public Phrase(@NonNull String phrase, @NonNull long timestamp, @NonNull String medium){
         this.phrase = phrase;
         this.timestamp = timestamp;
@@ -58,8 +70,31 @@ public class Phrase implements Serializable {
     public String getPhrase(){return this.phrase;}
     public long getTimestamp(){return this.timestamp;}
     public String getMedium(){return this.medium;}
-    public Location getLocation(){return this.location;}
-    public void setLocation(Location location){this.location = location;}
+    public Location getLocation(){
+        if (this.latitude == null || this.longitude == null) {
+            return null;
+        }
+        Location location = new Location(LocationManager.GPS_PROVIDER);
+        location.setLatitude(this.latitude);
+        location.setLongitude(this.longitude);
+        if (this.altitude != null) location.setAltitude(this.altitude);
+        if (this.accuracy != null) location.setAccuracy(this.accuracy);
+        return location;
+    }
+    public void setLocation(Location location){
+        this.latitude = location == null ? null : location.getLatitude();
+        this.longitude = location == null ? null : location.getLongitude();
+        this.altitude = location == null ? null : location.getAltitude();
+        this.accuracy = location == null || !location.hasAccuracy() ? null : location.getAccuracy();
+    }
+    public Double getLatitude(){return this.latitude;}
+    public void setLatitude(Double latitude){this.latitude = latitude;}
+    public Double getLongitude(){return this.longitude;}
+    public void setLongitude(Double longitude){this.longitude = longitude;}
+    public Double getAltitude(){return this.altitude;}
+    public void setAltitude(Double altitude){this.altitude = altitude;}
+    public Float getAccuracy(){return this.accuracy;}
+    public void setAccuracy(Float accuracy){this.accuracy = accuracy;}
     public String getAddress(){return this.address;}
     public void setAddress(String address){this.address = address;}
     public long getId(){return this.id;}
@@ -4,13 +4,14 @@ package com.wearableintelligencesystem.androidsmartphone.database.phrase;
 //Jeremy Stairs (stairs1) and Cayden Pierce
 //https://github.com/stairs1/memory-expansion-tools
 
-import android.location.Location;
+import android.database.Cursor;
 
 import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.SkipQueryVerification;
 
 import java.lang.Integer;
 
@@ -19,11 +20,15 @@ import java.util.List;
 @Dao
 public interface PhraseDao {
 
+    //phrases that belong to a voice command or fall inside a memory cache are never compacted or archived
+    String RETAINED_PHRASE = "(id IN (SELECT transcriptId FROM VoiceCommandTable) OR EXISTS (SELECT 1 FROM MemoryCacheTable WHERE PhraseTable.timestamp >= MemoryCacheTable.startTimestamp " +
+            "AND (MemoryCacheTable.stopTimestamp IS NULL OR PhraseTable.timestamp <= MemoryCacheTable.stopTimestamp)))";
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     long insert(Phrase phrase);
 
-    @Query("UPDATE PhraseTable SET phrase = :words, location = :location, address = :address WHERE id = :id")
-    void update(long id, String words, Location location, String address);
+    @Query("UPDATE PhraseTable SET phrase = :words, latitude = :latitude, longitude = :longitude, altitude = :altitude, accuracy = :accuracy, address = :address WHERE id = :id")
+    void update(long id, String words, Double latitude, Double longitude, Double altitude, Float accuracy, String address);
 
     @Query("DELETE FROM PhraseTable")
     void deleteAll();
@@ -46,9 +51,39 @@ public interface PhraseDao {
     @Query("SELECT * from PhraseTable WHERE timestamp BETWEEN :startTime AND :endTime ORDER BY timestamp DESC")
     List<Phrase> getPhraseRangeSnapshot(long startTime, long endTime);
 
-    @Query("SELECT * FROM PhraseTable ORDER BY ABS(:timestamp - timestamp) LIMIT 1")
+    //keyset paged cursor for streaming export, resumes after the last exported row id
+    @Query("SELECT * from PhraseTable WHERE timestamp BETWEEN :startTime AND :endTime AND id > :afterId ORDER BY id ASC LIMIT :limit")
+    Cursor getPhraseRangeCursor(long startTime, long endTime, long afterId, int limit);
+
+    @Query("SELECT COUNT(*) from PhraseTable WHERE timestamp BETWEEN :startTime AND :endTime AND id > :afterId")
+    long countPhraseRange(long startTime, long endTime, long afterId);
+
+    //the closest phrase on each side of the timestamp, two probes of the timestamp index rather than sorting the whole table
+    @Query("SELECT * FROM (SELECT * FROM (SELECT * FROM PhraseTable WHERE timestamp <= :timestamp ORDER BY timestamp DESC LIMIT 1) " +
+            "UNION ALL SELECT * FROM (SELECT * FROM PhraseTable WHERE timestamp >= :timestamp ORDER BY timestamp ASC LIMIT 1)) " +
+            "ORDER BY ABS(:timestamp - timestamp) LIMIT 1")
     Phrase getByNearestTimestamp(long timestamp);
 
     @Query("SELECT * FROM PhraseTable WHERE id IN (:ids)")
     List<Phrase> getPhrases(List<Long> ids);
+
+    //what was said in this area, read off the PhraseGeoIndex rtree (see GeoIndex), which Room doesn't know about
+    @SkipQueryVerification
+    @Query("SELECT PhraseTable.* FROM PhraseGeoIndex INNER JOIN PhraseTable ON PhraseTable.id = PhraseGeoIndex.id " +
+            "WHERE PhraseGeoIndex.maxLat >= :minLat AND PhraseGeoIndex.minLat <= :maxLat AND PhraseGeoIndex.maxLon >= :minLon AND PhraseGeoIndex.minLon <= :maxLon " +
+            "ORDER BY PhraseTable.timestamp DESC")
+    List<Phrase> getPhrasesInBoundingBox(double minLat, double maxLat, double minLon, double maxLon);
+
+    //retention, see RetentionEngine
+    @Query("SELECT * FROM PhraseTable WHERE timestamp < :before AND id > :afterId ORDER BY id ASC LIMIT :limit")
+    List<Phrase> getPhrasesBefore(long before, long afterId, int limit);
+
+    @Query("SELECT * FROM PhraseTable WHERE timestamp < :before AND NOT " + RETAINED_PHRASE + " ORDER BY id ASC LIMIT :limit")
+    Cursor getArchivablePhraseCursor(long before, int limit);
+
+    @Query("SELECT timestamp FROM PhraseTable WHERE id IN (:ids) AND NOT " + RETAINED_PHRASE)
+    List<Long> getUnretainedPhraseTimestamps(List<Long> ids);
+
+    @Query("DELETE FROM PhraseTable WHERE id IN (:ids) AND NOT " + RETAINED_PHRASE)
+    int deleteUnretainedPhrases(List<Long> ids);
 }
@@ -9,23 +9,34 @@ import android.location.Location;
 
 import androidx.lifecycle.LiveData;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.lang.InterruptedException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import com.wearableintelligencesystem.androidsmartphone.database.DatabaseExecutors;
+import com.wearableintelligencesystem.androidsmartphone.database.GeoIndex;
+import com.wearableintelligencesystem.androidsmartphone.database.RxQueries;
 import com.wearableintelligencesystem.androidsmartphone.database.WearableAiRoomDatabase;
 
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+
 public class PhraseRepository {
 
+    private static final String[] PHRASE_TABLES = {"PhraseTable"};
+
+    private WearableAiRoomDatabase mDatabase;
     private PhraseDao mPhraseDao;
     private LiveData<List<Phrase>> mAllPhrases;
 
     public PhraseRepository(Application application) {
         WearableAiRoomDatabase db = WearableAiRoomDatabase.getDatabase(application);
+        mDatabase = db;
         mPhraseDao = db.phraseDao();
         mAllPhrases = mPhraseDao.getAllPhrases();
     }
@@ -50,15 +61,21 @@ public class PhraseRepository {
             }
         };
 
-        Future<List<Phrase>> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<List<Phrase>> future = DatabaseExecutors.read(callable);
 
         return future.get();
     }
 
+    public Single<List<Phrase>> getAllPhrasesSingle() {
+        return RxQueries.single(() -> mPhraseDao.getAllPhrasesSnapshot());
+    }
+
+    public CompletableFuture<Long> insertAsync(Phrase phrase) {
+        return DatabaseExecutors.write(() -> mPhraseDao.insert(phrase));
+    }
+
     public long insert(Phrase phrase) {
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        Callable<Long> insertCallable = () -> mPhraseDao.insert(phrase);
-        Future<Long> future = executorService.submit(insertCallable);
+        Future<Long> future = DatabaseExecutors.write(() -> mPhraseDao.insert(phrase));
         long rowId = 0;
         try{
             rowId = future.get();
@@ -70,8 +87,12 @@ public class PhraseRepository {
     }
 
     public void update(long id, String words, Location location, String address) {
-        WearableAiRoomDatabase.databaseWriteExecutor.execute(() -> {
-            mPhraseDao.update(id, words, location, address);
+        DatabaseExecutors.execute(() -> {
+            if (location == null) {
+                mPhraseDao.update(id, words, null, null, null, null, address);
+            } else {
+                mPhraseDao.update(id, words, location.getLatitude(), location.getLongitude(), location.getAltitude(), location.hasAccuracy() ? location.getAccuracy() : null, address);
+            }
         });
     }
 
@@ -79,6 +100,19 @@ public class PhraseRepository {
         return mPhraseDao.getPhraseRange(startTime, endTime);
     }
 
+    public CompletableFuture<List<Phrase>> getPhraseRangeAsync(long startTime, long endTime) {
+        return DatabaseExecutors.read(() -> mPhraseDao.getPhraseRangeSnapshot(startTime, endTime));
+    }
+
+    public Single<List<Phrase>> getPhraseRangeSingle(long startTime, long endTime) {
+        return RxQueries.single(() -> mPhraseDao.getPhraseRangeSnapshot(startTime, endTime));
+    }
+
+    //re-emits as new transcripts come in
+    public Flowable<List<Phrase>> getPhraseRangeFlowable(long startTime, long endTime) {
+        return RxQueries.flowable(mDatabase, PHRASE_TABLES, () -> mPhraseDao.getPhraseRangeSnapshot(startTime, endTime));
+    }
+
     public List<Phrase> getPhraseRangeSnapshot(long startTime, long endTime) {
 
         Callable<List<Phrase>> callable = new Callable<List<Phrase>>() {
@@ -88,7 +122,7 @@ public class PhraseRepository {
             }
         };
 
-        Future<List<Phrase>> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<List<Phrase>> future = DatabaseExecutors.read(callable);
 
         try {
             return future.get();
@@ -107,13 +141,45 @@ public class PhraseRepository {
             }
         };
 
-        Future<List<Phrase>> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<List<Phrase>> future = DatabaseExecutors.read(callable);
 
         return future.get();
     }
 
 
 
+    //what was said within radiusMeters of a point - the rtree narrows it to bounding boxes, then we drop the corners
+    public CompletableFuture<List<Phrase>> getPhrasesNearAsync(double latitude, double longitude, double radiusMeters) {
+        return DatabaseExecutors.read(() -> {
+            List<Phrase> near = new ArrayList<>();
+            for (Phrase phrase : getPhrasesInBoxes(GeoIndex.boundingBoxes(latitude, longitude, radiusMeters))) {
+                if (GeoIndex.distanceMeters(latitude, longitude, phrase.getLatitude(), phrase.getLongitude()) <= radiusMeters) {
+                    near.add(phrase);
+                }
+            }
+            return near;
+        });
+    }
+
+    //minLon > maxLon means the box crosses the antimeridian
+    public CompletableFuture<List<Phrase>> getPhrasesInBoundingBoxAsync(double minLat, double maxLat, double minLon, double maxLon) {
+        return DatabaseExecutors.read(() -> getPhrasesInBoxes(GeoIndex.splitAtAntimeridian(minLat, maxLat, minLon, maxLon)));
+    }
+
+    //newest first across all the boxes, like a single box query
+    private List<Phrase> getPhrasesInBoxes(List<double[]> boxes) {
+        if (boxes.size() == 1) {
+            double[] box = boxes.get(0);
+            return mPhraseDao.getPhrasesInBoundingBox(box[0], box[1], box[2], box[3]);
+        }
+        List<Phrase> phrases = new ArrayList<>();
+        for (double[] box : boxes) {
+            phrases.addAll(mPhraseDao.getPhrasesInBoundingBox(box[0], box[1], box[2], box[3]));
+        }
+        phrases.sort(Comparator.comparingLong(Phrase::getTimestamp).reversed());
+        return phrases;
+    }
+
     public LiveData<Phrase> getPhrase(long id) {
         return mPhraseDao.get_by_id(id);
     }
@@ -131,7 +197,7 @@ public class PhraseRepository {
             }
         };
 
-        Future<Phrase> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<Phrase> future = DatabaseExecutors.read(callable);
 
         return future.get();
     }
@@ -10,6 +10,8 @@ import androidx.lifecycle.LiveData;
 
 import java.util.List;
 
+import io.reactivex.rxjava3.core.Flowable;
+
 public class PhraseViewModel extends AndroidViewModel {
 
     private PhraseRepository mRepository;
@@ -27,6 +29,8 @@ public class PhraseViewModel extends AndroidViewModel {
         return mRepository.getPhraseRange(startTime, stopTime);
     }
 
+    public Flowable<List<Phrase>> getPhraseRangeFlowable(long startTime, long stopTime) {return mRepository.getPhraseRangeFlowable(startTime, stopTime);}
+
     public LiveData<Phrase> getPhrase(long id) {return mRepository.getPhrase(id);}
     public Phrase getPhraseSnapshot(long id) {return mRepository.getPhraseSnapshot(id);}
     //public List<Phrase> getPhrases(List<Long> ids) {return mRepository.getPhrases(ids);}
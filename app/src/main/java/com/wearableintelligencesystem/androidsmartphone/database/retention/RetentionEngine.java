@@ -0,0 +1,421 @@
+package com.wearableintelligencesystem.androidsmartphone.database.retention;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.wearableintelligencesystem.androidsmartphone.database.DatabaseExecutors;
+import com.wearableintelligencesystem.androidsmartphone.database.WearableAiRoomDatabase;
+import com.wearableintelligencesystem.androidsmartphone.database.export.DataExportEngine;
+import com.wearableintelligencesystem.androidsmartphone.database.facialemotion.FacialEmotionDao;
+import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileDao;
+import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileEntity;
+import com.wearableintelligencesystem.androidsmartphone.database.person.PersonDao;
+import com.wearableintelligencesystem.androidsmartphone.database.phrase.Phrase;
+import com.wearableintelligencesystem.androidsmartphone.database.phrase.PhraseDao;
+import com.wearableintelligencesystem.androidsmartphone.database.summary.MemorySummaryDao;
+import com.wearableintelligencesystem.androidsmartphone.utils.PovImageStore;
+
+import org.json.JSONException;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
+
+//keeps the lifelog from growing forever. Old data goes through a few tiers:
+//  - phrase rows that never got any words (a placeholder whose transcript never arrived) are dropped
+//  - POV images older than a few days are replaced by their thumbnails
+//  - phrases, facial emotions and face sightings older than the archive age are moved out of the database into gzipped NDJSON segments under files/archive
+//  - the freed pages are handed back with an incremental vacuum and the query planner stats are refreshed
+//every step works in small batches on the shared database writer, so normal writes are never held up for long, and stops between batches when cancelled
+//how far each step got is kept in a small properties file, so an interrupted run picks up where it left off. RetentionScheduler decides when to run this
+public class RetentionEngine {
+    private static final String TAG = "WearableAi_RetentionEngine";
+
+    public static final long COMPACT_AFTER_MS = TimeUnit.DAYS.toMillis(1);
+    public static final long DOWNSAMPLE_AFTER_MS = TimeUnit.DAYS.toMillis(7);
+    public static final long ARCHIVE_AFTER_MS = TimeUnit.DAYS.toMillis(90);
+
+    private static final int BATCH_SIZE = 500;
+    private static final int IMAGE_BATCH_SIZE = 50;
+    private static final int VACUUM_PAGES = 2048;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    //the one full VACUUM holds up every write while it runs, past this it's rolled back and tried again next run
+    private static final long FULL_VACUUM_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(20);
+
+    private static final String STATE_FILE = "retention.properties";
+    private static final String ARCHIVE_DIR = "archive";
+    private static final String LAST_RUN = "lastRun";
+    private static final String PHRASES_COMPACTED_ID = "phrases.compactedId";
+    private static final String IMAGES_DOWNSAMPLED_ID = "images.downsampledId";
+
+    private final WearableAiRoomDatabase mDatabase;
+    private final PhraseDao mPhraseDao;
+    private final FacialEmotionDao mFacialEmotionDao;
+    private final MediaFileDao mMediaFileDao;
+    private final PersonDao mPersonDao;
+    private final MemorySummaryDao mMemorySummaryDao;
+    private final File stateFile;
+    private final File archiveDir;
+    private volatile boolean cancelled = false;
+    private volatile CancellationSignal vacuumSignal;
+
+    //one table we know how to move to the archive
+    private interface ArchiveSource {
+        Cursor getChunk(long before, int limit);
+        void delete(List<Long> ids);
+    }
+
+    public RetentionEngine(Context context) {
+        mDatabase = WearableAiRoomDatabase.getDatabase(context);
+        mPhraseDao = mDatabase.phraseDao();
+        mFacialEmotionDao = mDatabase.facialEmotionDao();
+        mMediaFileDao = mDatabase.mediaFileDao();
+        mPersonDao = mDatabase.personDao();
+        mMemorySummaryDao = mDatabase.memorySummaryDao();
+        stateFile = new File(context.getFilesDir(), STATE_FILE);
+        archiveDir = new File(context.getFilesDir(), ARCHIVE_DIR);
+    }
+
+    //runs every tier once, blocking, so call this from a background thread
+    public void run() throws IOException, InterruptedException, ExecutionException {
+        cancelled = false;
+        Properties state = loadState();
+        long now = System.currentTimeMillis();
+        long start = System.nanoTime();
+
+        compactPhrases(state, now - COMPACT_AFTER_MS);
+        archive("phrases", now - ARCHIVE_AFTER_MS, new ArchiveSource() {
+            public Cursor getChunk(long before, int limit){ return mPhraseDao.getArchivablePhraseCursor(before, limit); }
+            public void delete(List<Long> ids){ mPhraseDao.deleteUnretainedPhrases(ids); }
+        });
+        archive("facial_emotions", now - ARCHIVE_AFTER_MS, new ArchiveSource() {
+            public Cursor getChunk(long before, int limit){ return mFacialEmotionDao.getArchivableFacialEmotionCursor(before, limit); }
+            public void delete(List<Long> ids){ mFacialEmotionDao.deleteFacialEmotions(ids); }
+        });
+        archive("face_sightings", now - ARCHIVE_AFTER_MS, new ArchiveSource() {
+            public Cursor getChunk(long before, int limit){ return mPersonDao.getArchivableSightingCursor(before, limit); }
+            public void delete(List<Long> ids){ mPersonDao.deleteSightingsById(ids); }
+        });
+        downsampleImages(state, now - DOWNSAMPLE_AFTER_MS);
+        if (cancelled) {
+            Log.d(TAG, "Retention run cancelled, will continue next time");
+            return;
+        }
+        vacuumAndAnalyze();
+
+        state.setProperty(LAST_RUN, Long.toString(now));
+        saveState(state);
+        Log.d(TAG, "Retention run finished in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+    }
+
+    //stop after the current batch, or roll back the full VACUUM if that's what's running
+    public void cancel(){
+        cancelled = true;
+        CancellationSignal signal = vacuumSignal;
+        if (signal != null) {
+            signal.cancel();
+        }
+    }
+
+    public long getLastRun(){
+        try {
+            return Long.parseLong(loadState().getProperty(LAST_RUN, "0"));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void compactPhrases(Properties state, long before) throws IOException, InterruptedException, ExecutionException {
+        long afterId = Long.parseLong(state.getProperty(PHRASES_COMPACTED_ID, "0"));
+        int deleted = 0;
+        while (!cancelled) {
+            final long from = afterId;
+            List<Phrase> batch = DatabaseExecutors.read(() -> mPhraseDao.getPhrasesBefore(before, from, BATCH_SIZE)).get();
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            //every transcript rewrites its one row as it goes, so a row with words in it is the user's and is never touched here
+            List<Long> empty = new ArrayList<>();
+            for (Phrase phrase : batch) {
+                if (phrase.getPhrase().trim().isEmpty()) {
+                    empty.add(phrase.getId());
+                }
+            }
+            if (!empty.isEmpty()) {
+                deleted += DatabaseExecutors.write(() -> deleteEmptyPhrases(empty)).get();
+            }
+
+            afterId = batch.get(batch.size() - 1).getId();
+            state.setProperty(PHRASES_COMPACTED_ID, Long.toString(afterId));
+            saveState(state);
+            if (batch.size() < BATCH_SIZE) {
+                break;
+            }
+        }
+        Log.d(TAG, "Compacted " + deleted + " empty phrase rows");
+    }
+
+    //rows with nothing said in them never should have counted towards the day summaries, so they're taken back out in the same transaction
+    private int deleteEmptyPhrases(List<Long> ids){
+        return mDatabase.runInTransaction(() -> {
+            for (long timestamp : mPhraseDao.getUnretainedPhraseTimestamps(ids)) {
+                mMemorySummaryDao.subtractPhrase(timestamp);
+            }
+            return mPhraseDao.deleteUnretainedPhrases(ids);
+        });
+    }
+
+    //each chunk becomes its own segment file, written and synced before the rows are deleted, so a crash can only ever leave a row in both places, never in neither
+    private void archive(String name, long before, ArchiveSource source) throws InterruptedException, ExecutionException {
+        int archived = 0;
+        while (!cancelled) {
+            int rows = DatabaseExecutors.write(() -> archiveChunk(name, before, source)).get();
+            archived += rows;
+            if (rows < BATCH_SIZE) {
+                break;
+            }
+        }
+        Log.d(TAG, "Archived " + archived + " " + name + " rows");
+    }
+
+    private int archiveChunk(String name, long before, ArchiveSource source) throws IOException, JSONException {
+        List<Long> ids = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        try (Cursor cursor = source.getChunk(before, BATCH_SIZE)) {
+            int idIdx = cursor.getColumnIndexOrThrow("id");
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(idIdx));
+                lines.add(DataExportEngine.jsonRow(cursor).toString());
+            }
+        }
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        File dir = new File(archiveDir, name);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create archive directory " + dir);
+        }
+        File segment = new File(dir, ids.get(0) + "_" + ids.get(ids.size() - 1) + ".ndjson.gz");
+        File tmp = new File(segment.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+            writer.flush();
+            gzip.finish();
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(segment)) {
+            throw new IOException("Could not write archive segment " + segment);
+        }
+
+        source.delete(ids);
+        return ids.size();
+    }
+
+    private void downsampleImages(Properties state, long before) throws IOException, InterruptedException, ExecutionException {
+        long afterId = Long.parseLong(state.getProperty(IMAGES_DOWNSAMPLED_ID, "0"));
+        int shrunk = 0;
+        while (!cancelled) {
+            final long from = afterId;
+            List<MediaFileEntity> batch = DatabaseExecutors.read(() -> mMediaFileDao.getImagesToDownsample(before, from, IMAGE_BATCH_SIZE)).get();
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (MediaFileEntity image : batch) {
+                if (cancelled) {
+                    break;
+                }
+                if (downsample(new File(image.getLocalPath()))) {
+                    shrunk++;
+                }
+                afterId = image.getId();
+            }
+            state.setProperty(IMAGES_DOWNSAMPLED_ID, Long.toString(afterId));
+            saveState(state);
+            if (batch.size() < IMAGE_BATCH_SIZE) {
+                break;
+            }
+        }
+        Log.d(TAG, "Downsampled " + shrunk + " images");
+    }
+
+    //replaces the image with its thumbnail, returns false if there was nothing to do
+    //images from the PovImageStore are named by the sha1 of their bytes, so the thumbnail is stored under its own hash and every row that
+    //pointed at the image is moved over to it before the image goes. Anything else is rewritten in place
+    private boolean downsample(File imageFile) throws InterruptedException, ExecutionException {
+        if (!imageFile.exists()) {
+            return false;
+        }
+        try {
+            byte[] thumbnail = getThumbnailJpeg(imageFile);
+            if (thumbnail == null) {
+                return false;
+            }
+            if (!PovImageStore.isContentAddressed(imageFile)) {
+                File tmp = new File(imageFile.getPath() + ".tmp");
+                try (FileOutputStream out = new FileOutputStream(tmp)) {
+                    out.write(thumbnail);
+                    out.getFD().sync();
+                }
+                return tmp.renameTo(imageFile);
+            }
+
+            File thumbnailFile = PovImageStore.storeBeside(imageFile, thumbnail);
+            if (thumbnailFile.equals(imageFile)) {
+                return false;
+            }
+            String oldPath = imageFile.getPath();
+            String newPath = thumbnailFile.getPath();
+            DatabaseExecutors.write(() -> {
+                mMediaFileDao.updateLocalPath(oldPath, newPath);
+                return null;
+            }).get();
+            PovImageStore.getThumbnailFile(imageFile).delete();
+            return imageFile.delete();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not downsample " + imageFile, e);
+            return false;
+        }
+    }
+
+    //the thumbnail the PovImageStore wrote next to the image, or one made now. null if the image is already thumbnail sized
+    private static byte[] getThumbnailJpeg(File imageFile) throws IOException {
+        File storedThumbnail = PovImageStore.getThumbnailFile(imageFile);
+        if (storedThumbnail.exists()) {
+            try (RandomAccessFile raf = new RandomAccessFile(storedThumbnail, "r")) {
+                byte[] jpeg = new byte[(int) raf.length()];
+                raf.readFully(jpeg);
+                return jpeg;
+            }
+        }
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(imageFile.getPath(), bounds);
+        if (Math.max(bounds.outWidth, bounds.outHeight) <= PovImageStore.THUMBNAIL_MAX_EDGE) {
+            return null;
+        }
+        Bitmap thumbnail = PovImageStore.scaleToThumbnail(BitmapFactory.decodeFile(imageFile.getPath(), PovImageStore.sampledOptions(bounds)));
+        if (thumbnail == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            thumbnail.compress(Bitmap.CompressFormat.JPEG, PovImageStore.THUMBNAIL_QUALITY, out);
+            return out.toByteArray();
+        } finally {
+            thumbnail.recycle();
+        }
+    }
+
+    //the database is switched to incremental auto vacuum the first time through, which takes a full VACUUM - it blocks every write while it
+    //rewrites the whole file, so it only runs while charging, gets FULL_VACUUM_TIMEOUT_MS, and is rolled back when that's up or we're cancelled
+    //(SQLite leaves auto_vacuum as it was, so the next run tries again). After that each run gives back a bounded number of free pages
+    private void vacuumAndAnalyze() throws InterruptedException, ExecutionException {
+        SupportSQLiteDatabase db = mDatabase.getOpenHelper().getWritableDatabase();
+        long autoVacuum = DatabaseExecutors.read(() -> {
+            try (Cursor cursor = db.query("PRAGMA auto_vacuum")) {
+                return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+            }
+        }).get();
+        if (autoVacuum != AUTO_VACUUM_INCREMENTAL && !fullVacuum(db)) {
+            return;
+        }
+
+        DatabaseExecutors.write(() -> {
+            if (autoVacuum == AUTO_VACUUM_INCREMENTAL) {
+                //incremental_vacuum frees one page per row stepped, so the cursor has to be drained
+                try (Cursor cursor = db.query("PRAGMA incremental_vacuum(" + VACUUM_PAGES + ")")) {
+                    while (cursor.moveToNext()) {
+                    }
+                }
+            }
+            db.execSQL("ANALYZE");
+            return null;
+        }).get();
+    }
+
+    //returns whether it finished
+    private boolean fullVacuum(SupportSQLiteDatabase db) throws InterruptedException, ExecutionException {
+        CancellationSignal signal = new CancellationSignal();
+        vacuumSignal = signal;
+        if (cancelled) {
+            signal.cancel();
+        }
+        Log.d(TAG, "Switching database to incremental auto vacuum");
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> vacuum = DatabaseExecutors.write(() -> {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            //run as a query so it can be interrupted
+            try (Cursor cursor = db.query(new SimpleSQLiteQuery("VACUUM"), signal)) {
+                cursor.moveToFirst();
+                return true;
+            } catch (OperationCanceledException e) {
+                return false;
+            }
+        });
+        try {
+            boolean finished;
+            try {
+                finished = vacuum.get(FULL_VACUUM_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                signal.cancel();
+                finished = vacuum.get();
+            }
+            Log.d(TAG, (finished ? "Full vacuum finished in " : "Full vacuum rolled back after ") + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+            return finished;
+        } finally {
+            vacuumSignal = null;
+        }
+    }
+
+    private Properties loadState() throws IOException {
+        Properties state = new Properties();
+        if (stateFile.exists()) {
+            try (FileInputStream in = new FileInputStream(stateFile)) {
+                state.load(in);
+            }
+        }
+        return state;
+    }
+
+    private void saveState(Properties state) throws IOException {
+        File tmp = new File(stateFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            state.store(out, null);
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(stateFile)) {
+            throw new IOException("Could not save retention state to " + stateFile);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.wearableintelligencesystem.androidsmartphone.database.retention;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+//runs the RetentionEngine at most once a day, and only while the phone is plugged in
+//unplugging stops the run after its current batch, the rest is picked up the next time it's charging
+public class RetentionScheduler {
+    private static final String TAG = "WearableAi_RetentionScheduler";
+
+    private static final long RUN_INTERVAL_MS = TimeUnit.DAYS.toMillis(1);
+    //give the rest of the system a minute to settle after plugging in before we start hitting the disk
+    private static final long START_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
+    //how long destroy() waits for the batch in progress, cancelling rolls back a full vacuum so a batch is never long
+    private static final long STOP_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(5);
+
+    private final Context mContext;
+    private final RetentionEngine mRetentionEngine;
+    private final HandlerThread retentionThread;
+    private final Handler retentionHandler;
+
+    private final Runnable runRetention = new Runnable() {
+        @Override
+        public void run() {
+            if (System.currentTimeMillis() - mRetentionEngine.getLastRun() < RUN_INTERVAL_MS) {
+                return;
+            }
+            try {
+                mRetentionEngine.run();
+            } catch (IOException | ExecutionException e) {
+                Log.e(TAG, "Retention run failed, will retry next time the phone is charging", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    };
+
+    private final BroadcastReceiver powerReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_POWER_CONNECTED.equals(intent.getAction())) {
+                scheduleRun();
+            } else if (Intent.ACTION_POWER_DISCONNECTED.equals(intent.getAction())) {
+                retentionHandler.removeCallbacks(runRetention);
+                mRetentionEngine.cancel();
+            }
+        }
+    };
+
+    public RetentionScheduler(Context context) {
+        mContext = context.getApplicationContext();
+        mRetentionEngine = new RetentionEngine(mContext);
+        retentionThread = new HandlerThread("WearableAiRetention");
+        retentionThread.start();
+        retentionHandler = new Handler(retentionThread.getLooper());
+    }
+
+    public void start(){
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+        mContext.registerReceiver(powerReceiver, filter);
+
+        //we won't get a POWER_CONNECTED if we were started while already plugged in
+        if (isCharging()) {
+            scheduleRun();
+        }
+    }
+
+    //returns once the run in progress has stopped, so the database can be closed after
+    public void destroy(){
+        mContext.unregisterReceiver(powerReceiver);
+        retentionHandler.removeCallbacks(runRetention);
+        mRetentionEngine.cancel();
+        retentionThread.quitSafely();
+        try {
+            retentionThread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (retentionThread.isAlive()) {
+            Log.w(TAG, "Retention run still going after " + STOP_TIMEOUT_MS + "ms, closing the database anyway");
+        }
+    }
+
+    private void scheduleRun(){
+        retentionHandler.removeCallbacks(runRetention);
+        retentionHandler.postDelayed(runRetention, START_DELAY_MS);
+    }
+
+    private boolean isCharging(){
+        Intent batteryStatus = mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (batteryStatus == null) {
+            return false;
+        }
+        int status = batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        return status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+    }
+}
@@ -0,0 +1,44 @@
+package com.wearableintelligencesystem.androidsmartphone.database.summary;
+
+import java.util.List;
+import java.util.Objects;
+
+//everything the timeline shows for one day, put together from the summary tables by MemorySummaryRepository
+public class DaySummary {
+    private final MemorySummary day;
+    private final List<String> topPeople;
+    private final String dominantEmotion; //null if no faces were read that day
+    private final Long busiestHour; //start of the hour with the most phrases, null if nothing was said
+
+    public DaySummary(MemorySummary day, List<String> topPeople, String dominantEmotion, Long busiestHour) {
+        this.day = day;
+        this.topPeople = topPeople;
+        this.dominantEmotion = dominantEmotion;
+        this.busiestHour = busiestHour;
+    }
+
+    public long getDayStart(){return day.getBucketStart();}
+    public int getPhraseCount(){return day.getPhraseCount();}
+    public int getVoiceNoteCount(){return day.getVoiceNoteCount();}
+    public int getMediaCount(){return day.getMediaCount();}
+    public int getSightingCount(){return day.getSightingCount();}
+    public int getMemoryCacheCount(){return day.getMemoryCacheCount();}
+    public List<String> getTopPeople(){return topPeople;}
+    public String getDominantEmotion(){return dominantEmotion;}
+    public Long getBusiestHour(){return busiestHour;}
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DaySummary)) return false;
+        DaySummary other = (DaySummary) o;
+        return getDayStart() == other.getDayStart() && getPhraseCount() == other.getPhraseCount() && getVoiceNoteCount() == other.getVoiceNoteCount()
+                && getMediaCount() == other.getMediaCount() && getSightingCount() == other.getSightingCount() && getMemoryCacheCount() == other.getMemoryCacheCount()
+                && topPeople.equals(other.topPeople) && Objects.equals(dominantEmotion, other.dominantEmotion) && Objects.equals(busiestHour, other.busiestHour);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getDayStart(), getPhraseCount(), getVoiceNoteCount(), getMediaCount(), getSightingCount(), getMemoryCacheCount(), topPeople, dominantEmotion, busiestHour);
+    }
+}
@@ -0,0 +1,36 @@
+package com.wearableintelligencesystem.androidsmartphone.database.summary;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+//how many times each facial emotion was detected in a day/hour bucket, the dominant one is the one with the most occurrences
+@Entity(tableName = "EmotionSummaryTable", primaryKeys = {"granularity", "bucketStart", "emotion"})
+public class EmotionSummary {
+
+    @NonNull
+    @ColumnInfo(name = "granularity")
+    private String granularity;
+
+    @ColumnInfo(name = "bucketStart")
+    private long bucketStart;
+
+    @NonNull
+    @ColumnInfo(name = "emotion")
+    private String emotion;
+
+    @ColumnInfo(name = "occurrences")
+    private int occurrences;
+
+    public EmotionSummary(@NonNull String granularity, long bucketStart, @NonNull String emotion, int occurrences) {
+        this.granularity = granularity;
+        this.bucketStart = bucketStart;
+        this.emotion = emotion;
+        this.occurrences = occurrences;
+    }
+
+    public String getGranularity(){return this.granularity;}
+    public long getBucketStart(){return this.bucketStart;}
+    public String getEmotion(){return this.emotion;}
+    public int getOccurrences(){return this.occurrences;}
+}
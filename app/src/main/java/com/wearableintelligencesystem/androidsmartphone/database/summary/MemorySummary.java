@@ -0,0 +1,54 @@
+package com.wearableintelligencesystem.androidsmartphone.database.summary;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+//running totals of what was captured in one day or one hour, kept up to date by triggers (see MemorySummaryTriggers)
+//day buckets start at local midnight, hour buckets on the hour. Rows are never removed when the underlying data is archived, so old history stays summarized
+@Entity(tableName = "MemorySummaryTable", primaryKeys = {"granularity", "bucketStart"})
+public class MemorySummary {
+    public static final String DAY = "day";
+    public static final String HOUR = "hour";
+
+    //DAY or HOUR
+    @NonNull
+    @ColumnInfo(name = "granularity")
+    private String granularity;
+
+    @ColumnInfo(name = "bucketStart")
+    private long bucketStart;
+
+    @ColumnInfo(name = "phraseCount")
+    private int phraseCount;
+
+    @ColumnInfo(name = "voiceNoteCount")
+    private int voiceNoteCount;
+
+    @ColumnInfo(name = "mediaCount")
+    private int mediaCount;
+
+    @ColumnInfo(name = "sightingCount")
+    private int sightingCount;
+
+    @ColumnInfo(name = "memoryCacheCount")
+    private int memoryCacheCount;
+
+    public MemorySummary(@NonNull String granularity, long bucketStart, int phraseCount, int voiceNoteCount, int mediaCount, int sightingCount, int memoryCacheCount) {
+        this.granularity = granularity;
+        this.bucketStart = bucketStart;
+        this.phraseCount = phraseCount;
+        this.voiceNoteCount = voiceNoteCount;
+        this.mediaCount = mediaCount;
+        this.sightingCount = sightingCount;
+        this.memoryCacheCount = memoryCacheCount;
+    }
+
+    public String getGranularity(){return this.granularity;}
+    public long getBucketStart(){return this.bucketStart;}
+    public int getPhraseCount(){return this.phraseCount;}
+    public int getVoiceNoteCount(){return this.voiceNoteCount;}
+    public int getMediaCount(){return this.mediaCount;}
+    public int getSightingCount(){return this.sightingCount;}
+    public int getMemoryCacheCount(){return this.memoryCacheCount;}
+}
@@ -0,0 +1,33 @@
+package com.wearableintelligencesystem.androidsmartphone.database.summary;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+
+import java.util.List;
+
+//the summary tables are written by MemorySummaryTriggers, this only reads them (and corrects them after compaction)
+@Dao
+public interface MemorySummaryDao {
+
+    @Query("SELECT * FROM MemorySummaryTable WHERE granularity = :granularity ORDER BY bucketStart DESC LIMIT :limit")
+    List<MemorySummary> getRecentSummaries(String granularity, int limit);
+
+    @Query("SELECT * FROM MemorySummaryTable WHERE granularity = :granularity AND bucketStart >= :startTime AND bucketStart < :endTime ORDER BY bucketStart ASC")
+    List<MemorySummary> getSummaries(String granularity, long startTime, long endTime);
+
+    //people without a real name are left out, they'd only show up as "unknown"
+    @Query("SELECT PersonSummaryTable.bucketStart AS bucketStart, PersonSummaryTable.personId AS personId, PeopleTable.name AS name, PersonSummaryTable.sightings AS sightings " +
+            "FROM PersonSummaryTable INNER JOIN PeopleTable ON PeopleTable.id = PersonSummaryTable.personId " +
+            "WHERE PersonSummaryTable.granularity = :granularity AND PersonSummaryTable.bucketStart >= :startTime AND PersonSummaryTable.bucketStart < :endTime " +
+            "AND PeopleTable.name NOT IN ('unknown', 'confirmed_unknown', 'deleted') ORDER BY PersonSummaryTable.bucketStart ASC, PersonSummaryTable.sightings DESC")
+    List<SummaryPerson> getPeopleSeen(String granularity, long startTime, long endTime);
+
+    @Query("SELECT * FROM EmotionSummaryTable WHERE granularity = :granularity AND bucketStart >= :startTime AND bucketStart < :endTime ORDER BY bucketStart ASC, occurrences DESC")
+    List<EmotionSummary> getEmotions(String granularity, long startTime, long endTime);
+
+    //an empty phrase row compaction removed shouldn't count towards its day and hour
+    @Query("UPDATE MemorySummaryTable SET phraseCount = MAX(0, phraseCount - 1) " +
+            "WHERE (granularity = 'day' AND bucketStart = " + MemorySummaryTriggers.DAY_BUCKET_OF_TIMESTAMP + ") " +
+            "OR (granularity = 'hour' AND bucketStart = " + MemorySummaryTriggers.HOUR_BUCKET_OF_TIMESTAMP + ")")
+    void subtractPhrase(long timestamp);
+}
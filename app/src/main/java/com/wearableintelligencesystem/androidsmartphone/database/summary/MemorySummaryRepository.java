@@ -0,0 +1,88 @@
+package com.wearableintelligencesystem.androidsmartphone.database.summary;
+
+import android.app.Application;
+
+import com.wearableintelligencesystem.androidsmartphone.database.RxQueries;
+import com.wearableintelligencesystem.androidsmartphone.database.WearableAiRoomDatabase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+public class MemorySummaryRepository {
+
+    private static final String[] SUMMARY_TABLES = {"MemorySummaryTable", "PersonSummaryTable", "EmotionSummaryTable", "PeopleTable"};
+    private static final int TOP_PEOPLE = 3;
+
+    private WearableAiRoomDatabase mDatabase;
+    private MemorySummaryDao mMemorySummaryDao;
+
+    public MemorySummaryRepository(Application application) {
+        WearableAiRoomDatabase db = WearableAiRoomDatabase.getDatabase(application);
+        mDatabase = db;
+        mMemorySummaryDao = db.memorySummaryDao();
+    }
+
+    public void destroy(){
+    }
+
+    //the most recent days that have anything in them, newest first. Reads at most a few rows per day, however long the lifelog is
+    public Flowable<List<DaySummary>> getRecentDaysFlowable(int days) {
+        return RxQueries.flowable(mDatabase, SUMMARY_TABLES, () -> getRecentDays(days));
+    }
+
+    private List<DaySummary> getRecentDays(int days){
+        List<MemorySummary> daySummaries = mMemorySummaryDao.getRecentSummaries(MemorySummary.DAY, days);
+        List<DaySummary> result = new ArrayList<>(daySummaries.size());
+        if (daySummaries.isEmpty()) {
+            return result;
+        }
+        long start = daySummaries.get(daySummaries.size() - 1).getBucketStart();
+        long end = Long.MAX_VALUE;
+
+        Map<Long, List<String>> people = new HashMap<>();
+        for (SummaryPerson person : mMemorySummaryDao.getPeopleSeen(MemorySummary.DAY, start, end)) {
+            List<String> names = people.get(person.bucketStart);
+            if (names == null) {
+                names = new ArrayList<>();
+                people.put(person.bucketStart, names);
+            }
+            if (names.size() < TOP_PEOPLE) {
+                names.add(person.name);
+            }
+        }
+
+        //ordered by count within each day, so the first one seen is the dominant one
+        Map<Long, String> emotions = new HashMap<>();
+        for (EmotionSummary emotion : mMemorySummaryDao.getEmotions(MemorySummary.DAY, start, end)) {
+            if (!emotions.containsKey(emotion.getBucketStart())) {
+                emotions.put(emotion.getBucketStart(), emotion.getEmotion());
+            }
+        }
+
+        //days are newest first and hours oldest first, so one pass files each hour under the latest day that started before it
+        Map<Long, MemorySummary> busiestHours = new HashMap<>();
+        int dayIndex = daySummaries.size() - 1;
+        for (MemorySummary hour : mMemorySummaryDao.getSummaries(MemorySummary.HOUR, start, end)) {
+            while (dayIndex > 0 && daySummaries.get(dayIndex - 1).getBucketStart() <= hour.getBucketStart()) {
+                dayIndex--;
+            }
+            long dayStart = daySummaries.get(dayIndex).getBucketStart();
+            MemorySummary busiest = busiestHours.get(dayStart);
+            if (hour.getPhraseCount() > 0 && (busiest == null || hour.getPhraseCount() > busiest.getPhraseCount())) {
+                busiestHours.put(dayStart, hour);
+            }
+        }
+
+        for (MemorySummary day : daySummaries) {
+            long dayStart = day.getBucketStart();
+            List<String> names = people.get(dayStart);
+            MemorySummary busiest = busiestHours.get(dayStart);
+            result.add(new DaySummary(day, names == null ? new ArrayList<>() : names, emotions.get(dayStart), busiest == null ? null : busiest.getBucketStart()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,135 @@
+package com.wearableintelligencesystem.androidsmartphone.database.summary;
+
+import android.database.Cursor;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+//keeps the summary tables in step with the lifelog tables, with one cheap +1 per written row instead of re-aggregating
+//these are plain SQLite triggers so every writer (service, UI, retention, imports) is covered without going through a repository
+//rows are only counted on insert, deleting or archiving the underlying data leaves the summaries alone. The one exception is phrase
+//compaction, which removes empty phrase rows that should never have been counted, see MemorySummaryDao.subtractPhrase
+public final class MemorySummaryTriggers {
+
+    //local midnight / start of the hour of a millisecond timestamp, as milliseconds. Day buckets follow the phone's time zone at the time of writing
+    static final String DAY_BUCKET_OF_TIMESTAMP = "CAST(strftime('%s', :timestamp / 1000, 'unixepoch', 'localtime', 'start of day', 'utc') AS INTEGER) * 1000";
+    static final String HOUR_BUCKET_OF_TIMESTAMP = "(:timestamp / 3600000) * 3600000";
+
+    private static final String[] GRANULARITIES = {MemorySummary.DAY, MemorySummary.HOUR};
+
+    //one kind of row that bumps a MemorySummaryTable counter
+    private static class CountedTable {
+        final String table;
+        final String timeColumn;
+        final String condition; //null to count every row
+        final String counter;
+        CountedTable(String table, String timeColumn, String condition, String counter){
+            this.table = table;
+            this.timeColumn = timeColumn;
+            this.condition = condition;
+            this.counter = counter;
+        }
+    }
+
+    private static final CountedTable[] COUNTED_TABLES = {
+            new CountedTable("PhraseTable", "timestamp", null, "phraseCount"),
+            new CountedTable("VoiceCommandTable", "timestamp", "%1$scommandName = 'save speech' AND %1$sisMaster = 1", "voiceNoteCount"),
+            new CountedTable("MediaFileTable", "startTimestamp", null, "mediaCount"),
+            new CountedTable("FaceSightingTable", "timestamp", null, "sightingCount"),
+            new CountedTable("MemoryCacheTable", "startTimestamp", null, "memoryCacheCount"),
+    };
+
+    private MemorySummaryTriggers() {
+    }
+
+    static String bucket(String granularity, String timeExpression){
+        String template = MemorySummary.DAY.equals(granularity) ? DAY_BUCKET_OF_TIMESTAMP : HOUR_BUCKET_OF_TIMESTAMP;
+        return template.replace(":timestamp", timeExpression);
+    }
+
+    public static void create(SupportSQLiteDatabase db){
+        for (CountedTable counted : COUNTED_TABLES) {
+            StringBuilder body = new StringBuilder();
+            for (String granularity : GRANULARITIES) {
+                append(body, bumpSummary(granularity, bucket(granularity, "NEW." + counted.timeColumn), counted.counter, "1"));
+            }
+            String when = counted.condition == null ? "" : " WHEN " + String.format(counted.condition, "NEW.");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS `summary_" + counted.table + "_insert` AFTER INSERT ON `" + counted.table + "`" + when + " BEGIN " + body + "END");
+        }
+
+        StringBuilder seen = new StringBuilder();
+        StringBuilder moved = new StringBuilder();
+        StringBuilder felt = new StringBuilder();
+        for (String granularity : GRANULARITIES) {
+            String newBucket = bucket(granularity, "NEW.timestamp");
+            append(seen, bumpPerson(granularity, newBucket, "NEW.personId", "1"));
+            append(moved, bumpPerson(granularity, bucket(granularity, "OLD.timestamp"), "OLD.personId", "-1"));
+            append(moved, bumpPerson(granularity, newBucket, "NEW.personId", "1"));
+            append(felt, bumpEmotion(granularity, newBucket, "NEW.facial_emotion", "1"));
+        }
+        moved.append("DELETE FROM PersonSummaryTable WHERE personId = OLD.personId AND sightings <= 0; ");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `summary_FaceSightingTable_person_insert` AFTER INSERT ON `FaceSightingTable` BEGIN " + seen + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `summary_FaceSightingTable_person_update` AFTER UPDATE OF personId ON `FaceSightingTable` WHEN OLD.personId != NEW.personId BEGIN " + moved + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `summary_FacialEmotionTable_insert` AFTER INSERT ON `FacialEmotionTable` BEGIN " + felt + "END");
+    }
+
+    //summarizes whatever is already in the database, only for upgrading an existing install - the triggers take over from here
+    public static void backfill(SupportSQLiteDatabase db){
+        for (String granularity : GRANULARITIES) {
+            for (CountedTable counted : COUNTED_TABLES) {
+                String where = counted.condition == null ? "" : " WHERE " + String.format(counted.condition, "");
+                try (Cursor cursor = db.query("SELECT " + bucket(granularity, counted.timeColumn) + " AS bucket, COUNT(*) FROM " + counted.table + where + " GROUP BY bucket")) {
+                    while (cursor.moveToNext()) {
+                        exec(db, bumpSummary(granularity, Long.toString(cursor.getLong(0)), counted.counter, Long.toString(cursor.getLong(1))));
+                    }
+                }
+            }
+            try (Cursor cursor = db.query("SELECT " + bucket(granularity, "timestamp") + " AS bucket, personId, COUNT(*) FROM FaceSightingTable GROUP BY bucket, personId")) {
+                while (cursor.moveToNext()) {
+                    exec(db, bumpPerson(granularity, Long.toString(cursor.getLong(0)), Long.toString(cursor.getLong(1)), Long.toString(cursor.getLong(2))));
+                }
+            }
+            try (Cursor cursor = db.query("SELECT " + bucket(granularity, "timestamp") + " AS bucket, facial_emotion, COUNT(*) FROM FacialEmotionTable GROUP BY bucket, facial_emotion")) {
+                while (cursor.moveToNext()) {
+                    exec(db, bumpEmotion(granularity, Long.toString(cursor.getLong(0)), quote(cursor.getString(1)), Long.toString(cursor.getLong(2))));
+                }
+            }
+        }
+    }
+
+    //sqlite has UPSERT only from 3.24 (Android 11), so every bump is an insert-if-missing followed by an add
+    private static String[] bumpSummary(String granularity, String bucket, String counter, String amount){
+        return new String[]{
+                "INSERT OR IGNORE INTO MemorySummaryTable (granularity, bucketStart, phraseCount, voiceNoteCount, mediaCount, sightingCount, memoryCacheCount) " +
+                        "VALUES ('" + granularity + "', " + bucket + ", 0, 0, 0, 0, 0)",
+                "UPDATE MemorySummaryTable SET " + counter + " = " + counter + " + " + amount + " WHERE granularity = '" + granularity + "' AND bucketStart = " + bucket};
+    }
+
+    private static String[] bumpPerson(String granularity, String bucket, String personId, String amount){
+        return new String[]{
+                "INSERT OR IGNORE INTO PersonSummaryTable (granularity, bucketStart, personId, sightings) VALUES ('" + granularity + "', " + bucket + ", " + personId + ", 0)",
+                "UPDATE PersonSummaryTable SET sightings = sightings + " + amount + " WHERE granularity = '" + granularity + "' AND bucketStart = " + bucket + " AND personId = " + personId};
+    }
+
+    private static String[] bumpEmotion(String granularity, String bucket, String emotion, String amount){
+        return new String[]{
+                "INSERT OR IGNORE INTO EmotionSummaryTable (granularity, bucketStart, emotion, occurrences) VALUES ('" + granularity + "', " + bucket + ", " + emotion + ", 0)",
+                "UPDATE EmotionSummaryTable SET occurrences = occurrences + " + amount + " WHERE granularity = '" + granularity + "' AND bucketStart = " + bucket + " AND emotion = " + emotion};
+    }
+
+    private static void append(StringBuilder triggerBody, String[] statements){
+        for (String statement : statements) {
+            triggerBody.append(statement).append("; ");
+        }
+    }
+
+    //execSQL only runs the first statement it's given
+    private static void exec(SupportSQLiteDatabase db, String[] statements){
+        for (String statement : statements) {
+            db.execSQL(statement);
+        }
+    }
+
+    private static String quote(String value){
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
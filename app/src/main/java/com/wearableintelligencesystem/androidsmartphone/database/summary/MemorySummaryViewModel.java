@@ -0,0 +1,21 @@
+package com.wearableintelligencesystem.androidsmartphone.database.summary;
+
+import android.app.Application;
+
+import androidx.lifecycle.AndroidViewModel;
+
+import java.util.List;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+public class MemorySummaryViewModel extends AndroidViewModel {
+
+    private MemorySummaryRepository mRepository;
+
+    public MemorySummaryViewModel (Application application) {
+        super(application);
+        mRepository = new MemorySummaryRepository(application);
+    }
+
+    public Flowable<List<DaySummary>> getRecentDaysFlowable(int days) {return mRepository.getRecentDaysFlowable(days);}
+}
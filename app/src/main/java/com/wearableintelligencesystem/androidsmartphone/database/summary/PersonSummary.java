@@ -0,0 +1,42 @@
+package com.wearableintelligencesystem.androidsmartphone.database.summary;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+
+import com.wearableintelligencesystem.androidsmartphone.database.person.Person;
+
+//how many times each person was seen in a day/hour bucket, for "who did I see most that day" without touching FaceSightingTable
+//sightings that get moved to another person (merging an unknown face into a known one) move their counts with them
+@Entity(tableName = "PersonSummaryTable", primaryKeys = {"granularity", "bucketStart", "personId"},
+        foreignKeys = @ForeignKey(entity = Person.class, parentColumns = "id", childColumns = "personId", onDelete = ForeignKey.CASCADE),
+        indices = {@Index("personId")})
+public class PersonSummary {
+
+    @NonNull
+    @ColumnInfo(name = "granularity")
+    private String granularity;
+
+    @ColumnInfo(name = "bucketStart")
+    private long bucketStart;
+
+    @ColumnInfo(name = "personId")
+    private long personId;
+
+    @ColumnInfo(name = "sightings")
+    private int sightings;
+
+    public PersonSummary(@NonNull String granularity, long bucketStart, long personId, int sightings) {
+        this.granularity = granularity;
+        this.bucketStart = bucketStart;
+        this.personId = personId;
+        this.sightings = sightings;
+    }
+
+    public String getGranularity(){return this.granularity;}
+    public long getBucketStart(){return this.bucketStart;}
+    public long getPersonId(){return this.personId;}
+    public int getSightings(){return this.sightings;}
+}
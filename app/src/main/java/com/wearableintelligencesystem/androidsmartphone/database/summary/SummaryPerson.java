@@ -0,0 +1,9 @@
+package com.wearableintelligencesystem.androidsmartphone.database.summary;
+
+//one person's sightings in one summary bucket, with their current name
+public class SummaryPerson {
+    public long bucketStart;
+    public long personId;
+    public String name;
+    public int sightings;
+}
@@ -0,0 +1,43 @@
+package com.wearableintelligencesystem.androidsmartphone.database.voicecommand;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+//one row per note saved into a tag bin, a denormalized copy of the "save speech" tag rows in VoiceCommandTable
+//kept up to date by VoiceCommandDao.insert, so loading a bin is one index range scan on (tag, timestamp) instead of a filter over every voice command
+@Entity(tableName = "TagBinTable",
+        foreignKeys = @ForeignKey(entity = VoiceCommandEntity.class, parentColumns = "id", childColumns = "voiceCommandId", onDelete = ForeignKey.CASCADE),
+        indices = {@Index(value = {"tag", "timestamp"}), @Index("transcriptId")})
+public class TagBinEntry {
+
+    //the tag row in VoiceCommandTable this came from
+    @PrimaryKey
+    @ColumnInfo(name = "voiceCommandId")
+    private long voiceCommandId;
+
+    @NonNull
+    @ColumnInfo(name = "tag")
+    private String tag;
+
+    @ColumnInfo(name = "transcriptId")
+    private long transcriptId;
+
+    @ColumnInfo(name = "timestamp")
+    private long timestamp;
+
+    public TagBinEntry(long voiceCommandId, @NonNull String tag, long transcriptId, long timestamp) {
+        this.voiceCommandId = voiceCommandId;
+        this.tag = tag;
+        this.transcriptId = transcriptId;
+        this.timestamp = timestamp;
+    }
+
+    public long getVoiceCommandId(){return this.voiceCommandId;}
+    public String getTag(){return this.tag;}
+    public long getTranscriptId(){return this.transcriptId;}
+    public long getTimestamp(){return this.timestamp;}
+}
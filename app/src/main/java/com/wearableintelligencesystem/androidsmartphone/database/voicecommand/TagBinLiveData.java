@@ -0,0 +1,54 @@
+package com.wearableintelligencesystem.androidsmartphone.database.voicecommand;
+
+import androidx.lifecycle.LiveData;
+
+import com.wearableintelligencesystem.androidsmartphone.database.DatabaseExecutors;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+//the notes in one tag bin
+//Room invalidates a LiveData whenever any row of a table it reads changes, so every open bin used to reload on every voice command (and every transcript, for the phrase joins)
+//this one only reloads when a note lands in its own tag - VoiceCommandRepository calls invalidate(tag) after writing one
+//the registry is process wide, so a note saved by the service refreshes the bin a UI has open
+public class TagBinLiveData extends LiveData<List<VoiceCommandEntity>> {
+    private static final Map<String, Set<TagBinLiveData>> activeBins = new ConcurrentHashMap<>();
+
+    private final VoiceCommandDao mVoiceCommandDao;
+    private final String tag;
+
+    TagBinLiveData(VoiceCommandDao voiceCommandDao, String tag) {
+        mVoiceCommandDao = voiceCommandDao;
+        this.tag = tag;
+    }
+
+    public static void invalidate(String tag){
+        Set<TagBinLiveData> bins = activeBins.get(tag);
+        if (bins != null) {
+            for (TagBinLiveData bin : bins) {
+                bin.load();
+            }
+        }
+    }
+
+    @Override
+    protected void onActive() {
+        activeBins.computeIfAbsent(tag, t -> new CopyOnWriteArraySet<>()).add(this);
+        load();
+    }
+
+    @Override
+    protected void onInactive() {
+        Set<TagBinLiveData> bins = activeBins.get(tag);
+        if (bins != null) {
+            bins.remove(this);
+        }
+    }
+
+    private void load(){
+        DatabaseExecutors.read(() -> mVoiceCommandDao.getTagBinSnapshot(tag)).thenAccept(this::postValue);
+    }
+}
@@ -11,6 +11,7 @@ import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import java.util.Date;
 
 import java.util.List;
@@ -20,8 +21,26 @@ import com.wearableintelligencesystem.androidsmartphone.database.phrase.Phrase;
 @Dao
 public interface VoiceCommandDao {
 
+    //voice notes are saved by this command, their tag rows are what make up the tag bins
+    String VOICE_NOTE_COMMAND = "save speech";
+    String TAG_ARG_KEY = "tag";
+
+    //always insert through here, it keeps TagBinTable in step with the voice command rows
+    @Transaction
+    default long insert(VoiceCommandEntity voiceCommand) {
+        long id = insertVoiceCommandRow(voiceCommand);
+        if (VOICE_NOTE_COMMAND.equals(voiceCommand.getCommandName()) && !voiceCommand.getIsMaster()
+                && TAG_ARG_KEY.equals(voiceCommand.getArgKey()) && voiceCommand.getArgValue() != null) {
+            insertTagBinEntry(new TagBinEntry(id, voiceCommand.getArgValue(), voiceCommand.getTranscriptId(), voiceCommand.getTimestamp()));
+        }
+        return id;
+    }
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    long insertVoiceCommandRow(VoiceCommandEntity voiceCommand);
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    long insert(VoiceCommandEntity voiceCommand);
+    void insertTagBinEntry(TagBinEntry entry);
 
     @Query("DELETE FROM VoiceCommandTable")
     void deleteAll();
@@ -50,19 +69,36 @@ public interface VoiceCommandDao {
     @Query("SELECT * from VoiceCommandTable WHERE commandName=:commandName AND isMaster=:isMaster AND argKey = :argKey AND argValue = :argValue ORDER BY timestamp DESC")
     LiveData<List<VoiceCommandEntity>> getVoiceCommands(String commandName, boolean isMaster, String argKey, String argValue);
 
-    @Query("SELECT * FROM PhraseTable WHERE id IN (" +
-        "SELECT transcriptId from VoiceCommandTable WHERE commandName=:commandName AND isMaster=:isMaster" +
-    ") ORDER BY timestamp DESC")
+    @Query("SELECT * from VoiceCommandTable WHERE commandName=:commandName AND isMaster=:isMaster AND argKey = :argKey AND argValue = :argValue ORDER BY timestamp DESC")
+    List<VoiceCommandEntity> getVoiceCommandsSnapshot(String commandName, boolean isMaster, String argKey, String argValue);
+
+    //DISTINCT because one transcript can hold more than one command
+    @Query("SELECT DISTINCT PhraseTable.* FROM VoiceCommandTable INNER JOIN PhraseTable ON PhraseTable.id = VoiceCommandTable.transcriptId " +
+            "WHERE VoiceCommandTable.commandName=:commandName AND VoiceCommandTable.isMaster=:isMaster ORDER BY PhraseTable.timestamp DESC")
     LiveData<List<Phrase>> getVoiceCommandPhrases(String commandName, boolean isMaster);
 
-    @Query("SELECT * FROM PhraseTable WHERE id IN (" +
-            "SELECT transcriptId from VoiceCommandTable WHERE commandName=:commandName AND isMaster=:isMaster" +
-            ") ORDER BY timestamp DESC")
+    @Query("SELECT DISTINCT PhraseTable.* FROM VoiceCommandTable INNER JOIN PhraseTable ON PhraseTable.id = VoiceCommandTable.transcriptId " +
+            "WHERE VoiceCommandTable.commandName=:commandName AND VoiceCommandTable.isMaster=:isMaster ORDER BY PhraseTable.timestamp DESC")
     List<Phrase> getVoiceCommandPhrasesSnapshot(String commandName, boolean isMaster);
 
-    @Query("SELECT * FROM PhraseTable WHERE id IN (" +
-        "SELECT transcriptId from VoiceCommandTable WHERE commandName=:commandName AND isMaster=:isMaster AND argKey=:argKey AND argValue=:argValue" +
-    ") ORDER BY timestamp DESC")
+    //a range read on the (commandName, isMaster, timestamp) index
+    @Query("SELECT DISTINCT PhraseTable.* FROM VoiceCommandTable INNER JOIN PhraseTable ON PhraseTable.id = VoiceCommandTable.transcriptId " +
+            "WHERE VoiceCommandTable.commandName=:commandName AND VoiceCommandTable.isMaster=:isMaster AND VoiceCommandTable.timestamp BETWEEN :startTime AND :endTime " +
+            "ORDER BY PhraseTable.timestamp DESC")
+    List<Phrase> getVoiceCommandPhrasesInPeriodSnapshot(String commandName, boolean isMaster, long startTime, long endTime);
+
+    @Query("SELECT DISTINCT PhraseTable.* FROM VoiceCommandTable INNER JOIN PhraseTable ON PhraseTable.id = VoiceCommandTable.transcriptId " +
+            "WHERE VoiceCommandTable.commandName=:commandName AND VoiceCommandTable.isMaster=:isMaster AND VoiceCommandTable.argKey=:argKey AND VoiceCommandTable.argValue=:argValue " +
+            "ORDER BY PhraseTable.timestamp DESC")
     LiveData<List<Phrase>> getVoiceCommandPhrases(String commandName, boolean isMaster, String argKey, String argValue);
 
+    //tag bins, read off TagBinTable
+    @Query("SELECT VoiceCommandTable.* FROM TagBinTable INNER JOIN VoiceCommandTable ON VoiceCommandTable.id = TagBinTable.voiceCommandId " +
+            "WHERE TagBinTable.tag = :tag ORDER BY TagBinTable.timestamp DESC")
+    List<VoiceCommandEntity> getTagBinSnapshot(String tag);
+
+    @Query("SELECT PhraseTable.* FROM TagBinTable INNER JOIN PhraseTable ON PhraseTable.id = TagBinTable.transcriptId " +
+            "WHERE TagBinTable.tag = :tag ORDER BY TagBinTable.timestamp DESC")
+    List<Phrase> getTagBinPhrasesSnapshot(String tag);
+
 }
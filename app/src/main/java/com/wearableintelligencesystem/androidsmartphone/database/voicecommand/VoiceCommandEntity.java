@@ -10,13 +10,18 @@ import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import java.util.Date;
 
 //each voice command should be tied to a specific Phrase/Transcript id eventually, then we don't have to repeat information here and all data is interconnected
 //thinking through the best way to store data, every single key:value pair will have its own row. So each command issued may have multiple rows, but command will only have ONE row with (isMaster == true), then, there may be subrows which hold more data for each command. I believe this is a good way of doing it, it may be a bit redundant, but it allows storing a wide variety of disparate voice commands into a single table
-@Entity(tableName = "VoiceCommandTable")
+//the (commandName, isMaster, argKey, argValue, transcriptId) index covers the "which phrases belong to these commands" lookups without touching the table
+@Entity(tableName = "VoiceCommandTable",
+        indices = {@Index(value = {"commandName", "isMaster", "argKey", "argValue", "transcriptId"}),
+                @Index(value = {"commandName", "isMaster", "timestamp"}),
+                @Index("transcriptId")})
 public class VoiceCommandEntity {
 
     @PrimaryKey(autoGenerate = true)
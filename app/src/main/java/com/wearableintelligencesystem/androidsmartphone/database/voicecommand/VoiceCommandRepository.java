@@ -10,23 +10,31 @@ import androidx.lifecycle.LiveData;
 
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.lang.InterruptedException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import com.wearableintelligencesystem.androidsmartphone.database.phrase.Phrase;
 
+import com.wearableintelligencesystem.androidsmartphone.database.DatabaseExecutors;
+import com.wearableintelligencesystem.androidsmartphone.database.RxQueries;
 import com.wearableintelligencesystem.androidsmartphone.database.WearableAiRoomDatabase;
 
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+
 public class VoiceCommandRepository {
 
+    private static final String[] VOICE_COMMAND_PHRASE_TABLES = {"VoiceCommandTable", "PhraseTable"};
+
+    private WearableAiRoomDatabase mDatabase;
     private VoiceCommandDao mVoiceCommandDao;
     private LiveData<List<VoiceCommandEntity>> mAllVoiceCommands;
 
     public VoiceCommandRepository(Application application) {
         WearableAiRoomDatabase db = WearableAiRoomDatabase.getDatabase(application);
+        mDatabase = db;
         mVoiceCommandDao = db.voiceCommandDao();
         mAllVoiceCommands = mVoiceCommandDao.getAllVoiceCommands();
     }
@@ -52,15 +60,17 @@ public class VoiceCommandRepository {
             }
         };
 
-        Future<List<VoiceCommandEntity>> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<List<VoiceCommandEntity>> future = DatabaseExecutors.read(callable);
 
         return future.get();
     }
 
+    public CompletableFuture<Long> insertAsync(VoiceCommandEntity voiceCommand) {
+        return DatabaseExecutors.write(() -> insertAndInvalidate(voiceCommand));
+    }
+
     public long insert(VoiceCommandEntity voiceCommand) {
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        Callable<Long> insertCallable = () -> mVoiceCommandDao.insert(voiceCommand);
-        Future<Long> future = executorService.submit(insertCallable);
+        Future<Long> future = DatabaseExecutors.write(() -> insertAndInvalidate(voiceCommand));
         long rowId = 0;
         try{
             rowId = future.get();
@@ -71,6 +81,19 @@ public class VoiceCommandRepository {
         return rowId;
     }
 
+    //only the bin the note landed in reloads, see TagBinLiveData
+    private long insertAndInvalidate(VoiceCommandEntity voiceCommand) {
+        long id = mVoiceCommandDao.insert(voiceCommand);
+        if (VoiceCommandDao.TAG_ARG_KEY.equals(voiceCommand.getArgKey()) && voiceCommand.getArgValue() != null) {
+            TagBinLiveData.invalidate(voiceCommand.getArgValue());
+        }
+        return id;
+    }
+
+    public LiveData<List<VoiceCommandEntity>> getTagBin(String tag) {
+        return new TagBinLiveData(mVoiceCommandDao, tag);
+    }
+
     public LiveData<VoiceCommandEntity> getVoiceCommand(int id) {
         return mVoiceCommandDao.get_by_id(id);
     }
@@ -83,6 +106,18 @@ public class VoiceCommandRepository {
         return mVoiceCommandDao.getVoiceCommandPhrases(commandName, isMaster);
     }
 
+    public Single<List<Phrase>> getVoiceCommandPhrasesSingle(String commandName, boolean isMaster) {
+        return RxQueries.single(() -> mVoiceCommandDao.getVoiceCommandPhrasesSnapshot(commandName, isMaster));
+    }
+
+    public Single<List<Phrase>> getVoiceCommandPhrasesInPeriodSingle(String commandName, boolean isMaster, long startTime, long endTime) {
+        return RxQueries.single(() -> mVoiceCommandDao.getVoiceCommandPhrasesInPeriodSnapshot(commandName, isMaster, startTime, endTime));
+    }
+
+    public Flowable<List<Phrase>> getVoiceCommandPhrasesFlowable(String commandName, boolean isMaster) {
+        return RxQueries.flowable(mDatabase, VOICE_COMMAND_PHRASE_TABLES, () -> mVoiceCommandDao.getVoiceCommandPhrasesSnapshot(commandName, isMaster));
+    }
+
     public List<Phrase> getVoiceCommandPhrasesSnapshot(String commandName, boolean isMaster) {
 
         Callable<List<Phrase>> callable = new Callable<List<Phrase>>() {
@@ -92,7 +127,7 @@ public class VoiceCommandRepository {
             }
         };
 
-        Future<List<Phrase>> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<List<Phrase>> future = DatabaseExecutors.read(callable);
 
         try {
             return future.get();
@@ -124,7 +159,7 @@ public class VoiceCommandRepository {
             }
         };
 
-        Future<VoiceCommandEntity> future = Executors.newSingleThreadExecutor().submit(callable);
+        Future<VoiceCommandEntity> future = DatabaseExecutors.read(callable);
 
         return future.get();
     }
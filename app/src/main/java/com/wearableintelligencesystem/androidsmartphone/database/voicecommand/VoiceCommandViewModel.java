@@ -13,6 +13,9 @@ import com.wearableintelligencesystem.androidsmartphone.voicecommand.VoiceComman
 
 import java.util.List;
 
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+
 public class VoiceCommandViewModel extends AndroidViewModel {
 
     private VoiceCommandRepository mRepository;
@@ -35,7 +38,12 @@ public class VoiceCommandViewModel extends AndroidViewModel {
     //mxt cache snapshot
     public List<Phrase> getVoiceNotesSnapshot() {return mRepository.getVoiceCommandPhrasesSnapshot("save speech", true);} //eventually, this will take an id we use to find the specific cache //this will get the phrases where the passed in values are true, so returns phrases
 
-    public LiveData<List<VoiceCommandEntity>> getTagBin(String tag) {return mRepository.getVoiceCommands("save speech", false, "tag", tag);} //eventually, this will take an id we use to find the specific cache //this will get the phrases where the passed in values are true, so returns phrases
+    //same as above, but never blocks the caller and re-emits when a note is saved
+    public Flowable<List<Phrase>> getVoiceNotesFlowable() {return mRepository.getVoiceCommandPhrasesFlowable("save speech", true);}
+
+    public Single<List<Phrase>> getVoiceNotesInPeriodSingle(long startTime, long endTime) {return mRepository.getVoiceCommandPhrasesInPeriodSingle("save speech", true, startTime, endTime);}
+
+    public LiveData<List<VoiceCommandEntity>> getTagBin(String tag) {return mRepository.getTagBin(tag);} //eventually, this will take an id we use to find the specific cache //this will get the phrases where the passed in values are true, so returns phrases
 
 
 //    public void addVoiceCommand(String word, String medium) {
@@ -0,0 +1,270 @@
+package com.wearableintelligencesystem.androidsmartphone.facialrecognition
+
+import android.util.Log
+import com.wearableintelligencesystem.androidsmartphone.contextualsearch.HnswIndex
+import java.io.File
+import java.io.IOException
+import kotlin.math.sqrt
+
+// The face embeddings of everyone we've seen, searched for the person a new face is closest to.
+// Embeddings are L2 normalized once, when they're added, and kept back to back in one FloatArray. For each person we also keep the sum
+// of their normalized embeddings - a person's score is the average cosine similarity of the face to each of their embeddings, which is
+// the dot product with that sum divided by their count, so a search is one dot product per person rather than one per embedding.
+// Once we've seen a lot of people, an HNSW index over the embeddings ( keyed by person ) picks the people worth scoring.
+// Thread safe, faces are added on the main thread and searched for on a background one.
+class FaceGallery( private val dimension : Int , private val indexFile : File? ) {
+
+    data class Match( val personId : Long , val score : Float )
+
+    companion object {
+        private const val TAG = "WearableAi_FaceGallery"
+
+        // Below this many people, scoring every one of them is faster than searching the index
+        const val HNSW_MIN_PEOPLE = 8192
+        // While the index catches up to the gallery, this many embeddings are added to it per search, and the search scores everyone
+        private const val HNSW_ADDS_PER_SEARCH = 256
+        // How many nearest embeddings the index is asked for, their people are the candidates
+        private const val HNSW_EF = 128
+
+        private const val INITIAL_CAPACITY = 256
+
+        // Dot product of a[ aOffset , aOffset + length ) and b[ bOffset , bOffset + length ).
+        // Unrolled into 4 independent sums, so each multiply-add doesn't wait on the one before it.
+        fun dot( a : FloatArray , aOffset : Int , b : FloatArray , bOffset : Int , length : Int ) : Float {
+            var s0 = 0f
+            var s1 = 0f
+            var s2 = 0f
+            var s3 = 0f
+            var i = 0
+            while ( i + 3 < length ) {
+                s0 += a[ aOffset + i ] * b[ bOffset + i ]
+                s1 += a[ aOffset + i + 1 ] * b[ bOffset + i + 1 ]
+                s2 += a[ aOffset + i + 2 ] * b[ bOffset + i + 2 ]
+                s3 += a[ aOffset + i + 3 ] * b[ bOffset + i + 3 ]
+                i += 4
+            }
+            while ( i < length ) {
+                s0 += a[ aOffset + i ] * b[ bOffset + i ]
+                i++
+            }
+            return ( s0 + s1 ) + ( s2 + s3 )
+        }
+    }
+
+    // Every normalized embedding, row i is embeddings[ i * dimension , ( i + 1 ) * dimension ), and whose it is
+    private var embeddings = FloatArray( INITIAL_CAPACITY * dimension )
+    private var embeddingPerson = LongArray( INITIAL_CAPACITY )
+    private var embeddingCount = 0
+
+    // Per person, the sum of their normalized embeddings and how many there are, in rows the same way
+    private val personRow = HashMap<Long,Int>()
+    private var sums = FloatArray( INITIAL_CAPACITY * dimension )
+    private var rowPerson = LongArray( INITIAL_CAPACITY )
+    private var rowCount = IntArray( INITIAL_CAPACITY )
+    private var people = 0
+
+    private var index : HnswIndex? = null
+    private var indexed = 0 // the first this many embeddings are in the index
+    private var indexFailed = false
+    private var closed = false // once closed, searches score everyone rather than reopen the index
+
+    private val query = FloatArray( dimension )
+    private val row = FloatArray( dimension )
+
+    @Synchronized
+    fun size() : Int = embeddingCount
+
+    @Synchronized
+    fun personCount() : Int = people
+
+    @Synchronized
+    fun add( personId : Long , embedding : FloatArray ) {
+        if ( embeddingCount == embeddingPerson.size ) {
+            embeddings = embeddings.copyOf( embeddings.size * 2 )
+            embeddingPerson = embeddingPerson.copyOf( embeddingPerson.size * 2 )
+        }
+        val offset = embeddingCount * dimension
+        normalize( embedding , embeddings , offset )
+        embeddingPerson[ embeddingCount ] = personId
+        embeddingCount++
+
+        var personIndex = personRow[ personId ]
+        if ( personIndex == null ) {
+            if ( people == rowPerson.size ) {
+                sums = sums.copyOf( sums.size * 2 )
+                rowPerson = rowPerson.copyOf( rowPerson.size * 2 )
+                rowCount = rowCount.copyOf( rowCount.size * 2 )
+            }
+            personIndex = people++
+            personRow[ personId ] = personIndex
+            rowPerson[ personIndex ] = personId
+            rowCount[ personIndex ] = 0
+            sums.fill( 0f , personIndex * dimension , ( personIndex + 1 ) * dimension )
+        }
+        val sumOffset = personIndex * dimension
+        for ( i in 0 until dimension ) {
+            sums[ sumOffset + i ] += embeddings[ offset + i ]
+        }
+        rowCount[ personIndex ]++
+    }
+
+    @Synchronized
+    fun addAll( faces : List<Pair<Long,FloatArray>> ) {
+        for ( face in faces ) {
+            add( face.first , face.second )
+        }
+    }
+
+    // Drops every embedding of the person. The index can't drop nodes, so it's rebuilt.
+    @Synchronized
+    fun remove( personId : Long ) {
+        val personIndex = personRow.remove( personId ) ?: return
+        var kept = 0
+        for ( i in 0 until embeddingCount ) {
+            if ( embeddingPerson[ i ] != personId ) {
+                if ( kept != i ) {
+                    System.arraycopy( embeddings , i * dimension , embeddings , kept * dimension , dimension )
+                    embeddingPerson[ kept ] = embeddingPerson[ i ]
+                }
+                kept++
+            }
+        }
+        embeddingCount = kept
+
+        // Move the last person into the removed one's row
+        val last = --people
+        if ( personIndex != last ) {
+            System.arraycopy( sums , last * dimension , sums , personIndex * dimension , dimension )
+            rowPerson[ personIndex ] = rowPerson[ last ]
+            rowCount[ personIndex ] = rowCount[ last ]
+            personRow[ rowPerson[ personIndex ] ] = personIndex
+        }
+        dropIndex()
+    }
+
+    // The k people the face is closest to, best first, scored by the average cosine similarity to their embeddings.
+    @Synchronized
+    fun topK( subject : FloatArray , k : Int ) : List<Match> {
+        if ( people == 0 || k <= 0 ) {
+            return emptyList()
+        }
+        normalize( subject , query , 0 )
+
+        val bestScores = FloatArray( k ) { Float.NEGATIVE_INFINITY }
+        val bestRows = IntArray( k ) { -1 }
+        val candidates = indexCandidates()
+        if ( candidates == null ) {
+            for ( r in 0 until people ) {
+                keepBest( r , score( r ) , bestScores , bestRows )
+            }
+        } else {
+            for ( r in candidates ) {
+                keepBest( r , score( r ) , bestScores , bestRows )
+            }
+        }
+
+        val matches = ArrayList<Match>( k )
+        for ( i in 0 until k ) {
+            if ( bestRows[ i ] == -1 ) {
+                break
+            }
+            matches.add( Match( rowPerson[ bestRows[ i ] ] , bestScores[ i ] ) )
+        }
+        return matches
+    }
+
+    @Synchronized
+    fun close() {
+        closed = true
+        index?.close()
+        index = null
+    }
+
+    private fun score( r : Int ) : Float {
+        return dot( query , 0 , sums , r * dimension , dimension ) / rowCount[ r ]
+    }
+
+    // Insertion into the k best so far, which are kept sorted best first
+    private fun keepBest( r : Int , score : Float , bestScores : FloatArray , bestRows : IntArray ) {
+        var i = bestScores.size - 1
+        if ( score <= bestScores[ i ] ) {
+            return
+        }
+        while ( i > 0 && score > bestScores[ i - 1 ] ) {
+            bestScores[ i ] = bestScores[ i - 1 ]
+            bestRows[ i ] = bestRows[ i - 1 ]
+            i--
+        }
+        bestScores[ i ] = score
+        bestRows[ i ] = r
+    }
+
+    // The rows of the people whose embeddings are nearest the query, or null if everyone should be scored
+    private fun indexCandidates() : IntArray? {
+        if ( indexFile == null || indexFailed || closed || people < HNSW_MIN_PEOPLE ) {
+            return null
+        }
+        try {
+            val hnsw = index ?: openIndex( indexFile )
+            val target = minOf( embeddingCount , indexed + HNSW_ADDS_PER_SEARCH )
+            while ( indexed < target ) {
+                System.arraycopy( embeddings , indexed * dimension , row , 0 , dimension )
+                hnsw.add( embeddingPerson[ indexed ] , row )
+                indexed++
+            }
+            if ( indexed < embeddingCount ) {
+                return null
+            }
+            val hits = hnsw.search( query , HNSW_EF , HNSW_EF )
+            val rows = LinkedHashSet<Int>()
+            for ( hit in hits ) {
+                personRow[ hit.key ]?.let { rows.add( it ) }
+            }
+            return rows.toIntArray()
+        } catch ( e : IOException ) {
+            Log.w( TAG , "Face index failed, scoring everyone" , e )
+            indexFailed = true
+            dropIndex()
+            return null
+        }
+    }
+
+    // The index on disk is of the embeddings in the order they were added, row i as node i. It's only ours if it has no more of them than
+    // we do and its fingerprint is that of our first rows - the same count of different people ( e.g. after a remove the file outlived ) isn't.
+    private fun openIndex( file : File ) : HnswIndex {
+        var hnsw = HnswIndex.open( file , dimension )
+        if ( hnsw.size() > embeddingCount || hnsw.getFingerprint() != fingerprint( hnsw.size() ) ) {
+            Log.d( TAG , "Face index on disk isn't of this gallery, rebuilding it" )
+            hnsw.close()
+            file.delete()
+            hnsw = HnswIndex.open( file , dimension )
+        }
+        indexed = hnsw.size()
+        index = hnsw
+        return hnsw
+    }
+
+    // What HnswIndex.getFingerprint is after the first this many embeddings are added to an empty index
+    private fun fingerprint( rows : Int ) : Long {
+        var fingerprint = 0L
+        for ( i in 0 until rows ) {
+            fingerprint = HnswIndex.fingerprint( fingerprint , embeddingPerson[ i ] , i )
+        }
+        return fingerprint
+    }
+
+    private fun dropIndex() {
+        index?.close()
+        index = null
+        indexed = 0
+        indexFile?.delete()
+    }
+
+    private fun normalize( vector : FloatArray , out : FloatArray , offset : Int ) {
+        val norm = sqrt( dot( vector , 0 , vector , 0 , dimension ) )
+        val scale = if ( norm > 0f ) 1f / norm else 0f
+        for ( i in 0 until dimension ) {
+            out[ offset + i ] = vector[ i ] * scale
+        }
+    }
+}
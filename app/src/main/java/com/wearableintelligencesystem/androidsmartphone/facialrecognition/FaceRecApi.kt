@@ -117,7 +117,7 @@ class FaceRecApi ( private var context: LifecycleService, private var mPersonRep
         if ( isSerializedDataStored ) {
             Logger.log( "Serialized data was found.")
             faceList = loadSerializedImageData()
-            frameAnalyser.faceList = faceList
+            frameAnalyser.gallery.addAll( faceList )
         }
 
         //eventually we need to constantly watch the database for face rec changes and remove any references to deleted things, that's what we were trying to do below. We can't run observe in non main ui, so for now, let's just delete an entry whenever we come across a "deleted" entitiy (in onPredictionResults)
@@ -157,6 +157,14 @@ class FaceRecApi ( private var context: LifecycleService, private var mPersonRep
     fun removeDeletedPeople(){
     }
 
+    //close the face gallery's index, a frame still being analysed scores everyone instead
+    fun destroy() {
+        isApiSetup = false
+        if ( this::frameAnalyser.isInitialized ) {
+            frameAnalyser.gallery.close()
+        }
+    }
+
     fun analyze(image: Bitmap, imageTime : Long, imageId : Long){
         if (isApiSetup){
             frameAnalyser.analyze(image, imageTime, imageId, ::onPredictionResults)
@@ -273,12 +281,8 @@ class FaceRecApi ( private var context: LifecycleService, private var mPersonRep
 
     private fun dropIdFromFaceList(personId : Long){
         Log.d(TAG, "dropping id from face list");
-        for (i in faceList.indices){
-            if (faceList.get(i).first == personId){
-                faceList.removeAt(i)
-                return
-            }
-        }
+        faceList.removeAll { it.first == personId }
+        frameAnalyser.gallery.remove( personId )
     }
 
     //after we make our encodings, the user goes through and labels images with names. If the image was too dark/blurry/etc., it will be labelled as a bad image. Here, each time we load/reload, we can check for all bad images, and drop the encoding if it links to a bad image
@@ -286,14 +290,14 @@ class FaceRecApi ( private var context: LifecycleService, private var mPersonRep
     }
 
     private fun saveFaceSightingToDatabase(personId : Long, imageTime : Long, imageId : Long){
-        //save 'seen' event to Person database
-        PersonCreator.create(personId, "event", "seen", imageTime, imageId, mPersonRepository);
+        //save 'seen' event to Person database - nothing needs the row id, so don't hold up face rec waiting for the write
+        mPersonRepository.insertAsync(PersonEntity(personId, "event", "seen", imageTime, imageId))
     }
     
     private fun addNewPersonToDatabase(imageTime : Long, imageId : Long) : Long {
         //save new to Person database
+        //the returned id is the new person's personId
         val id = PersonCreator.create(null, "new_face_name", "unknown", imageTime, imageId, mPersonRepository);
-        mPersonRepository.updatePersonId(id); //update the personId to match the row id, only do this once when we are adding a new person
         return id
     }
 
@@ -302,7 +306,7 @@ class FaceRecApi ( private var context: LifecycleService, private var mPersonRep
         //update encoding list in FaceRecFrameAnalyzer
         //save new encoding list to file - Dispatch
         faceList.add(Pair(personId, subject));
-        frameAnalyser.faceList = faceList
+        frameAnalyser.gallery.add( personId , subject )
         saveSerializedImageData( faceList )
     }
 }
@@ -31,8 +31,7 @@ import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
-import kotlin.math.pow
-import kotlin.math.sqrt
+import java.io.File
 
 // Analyser class to process frames and produce detections.
 class FaceRecFrameAnalyser( private var context: Context , private var whichModel: ModelInfo) {
@@ -47,18 +46,13 @@ class FaceRecFrameAnalyser( private var context: Context , private var whichMode
     // Default is Models.FACENET ; Quantized models are faster
     private val model = FaceNetModel( context , whichModel )
 
-    private val nameScoreHashmap = HashMap<Long,ArrayList<Float>>()
     private var subject = FloatArray( model.embeddingDim )
 
     // Used to determine whether the incoming frame should be dropped or processed.
     private var isProcessing = false
 
-    // Store the face embeddings in a ( String , FloatArray ) ArrayList.
-    // Where String -> name of the person and FloatArray -> Embedding of the face.
-    var faceList = ArrayList<Pair<Long,FloatArray>>()
-
-    // Use any one of the two metrics, "cosine" or "l2"
-    private val metricToBeUsed = "cosine"
+    // The face embeddings of everyone we've seen, by person id, searched by cosine similarity.
+    val gallery = FaceGallery( model.embeddingDim , File( context.filesDir , "face_gallery.hnsw" ) )
 
     @SuppressLint("UnsafeOptInUsageError")
     fun analyze(image: Bitmap, imageTime : Long, imageId : Long, onPredictionResultsCallback: (predictions : ArrayList<Pair<Prediction, FloatArray>>, imageTime : Long, imageId : Long) -> Unit) {
@@ -97,7 +91,7 @@ class FaceRecFrameAnalyser( private var context: Context , private var whichMode
 
                 //if we have no saved faces, just return unknown
                 try {
-                    if (faceList.size == 0) {
+                    if (gallery.size() == 0) {
                         Logger.log("Adding unknown prediction because face list is empty");
                         predictions.add(
                                 Pair( Prediction(
@@ -108,60 +102,14 @@ class FaceRecFrameAnalyser( private var context: Context , private var whichMode
                                 )
                         )
                     } else {
-                        // Perform clustering ( grouping )
-                        // Store the clusters in a HashMap. Here, the key would represent the 'name'
-                        // of that cluster and ArrayList<Float> would represent the collection of all
-                        // L2 norms/ cosine distances.
-                        for ( i in 0 until faceList.size ) {
-                            // If this cluster ( i.e an ArrayList with a specific key ) does not exist,
-                            // initialize a new one.
-                            if ( nameScoreHashmap[ faceList[ i ].first ] == null ) {
-                                // Compute the L2 norm and then append it to the ArrayList.
-                                val p = ArrayList<Float>()
-                                if ( metricToBeUsed == "cosine" ) {
-                                    p.add( cosineSimilarity( subject , faceList[ i ].second ) )
-                                }
-                                else {
-                                    p.add( L2Norm( subject , faceList[ i ].second ) )
-                                }
-                                nameScoreHashmap[ faceList[ i ].first ] = p
-                            }
-                            // If this cluster exists, append the L2 norm/cosine score to it.
-                            else {
-                                if ( metricToBeUsed == "cosine" ) {
-                                    nameScoreHashmap[ faceList[ i ].first ]?.add( cosineSimilarity( subject , faceList[ i ].second ) )
-                                }
-                                else {
-                                    nameScoreHashmap[ faceList[ i ].first ]?.add( L2Norm( subject , faceList[ i ].second ) )
-                                }
-                            }
+                        // The person whose embeddings the face is closest to on average, if they're close enough.
+                        val best = gallery.topK( subject , 1 ).firstOrNull()
+                        Logger.log( "Closest person : $best" )
+                        val bestScoreUserName: Long? = if ( best != null && best.score > model.model.cosineThreshold ) {
+                            best.personId
                         }
-                        Logger.log("Got predictions: " + predictions.size);
-
-                        // Compute the average of all scores norms for each cluster.
-                        val avgScores = nameScoreHashmap.values.map{ scores -> scores.toFloatArray().average() }
-                        Logger.log( "Average score for each user : $nameScoreHashmap" )
-
-                        val names = nameScoreHashmap.keys.toTypedArray()
-                        nameScoreHashmap.clear()
-
-                        // Calculate the minimum L2 distance from the stored average L2 norms.
-                        val bestScoreUserName: Long? = if ( metricToBeUsed == "cosine" ) {
-                            // In case of cosine similarity, choose the highest value.
-                            if ( avgScores.maxOrNull()!! > model.model.cosineThreshold ) {
-                                names[ avgScores.indexOf( avgScores.maxOrNull()!! ) ]
-                            }
-                            else {
-                                null
-                            }
-                        } else {
-                            // In case of L2 norm, choose the lowest value.
-                            if ( avgScores.minOrNull()!! > model.model.l2Threshold ) {
-                                null
-                            }
-                            else {
-                                names[ avgScores.indexOf( avgScores.minOrNull()!! ) ]
-                            }
+                        else {
+                            null
                         }
                         predictions.add(
                             Pair( Prediction(
@@ -191,19 +139,4 @@ class FaceRecFrameAnalyser( private var context: Context , private var whichMode
         }
     }
 
-
-    // Compute the L2 norm of ( x2 - x1 )
-    private fun L2Norm( x1 : FloatArray, x2 : FloatArray ) : Float {
-        return sqrt( x1.mapIndexed{ i , xi -> (xi - x2[ i ]).pow( 2 ) }.sum() )
-    }
-
-
-    // Compute the cosine of the angle between x1 and x2.
-    private fun cosineSimilarity( x1 : FloatArray , x2 : FloatArray ) : Float {
-        val mag1 = sqrt( x1.map { it * it }.sum() )
-        val mag2 = sqrt( x2.map { it * it }.sum() )
-        val dot = x1.mapIndexed{ i , xi -> xi * x2[ i ] }.sum()
-        return dot / (mag1 * mag2)
-    }
-
 }
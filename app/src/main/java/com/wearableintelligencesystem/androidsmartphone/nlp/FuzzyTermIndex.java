@@ -0,0 +1,142 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp;
+
+import com.wearableintelligencesystem.androidsmartphone.nlp.similarity.JaroWinklerKernel;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//which of a large, fixed set of terms NlpUtils.findNearMatches would find in a text at a fixed threshold - the same answer for every term, but
+//without scoring every window of the text against every term
+//terms of the same length share one pass over the text. A window can only score over the threshold against a term it shares enough characters
+//with (jaro needs matching characters, and winkler's prefix bonus only counts once jaro is over 0.7), so each term keeps a count of how many of
+//the window's characters it could match. Those counts are updated through a per character posting list as the window slides, and only terms
+//whose count is over that floor are looked at, first with the same prefix bound PhraseSetMatcher uses and then with the real score (see
+//JaroWinklerBound, which both share)
+//the terms themselves aren't kept, they're read from the list given (for a ReferenceLibrary, decoded from its mapping) once to build the
+//posting lists and after that only when a window could match them. The posting lists are on the heap though, an int pair per distinct
+//character of every term, so the index is about the size of the term text
+//not thread safe, the counts are reused between calls
+public class FuzzyTermIndex {
+
+    //every term of one length
+    private static class LengthGroup {
+        final int length;
+        final int[] terms; //global term ids
+        final int floor; //terms sharing fewer characters than this with a window can't match it
+        final JaroWinklerBound.Postings postings;
+        LengthGroup(int length, int[] terms, int floor, JaroWinklerBound.Postings postings){
+            this.length = length;
+            this.terms = terms;
+            this.floor = floor;
+            this.postings = postings;
+        }
+    }
+
+    private final JaroWinklerKernel jw = new JaroWinklerKernel();
+    private final double threshold;
+    private final List<String> terms; //as given and never changed, only a term's first group length characters are looked at
+    private final int[] emptyTerms; //"" is found in every text, empty if there are none
+    private final List<LengthGroup> lengthGroups = new ArrayList<>();
+    private final JaroWinklerBound.Alphabet alphabet;
+
+    //scratch for a search
+    private final JaroWinklerBound.Window window;
+    private final StringBuilder paddedString = new StringBuilder();
+
+    public FuzzyTermIndex(List<String> terms, double threshold){
+        this.threshold = threshold;
+        this.terms = terms;
+        String[] trimmed = new String[terms.size()]; //only while building
+        Map<Integer, List<Integer>> byLength = new HashMap<>();
+        for (int i = 0; i < terms.size(); i++) {
+            String term = terms.get(i);
+            trimmed[i] = term.substring(0, NlpUtils.trimmedLength(term));
+            List<Integer> sameLength = byLength.get(trimmed[i].length());
+            if (sameLength == null) {
+                sameLength = new ArrayList<>();
+                byLength.put(trimmed[i].length(), sameLength);
+            }
+            sameLength.add(i);
+        }
+        alphabet = new JaroWinklerBound.Alphabet(trimmed);
+        window = new JaroWinklerBound.Window(alphabet);
+
+        int[] empty = new int[0];
+        for (Map.Entry<Integer, List<Integer>> entry : byLength.entrySet()) {
+            int length = entry.getKey();
+            int[] groupTerms = toArray(entry.getValue());
+            if (length == 0) {
+                empty = groupTerms;
+                continue;
+            }
+            String[] groupText = new String[groupTerms.length];
+            for (int k = 0; k < groupTerms.length; k++) {
+                groupText[k] = trimmed[groupTerms[k]];
+            }
+            lengthGroups.add(new LengthGroup(length, groupTerms, JaroWinklerBound.floor(length, threshold),
+                    new JaroWinklerBound.Postings(alphabet, groupText, length)));
+        }
+        emptyTerms = empty;
+    }
+
+    public int size(){
+        return terms.size();
+    }
+
+    //the ids (positions in the list given at construction) of every term findNearMatches(incomingString, term, threshold) finds
+    public BitSet findAll(String incomingString){
+        BitSet found = new BitSet(terms.size());
+        if (1 > threshold) {
+            for (int term : emptyTerms) {
+                found.set(term);
+            }
+        }
+
+        paddedString.setLength(0);
+        paddedString.append(incomingString).append(' '); //same padding as findNearMatches
+        int[] textIds = alphabet.ids(paddedString);
+
+        for (LengthGroup group : lengthGroups) {
+            int windows = paddedString.length() - group.length + 1;
+            if (windows <= 0 || group.floor > group.length) {
+                continue;
+            }
+            window.reset(group.postings, group.floor);
+            for (int i = 0; i < group.length; i++) {
+                window.add(textIds[i]);
+            }
+            for (int start = 0; start < windows; start++) {
+                if (start > 0) {
+                    window.remove(textIds[start - 1]);
+                    window.add(textIds[start + group.length - 1]);
+                }
+                for (int h = 0; h < window.hotCount(); h++) {
+                    int k = window.hot(h);
+                    int term = group.terms[k];
+                    if (found.get(term)) {
+                        continue;
+                    }
+                    String text = terms.get(term); //only the group's length of it, the rest is trailing whitespace
+                    if (JaroWinklerBound.upperBound(paddedString, start, text, group.length, window.shared(k)) <= threshold) {
+                        continue;
+                    }
+                    if (jw.similarity(paddedString, start, group.length, text, 0, group.length) > threshold) {
+                        found.set(term);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private static int[] toArray(List<Integer> list){
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,244 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp;
+
+import java.util.Arrays;
+
+//the pruning PhraseSetMatcher and FuzzyTermIndex do before scoring a window of text against a pattern with JaroWinkler
+//jaro needs matching characters, so a pattern can't score over a threshold against a window it shares too few characters with, and winkler's
+//prefix bonus only adds a bounded amount on top (and only once jaro is over 0.7). Patterns of one length get per character posting lists, and a
+//Window slides over the text keeping how many of its characters each pattern could match. Patterns at or over the floor for the threshold are
+//kept in a hot list, only those are worth upperBound, and only those whose bound can still win are worth the real score
+final class JaroWinklerBound {
+
+    //jaro is computed in float by JaroWinkler, so its result can round up slightly past our double bound
+    static final double BOUND_SLACK = 1e-6;
+    private static final double PREFIX_BONUS_FROM = 0.7; //JaroWinkler's threshold, below it the score is plain jaro
+
+    private JaroWinklerBound() {
+    }
+
+    //jaro is at most (2m/len + 1)/3 with m matching characters, and winkler only ever adds prefix * min(0.1, 1/len) of what's left
+    static double upperBound(CharSequence text, int start, CharSequence pattern, int length, int shared){
+        if (shared == 0) {
+            return length == 0 ? 1 : 0;
+        }
+        int prefix = 0;
+        while (prefix < length && text.charAt(start + prefix) == pattern.charAt(prefix)) {
+            prefix++;
+        }
+        double jaro = (2.0 * shared / length + 1) / 3;
+        return jaro + Math.min(0.1, 1.0 / length) * prefix * (1 - jaro) + BOUND_SLACK;
+    }
+
+    //the fewest shared characters that could score over the threshold, even with the longest prefix a different string can have
+    //over length if nothing can
+    static int floor(int length, double threshold){
+        if (length == 0 || threshold < 0) {
+            //"" scores 1 against "", and with a negative threshold even sharing nothing is enough
+            return threshold < 1 ? 0 : length + 1;
+        }
+        for (int shared = 1; shared <= length; shared++) {
+            double jaro = (2.0 * shared / length + 1) / 3;
+            double bound = jaro + BOUND_SLACK;
+            if (bound > PREFIX_BONUS_FROM) {
+                bound += Math.min(0.1, 1.0 / length) * (length - 1) * (1 - jaro);
+            }
+            if (bound > threshold) {
+                return shared;
+            }
+        }
+        return length + 1;
+    }
+
+    //dense ids for the characters that appear in any pattern, ascii by table and the rest by binary search
+    //everything else is -1 and can't count towards a match
+    static final class Alphabet {
+        private final int[] asciiIds = new int[128];
+        private final char[] otherChars;
+        private final int asciiSize;
+
+        Alphabet(CharSequence[] patterns){
+            Arrays.fill(asciiIds, -1);
+            StringBuilder other = new StringBuilder();
+            int nextId = 0;
+            for (CharSequence pattern : patterns) {
+                for (int i = 0; i < pattern.length(); i++) {
+                    char c = pattern.charAt(i);
+                    if (c < 128) {
+                        if (asciiIds[c] == -1) {
+                            asciiIds[c] = nextId++;
+                        }
+                    } else if (other.indexOf(String.valueOf(c)) == -1) {
+                        other.append(c);
+                    }
+                }
+            }
+            otherChars = other.toString().toCharArray();
+            Arrays.sort(otherChars);
+            asciiSize = nextId;
+        }
+
+        int size(){
+            return asciiSize + otherChars.length;
+        }
+
+        int id(char c){
+            if (c < 128) {
+                return asciiIds[c];
+            }
+            int i = Arrays.binarySearch(otherChars, c);
+            return i < 0 ? -1 : asciiSize + i;
+        }
+
+        int[] ids(CharSequence text){
+            int[] ids = new int[text.length()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = id(text.charAt(i));
+            }
+            return ids;
+        }
+    }
+
+    //per alphabet character, which of a set of same length patterns have it and how many times. Immutable once built
+    static final class Postings {
+        final int length;
+        final int patternCount;
+        private final int[][] patterns;
+        private final int[][] counts;
+
+        //sized in a first pass and filled in a second
+        Postings(Alphabet alphabet, CharSequence[] sameLengthPatterns, int length){
+            this.length = length;
+            this.patternCount = sameLengthPatterns.length;
+            int alphabetSize = alphabet.size();
+            int[] sizes = new int[alphabetSize];
+            int[] seen = new int[alphabetSize];
+            for (CharSequence pattern : sameLengthPatterns) {
+                for (int c = 0; c < length; c++) {
+                    if (seen[alphabet.id(pattern.charAt(c))]++ == 0) {
+                        sizes[alphabet.id(pattern.charAt(c))]++;
+                    }
+                }
+                for (int c = 0; c < length; c++) {
+                    seen[alphabet.id(pattern.charAt(c))] = 0;
+                }
+            }
+            patterns = new int[alphabetSize][];
+            counts = new int[alphabetSize][];
+            for (int id = 0; id < alphabetSize; id++) {
+                patterns[id] = new int[sizes[id]];
+                counts[id] = new int[sizes[id]];
+                sizes[id] = 0;
+            }
+            for (int k = 0; k < sameLengthPatterns.length; k++) {
+                CharSequence pattern = sameLengthPatterns[k];
+                for (int c = 0; c < length; c++) {
+                    seen[alphabet.id(pattern.charAt(c))]++;
+                }
+                for (int c = 0; c < length; c++) {
+                    int id = alphabet.id(pattern.charAt(c));
+                    if (seen[id] > 0) {
+                        patterns[id][sizes[id]] = k;
+                        counts[id][sizes[id]] = seen[id];
+                        sizes[id]++;
+                        seen[id] = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    //one window sliding over one text for one Postings, start it over with reset for each. Not thread safe, the arrays are reused
+    static final class Window {
+        private final int[] windowCounts;
+        private int[] shared = new int[0]; //per pattern, characters of the current window it could match
+        private int[] hotPosition = new int[0]; //per pattern, where it is in hot, -1 if not there
+        private int[] hot = new int[64]; //patterns at or over the floor for the current window
+        private int hotCount;
+        private Postings postings;
+        private int floor;
+
+        Window(Alphabet alphabet){
+            windowCounts = new int[alphabet.size()];
+        }
+
+        void reset(Postings postings, int floor){
+            this.postings = postings;
+            this.floor = floor;
+            Arrays.fill(windowCounts, 0);
+            if (shared.length < postings.patternCount) {
+                shared = new int[postings.patternCount];
+                hotPosition = new int[postings.patternCount];
+            }
+            Arrays.fill(shared, 0, postings.patternCount, 0);
+            Arrays.fill(hotPosition, 0, postings.patternCount, -1);
+            hotCount = 0;
+            if (floor <= 0) {
+                for (int k = 0; k < postings.patternCount; k++) {
+                    makeHot(k);
+                }
+            }
+        }
+
+        //the window grew by a character with this alphabet id
+        void add(int id){
+            if (id < 0) {
+                return;
+            }
+            int count = ++windowCounts[id];
+            int[] patterns = postings.patterns[id];
+            int[] counts = postings.counts[id];
+            for (int p = 0; p < patterns.length; p++) {
+                if (count <= counts[p]) {
+                    int k = patterns[p];
+                    if (++shared[k] == floor) {
+                        makeHot(k);
+                    }
+                }
+            }
+        }
+
+        //the window lost a character with this alphabet id
+        void remove(int id){
+            if (id < 0) {
+                return;
+            }
+            int count = windowCounts[id]--;
+            int[] patterns = postings.patterns[id];
+            int[] counts = postings.counts[id];
+            for (int p = 0; p < patterns.length; p++) {
+                if (count <= counts[p]) {
+                    int k = patterns[p];
+                    if (shared[k]-- == floor) {
+                        //swap the last hot pattern into its place
+                        int position = hotPosition[k];
+                        int last = hot[--hotCount];
+                        hot[position] = last;
+                        hotPosition[last] = position;
+                        hotPosition[k] = -1;
+                    }
+                }
+            }
+        }
+
+        private void makeHot(int k){
+            if (hot.length == hotCount) {
+                hot = Arrays.copyOf(hot, hot.length * 2);
+            }
+            hotPosition[k] = hotCount;
+            hot[hotCount++] = k;
+        }
+
+        int hotCount(){
+            return hotCount;
+        }
+
+        //the pattern at this position in the hot list, in no particular order
+        int hot(int position){
+            return hot[position];
+        }
+
+        int shared(int pattern){
+            return shared[pattern];
+        }
+    }
+}
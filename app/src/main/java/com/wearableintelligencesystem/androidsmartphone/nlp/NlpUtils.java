@@ -16,12 +16,18 @@ import org.json.JSONObject;
 import org.json.JSONException;
 
 //fuzzy string matching
-import info.debatty.java.stringsimilarity.*;
+import com.wearableintelligencesystem.androidsmartphone.nlp.similarity.JaroWinklerKernel;
 
 public class NlpUtils {
     private static final String TAG = "WearableIntelligenceSystem_NlpUtils";
 
-    private static JaroWinkler jw ;
+    //findNearMatches is called from the voice command thread and the autociter at once, and the kernel reuses its scratch arrays
+    private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
     private static Context context;
     
     private static NlpUtils myself;
@@ -31,20 +37,33 @@ public class NlpUtils {
 
     public NlpUtils(Context context){
         this.context = context;
-        jw = new JaroWinkler();//probably should change this to somethings else. A failure, for example, is that the strings {effective memory : affective memory} have similiarity of 0.85, but strings {fective memory : affective memory} have similirity of 0.96 ... not great
+        //jaro-winkler, probably should change this to somethings else. A failure, for example, is that the strings {effective memory : affective memory} have similiarity of 0.85, but strings {fective memory : affective memory} have similirity of 0.96 ... not great
+    }
+
+    private static class Scratch {
+        final JaroWinklerKernel jw = new JaroWinklerKernel();
+        final StringBuilder paddedString = new StringBuilder();
     }
 
     public FuzzyMatch findNearMatches(String incomingString, String toFindString, double threshold){
+        return findNearMatches(incomingString, toFindString, threshold, null);
+    }
+
+    //the same, reusing window similarities from earlier calls through memo (see SimilarityMemo), which can be null
+    public FuzzyMatch findNearMatches(String incomingString, String toFindString, double threshold, SimilarityMemo memo){
         //int extraChars = 2; //some small number of chars before and after string in case the fuzzy match and what appears in trancript aren't exactly the same length
         //for (int i = 0; i < (incomingString.length() - toFindString.length() - extraChars); i++) {
+        Scratch s = scratch.get();
         int highestIndex = -1;
         double lowestSimilarity = -1d;
-        toFindString = toFindString.replaceAll("\\s+$", ""); //replace any leading/trailing spaces
-        incomingString = incomingString + " "; //add a couple spaces to the end for comparison
-        for (int i = 0; i <= (incomingString.length() - toFindString.length()); i++) {
-            //String substring = incomingString.substring(i, i + toFindString.length() + extraChars);
-            String substring = incomingString.substring(i, i + toFindString.length());
-            double similarity = jw.similarity(substring, toFindString);
+        int toFindLength = trimmedLength(toFindString); //ignore any trailing spaces
+        StringBuilder paddedString = s.paddedString;
+        paddedString.setLength(0);
+        paddedString.append(incomingString).append(' '); //add a space to the end for comparison
+        for (int i = 0; i <= (paddedString.length() - toFindLength); i++) {
+            //windows are compared in place rather than as substrings
+            double similarity = memo == null ? s.jw.similarity(paddedString, i, toFindLength, toFindString, 0, toFindLength)
+                    : memo.similarity(s.jw, paddedString, i, toFindLength, toFindString);
             if (similarity > lowestSimilarity){
                 highestIndex = i;
                 lowestSimilarity = similarity;
@@ -53,14 +72,28 @@ public class NlpUtils {
 
         //return highest match
         if (lowestSimilarity > threshold){
-            FuzzyMatch match = new FuzzyMatch(Math.min(highestIndex, incomingString.length()-1), lowestSimilarity);
-            match.setToFindString(toFindString);
+            FuzzyMatch match = new FuzzyMatch(Math.min(highestIndex, paddedString.length()-1), lowestSimilarity);
+            match.setToFindString(toFindString.substring(0, toFindLength));
             return match; //if the match was found in the spaces at the end, only return the last index of the input string
         } else{
             return null;
         }
     }
 
+    //length without trailing whitespace, what replaceAll("\\s+$", "") would leave but without compiling a regex every call
+    public static int trimmedLength(String string){
+        int length = string.length();
+        while (length > 0 && isRegexWhitespace(string.charAt(length - 1))) {
+            length--;
+        }
+        return length;
+    }
+
+    //the characters \s matches
+    private static boolean isRegexWhitespace(char c){
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
     //return the match and the location of the highest match in input array to Find String
     public Pair<FuzzyMatch, Integer> findBestMatch(String incomingString, ArrayList<String> toFindString, double threshold){
         FuzzyMatch bestMatch = new FuzzyMatch(-1,0);
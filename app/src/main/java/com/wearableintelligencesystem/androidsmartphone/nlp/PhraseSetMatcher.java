@@ -0,0 +1,144 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.wearableintelligencesystem.androidsmartphone.nlp.similarity.JaroWinklerKernel;
+
+//finds the best fuzzy match of any of a fixed set of phrases in a text - what looping NlpUtils.findBestMatch over groups of phrases
+//(e.g. every phrasing of every voice command) gives, but built once so adding phrases doesn't make every search pay for all of them in full
+//phrases of the same length share one pass over the text. For each window a cheap upper bound on its Jaro-Winkler score comes from how many
+//of its characters the phrase could possibly match (a sliding character count), plus its exact common prefix. Only windows whose bound
+//can still beat the best so far are scored for real, and most never are (see JaroWinklerBound, which FuzzyTermIndex shares)
+//ties are broken the way the loops would break them (first group, then first phrase, then first position), so the match and index are the same
+//immutable once built, so one can be shared between threads
+public class PhraseSetMatcher {
+
+    public static class Match {
+        public final int group; //which list of phrases
+        public final int phrase; //which phrase in that list
+        public final FuzzyMatch match;
+        Match(int group, int phrase, FuzzyMatch match){
+            this.group = group;
+            this.phrase = phrase;
+            this.match = match;
+        }
+    }
+
+    //every phrase of one length
+    private static class LengthGroup {
+        final int length;
+        final List<Integer> phrases = new ArrayList<>(); //in phrase order
+        JaroWinklerBound.Postings postings;
+        LengthGroup(int length){
+            this.length = length;
+        }
+    }
+
+    //the kernel reuses its scratch arrays, so each thread gets its own
+    private static final ThreadLocal<JaroWinklerKernel> kernel = ThreadLocal.withInitial(JaroWinklerKernel::new);
+    private final String[] phrases; //trimmed like findNearMatches does, flattened in group order
+    private final int[] phraseGroup;
+    private final int[] phraseInGroup;
+    private final List<LengthGroup> lengthGroups = new ArrayList<>();
+
+    //characters that appear in any phrase, everything else can't count towards a match
+    private final JaroWinklerBound.Alphabet alphabet;
+
+    public PhraseSetMatcher(List<? extends List<String>> groups){
+        List<String> flat = new ArrayList<>();
+        List<int[]> positions = new ArrayList<>();
+        for (int g = 0; g < groups.size(); g++) {
+            List<String> group = groups.get(g);
+            for (int p = 0; p < group.size(); p++) {
+                flat.add(group.get(p).replaceAll("\\s+$", ""));
+                positions.add(new int[]{g, p});
+            }
+        }
+        phrases = flat.toArray(new String[0]);
+        phraseGroup = new int[phrases.length];
+        phraseInGroup = new int[phrases.length];
+        for (int i = 0; i < phrases.length; i++) {
+            phraseGroup[i] = positions.get(i)[0];
+            phraseInGroup[i] = positions.get(i)[1];
+        }
+
+        alphabet = new JaroWinklerBound.Alphabet(phrases);
+
+        for (int i = 0; i < phrases.length; i++) {
+            LengthGroup lengthGroup = null;
+            for (LengthGroup existing : lengthGroups) {
+                if (existing.length == phrases[i].length()) {
+                    lengthGroup = existing;
+                }
+            }
+            if (lengthGroup == null) {
+                lengthGroup = new LengthGroup(phrases[i].length());
+                lengthGroups.add(lengthGroup);
+            }
+            lengthGroup.phrases.add(i);
+        }
+        for (LengthGroup lengthGroup : lengthGroups) {
+            String[] groupPhrases = new String[lengthGroup.phrases.size()];
+            for (int k = 0; k < groupPhrases.length; k++) {
+                groupPhrases[k] = phrases[lengthGroup.phrases.get(k)];
+            }
+            lengthGroup.postings = new JaroWinklerBound.Postings(alphabet, groupPhrases, lengthGroup.length);
+        }
+    }
+
+    //the best match of any phrase with similarity over the threshold, or null
+    public Match findBest(String incomingString, double threshold){
+        JaroWinklerKernel jw = kernel.get();
+        String text = incomingString + " "; //same padding as findNearMatches
+        int[] textIds = alphabet.ids(text);
+
+        double bestSimilarity = threshold;
+        int bestPhrase = -1;
+        int bestIndex = -1;
+        //how many characters of the window each phrase could match, kept up to date as the window slides. Per call, the matcher is shared
+        JaroWinklerBound.Window window = new JaroWinklerBound.Window(alphabet);
+        for (LengthGroup lengthGroup : lengthGroups) {
+            int length = lengthGroup.length;
+            int windows = text.length() - length + 1;
+            //phrases sharing fewer characters than the floor can't get over the threshold, let alone beat the best so far
+            int floor = JaroWinklerBound.floor(length, threshold);
+            if (windows <= 0 || floor > length) {
+                continue;
+            }
+            window.reset(lengthGroup.postings, floor);
+            for (int i = 0; i < length; i++) {
+                window.add(textIds[i]);
+            }
+            for (int start = 0; start < windows; start++) {
+                if (start > 0) {
+                    window.remove(textIds[start - 1]);
+                    window.add(textIds[start + length - 1]);
+                }
+                //hot phrases come in no particular order, the tie break below doesn't depend on it
+                for (int h = 0; h < window.hotCount(); h++) {
+                    int k = window.hot(h);
+                    int phrase = lengthGroup.phrases.get(k);
+                    if (JaroWinklerBound.upperBound(text, start, phrases[phrase], length, window.shared(k)) < bestSimilarity) {
+                        continue;
+                    }
+                    double similarity = jw.similarity(text, start, length, phrases[phrase], 0, length);
+                    boolean better = similarity > bestSimilarity
+                            || (bestPhrase != -1 && similarity == bestSimilarity && (phrase < bestPhrase || (phrase == bestPhrase && start < bestIndex)));
+                    if (better) {
+                        bestSimilarity = similarity;
+                        bestPhrase = phrase;
+                        bestIndex = start;
+                    }
+                }
+            }
+        }
+
+        if (bestPhrase == -1) {
+            return null;
+        }
+        FuzzyMatch match = new FuzzyMatch(Math.min(bestIndex, text.length() - 1), bestSimilarity);
+        match.setToFindString(phrases[bestPhrase]);
+        return new Match(phraseGroup[bestPhrase], phraseInGroup[bestPhrase], match);
+    }
+}
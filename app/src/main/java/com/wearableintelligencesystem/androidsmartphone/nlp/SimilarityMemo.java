@@ -0,0 +1,99 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp;
+
+import com.wearableintelligencesystem.androidsmartphone.nlp.similarity.JaroWinklerKernel;
+
+//a bounded memo of the window similarities findNearMatches computes, for a caller that looks for the same patterns in text that mostly
+//repeats from one call to the next, like SwitchModesVoiceCommand checking every mode against the arguments on each partial transcript.
+//most calls are one-off and don't pass one, they'd only pay for the lookups
+//keyed on the window's characters and the pattern. The tables are allocated up front, so a lookup or a store never allocates, and a hit
+//compares the stored characters, so a hash collision can't change a score. Windows longer than MAX_WINDOW are scored but not kept
+//each key can go in one of WAYS slots, the least recently used of them is replaced
+//not thread safe - one per caller thread
+public final class SimilarityMemo {
+    public static final int MAX_WINDOW = 32;
+    private static final int WAYS = 4;
+
+    private final int setMask;
+    private final String[] patterns; //null while the slot is empty
+    private final int[] hashes;
+    private final int[] lengths;
+    private final char[] windows; //MAX_WINDOW chars per slot
+    private final double[] similarities;
+    private final long[] lastUsed;
+    private long clock = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    //capacity is rounded up to a power of two, at least WAYS
+    public SimilarityMemo(int capacity){
+        int sets = Integer.highestOneBit(Math.max(capacity / WAYS, 1) * 2 - 1);
+        setMask = sets - 1;
+        int slots = sets * WAYS;
+        patterns = new String[slots];
+        hashes = new int[slots];
+        lengths = new int[slots];
+        windows = new char[slots * MAX_WINDOW];
+        similarities = new double[slots];
+        lastUsed = new long[slots];
+    }
+
+    //jw's similarity of text[start, start + length) to pattern[0, length), from the memo if it's there
+    double similarity(JaroWinklerKernel jw, CharSequence text, int start, int length, String pattern){
+        if (length > MAX_WINDOW) {
+            return jw.similarity(text, start, length, pattern, 0, length);
+        }
+        int hash = pattern.hashCode() * 31 + length;
+        for (int i = 0; i < length; i++) {
+            hash = hash * 31 + text.charAt(start + i);
+        }
+        //spread the high bits into the set index
+        int set = (hash ^ (hash >>> 16)) & setMask;
+        int first = set * WAYS;
+        int victim = first;
+        for (int slot = first; slot < first + WAYS; slot++) {
+            if (patterns[slot] == null) {
+                victim = slot;
+                break;
+            }
+            if (hashes[slot] == hash && lengths[slot] == length && patterns[slot].equals(pattern) && windowEquals(slot, text, start, length)) {
+                hits++;
+                lastUsed[slot] = ++clock;
+                return similarities[slot];
+            }
+            if (lastUsed[slot] < lastUsed[victim]) {
+                victim = slot;
+            }
+        }
+
+        misses++;
+        double similarity = jw.similarity(text, start, length, pattern, 0, length);
+        patterns[victim] = pattern;
+        hashes[victim] = hash;
+        lengths[victim] = length;
+        for (int i = 0; i < length; i++) {
+            windows[victim * MAX_WINDOW + i] = text.charAt(start + i);
+        }
+        similarities[victim] = similarity;
+        lastUsed[victim] = ++clock;
+        return similarity;
+    }
+
+    private boolean windowEquals(int slot, CharSequence text, int start, int length){
+        int offset = slot * MAX_WINDOW;
+        for (int i = 0; i < length; i++) {
+            if (windows[offset + i] != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getHits(){
+        return hits;
+    }
+
+    public long getMisses(){
+        return misses;
+    }
+}
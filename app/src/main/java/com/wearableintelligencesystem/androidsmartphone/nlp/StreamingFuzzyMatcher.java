@@ -0,0 +1,72 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp;
+
+import java.util.Arrays;
+
+import com.wearableintelligencesystem.androidsmartphone.nlp.similarity.JaroWinklerKernel;
+
+//NlpUtils.findNearMatches for one pattern that is looked for again and again in a text that mostly grows, like the voice command buffer as partial transcripts come in
+//the best window so far is kept for every offset, so a call only scores the windows that overlap text that is new (or was changed by a later partial)
+//since the last call, instead of rescanning the whole buffer. Anything before the first changed character is reused as is, so the result is always
+//exactly what findNearMatches would return for the same text and threshold
+//not thread safe, use one per pattern per caller
+public class StreamingFuzzyMatcher {
+    private final String toFindString;
+    private final JaroWinklerKernel jw = new JaroWinklerKernel();
+
+    //the padded text we last scanned, and the running best over windows 0..i of it
+    private String lastText = "";
+    private int scoredWindows = 0;
+    private double[] bestSimilarity = new double[64];
+    private int[] bestIndex = new int[64];
+
+    public StreamingFuzzyMatcher(String toFindString){
+        this.toFindString = toFindString.replaceAll("\\s+$", ""); //same trimming as findNearMatches
+    }
+
+    public String getToFindString(){
+        return toFindString;
+    }
+
+    public FuzzyMatch find(String incomingString, double threshold){
+        String text = incomingString + " "; //same padding as findNearMatches
+        int length = toFindString.length();
+        int windows = Math.max(0, text.length() - length + 1);
+
+        //windows that end inside the unchanged prefix score the same as last time
+        int reused = Math.min(scoredWindows, Math.max(0, commonPrefixLength(lastText, text) - length + 1));
+        if (bestSimilarity.length < windows) {
+            int capacity = Math.max(windows, bestSimilarity.length * 2);
+            bestSimilarity = Arrays.copyOf(bestSimilarity, capacity);
+            bestIndex = Arrays.copyOf(bestIndex, capacity);
+        }
+        double highestSimilarity = reused > 0 ? bestSimilarity[reused - 1] : -1d;
+        int highestIndex = reused > 0 ? bestIndex[reused - 1] : -1;
+        for (int i = reused; i < windows; i++) {
+            double similarity = jw.similarity(text, i, length, toFindString, 0, length);
+            if (similarity > highestSimilarity) {
+                highestIndex = i;
+                highestSimilarity = similarity;
+            }
+            bestSimilarity[i] = highestSimilarity;
+            bestIndex[i] = highestIndex;
+        }
+        lastText = text;
+        scoredWindows = windows;
+
+        if (highestSimilarity > threshold) {
+            FuzzyMatch match = new FuzzyMatch(Math.min(highestIndex, text.length() - 1), highestSimilarity);
+            match.setToFindString(toFindString);
+            return match;
+        }
+        return null;
+    }
+
+    private static int commonPrefixLength(String a, String b){
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
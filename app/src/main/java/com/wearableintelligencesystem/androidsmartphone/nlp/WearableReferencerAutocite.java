@@ -3,6 +3,7 @@ package com.wearableintelligencesystem.androidsmartphone.nlp;
 import java.util.Arrays;
 
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.util.Log;
 
 import com.wearableintelligencesystem.androidsmartphone.comms.MessageTypes;
@@ -19,14 +20,19 @@ import org.json.JSONObject;
 import org.json.JSONException;
 
 import java.util.ArrayList;
-
-//CSV
-import com.opencsv.CSVReader;
-import java.io.IOException;
-import java.io.FileReader;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//references
+import com.wearableintelligencesystem.androidsmartphone.nlp.referencelibrary.ReferenceLibrary;
+import com.wearableintelligencesystem.androidsmartphone.nlp.referencelibrary.ReferenceLibraryCompiler;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.FileInputStream;
 
 public class WearableReferencerAutocite {
     private static final String TAG = "WearableIntelligenceSystem_WearableReferencer";
@@ -34,11 +40,32 @@ public class WearableReferencerAutocite {
     private boolean isActive = false; //should this class be processing data?
     private String phoneNumber; //what phone number should be sending SMS to?
 
+    //where references come from, first found wins: a library compiled on a desktop (see ReferenceLibraryCompiler), a BibTeX or CSV export
+    //(compiled here, in the background), or the bundled CSV
     private final String referencesFileName = "wearable_referencer_references.csv";
-    private List<String []> myReferences;
+    private final String libraryDirName = "references";
+    private final String precompiledLibraryName = "references.wrl";
+    private final String [] librarySourceNames = new String[] {"references.bib", "references.csv"};
+    private final String compiledLibraryName = "wearable_referencer_references.wrl";
     private Context context;
 
-    private boolean processing = false;
+    //the library in use with the fuzzy index over its terms, swapped whole when its source changes
+    private static class LoadedLibrary {
+        final ReferenceLibrary library;
+        final FuzzyTermIndex termIndex;
+        final String sourceKey;
+        LoadedLibrary(ReferenceLibrary library, FuzzyTermIndex termIndex, String sourceKey){
+            this.library = library;
+            this.termIndex = termIndex;
+            this.sourceKey = sourceKey;
+        }
+    }
+    private volatile LoadedLibrary loadedLibrary;
+    private boolean loading = false; //only touched on the handler thread
+    private String failedSourceKey; //a source that couldn't be loaded isn't tried again until it changes, handler thread too
+    private final ExecutorService libraryLoader = Executors.newSingleThreadExecutor();
+
+    private volatile boolean processing = false;
 
     //selectors
     String [] selectorChars = new String[] {"α", "β", "γ", "Δ", "π"};
@@ -51,12 +78,6 @@ public class WearableReferencerAutocite {
     //voice command fuzzy search threshold
     private final double referenceThreshold = 0.95;
     private final double selectorCharNameThreshold = 0.90;
-    private final int titleIndex = 1;
-    private final int yearIndex = 2;
-    private final int authorsIndex = 3;
-    private final int linkIndex = 4;
-    private final int keywordIndex = 5;
-    private final int titleMinWordLen = 5;
     private final int refCountThresh = 4; //how many reference hits before we suggest the reference
 
     private NlpUtils nlpUtils;
@@ -64,36 +85,157 @@ public class WearableReferencerAutocite {
     //receive/send data stream
     PublishSubject<JSONObject> dataObservable;
     Disposable dataSub;
+    HandlerThread handlerThread;
     Handler handler;
 
     public WearableReferencerAutocite(Context context){
         this.context = context;
-        //open our references file so we can search for references
-        openReferencesFile();
-
         nlpUtils = NlpUtils.getInstance(context);
 
-        handler = new Handler();
+        //transcripts are matched off the main thread
+        handlerThread = new HandlerThread("WearableReferencerHandler");
+        handlerThread.start();
+        handler = new Handler(handlerThread.getLooper());
+
+        //open our references in the background so we can search for references, construction doesn't wait on the library
+        handler.post(() -> reloadIfChanged());
     }
 
-    private void openReferencesFile(){
-        try{
-            InputStream csvFileStream = context.getAssets().open(referencesFileName);
-            InputStreamReader csvStreamReader = new InputStreamReader(csvFileStream);
-            CSVReader reader = new CSVReader(csvStreamReader);
-            myReferences = reader.readAll();
-            for (int i = 0; i < myReferences.size(); i++){
-//                Log.d(TAG, "Printing references at index: " + i);
-//                for (int j = 0; j < myReferences.get(i).length; j++){
-//                    Log.d(TAG, "--- " + myReferences.get(i)[j]);
-//                }
+    //starts loading the library if its source isn't the one loaded, the old one stays in use until the new one is ready
+    //this is a few file stats, cheap enough to do for every transcript
+    private void reloadIfChanged(){
+        LoadedLibrary current = loadedLibrary;
+        String sourceKey = librarySourceKey();
+        if (loading || sourceKey.equals(failedSourceKey) || (current != null && current.sourceKey.equals(sourceKey))){
+            return;
+        }
+        loading = true;
+        CompletableFuture.supplyAsync(() -> loadLibrary(sourceKey), libraryLoader)
+                .whenComplete((loaded, error) -> handler.post(() -> {
+                    loading = false;
+                    if (error != null){
+                        Log.e(TAG, "Could not load references from " + sourceKey, error);
+                        failedSourceKey = sourceKey;
+                        return;
+                    }
+                    failedSourceKey = null;
+                    swapLibrary(loaded);
+                }));
+    }
+
+    private File libraryDir(){
+        return new File(context.getExternalFilesDir(null), libraryDirName);
+    }
+
+    //which source we'd load, and its version
+    private String librarySourceKey(){
+        File precompiled = new File(libraryDir(), precompiledLibraryName);
+        if (precompiled.exists()){
+            return precompiled.getPath() + ":" + precompiled.lastModified() + ":" + precompiled.length();
+        }
+        File source = librarySource();
+        if (source != null){
+            return source.getPath() + ":" + source.lastModified() + ":" + source.length();
+        }
+        return referencesFileName + ":" + assetStamp();
+    }
+
+    private File librarySource(){
+        for (String name : librarySourceNames){
+            File source = new File(libraryDir(), name);
+            if (source.exists()){
+                return source;
             }
+        }
+        return null;
+    }
+
+    //assets only change with the app
+    private long assetStamp(){
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (Exception e){
+            return 0;
+        }
+    }
+
+    //on the loader thread
+    //a corrupt library mostly shows up as reads out of range rather than IOExceptions, so runtime exceptions count as unreadable too
+    private LoadedLibrary loadLibrary(String sourceKey){
+        try {
+            File precompiled = new File(libraryDir(), precompiledLibraryName);
+            if (precompiled.exists()){
+                return index(ReferenceLibrary.open(precompiled), sourceKey);
+            }
+            File source = librarySource();
+            long stamp = source != null ? source.lastModified() : assetStamp();
+            ReferenceLibrary compiled = openCompiled(stamp);
+            if (compiled != null){
+                try {
+                    return index(compiled, sourceKey);
+                } catch (RuntimeException e){
+                    Log.w(TAG, "Recompiling unreadable reference library", e);
+                }
+            }
+            return index(compile(source, stamp), sourceKey);
         } catch (IOException e){
-            Log.d(TAG, "openReferenecsFile failed:");
-            e.printStackTrace();
+            throw new RuntimeException(e);
         }
     }
 
+    private LoadedLibrary index(ReferenceLibrary library, String sourceKey){
+        FuzzyTermIndex termIndex = new FuzzyTermIndex(library.getTerms(), referenceThreshold);
+        Log.d(TAG, "Loaded " + library.getReferenceCount() + " references with " + library.getTermCount() + " distinct terms from " + sourceKey);
+        return new LoadedLibrary(library, termIndex, sourceKey);
+    }
+
+    //our compiled copy of the source, or null if it's missing, from an older version of the source or unreadable
+    private ReferenceLibrary openCompiled(long stamp){
+        File compiled = new File(context.getFilesDir(), compiledLibraryName);
+        if (!compiled.exists()){
+            return null;
+        }
+        try {
+            ReferenceLibrary library = ReferenceLibrary.open(compiled);
+            return library.getSourceStamp() == stamp ? library : null;
+        } catch (IOException | RuntimeException e){
+            Log.w(TAG, "Recompiling unreadable reference library", e);
+            return null;
+        }
+    }
+
+    //compiles a source (null for the bundled CSV) into our copy
+    private ReferenceLibrary compile(File source, long stamp) throws IOException {
+        File compiled = new File(context.getFilesDir(), compiledLibraryName);
+        List<String []> references;
+        try (InputStream in = source != null ? new FileInputStream(source) : context.getAssets().open(referencesFileName)){
+            references = ReferenceLibraryCompiler.read(source != null ? source.getName() : referencesFileName, in);
+        }
+        ReferenceLibraryCompiler.compile(references, stamp, compiled);
+        return ReferenceLibrary.open(compiled);
+    }
+
+    //on the handler thread. Buffered suggestions point into the old library, so they go
+    private void swapLibrary(LoadedLibrary loaded){
+        boolean hadSuggestions = !potentialReferenceBuffer.isEmpty();
+        if (loadedLibrary != null){
+            potentialReferenceBuffer.clear();
+        }
+        loadedLibrary = loaded;
+        if (hadSuggestions && dataObservable != null){
+            sendPotentialReferencesToAsg();
+        }
+    }
+
+    //stops the handler and loader threads, the library in use stays mapped until it's collected
+    public void destroy(){
+        if (dataSub != null){
+            dataSub.dispose();
+        }
+        handlerThread.quitSafely();
+        libraryLoader.shutdownNow();
+    }
+
     //receive observable to send and receive data
     public void setObservable(PublishSubject<JSONObject> observable){
         dataObservable = observable;
@@ -129,21 +271,8 @@ public class WearableReferencerAutocite {
                     //get the referenced object selection code
                     String selection = data.getString(MessageTypes.SELECTION);
                     Log.d(TAG, "SELECTION WAS: " + selection);
-                    //fuzzy match that with our possible selection
-                    int selIdx = -1;
-                    for (int i = 0; i < selectorCharNames.length; i++){
-                       String currSel = selectorCharNames[i];
-                       FuzzyMatch find = nlpUtils.findNearMatches(selection, currSel, selectorCharNameThreshold);
-                       if (find != null && find.getIndex() != -1){
-                           if (i < potentialReferenceBuffer.size()) {
-                               MutableTriple ref = getFromBuffer(i);
-                               if (ref != null) {
-                                   sendReferenceToConversationPartner(myReferences.get((int) ref.getLeft()));
-                               }
-                           }
-                           break;
-                       }
-                    }
+                    //on the handler thread, with everything else that touches the buffer
+                    handler.post(() -> handleSelection(selection));
                 } else if (type.equals(MessageTypes.FINAL_TRANSCRIPT)){
                     Log.d(TAG, "WearableReferencer got FINAL_TRANSCRIPT, parsing");
                     try{
@@ -159,6 +288,23 @@ public class WearableReferencerAutocite {
         }
     }
 
+    private void handleSelection(String selection){
+        //fuzzy match that with our possible selection
+        for (int i = 0; i < selectorCharNames.length; i++){
+           String currSel = selectorCharNames[i];
+           FuzzyMatch find = nlpUtils.findNearMatches(selection, currSel, selectorCharNameThreshold);
+           if (find != null && find.getIndex() != -1){
+               if (i < potentialReferenceBuffer.size()) {
+                   MutableTriple ref = getFromBuffer(i);
+                   if (ref != null) {
+                       sendReferenceToConversationPartner((int) ref.getLeft());
+                   }
+               }
+               break;
+           }
+        }
+    }
+
     private void handleTranscript(String transcript){
         //setup a handler to process data
         if (processing){
@@ -176,17 +322,23 @@ public class WearableReferencerAutocite {
     }
 
     //searches incoming transcript to see if it contains any keywords
+    //a reference's count is how many of its keywords, authors and title words findNearMatches finds, the same as searching each one in turn
     private void parseString(String toReference){
-        for (int i = 1; i < myReferences.size(); i++){ //start at 1 to skip title line of CSV
-            int matchCount = 0;
-            String [] keywords = myReferences.get(i)[keywordIndex].toLowerCase().split(";");
-            String [] authors = myReferences.get(i)[authorsIndex].toLowerCase().split(";");
-            String [] title = myReferences.get(i)[titleIndex].toLowerCase().split(" ");
-            title = removeElementsLessThanN(titleMinWordLen, title); //title shouldn't match "the", "for", "is", etc.
-            matchCount = matchCount + nlpUtils.findNumMatches(toReference, keywords, referenceThreshold);
-            matchCount = matchCount + nlpUtils.findNumMatches(toReference, authors, referenceThreshold);
-            matchCount = matchCount + nlpUtils.findNumMatches(toReference, title, referenceThreshold);
-            if (matchCount >= refCountThresh){ //if this is a match
+        reloadIfChanged();
+        LoadedLibrary loaded = loadedLibrary;
+        if (loaded == null){
+            return;
+        }
+        ReferenceLibrary library = loaded.library;
+        BitSet foundTerms = loaded.termIndex.findAll(toReference);
+        int [] matchCounts = new int[library.getReferenceCount()];
+        for (int t = foundTerms.nextSetBit(0); t >= 0; t = foundTerms.nextSetBit(t + 1)){
+            for (int j = 0; j < library.getTermReferenceCount(t); j++){
+                matchCounts[library.getTermReference(t, j)]++;
+            }
+        }
+        for (int i = 0; i < matchCounts.length; i++){
+            if (matchCounts[i] >= refCountThresh){ //if this is a match
                 //add to our buffer
                 addToBuffer(i);
             }
@@ -300,14 +452,15 @@ public class WearableReferencerAutocite {
             for (int i = 0; i < potentialReferenceBuffer.size(); i++){
                 int refIdx = potentialReferenceBuffer.get(i).getLeft();
                 int selIdx = potentialReferenceBuffer.get(i).getRight();
-                String [] ref = myReferences.get(refIdx);
-                Log.d(TAG, "Possible reference: " + ref[titleIndex]);
+                ReferenceLibrary library = loadedLibrary.library;
+                String title = library.getField(refIdx, ReferenceLibrary.FIELD_TITLE);
+                Log.d(TAG, "Possible reference: " + title);
                 JSONObject refObj = new JSONObject();
                 refObj.put("selector_char", selectorChars[selIdx]);
                 refObj.put("selector_name", selectorCharNames[selIdx]);
-                refObj.put("title", ref[titleIndex]);
-                refObj.put("keyword_list", ref[keywordIndex]);
-                refObj.put("authors", ref[authorsIndex]);
+                refObj.put("title", title);
+                refObj.put("keyword_list", library.getField(refIdx, ReferenceLibrary.FIELD_KEYWORDS));
+                refObj.put("authors", library.getField(refIdx, ReferenceLibrary.FIELD_AUTHORS));
                 refArr.put(refObj);
             }
 
@@ -323,9 +476,10 @@ public class WearableReferencerAutocite {
     }
 
 
-    private void sendReferenceToConversationPartner(String [] ref){
+    private void sendReferenceToConversationPartner(int refIdx){
         Log.d(TAG, "Sending reference to conversation partner...");
-        String prettyReference = ref[titleIndex] + ", " + ref[authorsIndex] + ", " + ref[linkIndex];
+        ReferenceLibrary library = loadedLibrary.library;
+        String prettyReference = library.getField(refIdx, ReferenceLibrary.FIELD_TITLE) + ", " + library.getField(refIdx, ReferenceLibrary.FIELD_AUTHORS) + ", " + library.getField(refIdx, ReferenceLibrary.FIELD_LINK);
         try{
             JSONObject sendRef = new JSONObject();
             sendRef.put(MessageTypes.MESSAGE_TYPE_LOCAL, MessageTypes.SMS_REQUEST_SEND);
@@ -338,20 +492,6 @@ public class WearableReferencerAutocite {
         }
     }
 
-    private String [] removeElementsLessThanN(int n, String [] myStringArray){
-        List<String> myList = new ArrayList();
-
-        for (String l : myStringArray) {
-            if (!(l.length() < n)) {
-                myList.add(l);
-            }
-        }
-
-        String[] newStringArray = new String[myList.size()];
-        myStringArray = myList.toArray(newStringArray);
-        return myStringArray;
-    }
-
     public boolean getIsActive(){
         return isActive;
     }
@@ -0,0 +1,137 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp.referencelibrary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.List;
+
+//a reference library compiled by ReferenceLibraryCompiler, memory mapped read only
+//opening one only maps the file and checks its header, nothing is parsed up front - fields and terms are decoded from the mapping when asked
+//for, so opening costs the same for ten references as for fifty thousand, and the library itself lives in the page cache instead of the heap
+//the file is [header][reference table][term table][postings][string pool]:
+//  reference table - per reference, FIELD_COUNT (pool offset, byte length) pairs
+//  term table - per term, its (pool offset, byte length), then where its references start in the postings and how many there are
+//  postings - reference ids, once per time a reference lists the term
+//  string pool - utf-8 bytes of every field and term
+//safe to read from any thread, the mapping is never written
+public final class ReferenceLibrary {
+    static final int MAGIC = 0x57524c31; //"WRL1"
+    static final int VERSION = 1;
+    //magic, version, source stamp, reference count, term count, then where each section starts and the pool's length
+    static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4 + 4 + 4 + 4 + 4;
+    static final int REFERENCE_ENTRY_SIZE = 2 * 4;
+    static final int TERM_ENTRY_SIZE = 4 * 4;
+
+    public static final int FIELD_TITLE = 0;
+    public static final int FIELD_YEAR = 1;
+    public static final int FIELD_AUTHORS = 2;
+    public static final int FIELD_LINK = 3;
+    public static final int FIELD_KEYWORDS = 4;
+    static final int FIELD_COUNT = 5;
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final long sourceStamp;
+    private final int referenceCount;
+    private final int termCount;
+    private final int referencesOffset;
+    private final int termsOffset;
+    private final int postingsOffset;
+    private final int poolOffset;
+
+    private ReferenceLibrary(File file, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a compiled reference library");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(file + " is reference library version " + buffer.getInt(4) + ", expected " + VERSION);
+        }
+        sourceStamp = buffer.getLong(8);
+        referenceCount = buffer.getInt(16);
+        termCount = buffer.getInt(20);
+        referencesOffset = buffer.getInt(24);
+        termsOffset = buffer.getInt(28);
+        postingsOffset = buffer.getInt(32);
+        poolOffset = buffer.getInt(36);
+        int poolLength = buffer.getInt(40);
+        if (referencesOffset + (long) referenceCount * FIELD_COUNT * REFERENCE_ENTRY_SIZE > termsOffset
+                || termsOffset + (long) termCount * TERM_ENTRY_SIZE > postingsOffset
+                || (long) poolOffset + poolLength > buffer.limit()) {
+            throw new IOException(file + " is truncated");
+        }
+    }
+
+    public static ReferenceLibrary open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            //the mapping stays valid after the channel is closed, and after the file is replaced by a newer compile
+            return new ReferenceLibrary(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public File getFile(){
+        return file;
+    }
+
+    //identifies the source this was compiled from, see ReferenceLibraryCompiler.compile
+    public long getSourceStamp(){
+        return sourceStamp;
+    }
+
+    public int getReferenceCount(){
+        return referenceCount;
+    }
+
+    public String getField(int reference, int field){
+        int entry = referencesOffset + (reference * FIELD_COUNT + field) * REFERENCE_ENTRY_SIZE;
+        return decode(buffer.getInt(entry), buffer.getInt(entry + 4));
+    }
+
+    public int getTermCount(){
+        return termCount;
+    }
+
+    public String getTerm(int term){
+        int entry = termsOffset + term * TERM_ENTRY_SIZE;
+        return decode(buffer.getInt(entry), buffer.getInt(entry + 4));
+    }
+
+    //every term, decoded as it's read
+    public List<String> getTerms(){
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return getTerm(index);
+            }
+
+            @Override
+            public int size() {
+                return termCount;
+            }
+        };
+    }
+
+    //how many times references list the term, and which reference the i'th time is
+    public int getTermReferenceCount(int term){
+        return buffer.getInt(termsOffset + term * TERM_ENTRY_SIZE + 12);
+    }
+
+    public int getTermReference(int term, int i){
+        int start = buffer.getInt(termsOffset + term * TERM_ENTRY_SIZE + 8);
+        return buffer.getInt(postingsOffset + (start + i) * 4);
+    }
+
+    private String decode(int offset, int length){
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(poolOffset + offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,364 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp.referencelibrary;
+
+import com.opencsv.CSVReader;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//turns a references CSV (the autociter's asset format) or a BibTeX file into a ReferenceLibrary file
+//the app runs it in the background when a library's source changes, and it also runs on a desktop for big libraries:
+//  java -cp <app classes>:opencsv.jar ...ReferenceLibraryCompiler references.bib references.wrl
+//then copy the .wrl into the app's references folder, see WearableReferencerAutocite
+//the terms a reference is found by are decided here, once, rather than every time a transcript comes in
+public final class ReferenceLibraryCompiler {
+    //CSV columns, the first one is an id we don't use
+    private static final int CSV_TITLE = 1;
+    private static final int CSV_YEAR = 2;
+    private static final int CSV_AUTHORS = 3;
+    private static final int CSV_LINK = 4;
+    private static final int CSV_KEYWORDS = 5;
+
+    private static final int TITLE_MIN_WORD_LENGTH = 5; //title shouldn't match "the", "for", "is", etc.
+
+    private ReferenceLibraryCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: ReferenceLibraryCompiler <references.csv|references.bib> <output.wrl>");
+            System.exit(2);
+        }
+        File source = new File(args[0]);
+        List<String[]> references;
+        try (InputStream in = new FileInputStream(source)) {
+            references = read(source.getName(), in);
+        }
+        compile(references, source.lastModified(), new File(args[1]));
+        System.out.println("Compiled " + references.size() + " references to " + args[1]);
+    }
+
+    //parses by extension, .bib is BibTeX and anything else is CSV. Each reference is its fields in ReferenceLibrary.FIELD_* order
+    public static List<String[]> read(String name, InputStream in) throws IOException {
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        if (name.toLowerCase().endsWith(".bib")) {
+            return readBibtex(reader);
+        }
+        return readCsv(reader);
+    }
+
+    public static List<String[]> readCsv(Reader in) throws IOException {
+        List<String[]> references = new ArrayList<>();
+        CSVReader reader = new CSVReader(in);
+        String[] row;
+        boolean header = true;
+        while ((row = reader.readNext()) != null) {
+            if (header) { //skip title line of CSV
+                header = false;
+                continue;
+            }
+            if (row.length <= CSV_KEYWORDS) {
+                continue;
+            }
+            references.add(new String[]{row[CSV_TITLE], row[CSV_YEAR], row[CSV_AUTHORS], row[CSV_LINK], row[CSV_KEYWORDS]});
+        }
+        return references;
+    }
+
+    //just enough BibTeX for exported libraries: @type{key, field = {value} or "value" or bare, ...}, with # concatenation
+    //authors are split on " and ", keywords on commas or semicolons, and the link is the url, else the doi
+    public static List<String[]> readBibtex(Reader in) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] chunk = new char[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            text.append(chunk, 0, read);
+        }
+
+        List<String[]> references = new ArrayList<>();
+        BibtexCursor cursor = new BibtexCursor(text);
+        while (cursor.skipTo('@')) {
+            String type = cursor.readName().toLowerCase();
+            cursor.skipWhitespace();
+            if (!cursor.take('{') && !cursor.take('(')) {
+                continue;
+            }
+            if (type.equals("comment") || type.equals("string") || type.equals("preamble")) {
+                cursor.skipGroup();
+                continue;
+            }
+            cursor.skipTo(','); //citation key
+            Map<String, String> fields = new HashMap<>();
+            while (true) {
+                cursor.skipWhitespaceAnd(',');
+                if (cursor.atEnd() || cursor.take('}') || cursor.take(')')) {
+                    break;
+                }
+                String field = cursor.readName().toLowerCase();
+                cursor.skipWhitespace();
+                if (field.isEmpty() || !cursor.take('=')) {
+                    cursor.skipGroup();
+                    break;
+                }
+                fields.put(field, cursor.readValue());
+            }
+            if (!fields.containsKey("title")) {
+                continue;
+            }
+            String link = fields.containsKey("url") ? fields.get("url") : fields.containsKey("doi") ? "https://doi.org/" + fields.get("doi") : "";
+            references.add(new String[]{
+                    fields.get("title"),
+                    valueOrEmpty(fields.get("year")),
+                    join(valueOrEmpty(fields.get("author")).split("\\s+and\\s+")),
+                    link,
+                    join(valueOrEmpty(fields.get("keywords")).split("\\s*[,;]\\s*"))});
+        }
+        return references;
+    }
+
+    //every term a reference should be found by, once per time it lists it
+    public static List<String> terms(String[] reference){
+        List<String> terms = new ArrayList<>();
+        for (String keyword : reference[ReferenceLibrary.FIELD_KEYWORDS].toLowerCase().split(";")) {
+            terms.add(keyword);
+        }
+        for (String author : reference[ReferenceLibrary.FIELD_AUTHORS].toLowerCase().split(";")) {
+            terms.add(author);
+        }
+        for (String word : reference[ReferenceLibrary.FIELD_TITLE].toLowerCase().split(" ")) {
+            if (word.length() >= TITLE_MIN_WORD_LENGTH) {
+                terms.add(word);
+            }
+        }
+        return terms;
+    }
+
+    //sourceStamp is kept in the header so the app can tell whether a compiled library is still up to date with its source
+    //written to a temporary file that's renamed over out, so a library that's mapped keeps reading the old one
+    public static void compile(List<String[]> references, long sourceStamp, File out) throws IOException {
+        ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        Map<String, int[]> pooled = new HashMap<>(); //string -> pool offset and length, identical strings are stored once
+
+        int[] referenceEntries = new int[references.size() * ReferenceLibrary.FIELD_COUNT * 2];
+        Map<String, Integer> termIds = new HashMap<>();
+        List<String> terms = new ArrayList<>();
+        List<List<Integer>> termReferences = new ArrayList<>();
+        int postingCount = 0;
+        for (int r = 0; r < references.size(); r++) {
+            String[] reference = references.get(r);
+            for (int f = 0; f < ReferenceLibrary.FIELD_COUNT; f++) {
+                int[] entry = pool(pool, pooled, reference[f]);
+                referenceEntries[(r * ReferenceLibrary.FIELD_COUNT + f) * 2] = entry[0];
+                referenceEntries[(r * ReferenceLibrary.FIELD_COUNT + f) * 2 + 1] = entry[1];
+            }
+            for (String term : terms(reference)) {
+                Integer termId = termIds.get(term);
+                if (termId == null) {
+                    termId = terms.size();
+                    termIds.put(term, termId);
+                    terms.add(term);
+                    termReferences.add(new ArrayList<>());
+                }
+                termReferences.get(termId).add(r);
+                postingCount++;
+            }
+        }
+        int[] termEntries = new int[terms.size() * 2];
+        for (int t = 0; t < terms.size(); t++) {
+            int[] entry = pool(pool, pooled, terms.get(t));
+            termEntries[t * 2] = entry[0];
+            termEntries[t * 2 + 1] = entry[1];
+        }
+
+        int referencesOffset = ReferenceLibrary.HEADER_SIZE;
+        int termsOffset = referencesOffset + referenceEntries.length * 4;
+        int postingsOffset = termsOffset + terms.size() * ReferenceLibrary.TERM_ENTRY_SIZE;
+        int poolOffset = postingsOffset + postingCount * 4;
+
+        File tmp = new File(out.getPath() + ".tmp");
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            data.writeInt(ReferenceLibrary.MAGIC);
+            data.writeInt(ReferenceLibrary.VERSION);
+            data.writeLong(sourceStamp);
+            data.writeInt(references.size());
+            data.writeInt(terms.size());
+            data.writeInt(referencesOffset);
+            data.writeInt(termsOffset);
+            data.writeInt(postingsOffset);
+            data.writeInt(poolOffset);
+            data.writeInt(pool.size());
+            for (int value : referenceEntries) {
+                data.writeInt(value);
+            }
+            int postingStart = 0;
+            for (int t = 0; t < terms.size(); t++) {
+                data.writeInt(termEntries[t * 2]);
+                data.writeInt(termEntries[t * 2 + 1]);
+                data.writeInt(postingStart);
+                data.writeInt(termReferences.get(t).size());
+                postingStart += termReferences.get(t).size();
+            }
+            for (List<Integer> postings : termReferences) {
+                for (int reference : postings) {
+                    data.writeInt(reference);
+                }
+            }
+            pool.writeTo(data);
+        }
+        if (!tmp.renameTo(out)) {
+            tmp.delete();
+            throw new IOException("Could not move compiled library to " + out);
+        }
+    }
+
+    private static int[] pool(ByteArrayOutputStream pool, Map<String, int[]> pooled, String value){
+        int[] entry = pooled.get(value);
+        if (entry == null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            entry = new int[]{pool.size(), bytes.length};
+            pool.write(bytes, 0, bytes.length);
+            pooled.put(value, entry);
+        }
+        return entry;
+    }
+
+    private static String valueOrEmpty(String value){
+        return value == null ? "" : value;
+    }
+
+    private static String join(String[] parts){
+        StringBuilder joined = new StringBuilder();
+        for (String part : parts) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            if (joined.length() > 0) {
+                joined.append(';');
+            }
+            joined.append(part);
+        }
+        return joined.toString();
+    }
+
+    private static class BibtexCursor {
+        private final CharSequence text;
+        private int position = 0;
+
+        BibtexCursor(CharSequence text){
+            this.text = text;
+        }
+
+        boolean atEnd(){
+            return position >= text.length();
+        }
+
+        boolean skipTo(char c){
+            while (!atEnd() && text.charAt(position) != c) {
+                position++;
+            }
+            return take(c);
+        }
+
+        boolean take(char c){
+            if (!atEnd() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void skipWhitespace(){
+            while (!atEnd() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        void skipWhitespaceAnd(char c){
+            while (!atEnd() && (Character.isWhitespace(text.charAt(position)) || text.charAt(position) == c)) {
+                position++;
+            }
+        }
+
+        String readName(){
+            skipWhitespace();
+            int start = position;
+            while (!atEnd() && (Character.isLetterOrDigit(text.charAt(position)) || "_-:.".indexOf(text.charAt(position)) != -1)) {
+                position++;
+            }
+            return text.subSequence(start, position).toString();
+        }
+
+        //the rest of an entry we don't want, braces balanced
+        void skipGroup(){
+            int depth = 1;
+            while (!atEnd() && depth > 0) {
+                char c = text.charAt(position++);
+                if (c == '{' || c == '(') {
+                    depth++;
+                } else if (c == '}' || c == ')') {
+                    depth--;
+                }
+            }
+        }
+
+        //a field value with its braces and quotes removed and whitespace collapsed
+        String readValue(){
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                skipWhitespace();
+                if (take('{')) {
+                    readBraced(value);
+                } else if (take('"')) {
+                    int depth = 0;
+                    while (!atEnd()) {
+                        char c = text.charAt(position++);
+                        if (c == '"' && depth == 0) {
+                            break;
+                        } else if (c == '{') {
+                            depth++;
+                        } else if (c == '}') {
+                            depth--;
+                        } else {
+                            value.append(c);
+                        }
+                    }
+                } else {
+                    value.append(readName()); //a number or an @string macro, which we don't expand
+                }
+                skipWhitespace();
+                if (!take('#')) {
+                    break;
+                }
+            }
+            return value.toString().replaceAll("\\s+", " ").trim();
+        }
+
+        private void readBraced(StringBuilder value){
+            int depth = 1;
+            while (!atEnd()) {
+                char c = text.charAt(position++);
+                if (c == '{') {
+                    depth++;
+                } else if (c == '}') {
+                    if (--depth == 0) {
+                        return;
+                    }
+                } else {
+                    value.append(c);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp.similarity;
+
+//info.debatty JaroWinkler.similarity, but over a region of any CharSequence and with its match arrays kept between calls
+//the fuzzy matchers score every window of a transcript against every phrase, so the library's per call substring and arrays were most of
+//what they allocated. This does the same steps in the same order (including the float arithmetic the library does jaro in), so the scores
+//are identical, not just close
+//not thread safe, the scratch arrays are reused - use one per thread
+public final class JaroWinklerKernel {
+    private static final double THRESHOLD = 0.7; //the library's default, below it no prefix bonus is given
+
+    private int[] matchIndexes = new int[32];
+    private boolean[] matchFlags = new boolean[32];
+
+    public double similarity(CharSequence s1, CharSequence s2){
+        return similarity(s1, 0, s1.length(), s2, 0, s2.length());
+    }
+
+    //the similarity of s1[s1Start, s1Start + s1Length) to s2[s2Start, s2Start + s2Length)
+    public double similarity(CharSequence s1, int s1Start, int s1Length, CharSequence s2, int s2Start, int s2Length){
+        if (regionEquals(s1, s1Start, s1Length, s2, s2Start, s2Length)) {
+            return 1;
+        }
+
+        //same min/max split as the library, s2 is the longer one on a tie
+        CharSequence max, min;
+        int maxStart, maxLength, minStart, minLength;
+        if (s1Length > s2Length) {
+            max = s1; maxStart = s1Start; maxLength = s1Length;
+            min = s2; minStart = s2Start; minLength = s2Length;
+        } else {
+            max = s2; maxStart = s2Start; maxLength = s2Length;
+            min = s1; minStart = s1Start; minLength = s1Length;
+        }
+        if (matchIndexes.length < minLength) {
+            matchIndexes = new int[Math.max(minLength, matchIndexes.length * 2)];
+        }
+        if (matchFlags.length < maxLength) {
+            matchFlags = new boolean[Math.max(maxLength, matchFlags.length * 2)];
+        }
+        int range = Math.max(maxLength / 2 - 1, 0);
+        for (int i = 0; i < maxLength; i++) {
+            matchFlags[i] = false;
+        }
+
+        int matches = 0;
+        for (int mi = 0; mi < minLength; mi++) {
+            matchIndexes[mi] = -1;
+            char c1 = min.charAt(minStart + mi);
+            for (int xi = Math.max(mi - range, 0), xn = Math.min(mi + range + 1, maxLength); xi < xn; xi++) {
+                if (!matchFlags[xi] && c1 == max.charAt(maxStart + xi)) {
+                    matchIndexes[mi] = xi;
+                    matchFlags[xi] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0;
+        }
+
+        //the matched characters of min in order against those of max in order, without copying them out
+        int mismatched = 0;
+        int xi = 0;
+        for (int mi = 0; mi < minLength; mi++) {
+            if (matchIndexes[mi] == -1) {
+                continue;
+            }
+            while (!matchFlags[xi]) {
+                xi++;
+            }
+            if (min.charAt(minStart + mi) != max.charAt(maxStart + xi)) {
+                mismatched++;
+            }
+            xi++;
+        }
+        int transpositions = mismatched / 2;
+
+        int prefix = 0;
+        while (prefix < minLength && s1.charAt(s1Start + prefix) == s2.charAt(s2Start + prefix)) {
+            prefix++;
+        }
+
+        float m = matches;
+        double j = ((m / s1Length + m / s2Length + (m - transpositions) / m)) / 3;
+        double jw = j;
+        if (j > THRESHOLD) {
+            jw = j + Math.min(0.1, 1.0 / maxLength) * prefix * (1 - j);
+        }
+        return jw;
+    }
+
+    static boolean regionEquals(CharSequence s1, int s1Start, int s1Length, CharSequence s2, int s2Start, int s2Length){
+        if (s1Length != s2Length) {
+            return false;
+        }
+        for (int i = 0; i < s1Length; i++) {
+            if (s1.charAt(s1Start + i) != s2.charAt(s2Start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,59 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp.similarity;
+
+//info.debatty NormalizedLevenshtein.similarity (1 - edit distance / longer length) over CharSequence regions, with the two dp rows kept
+//between calls instead of allocated per call. Same scores as the library
+//not thread safe, the scratch rows are reused - use one per thread
+public final class NormalizedLevenshteinKernel {
+    private int[] v0 = new int[33];
+    private int[] v1 = new int[33];
+
+    public double similarity(CharSequence s1, CharSequence s2){
+        return similarity(s1, 0, s1.length(), s2, 0, s2.length());
+    }
+
+    public double similarity(CharSequence s1, int s1Start, int s1Length, CharSequence s2, int s2Start, int s2Length){
+        return 1.0 - distance(s1, s1Start, s1Length, s2, s2Start, s2Length);
+    }
+
+    public double distance(CharSequence s1, int s1Start, int s1Length, CharSequence s2, int s2Start, int s2Length){
+        if (JaroWinklerKernel.regionEquals(s1, s1Start, s1Length, s2, s2Start, s2Length)) {
+            return 0;
+        }
+        int maxLength = Math.max(s1Length, s2Length);
+        if (maxLength == 0) {
+            return 0;
+        }
+        return levenshtein(s1, s1Start, s1Length, s2, s2Start, s2Length) / (double) maxLength;
+    }
+
+    //plain edit distance, two rows of the dp table
+    public int levenshtein(CharSequence s1, int s1Start, int s1Length, CharSequence s2, int s2Start, int s2Length){
+        if (s1Length == 0) {
+            return s2Length;
+        }
+        if (s2Length == 0) {
+            return s1Length;
+        }
+        if (v0.length < s2Length + 1) {
+            v0 = new int[Math.max(s2Length + 1, v0.length * 2)];
+            v1 = new int[v0.length];
+        }
+        int[] previous = v0;
+        int[] current = v1;
+        for (int i = 0; i <= s2Length; i++) {
+            previous[i] = i;
+        }
+        for (int i = 0; i < s1Length; i++) {
+            current[0] = i + 1;
+            char c1 = s1.charAt(s1Start + i);
+            for (int j = 0; j < s2Length; j++) {
+                int cost = c1 == s2.charAt(s2Start + j) ? 0 : 1;
+                current[j + 1] = Math.min(current[j] + 1, Math.min(previous[j + 1] + 1, previous[j] + cost));
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[s2Length];
+    }
+}
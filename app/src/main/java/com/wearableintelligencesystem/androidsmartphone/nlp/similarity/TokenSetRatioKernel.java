@@ -0,0 +1,157 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp.similarity;
+
+//token set ratio, for comparing things like author lists and titles where word order and repeated words shouldn't matter
+//both sides are split into their distinct whitespace separated tokens, sorted. The shared tokens, and the shared tokens followed by each
+//side's leftovers, are compared pairwise with normalized levenshtein and the best of the three is the score - so "smith john" against
+//"john smith" is 1, and a side whose tokens are all found in the other scores 1 too. Tokens are compared as given, lowercase first if needed
+//token positions and the joined strings live in scratch buffers kept between calls
+//not thread safe - use one per thread
+public final class TokenSetRatioKernel {
+    private final NormalizedLevenshteinKernel levenshtein = new NormalizedLevenshteinKernel();
+
+    //start and end of each token, two ints per token
+    private int[] tokens1 = new int[32];
+    private int[] tokens2 = new int[32];
+    private final StringBuilder shared = new StringBuilder();
+    private final StringBuilder combined1 = new StringBuilder();
+    private final StringBuilder combined2 = new StringBuilder();
+
+    //0 if either side has no tokens
+    public double similarity(CharSequence s1, CharSequence s2){
+        tokens1 = tokenize(s1, tokens1);
+        int count1 = sortDistinct(s1, tokens1);
+        tokens2 = tokenize(s2, tokens2);
+        int count2 = sortDistinct(s2, tokens2);
+        if (count1 == 0 || count2 == 0) {
+            return 0;
+        }
+
+        shared.setLength(0);
+        combined1.setLength(0);
+        combined2.setLength(0);
+        int i = 0;
+        int j = 0;
+        while (i < count1 || j < count2) {
+            int compare;
+            if (i == count1) {
+                compare = 1;
+            } else if (j == count2) {
+                compare = -1;
+            } else {
+                compare = compare(s1, tokens1, i, s2, tokens2, j);
+            }
+            if (compare == 0) {
+                append(shared, s1, tokens1, i);
+                i++;
+                j++;
+            } else if (compare < 0) {
+                append(combined1, s1, tokens1, i);
+                i++;
+            } else {
+                append(combined2, s2, tokens2, j);
+                j++;
+            }
+        }
+        prepend(combined1, shared);
+        prepend(combined2, shared);
+
+        double best = levenshtein.similarity(combined1, combined2);
+        if (shared.length() > 0) {
+            best = Math.max(best, levenshtein.similarity(shared, combined1));
+            best = Math.max(best, levenshtein.similarity(shared, combined2));
+        }
+        return best;
+    }
+
+    //token bounds into bounds (grown if needed), ending with a -1
+    private static int[] tokenize(CharSequence s, int[] bounds){
+        int count = 0;
+        int i = 0;
+        while (i < s.length()) {
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+                i++;
+            }
+            if (i == s.length()) {
+                break;
+            }
+            int start = i;
+            while (i < s.length() && !Character.isWhitespace(s.charAt(i))) {
+                i++;
+            }
+            if (bounds.length < count * 2 + 3) {
+                int[] grown = new int[bounds.length * 2];
+                System.arraycopy(bounds, 0, grown, 0, count * 2);
+                bounds = grown;
+            }
+            bounds[count * 2] = start;
+            bounds[count * 2 + 1] = i;
+            count++;
+        }
+        bounds[count * 2] = -1;
+        return bounds;
+    }
+
+    //insertion sort, token lists are a handful of words. Returns how many distinct tokens are left at the front
+    private static int sortDistinct(CharSequence s, int[] bounds){
+        int count = 0;
+        while (bounds[count * 2] != -1) {
+            count++;
+        }
+        for (int i = 1; i < count; i++) {
+            int start = bounds[i * 2];
+            int end = bounds[i * 2 + 1];
+            int j = i - 1;
+            while (j >= 0 && compare(s, bounds[j * 2], bounds[j * 2 + 1], s, start, end) > 0) {
+                bounds[(j + 1) * 2] = bounds[j * 2];
+                bounds[(j + 1) * 2 + 1] = bounds[j * 2 + 1];
+                j--;
+            }
+            bounds[(j + 1) * 2] = start;
+            bounds[(j + 1) * 2 + 1] = end;
+        }
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct > 0 && compare(s, bounds[(distinct - 1) * 2], bounds[(distinct - 1) * 2 + 1], s, bounds[i * 2], bounds[i * 2 + 1]) == 0) {
+                continue;
+            }
+            bounds[distinct * 2] = bounds[i * 2];
+            bounds[distinct * 2 + 1] = bounds[i * 2 + 1];
+            distinct++;
+        }
+        return distinct;
+    }
+
+    private static int compare(CharSequence s1, int[] bounds1, int token1, CharSequence s2, int[] bounds2, int token2){
+        return compare(s1, bounds1[token1 * 2], bounds1[token1 * 2 + 1], s2, bounds2[token2 * 2], bounds2[token2 * 2 + 1]);
+    }
+
+    private static int compare(CharSequence s1, int start1, int end1, CharSequence s2, int start2, int end2){
+        int length1 = end1 - start1;
+        int length2 = end2 - start2;
+        for (int i = 0; i < Math.min(length1, length2); i++) {
+            char c1 = s1.charAt(start1 + i);
+            char c2 = s2.charAt(start2 + i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return length1 - length2;
+    }
+
+    private static void append(StringBuilder joined, CharSequence s, int[] bounds, int token){
+        if (joined.length() > 0) {
+            joined.append(' ');
+        }
+        joined.append(s, bounds[token * 2], bounds[token * 2 + 1]);
+    }
+
+    private static void prepend(StringBuilder leftovers, StringBuilder shared){
+        if (shared.length() == 0) {
+            return;
+        }
+        if (leftovers.length() > 0) {
+            leftovers.insert(0, ' ');
+        }
+        leftovers.insert(0, shared);
+    }
+}
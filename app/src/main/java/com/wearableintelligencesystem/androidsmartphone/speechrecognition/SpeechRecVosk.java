@@ -15,10 +15,13 @@ import android.util.Base64;
 import android.content.Context;
 import android.util.Log;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.util.Pair;
 
 import java.lang.InterruptedException;
+import java.io.File;
 import java.io.InputStream;
+import java.util.function.BooleanSupplier;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -27,8 +30,11 @@ import com.wearableintelligencesystem.androidsmartphone.database.phrase.Phrase;
 import com.wearableintelligencesystem.androidsmartphone.database.phrase.PhraseRepository;
 import com.wearableintelligencesystem.androidsmartphone.database.phrase.PhraseCreator;
 import com.wearableintelligencesystem.androidsmartphone.comms.MessageTypes;
+import com.wearableintelligencesystem.androidsmartphone.speechrecognition.kws.KeywordSpotter;
+import com.wearableintelligencesystem.androidsmartphone.speechrecognition.kws.MfccExtractor;
 
 //queue
+import java.util.ArrayDeque;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ArrayBlockingQueue;
 
@@ -62,6 +68,32 @@ public class SpeechRecVosk implements RecognitionListener {
     private BlockingQueue<byte []> audioSenderStreamVosk;
     final Handler main_handler;
 
+    //command mode - while a voice command is being said, a second recognizer that only knows the commands (a Vosk grammar VoiceCommandServer
+    //sends us) hears the same audio. Base language only
+    private static final int COMMAND_PREROLL_CHUNKS = 5; //about a second from before the wake word was found, so the command's first word isn't cut off
+    private static final int RECENT_AUDIO_CHUNKS = 10; //about 2 seconds, the most any of the below need
+    private final ArrayDeque<byte []> recentAudio = new ArrayDeque<>(); //also the lock for handing audio to the recognizers
+    private volatile BlockingQueue<byte []> commandAudio; //non null while command recognition is on
+    private Recognizer commandRecognizer;
+    private volatile SpeechStreamQueueServiceVosk commandStreamService; //read by the listener on the main thread
+    private HandlerThread commandHandlerThread;
+    private Handler commandHandler; //starting and stopping the command recognizer waits on its thread, so it's done here
+
+    //low power listening - while nothing needs a transcript of everything that's said, the full recognizer can sleep, and only hear audio once
+    //the keyword spotter hears the wake word. It's woken with the couple of seconds of audio before the spot, so it hears the wake word too,
+    //and goes back to sleep once it's heard nothing for a while. Off unless asked for, since what's said while it sleeps isn't transcribed
+    //the spotter learns the wake word from the audio around the wake words the full recognizer hears, and never lets it sleep until it has
+    //Base language only
+    private static final long RECOGNIZER_IDLE_SLEEP_MS = 15000;
+    private volatile boolean lowPowerListening = false;
+    private volatile boolean recognizerAwake = true; //written holding recentAudio, so no chunk is both skipped and replayed
+    private volatile long lastRecognizerActivity = 0;
+    private BooleanSupplier conversationCaptureActive = () -> false; //whether something needs everything transcribed, asked on the spotter thread
+    private KeywordSpotter keywordSpotter; //only used on the spotter thread, null until it's loaded
+    private HandlerThread spotterHandlerThread;
+    private Handler spotterHandler;
+    private final Runnable sleepCheck = this::checkRecognizerSleep;
+
     //receive/send data stream
     PublishSubject<JSONObject> dataObservable;
     Disposable dataSub;
@@ -88,6 +120,17 @@ public class SpeechRecVosk implements RecognitionListener {
         //setup the object which will pass audio bytes to vosk
         audioSenderStreamVosk = new ArrayBlockingQueue(1024);
 
+        if (isBaseLanguage) {
+            commandHandlerThread = new HandlerThread("CommandRecognizerHandler");
+            commandHandlerThread.start();
+            commandHandler = new Handler(commandHandlerThread.getLooper());
+
+            spotterHandlerThread = new HandlerThread("KeywordSpotterHandler");
+            spotterHandlerThread.start();
+            spotterHandler = new Handler(spotterHandlerThread.getLooper());
+            spotterHandler.post(() -> keywordSpotter = new KeywordSpotter(new File(mContext.getFilesDir(), "kws")));
+        }
+
         //start vosk ASR
         LibVosk.setLogLevel(LogLevel.INFO);
         initModel();
@@ -148,6 +191,191 @@ public class SpeechRecVosk implements RecognitionListener {
         if (speechStreamService != null) {
             speechStreamService.stop();
         }
+        if (commandHandler != null) {
+            commandHandler.post(this::stopCommandRecognition);
+            commandHandlerThread.quitSafely();
+        }
+        if (spotterHandler != null) {
+            spotterHandler.removeCallbacks(sleepCheck);
+            spotterHandlerThread.quitSafely();
+        }
+    }
+
+    //whether the full recognizer may sleep until the wake word is spotted, see lowPowerListening
+    public void setLowPowerListening(boolean enabled){
+        if (!isBaseLanguage) {
+            return;
+        }
+        lowPowerListening = enabled;
+        lastRecognizerActivity = System.currentTimeMillis();
+        if (enabled) {
+            spotterHandler.removeCallbacks(sleepCheck);
+            spotterHandler.postDelayed(sleepCheck, RECOGNIZER_IDLE_SLEEP_MS);
+        } else {
+            spotterHandler.post(this::wakeRecognizer);
+        }
+    }
+
+    public boolean getLowPowerListening(){
+        return lowPowerListening;
+    }
+
+    //the full recognizer never sleeps while this says something needs everything that's said transcribed
+    public void setConversationCaptureCheck(BooleanSupplier conversationCaptureActive){
+        this.conversationCaptureActive = conversationCaptureActive;
+    }
+
+    private void spotKeyword(byte [] chunk, long chunkEndTime){
+        if (keywordSpotter == null || recognizerAwake) {
+            return;
+        }
+        short [] samples = MfccExtractor.toSamples(chunk, chunk.length);
+        long spotTime = keywordSpotter.accept(samples, samples.length, chunkEndTime);
+        if (spotTime == -1) {
+            return;
+        }
+        wakeRecognizer();
+        try {
+            JSONObject spotEvent = new JSONObject();
+            spotEvent.put(MessageTypes.MESSAGE_TYPE_LOCAL, MessageTypes.KEYWORD_SPOTTED);
+            spotEvent.put(MessageTypes.TIMESTAMP, spotTime);
+            dataObservable.onNext(spotEvent);
+        } catch (JSONException e){
+            e.printStackTrace();
+        }
+    }
+
+    private void wakeRecognizer(){
+        lastRecognizerActivity = System.currentTimeMillis();
+        synchronized (recentAudio) {
+            if (recognizerAwake) {
+                return;
+            }
+            for (byte [] chunk : recentAudio) {
+                audioSenderStreamVosk.offer(chunk);
+            }
+            recognizerAwake = true;
+        }
+        Log.d(TAG, "Woke recognizer");
+        if (lowPowerListening) {
+            spotterHandler.removeCallbacks(sleepCheck);
+            spotterHandler.postDelayed(sleepCheck, RECOGNIZER_IDLE_SLEEP_MS);
+        }
+    }
+
+    private void checkRecognizerSleep(){
+        if (!lowPowerListening || !recognizerAwake) {
+            return;
+        }
+        long idle = System.currentTimeMillis() - lastRecognizerActivity;
+        if (idle < RECOGNIZER_IDLE_SLEEP_MS) {
+            spotterHandler.postDelayed(sleepCheck, RECOGNIZER_IDLE_SLEEP_MS - idle);
+            return;
+        }
+        //it can't be woken without templates, and a command or a capture needs everything heard
+        if (keywordSpotter == null || !keywordSpotter.isReady() || commandAudio != null || conversationCaptureActive.getAsBoolean()) {
+            spotterHandler.postDelayed(sleepCheck, RECOGNIZER_IDLE_SLEEP_MS);
+            return;
+        }
+        keywordSpotter.reset();
+        synchronized (recentAudio) {
+            recognizerAwake = false;
+        }
+        Log.d(TAG, "Recognizer sleeping until the wake word is spotted");
+    }
+
+    //the audio of a wake word the full recognizer heard, to learn the wake word from
+    private void enrollWakeWord(byte [] audio){
+        if (keywordSpotter != null) {
+            short [] samples = MfccExtractor.toSamples(audio, audio.length);
+            keywordSpotter.enroll(samples, samples.length);
+        }
+    }
+
+    private void startCommandRecognition(String grammar){
+        stopCommandRecognition();
+        if (model == null) {
+            return;
+        }
+        try {
+            commandRecognizer = new Recognizer(model, 16000.0f, grammar);
+        } catch (RuntimeException e) {
+            //e.g. a model with a static graph, which can't take a grammar
+            setErrorState("Failed to make command recognizer: " + e.getMessage());
+            return;
+        }
+        BlockingQueue<byte []> queue = new ArrayBlockingQueue(1024);
+        commandStreamService = new SpeechStreamQueueServiceVosk(commandRecognizer, queue, 16000.0f, 6416);
+        commandStreamService.start(new CommandRecognitionListener(commandStreamService));
+        synchronized (recentAudio) {
+            int skip = recentAudio.size() - COMMAND_PREROLL_CHUNKS;
+            for (byte [] chunk : recentAudio) {
+                if (skip-- <= 0) {
+                    queue.offer(chunk);
+                }
+            }
+            commandAudio = queue;
+        }
+    }
+
+    private void stopCommandRecognition(){
+        synchronized (recentAudio) {
+            commandAudio = null;
+        }
+        if (commandStreamService != null) {
+            commandStreamService.stop();
+            commandStreamService = null;
+        }
+        if (commandRecognizer != null) {
+            commandRecognizer.close();
+            commandRecognizer = null;
+        }
+    }
+
+    //sends what the command recognizer hears to VoiceCommandServer, only final results, and only from the command it was started for
+    class CommandRecognitionListener implements RecognitionListener {
+        private final SpeechStreamQueueServiceVosk service;
+
+        CommandRecognitionListener(SpeechStreamQueueServiceVosk service){
+            this.service = service;
+        }
+
+        @Override
+        public void onResult(String hypothesis) {
+            if (service != commandStreamService) {
+                return;
+            }
+            try {
+                String transcript = new JSONObject(hypothesis).getString("text");
+                if (transcript.trim().isEmpty()) {
+                    return;
+                }
+                JSONObject transcriptObj = new JSONObject();
+                transcriptObj.put(MessageTypes.MESSAGE_TYPE_LOCAL, MessageTypes.FINAL_COMMAND_TRANSCRIPT);
+                transcriptObj.put(MessageTypes.TRANSCRIPT_TEXT, transcript);
+                dataObservable.onNext(transcriptObj);
+            } catch (JSONException e){
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public void onFinalResult(String hypothesis) {
+            //only comes when we've stopped it, the command is already over
+        }
+
+        @Override
+        public void onPartialResult(String hypothesis) {
+        }
+
+        @Override
+        public void onError(Exception e) {
+            setErrorState(e.getMessage());
+        }
+
+        @Override
+        public void onTimeout() {
+        }
     }
 
 
@@ -158,7 +386,50 @@ public class SpeechRecVosk implements RecognitionListener {
             if (dataType.equals(MessageTypes.AUDIO_CHUNK_DECRYPTED)){
                 String encodedPlainData = data.getString(MessageTypes.AUDIO_DATA);
                 byte [] decodedPlainData = Base64.decode(encodedPlainData, Base64.DEFAULT);
-                audioSenderStreamVosk.put(decodedPlainData);
+                if (!isBaseLanguage) {
+                    audioSenderStreamVosk.put(decodedPlainData);
+                    return;
+                }
+                boolean awake;
+                synchronized (recentAudio) {
+                    awake = recognizerAwake;
+                    recentAudio.addLast(decodedPlainData);
+                    if (recentAudio.size() > RECENT_AUDIO_CHUNKS) {
+                        recentAudio.removeFirst();
+                    }
+                    if (commandAudio != null) {
+                        commandAudio.offer(decodedPlainData);
+                    }
+                }
+                //put blocks while the recognizer is behind, so it's done outside the lock. Still in order - a wake replays under the lock
+                //before it sets recognizerAwake, and every chunk after that comes through here on this same thread
+                if (awake) {
+                    audioSenderStreamVosk.put(decodedPlainData);
+                } else {
+                    long chunkEndTime = System.currentTimeMillis();
+                    spotterHandler.post(() -> spotKeyword(decodedPlainData, chunkEndTime));
+                }
+            } else if (isBaseLanguage && dataType.equals(MessageTypes.VOICE_COMMAND_STREAM_EVENT)
+                    && data.getString(MessageTypes.VOICE_COMMAND_STREAM_EVENT_TYPE).equals(MessageTypes.WAKE_WORD_EVENT_TYPE)) {
+                byte [] wakeAudio;
+                synchronized (recentAudio) {
+                    int length = 0;
+                    for (byte [] chunk : recentAudio) {
+                        length += chunk.length;
+                    }
+                    wakeAudio = new byte[length];
+                    int offset = 0;
+                    for (byte [] chunk : recentAudio) {
+                        System.arraycopy(chunk, 0, wakeAudio, offset, chunk.length);
+                        offset += chunk.length;
+                    }
+                }
+                spotterHandler.post(() -> enrollWakeWord(wakeAudio));
+            } else if (isBaseLanguage && dataType.equals(MessageTypes.START_COMMAND_RECOGNITION)) {
+                String grammar = data.getString(MessageTypes.COMMAND_GRAMMAR);
+                commandHandler.post(() -> startCommandRecognition(grammar));
+            } else if (isBaseLanguage && dataType.equals(MessageTypes.STOP_COMMAND_RECOGNITION)) {
+                commandHandler.post(this::stopCommandRecognition);
             }
         } catch (InterruptedException | JSONException e) {
             setErrorState(e.getMessage());
@@ -241,6 +512,7 @@ public class SpeechRecVosk implements RecognitionListener {
             }
 
             if (isBaseLanguage) {
+                lastRecognizerActivity = System.currentTimeMillis();
                 if (newPhrase) {
                     currPhrase = PhraseCreator.init("transcript_ASG", mContext, mPhraseRepository);
                     newPhrase = false;
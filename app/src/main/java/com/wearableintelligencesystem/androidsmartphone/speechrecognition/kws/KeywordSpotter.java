@@ -0,0 +1,373 @@
+package com.wearableintelligencesystem.androidsmartphone.speechrecognition.kws;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//spots the wake word in raw audio, without running the full recognizer
+//the wake word is matched against recordings of the user saying it (templates) by dynamic time warping their MFCCs, streaming - every 10ms
+//frame of audio extends the best alignment of each template ending at that frame, so a spot costs one pass over the templates per frame
+//templates are enrolled from the audio around wake words the full recognizer heard, so it learns the user's voice and the ASG's mic as it's
+//used and spots nothing until it has enough of them. How close a spot has to be is calibrated from how close the templates are to each other
+//not thread safe, SpeechRecVosk uses it from its keyword spotter thread
+public class KeywordSpotter {
+    private static final String TAG = "WearableAi_KeywordSpotter";
+
+    public static final int MIN_TEMPLATES = 3; //spot nothing until we've heard the wake word this many times
+    private static final int MAX_TEMPLATES = 8; //past this the oldest is dropped, so the templates follow how the user says it now
+
+    //a spot is at most this far, in average frame distance, above the average distance between templates
+    private static final double THRESHOLD_MARGIN = 1.25;
+    //the audio a template matches can be half to twice as long as the template
+    private static final double MIN_STRETCH = 0.5;
+    private static final double MAX_STRETCH = 2.0;
+    private static final int REFRACTORY_FRAMES = 100; //1s, one wake word is one spot
+    //a spot is where the distance bottoms out, once it's been rising this long - the end of the word, and the best alignment of it
+    private static final int SETTLE_FRAMES = 5;
+
+    //enrollment, over 10ms frames of the audio around a wake word
+    private static final int MIN_WORD_FRAMES = 40;
+    private static final int MAX_WORD_FRAMES = 150;
+    private static final int MIN_SPAN_FRAMES = 10; //shorter bursts of energy are clicks, not words
+    private static final int MAX_GAP_FRAMES = 15; //silence inside the wake word, e.g. between "hey" and "computer"
+    private static final int PAD_FRAMES = 2;
+    private static final double SPEECH_OVER_NOISE = 3;
+    private static final double MIN_SPEECH_RMS = 150;
+
+    private static final String TEMPLATE_SUFFIX = ".mfcc";
+
+    private final File directory;
+    private final List<Template> templates = new ArrayList<>();
+    private final MfccExtractor extractor = new MfccExtractor();
+    private double threshold = 0;
+    private long samples = 0; //since the stream was reset
+    private long frames = 0;
+    private long lastSpotFrame = -REFRACTORY_FRAMES;
+    private double candidateDistance = Double.MAX_VALUE; //the best alignment under the threshold we're waiting to settle
+    private long candidateFrame = 0;
+
+    public KeywordSpotter(File directory){
+        this.directory = directory;
+        directory.mkdirs();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(TEMPLATE_SUFFIX));
+        if (files != null) {
+            Arrays.sort(files); //named by when they were enrolled
+            for (File file : files) {
+                try {
+                    templates.add(new Template(file, read(file)));
+                } catch (IOException e) {
+                    Log.d(TAG, "Dropping unreadable template " + file.getName());
+                    file.delete();
+                }
+            }
+        }
+        trim();
+        calibrate();
+        Log.d(TAG, "Loaded " + templates.size() + " wake word templates");
+    }
+
+    //whether there are enough templates to spot anything
+    public boolean isReady(){
+        return templates.size() >= MIN_TEMPLATES;
+    }
+
+    public int getTemplateCount(){
+        return templates.size();
+    }
+
+    //forget the stream, e.g. audio was skipped
+    public void reset(){
+        extractor.reset();
+        samples = 0;
+        frames = 0;
+        lastSpotFrame = -REFRACTORY_FRAMES;
+        candidateDistance = Double.MAX_VALUE;
+        for (Template template : templates) {
+            template.reset();
+        }
+    }
+
+    //the next chunk of the stream, which finished arriving at chunkEndTime
+    //returns when the end of the wake word was in the audio, on the same clock, if it's in this chunk, else -1
+    public long accept(short[] pcm, int count, long chunkEndTime){
+        List<float[]> newFrames = extractor.accept(pcm, count);
+        samples += count;
+        long spotTime = -1;
+        for (float[] frame : newFrames) {
+            frames++;
+            double best = Double.MAX_VALUE;
+            for (Template template : templates) {
+                best = Math.min(best, template.extend(frame, frames));
+            }
+            if (isReady() && best <= threshold && best < candidateDistance && frames - lastSpotFrame >= REFRACTORY_FRAMES) {
+                candidateDistance = best;
+                candidateFrame = frames;
+            } else if (candidateDistance != Double.MAX_VALUE && frames - candidateFrame >= SETTLE_FRAMES) {
+                lastSpotFrame = candidateFrame;
+                long frameEndSample = MfccExtractor.FRAME_LENGTH + (candidateFrame - 1) * MfccExtractor.FRAME_SHIFT;
+                spotTime = chunkEndTime - (samples - frameEndSample) * 1000 / MfccExtractor.SAMPLE_RATE;
+                Log.d(TAG, "Spotted wake word, distance " + candidateDistance + " threshold " + threshold);
+                candidateDistance = Double.MAX_VALUE;
+            }
+        }
+        return spotTime;
+    }
+
+    //the audio leading up to a wake word the full recognizer heard. If the wake word stands alone in it, it becomes a template
+    //returns whether it did
+    public boolean enroll(short[] pcm, int count){
+        int frameCount = count / MfccExtractor.FRAME_SHIFT;
+        double[] rms = new double[frameCount];
+        for (int f = 0; f < frameCount; f++) {
+            long sumSquares = 0;
+            for (int i = f * MfccExtractor.FRAME_SHIFT; i < (f + 1) * MfccExtractor.FRAME_SHIFT; i++) {
+                sumSquares += pcm[i] * pcm[i];
+            }
+            rms[f] = Math.sqrt((double) sumSquares / MfccExtractor.FRAME_SHIFT);
+        }
+        if (frameCount == 0) {
+            return false;
+        }
+        double[] sorted = rms.clone();
+        Arrays.sort(sorted);
+        double speechRms = Math.max(MIN_SPEECH_RMS, sorted[frameCount / 5] * SPEECH_OVER_NOISE);
+
+        //the speech in the window, as spans joined across short gaps - we only take it if there's exactly one, and it's word sized
+        int spanStart = -1;
+        int spanEnd = -1;
+        int spans = 0;
+        int start = -1;
+        int lastSpeech = -MAX_GAP_FRAMES - 1;
+        for (int f = 0; f <= frameCount; f++) {
+            boolean speech = f < frameCount && rms[f] > speechRms;
+            if (speech && start == -1) {
+                start = f;
+            }
+            if (speech) {
+                lastSpeech = f;
+            } else if (start != -1 && (f - lastSpeech > MAX_GAP_FRAMES || f == frameCount)) {
+                if (lastSpeech - start + 1 >= MIN_SPAN_FRAMES) {
+                    spans++;
+                    spanStart = start;
+                    spanEnd = lastSpeech;
+                }
+                start = -1;
+            }
+        }
+        int length = spanEnd - spanStart + 1;
+        if (spans != 1 || length < MIN_WORD_FRAMES || length > MAX_WORD_FRAMES) {
+            Log.d(TAG, "Not enrolling, " + spans + " speech spans, last " + length + " frames");
+            return false;
+        }
+
+        //MFCC frame i covers samples [i * shift, i * shift + FRAME_LENGTH), so it's centered near energy frame i + 1
+        List<float[]> features = MfccExtractor.extract(pcm, count);
+        int from = Math.max(0, spanStart - 1 - PAD_FRAMES);
+        int to = Math.min(features.size(), spanEnd + PAD_FRAMES);
+        if (to - from < MIN_WORD_FRAMES) {
+            return false;
+        }
+        float[][] template = features.subList(from, to).toArray(new float[0][]);
+
+        File file = new File(directory, String.format("%016d", System.currentTimeMillis()) + TEMPLATE_SUFFIX);
+        try {
+            write(file, template);
+        } catch (IOException e) {
+            Log.d(TAG, "Couldn't save template: " + e);
+            return false;
+        }
+        templates.add(new Template(file, template));
+        trim();
+        calibrate();
+        Log.d(TAG, "Enrolled wake word template of " + template.length + " frames, " + templates.size() + " templates, threshold " + threshold);
+        return true;
+    }
+
+    private void trim(){
+        while (templates.size() > MAX_TEMPLATES) {
+            templates.remove(0).file.delete();
+        }
+    }
+
+    //the threshold is how far apart the user's own wake words are from each other, plus a margin
+    private void calibrate(){
+        if (templates.size() < 2) {
+            threshold = 0;
+            return;
+        }
+        double sum = 0;
+        int pairs = 0;
+        for (Template a : templates) {
+            for (Template b : templates) {
+                double distance = a == b ? Double.MAX_VALUE : alignedDistance(a, b.frames);
+                if (distance != Double.MAX_VALUE) {
+                    sum += distance;
+                    pairs++;
+                }
+            }
+        }
+        threshold = pairs == 0 ? 0 : sum / pairs * THRESHOLD_MARGIN;
+        for (Template template : templates) {
+            template.reset();
+        }
+    }
+
+    //average frame distance of the best alignment of template a to all of b, or MAX_VALUE if they're too different in length to align
+    private static double alignedDistance(Template a, float[][] b){
+        a.reset();
+        double distance = Double.MAX_VALUE;
+        for (int t = 0; t < b.length; t++) {
+            distance = a.extend(b[t], t + 1);
+        }
+        return distance;
+    }
+
+    private static double distance(float[] a, float[] b){
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            double d = a[i] - b[i];
+            sum += d * d;
+        }
+        return Math.sqrt(sum);
+    }
+
+    private static float[][] read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int frameCount = in.readInt();
+            int coefficients = in.readInt();
+            if (coefficients != MfccExtractor.COEFFICIENTS || frameCount < MIN_WORD_FRAMES || frameCount > MAX_WORD_FRAMES + 2 * PAD_FRAMES) {
+                throw new IOException("template doesn't match the current features");
+            }
+            float[][] frames = new float[frameCount][coefficients];
+            for (float[] frame : frames) {
+                for (int i = 0; i < coefficients; i++) {
+                    frame[i] = in.readFloat();
+                }
+            }
+            return frames;
+        }
+    }
+
+    private static void write(File file, float[][] frames) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(frames.length);
+            out.writeInt(MfccExtractor.COEFFICIENTS);
+            for (float[] frame : frames) {
+                for (float coefficient : frame) {
+                    out.writeFloat(coefficient);
+                }
+            }
+        }
+    }
+
+    //a template and the best alignments of it ending at the latest frame of the stream - subsequence DTW, any frame can start one
+    //the steps are constrained so an alignment can't sit on one template frame (e.g. the silence at its edge) or skip through the template
+    private static final class Template {
+        private static final int MAX_STAYS = 2; //a template frame matches at most this many more stream frames in a row
+
+        final File file;
+        final float[][] frames;
+        //for each template frame, the best alignment of the template up to it that ends at the latest stream frame
+        final double[] cost;
+        final int[] length;
+        final long[] start;
+        final int[] stays; //how many stream frames in a row it's stayed on this template frame
+        final boolean[] skipped; //whether it got here by moving on a template frame without a stream frame
+
+        Template(File file, float[][] frames){
+            this.file = file;
+            this.frames = frames;
+            cost = new double[frames.length];
+            length = new int[frames.length];
+            start = new long[frames.length];
+            stays = new int[frames.length];
+            skipped = new boolean[frames.length];
+            reset();
+        }
+
+        void reset(){
+            Arrays.fill(cost, Double.MAX_VALUE);
+            Arrays.fill(length, 0);
+        }
+
+        //extends every alignment by stream frame number t, returns the average frame distance of the best whole template alignment ending there
+        double extend(float[] frame, long t){
+            //the previous stream frame's alignment to template frame j - 1, for the diagonal step
+            double diagonalCost = 0;
+            int diagonalLength = 0;
+            long diagonalStart = t;
+            for (int j = 0; j < frames.length; j++) {
+                double d = distance(frame, frames[j]);
+                double oldCost = cost[j];
+                int oldLength = length[j];
+                long oldStart = start[j];
+
+                //the template can start at this stream frame
+                double bestCost = j == 0 ? 0 : Double.MAX_VALUE;
+                int bestLength = 0;
+                long bestStart = t;
+                int bestStays = 0;
+                boolean bestSkipped = false;
+                //the stream moves on, the template stays
+                if (oldLength > 0 && stays[j] < MAX_STAYS && better(oldCost, oldLength, bestCost, bestLength, d)) {
+                    bestCost = oldCost;
+                    bestLength = oldLength;
+                    bestStart = oldStart;
+                    bestStays = stays[j] + 1;
+                }
+                if (j > 0) {
+                    //both move on
+                    if (diagonalLength > 0 && better(diagonalCost, diagonalLength, bestCost, bestLength, d)) {
+                        bestCost = diagonalCost;
+                        bestLength = diagonalLength;
+                        bestStart = diagonalStart;
+                        bestStays = 0;
+                    }
+                    //the template moves on, the stream stays, not twice in a row
+                    if (length[j - 1] > 0 && !skipped[j - 1] && better(cost[j - 1], length[j - 1], bestCost, bestLength, d)) {
+                        bestCost = cost[j - 1];
+                        bestLength = length[j - 1];
+                        bestStart = start[j - 1];
+                        bestStays = 0;
+                        bestSkipped = true;
+                    }
+                }
+                if (bestCost == Double.MAX_VALUE) {
+                    cost[j] = Double.MAX_VALUE;
+                    length[j] = 0;
+                } else {
+                    cost[j] = bestCost + d;
+                    length[j] = bestLength + 1;
+                    start[j] = bestStart;
+                    stays[j] = bestStays;
+                    skipped[j] = bestSkipped;
+                }
+                diagonalCost = oldCost;
+                diagonalLength = oldLength;
+                diagonalStart = oldStart;
+            }
+
+            int last = frames.length - 1;
+            long matched = t - start[last] + 1;
+            if (length[last] == 0 || matched < frames.length * MIN_STRETCH || matched > frames.length * MAX_STRETCH) {
+                return Double.MAX_VALUE;
+            }
+            return cost[last] / length[last];
+        }
+
+        //whether extending an alignment of cost and length by a frame of distance d averages less than extending the best so far
+        private static boolean better(double cost, int length, double bestCost, int bestLength, double d){
+            return (cost + d) / (length + 1) < (bestCost + d) / (bestLength + 1);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.wearableintelligencesystem.androidsmartphone.speechrecognition.kws;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//mel frequency cepstral coefficients of 16kHz 16 bit audio - 25ms hamming windowed frames every 10ms, 26 mel filters, the usual speech front end
+//c0 (loudness) is left out, so how loud the user spoke doesn't change how far apart two utterances are
+//streaming, samples go in as they arrive from the ASG and a frame comes out every 10ms of them
+//not thread safe
+public class MfccExtractor {
+    public static final int SAMPLE_RATE = 16000;
+    public static final int FRAME_LENGTH = 400; //25ms
+    public static final int FRAME_SHIFT = 160; //10ms
+    public static final int COEFFICIENTS = 12; //c1 to c12
+
+    private static final int FFT_SIZE = 512;
+    private static final int SPECTRUM_SIZE = FFT_SIZE / 2 + 1;
+    private static final int MEL_FILTERS = 26;
+    private static final double LOW_HZ = 20;
+    private static final double HIGH_HZ = 7600;
+    private static final double PRE_EMPHASIS = 0.97;
+    private static final double LOG_FLOOR = 1e-10;
+
+    private static final double[] window = new double[FRAME_LENGTH];
+    private static final int[] filterStart = new int[MEL_FILTERS];
+    private static final double[][] filterWeights = new double[MEL_FILTERS][];
+    private static final double[][] dct = new double[COEFFICIENTS][MEL_FILTERS];
+    static {
+        for (int i = 0; i < FRAME_LENGTH; i++) {
+            window[i] = 0.54 - 0.46 * Math.cos(2 * Math.PI * i / (FRAME_LENGTH - 1));
+        }
+
+        //triangular filters evenly spaced on the mel scale, as a start bin and weights
+        double lowMel = mel(LOW_HZ);
+        double highMel = mel(HIGH_HZ);
+        double[] centers = new double[MEL_FILTERS + 2];
+        for (int i = 0; i < centers.length; i++) {
+            double hz = 700 * (Math.pow(10, (lowMel + (highMel - lowMel) * i / (MEL_FILTERS + 1)) / 2595) - 1);
+            centers[i] = hz * FFT_SIZE / SAMPLE_RATE;
+        }
+        for (int f = 0; f < MEL_FILTERS; f++) {
+            int start = (int) Math.ceil(centers[f]);
+            int end = Math.min(SPECTRUM_SIZE - 1, (int) Math.floor(centers[f + 2]));
+            filterStart[f] = start;
+            filterWeights[f] = new double[Math.max(0, end - start + 1)];
+            for (int bin = start; bin <= end; bin++) {
+                double weight = bin <= centers[f + 1]
+                        ? (bin - centers[f]) / (centers[f + 1] - centers[f])
+                        : (centers[f + 2] - bin) / (centers[f + 2] - centers[f + 1]);
+                filterWeights[f][bin - start] = Math.max(0, weight);
+            }
+        }
+
+        for (int c = 0; c < COEFFICIENTS; c++) {
+            for (int f = 0; f < MEL_FILTERS; f++) {
+                dct[c][f] = Math.cos(Math.PI * (c + 1) * (f + 0.5) / MEL_FILTERS);
+            }
+        }
+    }
+
+    private final double[] samples = new double[FRAME_LENGTH]; //ring of the last FRAME_LENGTH pre-emphasized samples, the oldest at next
+    private int next = 0;
+    private int sinceLastFrame = FRAME_SHIFT - FRAME_LENGTH; //the first frame needs a full window
+    private double previousSample = 0;
+    private final double[] real = new double[FFT_SIZE];
+    private final double[] imaginary = new double[FFT_SIZE];
+    private final double[] melEnergies = new double[MEL_FILTERS];
+
+    //the frames these samples complete, in order
+    public List<float[]> accept(short[] pcm, int count){
+        List<float[]> frames = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double sample = pcm[i];
+            samples[next] = sample - PRE_EMPHASIS * previousSample;
+            next = next + 1 == FRAME_LENGTH ? 0 : next + 1;
+            previousSample = sample;
+            if (++sinceLastFrame == FRAME_SHIFT) {
+                sinceLastFrame = 0;
+                frames.add(frame());
+            }
+        }
+        return frames;
+    }
+
+    public void reset(){
+        Arrays.fill(samples, 0);
+        next = 0;
+        sinceLastFrame = FRAME_SHIFT - FRAME_LENGTH;
+        previousSample = 0;
+    }
+
+    //the whole of a recording, from a fresh start
+    public static List<float[]> extract(short[] pcm, int count){
+        return new MfccExtractor().accept(pcm, count);
+    }
+
+    //little endian 16 bit PCM, what the ASG sends
+    public static short[] toSamples(byte[] pcm, int length){
+        short[] samples = new short[length / 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) ((pcm[i * 2] & 0xff) | (pcm[i * 2 + 1] << 8));
+        }
+        return samples;
+    }
+
+    private float[] frame(){
+        for (int i = 0; i < FRAME_LENGTH; i++) {
+            int sample = next + i < FRAME_LENGTH ? next + i : next + i - FRAME_LENGTH;
+            real[i] = samples[sample] * window[i];
+        }
+        Arrays.fill(real, FRAME_LENGTH, FFT_SIZE, 0);
+        Arrays.fill(imaginary, 0);
+        fft(real, imaginary);
+        for (int f = 0; f < MEL_FILTERS; f++) {
+            double energy = 0;
+            double[] weights = filterWeights[f];
+            for (int k = 0; k < weights.length; k++) {
+                int bin = filterStart[f] + k;
+                energy += weights[k] * (real[bin] * real[bin] + imaginary[bin] * imaginary[bin]);
+            }
+            melEnergies[f] = Math.log(Math.max(energy, LOG_FLOOR));
+        }
+        float[] coefficients = new float[COEFFICIENTS];
+        for (int c = 0; c < COEFFICIENTS; c++) {
+            double sum = 0;
+            for (int f = 0; f < MEL_FILTERS; f++) {
+                sum += dct[c][f] * melEnergies[f];
+            }
+            coefficients[c] = (float) sum;
+        }
+        return coefficients;
+    }
+
+    //in place radix 2
+    private static void fft(double[] real, double[] imaginary){
+        int n = real.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = real[i]; real[i] = real[j]; real[j] = t;
+                t = imaginary[i]; imaginary[i] = imaginary[j]; imaginary[j] = t;
+            }
+        }
+        for (int length = 2; length <= n; length <<= 1) {
+            double angle = -2 * Math.PI / length;
+            double stepReal = Math.cos(angle);
+            double stepImaginary = Math.sin(angle);
+            for (int i = 0; i < n; i += length) {
+                double wReal = 1;
+                double wImaginary = 0;
+                for (int k = 0; k < length / 2; k++) {
+                    int a = i + k;
+                    int b = a + length / 2;
+                    double bReal = real[b] * wReal - imaginary[b] * wImaginary;
+                    double bImaginary = real[b] * wImaginary + imaginary[b] * wReal;
+                    real[b] = real[a] - bReal;
+                    imaginary[b] = imaginary[a] - bImaginary;
+                    real[a] += bReal;
+                    imaginary[a] += bImaginary;
+                    double nextReal = wReal * stepReal - wImaginary * stepImaginary;
+                    wImaginary = wReal * stepImaginary + wImaginary * stepReal;
+                    wReal = nextReal;
+                }
+            }
+        }
+    }
+
+    private static double mel(double hz){
+        return 2595 * Math.log10(1 + hz / 700);
+    }
+}
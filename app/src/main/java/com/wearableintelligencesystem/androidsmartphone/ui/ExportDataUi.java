@@ -30,22 +30,19 @@ import androidx.navigation.Navigation;
 import com.google.android.material.datepicker.MaterialDatePicker;
 import com.google.android.material.datepicker.MaterialPickerOnPositiveButtonClickListener;
 import com.google.android.material.textfield.TextInputEditText;
-import com.opencsv.CSVWriter;
 import com.wearableintelligencesystem.androidsmartphone.MainActivity;
 import com.wearableintelligencesystem.androidsmartphone.R;
+import com.wearableintelligencesystem.androidsmartphone.database.export.DataExportEngine;
+import com.wearableintelligencesystem.androidsmartphone.database.export.DataExportListener;
 import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileEntity;
 import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileRepository;
 import com.wearableintelligencesystem.androidsmartphone.database.person.PersonEntity;
 import com.wearableintelligencesystem.androidsmartphone.database.person.PersonRepository;
-import com.wearableintelligencesystem.androidsmartphone.database.phrase.Phrase;
-import com.wearableintelligencesystem.androidsmartphone.database.phrase.PhraseRepository;
 import com.wearableintelligencesystem.androidsmartphone.facialrecognition.FaceRecDbUtils;
 import com.wearableintelligencesystem.androidsmartphone.utils.BitmapJavaUtils;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
@@ -55,7 +52,9 @@ public class ExportDataUi extends Fragment {
     private final String fragmentLabel = "Export Data";
 
     private NavController navController;
-    private PhraseRepository mPhraseRepository;
+    private DataExportEngine mDataExportEngine;
+    private Button mExportDataButton;
+    private TextView mDateRangeDisplayTextView;
     private List<PersonEntity> unknownPeople;
 
     private MaterialDatePicker materialDatePicker;
@@ -85,15 +84,15 @@ public class ExportDataUi extends Fragment {
         //setup the title
         UiUtils.setupTitle(getActivity(), fragmentLabel);
 
-        mPhraseRepository = new PhraseRepository(getActivity().getApplication());
+        mDataExportEngine = new DataExportEngine(getActivity().getApplication());
 
         navController = Navigation.findNavController(getActivity(), R.id.nav_host_fragment);
 
         // now register the text view and the button with
         // their appropriate IDs
         Button mPickDateButton = view.findViewById(R.id.pick_date_button);
-        Button mExportDataButton = view.findViewById(R.id.export_data_button);
-        TextView mDateRangeDisplayTextView = view.findViewById(R.id.export_date_range_text_view);
+        mExportDataButton = view.findViewById(R.id.export_data_button);
+        mDateRangeDisplayTextView = view.findViewById(R.id.export_date_range_text_view);
 
         //setup date range picker
         // now create instance of the material date picker
@@ -196,69 +195,74 @@ public class ExportDataUi extends Fragment {
         dialog.show();
     }
 
-    //this export is ugly and we should rewrite it to better tie into room, especially when we add more data
-    //not exactly sure best way to do it yet
+    //streams the data out on a background thread, re-running an interrupted export for the same range resumes it
     private void startDataExport(){
-        List<Phrase> phrases = mPhraseRepository.getPhraseRangeSnapshot(startDate, stopDate);
-
-
-        try {
-            String prettyDate = Calendar.getInstance().getTime().toString().replaceAll("\\s", "_").replaceAll(":", "-");
-            String fileName = "WIS_data_export_" + prettyDate + ".csv";
-            File csvfile = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS) + "/" + fileName);
-            String filePath = csvfile.toString();
-            File f = new File(filePath);
-            CSVWriter writer;
-
-            // File exist
-            if(f.exists()&&!f.isDirectory())
-            {
-                FileWriter mFileWriter = new FileWriter(filePath, true);
-                writer = new CSVWriter(mFileWriter, ',', CSVWriter.NO_QUOTE_CHARACTER);
-            }
-            else
-            {
-                writer = new CSVWriter(new FileWriter(filePath), ',', CSVWriter.NO_QUOTE_CHARACTER);
+        File exportDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
+        mExportDataButton.setEnabled(false);
+        mExportDataButton.setAlpha(0.5f);
+        mDataExportEngine.export(exportDir, startDate, stopDate, DataExportEngine.Format.CSV, true, true, new DataExportListener() {
+            @Override
+            public void onProgress(long rowsWritten, long totalRows) {
+                if (!isAdded()) return;
+                mDateRangeDisplayTextView.setText(dateRange + " (" + rowsWritten + "/" + totalRows + ")");
             }
 
-            //write the phrases to a csv
-            String first_row = "id,timestamp,latitude,longitude,phrase";
-            writer.writeNext(first_row.split(","));
-            for (Phrase p : phrases) {
-                String row = p.getId() + "," + p.getTimestamp() + "," + Double.toString(p.getLocation().getLatitude()) + "," + Double.toString(p.getLocation().getLongitude()) + "," + p.getPhrase();
-                Log.d(TAG, "writing row: " + row);
-                String [] row_s = row.split(",");
-                writer.writeNext(row_s);
+            @Override
+            public void onComplete(List<File> files) {
+                if (!isAdded()) return;
+                mDateRangeDisplayTextView.setText(dateRange);
+                mExportDataButton.setEnabled(true);
+                mExportDataButton.setAlpha(1.0f);
+                if (files.isEmpty()) {
+                    Toast.makeText(getContext(), "No data in that date range.", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                //send as email
+                sendDataEmail(files, dateRange);
             }
 
-            //close the writer
-            writer.close();
-
-            //send as email
-            sendDataEmail(filePath, dateRange);
-        } catch (IOException e){
-            e.printStackTrace();
-        }
+            @Override
+            public void onFailure(Exception e) {
+                if (!isAdded()) return;
+                mDateRangeDisplayTextView.setText(dateRange);
+                mExportDataButton.setEnabled(true);
+                mExportDataButton.setAlpha(1.0f);
+                Toast.makeText(getContext(), "Export interrupted, press export again to resume.", Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
-    private void sendDataEmail(String filePath, String dateRange){
-        Intent emailIntent = new Intent(Intent.ACTION_SEND);
-        emailIntent.setType("text/plain");
+    private void sendDataEmail(List<File> files, String dateRange){
+        Intent emailIntent = new Intent(Intent.ACTION_SEND_MULTIPLE);
+        emailIntent.setType("application/gzip");
 //        emailIntent.putExtra(Intent.EXTRA_EMAIL, new String[] {"email@example.com"});
         emailIntent.putExtra(Intent.EXTRA_SUBJECT, "WIS Data, " + dateRange);
         emailIntent.putExtra(Intent.EXTRA_TEXT, "Attached is your WIS data for " + dateRange);
-        File root = Environment.getExternalStorageDirectory();
-        String pathToMyAttachedFile = filePath;
-        File file = new File(pathToMyAttachedFile);
-        if (!file.exists() || !file.canRead()) {
-            Log.d(TAG, "FILE DOESN'T EXIST");
+        ArrayList<Uri> uris = new ArrayList<>();
+        for (File file : files) {
+            if (!file.exists() || !file.canRead()) {
+                Log.d(TAG, "FILE DOESN'T EXIST: " + file);
+                continue;
+            }
+            //Uri uri = Uri.fromFile(file);
+            uris.add(FileProvider.getUriForFile(getContext(), getContext().getApplicationContext().getPackageName() + ".provider", file));
+        }
+        if (uris.isEmpty()) {
             return;
         }
-        //Uri uri = Uri.fromFile(file);
-        Uri uri = FileProvider.getUriForFile(getContext(), getContext().getApplicationContext().getPackageName() + ".provider", file);
-        emailIntent.putExtra(Intent.EXTRA_STREAM, uri);
+        emailIntent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, uris);
+        emailIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
         startActivity(Intent.createChooser(emailIntent, "Pick an email provider to send the data with."));
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (mDataExportEngine != null) {
+            //whatever was written so far is kept and resumed next time
+            mDataExportEngine.destroy();
+        }
+    }
+
 
 }
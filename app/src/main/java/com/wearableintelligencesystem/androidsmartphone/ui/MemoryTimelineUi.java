@@ -8,28 +8,38 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 
 import androidx.navigation.NavController;
 import androidx.navigation.Navigation;
 
+import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileEntity;
 import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileViewModel;
-import com.wearableintelligencesystem.androidsmartphone.database.person.PersonEntity;
 import com.wearableintelligencesystem.androidsmartphone.database.person.PersonViewModel;
 import com.wearableintelligencesystem.androidsmartphone.database.phrase.Phrase;
+import com.wearableintelligencesystem.androidsmartphone.database.summary.DaySummary;
+import com.wearableintelligencesystem.androidsmartphone.database.summary.MemorySummaryViewModel;
 import com.wearableintelligencesystem.androidsmartphone.database.voicecommand.VoiceCommandViewModel;
 
 import androidx.lifecycle.LiveData;
 
 import com.wearableintelligencesystem.androidsmartphone.R;
+import com.wearableintelligencesystem.androidsmartphone.utils.PovImageStore;
+
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
 
 //menu imports:
 import android.widget.ArrayAdapter;
@@ -46,9 +56,12 @@ public class MemoryTimelineUi extends Fragment implements ItemClickListenerRefer
     private ArrayAdapter<String> tagMenuAdapter;
     private AutoCompleteTextView tagMenu;
 
-    private int maxDistanceBackDays = 7; //how many days in time we go backwards
-    private int maxDistanceBackMilliseconds = maxDistanceBackDays * 86400 * 1000; //how many days in time we go backwards
+    private int maxDistanceBackDays = 30; //how many days (that have anything in them) we show
+    private static final long HOUR_MS = 60 * 60 * 1000;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    private static final long CONVERSATION_GAP_MS = 5 * 60 * 1000; //sightings closer together than this are the same conversation
 
+    private MemorySummaryViewModel mMemorySummaryViewModel;
     private VoiceCommandViewModel mVoiceCommandViewModel;
 
     private final int personIntervalSeconds = 60 * 15; //number seconds before and after phrase to show people you saw
@@ -57,6 +70,8 @@ public class MemoryTimelineUi extends Fragment implements ItemClickListenerRefer
 
     private NavController navController;
 
+    private Disposable timelineUpdates;
+
     private MediaFileViewModel mMediaFileViewModel;
     private PersonViewModel mPersonViewModel;
 
@@ -109,6 +124,7 @@ public class MemoryTimelineUi extends Fragment implements ItemClickListenerRefer
         //get view models
         mMediaFileViewModel = new ViewModelProvider(this).get(MediaFileViewModel.class);
         mPersonViewModel = new ViewModelProvider(this).get(PersonViewModel.class);
+        mVoiceCommandViewModel = new ViewModelProvider(this).get(VoiceCommandViewModel.class);
 
         //setup list of phrases
         RecyclerView recyclerView = view.findViewById(R.id.reference_wall);
@@ -121,71 +137,134 @@ public class MemoryTimelineUi extends Fragment implements ItemClickListenerRefer
         recyclerView.scrollToPosition(recyclerView.getAdapter().getItemCount() -1);
 
         // Get a new or existing ViewModel from the ViewModelProvider.
-        mVoiceCommandViewModel = new ViewModelProvider(this).get(VoiceCommandViewModel.class);
+        mMemorySummaryViewModel = new ViewModelProvider(this).get(MemorySummaryViewModel.class);
+
+        //one card per day, read straight from the day summaries, so opening this costs the same with a week or years of history
+        //the voice note and conversation cards are only looked up for the days the summaries say have any, with one range query each
+        //the summaries are updated as things are saved, and the adapter diffs each new list in the background
+        timelineUpdates = mMemorySummaryViewModel.getRecentDaysFlowable(maxDistanceBackDays)
+                .concatMapSingle(days -> addThumbnails(buildTimeline(days)).flatMap(dayCards -> addDetailCards(days, dayCards)))
+                .distinctUntilChanged()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(adapter::setReferences, e -> Log.e(TAG, "Timeline update failed", e));
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (timelineUpdates != null) {
+            timelineUpdates.dispose();
+            timelineUpdates = null;
+        }
+    }
+
+    //a card and the time to pick its image from
+    private static class TimelineDay {
+        final Reference reference;
+        final long imageTime;
+        TimelineDay(Reference reference, long imageTime){
+            this.reference = reference;
+            this.imageTime = imageTime;
+        }
+    }
+
+    private List<TimelineDay> buildTimeline(List<DaySummary> days){
+        SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE, LLL d", Locale.getDefault());
+        SimpleDateFormat hourFormat = new SimpleDateFormat("H:mm", Locale.getDefault());
+        List<TimelineDay> timeline = new ArrayList<>(days.size());
+        for (DaySummary day : days){
+            StringBuilder summary = new StringBuilder();
+            summary.append(day.getPhraseCount()).append(" phrases, ")
+                    .append(day.getVoiceNoteCount()).append(" voice notes, ")
+                    .append(day.getMediaCount()).append(" images");
+            if (day.getMemoryCacheCount() > 0){
+                summary.append(", ").append(day.getMemoryCacheCount()).append(" memory caches");
+            }
+            if (!day.getTopPeople().isEmpty()){
+                summary.append("\nSaw: ").append(TextUtils.join(", ", day.getTopPeople()));
+            }
+            if (day.getDominantEmotion() != null){
+                summary.append("\nMostly: ").append(day.getDominantEmotion());
+            }
+            if (day.getBusiestHour() != null){
+                summary.append("\nBusiest around ").append(hourFormat.format(day.getBusiestHour()));
+            }
 
-        //here we need to get all of the voice notes, then pull in each phrase associated with each command
-        List<Phrase> phrases = mVoiceCommandViewModel.getVoiceNotesSnapshot();
-        List<Reference> references = new ArrayList<Reference>();
-        for (Phrase p : phrases){
             Reference new_ref = new Reference();
-            new_ref.setStartTimestamp(p.getTimestamp());
-            new_ref.setSummary(p.getPhrase());
-            new_ref.setTitle("Voice Note");
-            references.add(new_ref);
+            new_ref.setStartTimestamp(day.getDayStart());
+            new_ref.setTitle(dayFormat.format(day.getDayStart()));
+            new_ref.setSummary(summary.toString());
+
+            //show what was in front of us at the busiest time of day, or around noon if nothing was said
+            long imageTime = day.getBusiestHour() != null ? day.getBusiestHour() + HOUR_MS / 2 : day.getDayStart() + 12 * HOUR_MS;
+            timeline.add(new TimelineDay(new_ref, imageTime));
+        }
+        return timeline;
+    }
+
+    //finds the image for every card in one go, instead of one query per card as it's bound
+    private Single<List<Reference>> addThumbnails(List<TimelineDay> timeline){
+        List<Long> imageTimes = new ArrayList<>(timeline.size());
+        for (TimelineDay day : timeline){
+            imageTimes.add(day.imageTime);
+        }
+        return mMediaFileViewModel.getClosestMediaFilesSingle("image", imageTimes).map(images -> {
+            List<Reference> references = new ArrayList<>(timeline.size());
+            for (int i = 0; i < timeline.size(); i++){
+                Reference reference = timeline.get(i).reference;
+                MediaFileEntity image = images.get(i);
+                if (image != null){
+                    reference.setThumbnailPath(PovImageStore.getThumbnailPath(image.getLocalPath()));
+                }
+                references.add(reference);
+            }
+            return references;
+        });
+    }
+
+    //the "Voice Note" and "Conversation" cards of the days shown, newest first along with the day cards
+    private Single<List<Reference>> addDetailCards(List<DaySummary> days, List<Reference> dayCards){
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        boolean anyVoiceNotes = false;
+        boolean anySightings = false;
+        for (DaySummary day : days){
+            start = Math.min(start, day.getDayStart());
+            end = Math.max(end, day.getDayStart() + DAY_MS);
+            anyVoiceNotes |= day.getVoiceNoteCount() > 0;
+            anySightings |= day.getSightingCount() > 0;
         }
+        Single<List<Phrase>> voiceNotes = anyVoiceNotes ? mVoiceCommandViewModel.getVoiceNotesInPeriodSingle(start, end) : Single.just(Collections.emptyList());
+        Single<List<Long>> sightings = anySightings ? mPersonViewModel.getSightingTimesInPeriodSingle(start, end) : Single.just(Collections.emptyList());
+        return Single.zip(voiceNotes, sightings, (notes, sightingTimes) -> {
+            List<Reference> references = new ArrayList<>(dayCards);
+            for (Phrase p : notes){
+                Reference new_ref = new Reference();
+                new_ref.setStartTimestamp(p.getTimestamp());
+                new_ref.setSummary(p.getPhrase());
+                new_ref.setTitle("Voice Note");
+                references.add(new_ref);
+            }
 
-        //here we need to get all of the people sightings, then pull in each phrase associated with each command
-        List<PersonEntity> peopleSeen = mPersonViewModel.getAllPersonsSnapshotTimePeriod(System.currentTimeMillis() - maxDistanceBackMilliseconds, System.currentTimeMillis()); //back in time this far
-        //List<PersonEntity> peopleSeen = mPersonViewModel.getAllPersonsSnapshot();
-        Log.d(TAG, "peopleSEen is: " + peopleSeen.toString());
-        if (peopleSeen != null){
+            //one card per conversation, sightings come newest first
             long last_seen = 0;
-            for (PersonEntity pe : peopleSeen) {
-                if (Math.abs(last_seen - pe.getTimestamp()) < (5 * 60 * 1000)){
+            for (long seen : sightingTimes){
+                if (Math.abs(last_seen - seen) < CONVERSATION_GAP_MS){
                     continue;
                 }
                 Reference new_ref = new Reference();
-                new_ref.setStartTimestamp(pe.getTimestamp());
+                new_ref.setStartTimestamp(seen);
                 new_ref.setTitle("Conversation");
                 references.add(new_ref);
-                last_seen = pe.getTimestamp();
+                last_seen = seen;
             }
-        }
-
-        //sort references by timestamp
-        Collections.sort(references, new Comparator<Reference>(){
-            public int compare(Reference obj1, Reference obj2) {
-                // ## Ascending order
-                return Long.compare(obj2.getStartTimestamp(), obj1.getStartTimestamp()); // To compare string values
-                // return Integer.valueOf(obj1.empId).compareTo(Integer.valueOf(obj2.empId)); // To compare integer values
-
-                // ## Descending order
-                // return obj2.firstName.compareToIgnoreCase(obj1.firstName); // To compare string values
-                // return Integer.valueOf(obj2.empId).compareTo(Integer.valueOf(obj1.empId)); // To compare integer values
-            }
-        });
 
-        //send this data to be displayed
-        adapter.setReferences(references);
-    }
-
-    private String getPeopleSeenString(List<PersonEntity> peopleSeen){
-        String displayString = "";
-        List<Long> personIdsSeen = new ArrayList<Long>();
-        for (PersonEntity pe : peopleSeen){
-            Log.d(TAG, "PERSON:");
-            Log.d(TAG, "---argVal: " + pe.getArgValue());
-            Log.d(TAG, "---argKey: " + pe.getArgKey());
-            Log.d(TAG, "---personId: " + pe.getPersonId());
-            long personId = pe.getPersonId();
-            if (! personIdsSeen.contains(personId)){
-                String displayName = mPersonViewModel.getPersonsName(personId);
-                if (! displayName.equals("deleted")) {
-                    displayString = displayString + "- " + displayName + "\n";
-                    personIdsSeen.add(personId);
+            Collections.sort(references, new Comparator<Reference>(){
+                public int compare(Reference obj1, Reference obj2) {
+                    return Long.compare(obj2.getStartTimestamp(), obj1.getStartTimestamp());
                 }
-            }
-        }
-        return displayString;
+            });
+            return references;
+        });
     }
 }
@@ -16,8 +16,6 @@ import android.view.ViewGroup;
 
 import java.util.ArrayList;
 
-import android.os.Handler;
-
 import android.widget.LinearLayout;
 import android.widget.HorizontalScrollView;
 import android.widget.ImageView;
@@ -54,12 +52,17 @@ import com.wearableintelligencesystem.androidsmartphone.database.mediafile.Media
 import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileViewModel;
 
 import com.wearableintelligencesystem.androidsmartphone.R;
+import com.wearableintelligencesystem.androidsmartphone.utils.PovImageStore;
 
 //menu imports:
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
 //shows the context that a phrase took place, including images, maps, time, surrounding transcripts, etc.
 //also shows points in time before the given phrase and after the given phrase
 //see MxtTagBinsUi for example on how to launch this with Phrase in Bundle for navController
@@ -80,6 +83,8 @@ public class PhraseContextUi extends Fragment {
     private final int numMemories = 10; //the number of memories we show before and after the main memory
     private final int personIntervalSeconds = 60 * 15; //number seconds before and after phrase to show people you saw
 
+    private final CompositeDisposable disposables = new CompositeDisposable();
+
     private ImageView mapImageView;
     private TextView personListTextView;
 
@@ -134,55 +139,94 @@ public class PhraseContextUi extends Fragment {
 
         //get the person list text view
         personListTextView = (TextView) view.findViewById(R.id.people_list);
-        //get all people that were seen at that time
+        //get all people that were seen at that time, names are looked up in the background
         long phraseTime = mainPhrase.getTimestamp();
         long startTime = phraseTime - (personIntervalSeconds * 1000);
         long endTime = phraseTime + (personIntervalSeconds * 1000);
-        List<PersonEntity> peopleSeen = mPersonViewModel.getAllPersonsSnapshotTimePeriod(startTime, endTime);
-        if (peopleSeen != null){
-            updatePeopleSeen(peopleSeen);
+        disposables.add(mPersonViewModel.getAllPersonsTimePeriodSingle(startTime, endTime)
+                .flattenAsFlowable(peopleSeen -> peopleSeen)
+                .map(PersonEntity::getPersonId)
+                .distinct()
+                .concatMapMaybe(mPersonViewModel::getPersonsNameMaybe)
+                .filter(displayName -> (!displayName.equals("deleted")) && (!displayName.equals("unknown")) && (!displayName.equals("confirmed_unknown")))
+                .toList()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(this::updatePeopleSeen, e -> Log.e(TAG, "Failed to load people seen", e)));
+
+        //the images around the phrase, all found in one database trip and decoded off the main thread
+        List<Long> imageTimes = new ArrayList<>();
+        for (int i = (-1 * numMemories); i < numMemories; i++){ //number should be odd so there is a center image, even number on both sides
+            imageTimes.add(mainPhrase.getTimestamp() + (i * memInterval));
         }
+        disposables.add(mMediaFileViewModel.getClosestMediaFilesSingle("image", imageTimes)
+                .observeOn(Schedulers.io())
+                .map(this::loadGalleryImages)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(galleryImages -> showGallery(view, imageGallery, localInflater, galleryImages), e -> Log.e(TAG, "Failed to load images", e)));
+    }
 
-        for (int i = (-1 * numMemories); i < numMemories; i++){ //number should be odd so there is a center image, even number on both sides
-            //get image
-            MediaFileEntity currentImage = mMediaFileViewModel.getClosestMediaFileSnapshot("image", mainPhrase.getTimestamp() + (i * memInterval));
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        disposables.clear();
+    }
 
-            //put new image into horizontally scrolling linear layout
-            View imageView = localInflater.inflate(R.layout.image_item, imageGallery, false);
+    private static class GalleryImage {
+        final Bitmap bitmap;
+        final long timestamp;
+        GalleryImage(Bitmap bitmap, long timestamp){
+            this.bitmap = bitmap;
+            this.timestamp = timestamp;
+        }
+    }
 
-            //get the image view
-            ImageView imageViewImage = imageView.findViewById(R.id.imageView);
-            //imageViewImage.setImageResource(R.drawable.elon);
-            //set the image of the image view
-            String imagePath = currentImage.getLocalPath();
+    private List<GalleryImage> loadGalleryImages(List<MediaFileEntity> images){
+        List<GalleryImage> galleryImages = new ArrayList<>();
+        for (MediaFileEntity currentImage : images){
+            if (currentImage == null){
+                continue;
+            }
+            String imagePath = PovImageStore.getThumbnailPath(currentImage.getLocalPath());
             Bitmap imageBitmap = BitmapJavaUtils.loadImageFromStorage(imagePath);
             if (imageBitmap != null){
-                imageViewImage.setImageBitmap(imageBitmap);
-            } else {
-                continue;
+                galleryImages.add(new GalleryImage(imageBitmap, currentImage.getStartTimestamp()));
             }
+        }
+        return galleryImages;
+    }
+
+    private void showGallery(View view, LinearLayout imageGallery, LayoutInflater localInflater, List<GalleryImage> galleryImages){
+        for (GalleryImage galleryImage : galleryImages){
+            //put new image into horizontally scrolling linear layout
+            View imageView = localInflater.inflate(R.layout.image_item, imageGallery, false);
+
+            //set the image of the image view
+            ImageView imageViewImage = imageView.findViewById(R.id.imageView);
+            imageViewImage.setImageBitmap(galleryImage.bitmap);
 
             //set text of the image item
             TextView imageViewTextView = imageView.findViewById(R.id.textView);
-            String prettyTime = getPrettyDate(currentImage.getStartTimestamp());
+            String prettyTime = getPrettyDate(galleryImage.timestamp);
             imageViewTextView.setText(prettyTime);
 
             //add the new image item to the gallery
             imageGallery.addView(imageView);
         }
 
-        //after it's created, scroll to the center
-        //must do in handler to ensure that the horizontal scroll is already created
-        Handler mHandler = new Handler();
-        mHandler.postDelayed(new Runnable(){
+        //after it's filled, scroll to the center
+        //must post to ensure that the new views are laid out already
+        HorizontalScrollView galleryHolder = view.findViewById(R.id.gallery_holder);
+        galleryHolder.post(new Runnable(){
             public void run() {
-                HorizontalScrollView galleryHolder = view.findViewById(R.id.gallery_holder);
                 int num = imageGallery.getChildCount() / 2;
                 View imageView = imageGallery.getChildAt(num);// selected child view
+                if (imageView == null){
+                    return;
+                }
                 final int scrollPos = imageView.getLeft() - (galleryHolder.getWidth() - imageView.getWidth()) / 2;
                 galleryHolder.scrollTo(scrollPos, 0);
             }
-        }, 10);
+        });
     }
 
     public void updateMapImage(double latitude, double longitude){
@@ -234,22 +278,10 @@ public class PhraseContextUi extends Fragment {
         return prettyTime;
     }
 
-    private void updatePeopleSeen(List<PersonEntity> peopleSeen){
+    private void updatePeopleSeen(List<String> displayNames){
         String displayString = "";
-        List<Long> personIdsSeen = new ArrayList<Long>();
-        for (PersonEntity pe : peopleSeen){
-            Log.d(TAG, "PERSON:");
-            Log.d(TAG, "---argVal: " + pe.getArgValue());
-            Log.d(TAG, "---argKey: " + pe.getArgKey());
-            Log.d(TAG, "---personId: " + pe.getPersonId());
-            long personId = pe.getPersonId();
-            if (! personIdsSeen.contains(personId)){
-                    String displayName = mPersonViewModel.getPersonsName(personId);
-                if ((!displayName.equals("deleted")) && (!displayName.equals("unknown")) && (!displayName.equals("confirmed_unknown"))) {
-                    displayString = displayString + "- " + displayName + "\n";
-                    personIdsSeen.add(personId);
-                }
-            }
+        for (String displayName : displayNames){
+            displayString = displayString + "- " + displayName + "\n";
         }
         personListTextView.setText(displayString);
     }
@@ -1,5 +1,7 @@
 package com.wearableintelligencesystem.androidsmartphone.ui;
 
+import java.util.Objects;
+
 public class Reference {
     private String summary;
     private String title;
@@ -7,6 +9,7 @@ public class Reference {
     private Long stopTimestamp;
     private long imagePath;
     private long id;
+    private String thumbnailPath; //looked up off the main thread by whoever builds the list, null if they didn't
 
     public long getId() {
         return id;
@@ -54,4 +57,31 @@ public class Reference {
     public Long getStartTimestamp() {
         return startTimestamp;
     }
+
+    public String getThumbnailPath() {
+        return thumbnailPath;
+    }
+
+    public void setThumbnailPath(String thumbnailPath) {
+        this.thumbnailPath = thumbnailPath;
+    }
+
+    //two references are the same item if they're the same kind of thing at the same time, see ReferenceListAdapter
+    public boolean isSameItem(Reference other) {
+        return id == other.id && Objects.equals(title, other.title) && Objects.equals(startTimestamp, other.startTimestamp);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Reference)) return false;
+        Reference other = (Reference) o;
+        return isSameItem(other) && Objects.equals(summary, other.summary) && Objects.equals(stopTimestamp, other.stopTimestamp)
+                && Objects.equals(thumbnailPath, other.thumbnailPath);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, title, startTimestamp, stopTimestamp, summary, thumbnailPath);
+    }
 }
@@ -1,27 +1,48 @@
 package com.wearableintelligencesystem.androidsmartphone.ui;
 
 import android.content.Context;
-import android.graphics.Bitmap;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.wearableintelligencesystem.androidsmartphone.R;
-import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileEntity;
 import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileViewModel;
 import com.wearableintelligencesystem.androidsmartphone.utils.BitmapJavaUtils;
+import com.wearableintelligencesystem.androidsmartphone.utils.PovImageStore;
 
 import java.text.SimpleDateFormat;
 import java.util.List;
 
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
 public class ReferenceListAdapter extends RecyclerView.Adapter<ReferenceListAdapter.ReferenceViewHolder> {
+    private final String TAG = "WearableAi_ReferenceListAdapter";
+
     private ItemClickListenerReference clickListener;
     private final LayoutInflater mInflater;
-    private List<Reference> mReferences; // Cached copy of references
+    //diffs new lists on a background thread and only tells the RecyclerView about the ranges that changed
+    private final AsyncListDiffer<Reference> mReferences = new AsyncListDiffer<>(this, new DiffUtil.ItemCallback<Reference>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Reference oldItem, @NonNull Reference newItem) {
+            return oldItem.isSameItem(newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Reference oldItem, @NonNull Reference newItem) {
+            return oldItem.equals(newItem);
+        }
+    });
 
     private MediaFileViewModel mMediaFileViewModel;
 
@@ -33,6 +54,7 @@ public class ReferenceListAdapter extends RecyclerView.Adapter<ReferenceListAdap
         private final TextView referenceStopDate;
         private final TextView referenceSummary;
         private final ImageView referenceImage;
+        private Disposable imageLookup;
 
         private ReferenceViewHolder(View itemView) {
             super(itemView);
@@ -48,7 +70,7 @@ public class ReferenceListAdapter extends RecyclerView.Adapter<ReferenceListAdap
         @Override
         public void onClick(View view){
             if(clickListener != null){
-                clickListener.onClick(view, mReferences.get(getAdapterPosition()));
+                clickListener.onClick(view, mReferences.getCurrentList().get(getAdapterPosition()));
             }
         }
     }
@@ -72,13 +94,15 @@ public class ReferenceListAdapter extends RecyclerView.Adapter<ReferenceListAdap
 
     @Override
     public void onBindViewHolder(ReferenceViewHolder holder, int position) {
-        if (mReferences != null) {
-            Reference current = mReferences.get(position);
+        List<Reference> references = mReferences.getCurrentList();
+        if (position < references.size()) {
+            Reference current = references.get(position);
 //            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("L-d hh:mma").withZone(ZoneId.systemDefault());
             SimpleDateFormat formatski = new SimpleDateFormat("EEE LLL d, yy, H:mm");
             if (current.getStopTimestamp() != null) {
                 holder.referenceStartDate.setText("Start: " + formatski.format(current.getStartTimestamp()));
                 holder.referenceStopDate.setText("Stop: " + formatski.format(current.getStopTimestamp()));
+                holder.referenceStopDate.setVisibility(View.VISIBLE);
             } else {
                 holder.referenceStartDate.setText(formatski.format(current.getStartTimestamp()));
                 holder.referenceStopDate.setVisibility(View.GONE);
@@ -86,40 +110,51 @@ public class ReferenceListAdapter extends RecyclerView.Adapter<ReferenceListAdap
             holder.referenceTitle.setText(current.getTitle());
             if (current.getSummary() != "" && current.getSummary() != null) {
                 holder.referenceSummary.setText(current.getSummary());
+                holder.referenceSummary.setVisibility(View.VISIBLE);
             } else {
                 holder.referenceSummary.setVisibility(View.GONE); //make the summary disapear if there isn't one
             }
 
-            //set the image
-            MediaFileEntity currentImage;
-            if (current.getStopTimestamp() != null){
-                long imageTime = (current.getStartTimestamp() + current.getStopTimestamp()) / 2;
-                currentImage = mMediaFileViewModel.getClosestMediaFileSnapshot("image", imageTime);
-            } else{
-                currentImage = mMediaFileViewModel.getClosestMediaFileSnapshot("image", current.getStartTimestamp());
+            //set the image, looking it up in the background if whoever made the list didn't, and decoding it in the background either way
+            if (holder.imageLookup != null) {
+                holder.imageLookup.dispose();
+                holder.imageLookup = null;
             }
-            //set the image of the image view
-            String imagePath = currentImage.getLocalPath();
-            Bitmap imageBitmap = BitmapJavaUtils.loadImageFromStorage(imagePath);
-            holder.referenceImage.setImageBitmap(imageBitmap);
+            holder.referenceImage.setImageBitmap(null);
+            Maybe<String> thumbnailPath;
+            if (current.getThumbnailPath() != null) {
+                thumbnailPath = Maybe.just(current.getThumbnailPath());
+            } else {
+                long imageTime = current.getStopTimestamp() != null ? (current.getStartTimestamp() + current.getStopTimestamp()) / 2 : current.getStartTimestamp();
+                thumbnailPath = mMediaFileViewModel.getClosestMediaFileMaybe("image", imageTime)
+                        .map(image -> PovImageStore.getThumbnailPath(image.getLocalPath()));
+            }
+            holder.imageLookup = thumbnailPath
+                    .observeOn(Schedulers.io())
+                    .flatMap(path -> Maybe.fromCallable(() -> BitmapJavaUtils.loadImageFromStorage(path)))
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(holder.referenceImage::setImageBitmap, e -> Log.e(TAG, "Failed to load reference image", e));
         } else {
             // Covers the case of data not being ready yet.
             holder.referenceTitle.setText("No Data");
         }
     }
 
+    @Override
+    public void onViewRecycled(@NonNull ReferenceViewHolder holder) {
+        if (holder.imageLookup != null) {
+            holder.imageLookup.dispose();
+            holder.imageLookup = null;
+        }
+    }
+
     void setReferences(List<Reference> references){
-        mReferences = references;
-        notifyDataSetChanged();
+        mReferences.submitList(references);
     }
 
-    // getItemCount() is called many times, and when it is first called,
-    // mReferences has not been updated (means initially, it's null, and we can't return null).
     @Override
     public int getItemCount() {
-        if (mReferences != null)
-            return mReferences.size();
-        else return 0;
+        return mReferences.getCurrentList().size();
     }
 }
 
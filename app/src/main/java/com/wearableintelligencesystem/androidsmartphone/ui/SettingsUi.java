@@ -1,6 +1,7 @@
 package com.wearableintelligencesystem.androidsmartphone.ui;
 
 import android.widget.Button;
+import android.widget.Switch;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -17,6 +18,7 @@ import androidx.navigation.Navigation;
 import android.content.ComponentName;
 
 import com.wearableintelligencesystem.androidsmartphone.MainActivity;
+import com.wearableintelligencesystem.androidsmartphone.WearableAiAspService;
 
 //import res
 import com.wearableintelligencesystem.androidsmartphone.R;
@@ -72,6 +74,21 @@ public class SettingsUi extends Fragment {
             }
         });
 
+        //the full speech recognizer sleeps until the wake word is spotted, what's said while it sleeps isn't transcribed
+        final Switch lowPowerListeningSwitch = view.findViewById(R.id.low_power_listening);
+        WearableAiAspService service = ((MainActivity)getActivity()).mService;
+        if (service == null) {
+            lowPowerListeningSwitch.setEnabled(false);
+        } else {
+            lowPowerListeningSwitch.setChecked(service.getLowPowerListening());
+            lowPowerListeningSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+                WearableAiAspService boundService = ((MainActivity)getActivity()).mService;
+                if (boundService != null) {
+                    boundService.setLowPowerListening(isChecked);
+                }
+            });
+        }
+
     }
 
 
@@ -17,6 +17,9 @@ import java.util.Date;
 public class FileUtils {
     public static final String TAG = "WearableAi_FileUtils";
 
+    //SimpleDateFormat isn't thread safe, but there's no need to build a new one for every picture either
+    private static final ThreadLocal<SimpleDateFormat> pictureDateFormat = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy_mm_dd_hh_mm_ss_SSS"));
+
     public static Long savePicture(Context context, byte[] data, long imageTime, MediaFileRepository mMediaFileRepository){
         File pictureFileDir = getDir(context);
         //System.out.println("TRYING TO SAVE AT LOCATION: " + pictureFileDir.toString());
@@ -26,8 +29,7 @@ public class FileUtils {
             return null;
         }
 
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy_mm_dd_hh_mm_ss_SSS");
-        String date = dateFormat.format(new Date());
+        String date = pictureDateFormat.get().format(new Date());
         String photoFile = "WearableIntelligenceSystem_POVcamera_" + date + ".jpg";
 
         String filename = pictureFileDir.getPath() + File.separator + photoFile;
@@ -44,6 +46,7 @@ public class FileUtils {
 
         //now save a reference to this media file image to the room database
         Long imageId = savePictureToDatabase(filename, imageTime, mMediaFileRepository);
+        MediaFileCreator.addLocation(imageId, context, mMediaFileRepository);
         return imageId;
     }
 
@@ -54,7 +57,7 @@ public class FileUtils {
     }
 
 
-    private static File getDir(Context context) {
+    static File getDir(Context context) {
         //name of dir where we save images
         String dirName = "WearableAiMobileCompute";
 
@@ -0,0 +1,66 @@
+package com.wearableintelligencesystem.androidsmartphone.utils;
+
+//counts of durations in roughly log spaced buckets, so we can see percentiles of a latency without keeping every sample
+//thread safe, it's written on a worker thread and read from wherever wants to show it
+public class LatencyHistogram {
+    //upper bound of each bucket in milliseconds, the last bucket is everything slower
+    private static final long[] BOUNDS = {50, 100, 200, 300, 500, 750, 1000, 1500, 2000, 3000, 5000, 8000, 12000};
+
+    private final long[] counts = new long[BOUNDS.length + 1];
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    public synchronized void record(long millis){
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+            bucket++;
+        }
+        counts[bucket]++;
+        count++;
+        sum += millis;
+        max = Math.max(max, millis);
+    }
+
+    public synchronized long getCount(){
+        return count;
+    }
+
+    public synchronized long getMean(){
+        return count == 0 ? 0 : sum / count;
+    }
+
+    public synchronized long getMax(){
+        return max;
+    }
+
+    //bucket counts, the i-th is how many were at most getBucketBounds()[i] ms (and over the bound before it), the extra last one is the rest
+    public synchronized long[] getCounts(){
+        return counts.clone();
+    }
+
+    public static long[] getBucketBounds(){
+        return BOUNDS.clone();
+    }
+
+    //an upper bound on the given percentile (0 to 100), the bound of the bucket it falls in, or the max if that's the last bucket
+    public synchronized long getPercentile(double percentile){
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(BOUNDS[i], max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public synchronized String toString(){
+        return "n=" + count + " mean=" + getMean() + "ms p50<=" + getPercentile(50) + "ms p90<=" + getPercentile(90) + "ms p99<=" + getPercentile(99) + "ms max=" + max + "ms";
+    }
+}
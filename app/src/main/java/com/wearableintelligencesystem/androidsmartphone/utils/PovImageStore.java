@@ -0,0 +1,244 @@
+package com.wearableintelligencesystem.androidsmartphone.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileCreator;
+import com.wearableintelligencesystem.androidsmartphone.database.mediafile.MediaFileRepository;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Pattern;
+
+//saves POV camera frames off the socket thread
+//frames are handed over with offer(), which never blocks - if the writer has fallen behind (slow disk) the frame is dropped instead of stalling the socket
+//files are named by the sha1 of their bytes and sharded into pov/ab/cd/ directories, so identical frames are only stored once and no directory gets huge
+//a small thumbnail is written next to every image for the UI lists and for the retention engine
+public class PovImageStore {
+    private static final String TAG = "WearableAi_PovImageStore";
+
+    public interface OnImageSavedListener {
+        //called on the writer thread once the image is on disk and in the database
+        void onImageSaved(byte[] jpeg, long imageId, long imageTime);
+    }
+
+    private static final int QUEUE_CAPACITY = 8;
+    public static final int THUMBNAIL_MAX_EDGE = 320;
+    public static final int THUMBNAIL_QUALITY = 80;
+    private static final String POV_DIR = "pov";
+    private static final String IMAGE_EXTENSION = ".jpg";
+    private static final String THUMBNAIL_SUFFIX = "_thumb.jpg";
+    private static final Pattern CONTENT_ADDRESSED_NAME = Pattern.compile("[0-9a-f]{40}\\" + IMAGE_EXTENSION);
+
+    private static class PendingImage {
+        final byte[] jpeg;
+        final long imageTime;
+        PendingImage(byte[] jpeg, long imageTime){
+            this.jpeg = jpeg;
+            this.imageTime = imageTime;
+        }
+    }
+
+    private final Context mContext;
+    private final MediaFileRepository mMediaFileRepository;
+    private final OnImageSavedListener mListener;
+    private final BlockingQueue<PendingImage> pendingImages = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private long droppedImages = 0;
+
+    //only touched on the writer thread
+    private File povDir;
+    private MessageDigest sha1;
+
+    public PovImageStore(Context context, MediaFileRepository mediaFileRepository, OnImageSavedListener listener) {
+        mContext = context;
+        mMediaFileRepository = mediaFileRepository;
+        mListener = listener;
+        writerThread = new Thread(this::writeLoop, "WearableAiPovImageStore");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    //queue a frame to be saved, returns false if it was dropped because the writer is behind
+    public boolean offer(byte[] jpeg, long imageTime){
+        if (pendingImages.offer(new PendingImage(jpeg, imageTime))) {
+            return true;
+        }
+        droppedImages++;
+        Log.w(TAG, "Image writer is behind, dropped frame (" + droppedImages + " dropped so far)");
+        return false;
+    }
+
+    public void destroy(){
+        running = false;
+        writerThread.interrupt();
+    }
+
+    private void writeLoop(){
+        while (running) {
+            PendingImage image;
+            try {
+                image = pendingImages.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                store(image);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to save POV image", e);
+            }
+        }
+    }
+
+    private void store(PendingImage image) throws IOException {
+        File imageFile = getContentFile(getPovDir(), toHex(getSha1().digest(image.jpeg)));
+        if (imageFile.exists()) {
+            Log.d(TAG, "Same frame as " + imageFile.getName() + ", not storing it again");
+        } else {
+            writeContentFile(image.jpeg, imageFile, false);
+            writeThumbnail(image.jpeg, getThumbnailFile(imageFile));
+        }
+
+        //every capture gets its own row even when the bytes are shared
+        long imageId = MediaFileCreator.create(imageFile.getPath(), "image", image.imageTime, image.imageTime, mMediaFileRepository);
+        MediaFileCreator.addLocation(imageId, mContext, mMediaFileRepository);
+        mListener.onImageSaved(image.jpeg, imageId, image.imageTime);
+    }
+
+    private File getPovDir() throws IOException {
+        if (povDir == null) {
+            File dir = new File(FileUtils.getDir(mContext), POV_DIR);
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Could not create image directory " + dir);
+            }
+            povDir = dir;
+        }
+        return povDir;
+    }
+
+    private MessageDigest getSha1(){
+        if (sha1 == null) {
+            sha1 = newSha1();
+        }
+        return sha1;
+    }
+
+    //where bytes with this sha1 are kept under povDir, the shard directories are created if they aren't there yet
+    private static File getContentFile(File povDir, String hash) throws IOException {
+        File shard = new File(povDir, hash.substring(0, 2) + File.separator + hash.substring(2, 4));
+        if (!shard.exists() && !shard.mkdirs()) {
+            throw new IOException("Could not create image directory " + shard);
+        }
+        return new File(shard, hash + IMAGE_EXTENSION);
+    }
+
+    //write to a temp file first, so a half written image is never mistaken for a stored one
+    //synced if something is about to be deleted in favour of it
+    private static void writeContentFile(byte[] jpeg, File imageFile, boolean sync) throws IOException {
+        File tmp = new File(imageFile.getParentFile(), imageFile.getName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            fos.write(jpeg);
+            if (sync) {
+                fos.getFD().sync();
+            }
+        }
+        if (!tmp.renameTo(imageFile)) {
+            throw new IOException("Could not save image " + imageFile);
+        }
+    }
+
+    //whether the file is one of ours, named by the sha1 of its bytes
+    public static boolean isContentAddressed(File imageFile){
+        return CONTENT_ADDRESSED_NAME.matcher(imageFile.getName()).matches();
+    }
+
+    //stores jpeg next to the content addressed image it was made from (e.g. a smaller copy of it), under its own hash
+    //returns the file it's in, which was already there if the same bytes were stored before
+    public static File storeBeside(File contentAddressedImage, byte[] jpeg) throws IOException {
+        File povDir = contentAddressedImage.getParentFile().getParentFile().getParentFile();
+        File imageFile = getContentFile(povDir, toHex(newSha1().digest(jpeg)));
+        if (!imageFile.exists()) {
+            writeContentFile(jpeg, imageFile, true);
+        }
+        return imageFile;
+    }
+
+    private static MessageDigest newSha1(){
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] digest){
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void writeThumbnail(byte[] jpeg, File thumbnailFile){
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, bounds);
+        Bitmap thumbnail = scaleToThumbnail(BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, sampledOptions(bounds)));
+        if (thumbnail == null) {
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(thumbnailFile)) {
+            thumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write thumbnail " + thumbnailFile, e);
+        } finally {
+            thumbnail.recycle();
+        }
+    }
+
+    //decode options that let the decoder do most of the shrinking down to thumbnail size
+    public static BitmapFactory.Options sampledOptions(BitmapFactory.Options bounds){
+        int longEdge = Math.max(bounds.outWidth, bounds.outHeight);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        while (longEdge / (options.inSampleSize * 2) >= THUMBNAIL_MAX_EDGE) {
+            options.inSampleSize *= 2;
+        }
+        return options;
+    }
+
+    //scales the rest of the way, the sampled bitmap is recycled if a new one had to be made
+    public static Bitmap scaleToThumbnail(Bitmap sampled){
+        if (sampled == null) {
+            return null;
+        }
+        float scale = (float) THUMBNAIL_MAX_EDGE / Math.max(sampled.getWidth(), sampled.getHeight());
+        if (scale >= 1.0f) {
+            return sampled;
+        }
+        Bitmap thumbnail = Bitmap.createScaledBitmap(sampled, Math.round(sampled.getWidth() * scale), Math.round(sampled.getHeight() * scale), true);
+        sampled.recycle();
+        return thumbnail;
+    }
+
+    public static File getThumbnailFile(File imageFile){
+        String name = imageFile.getName();
+        String base = name.endsWith(IMAGE_EXTENSION) ? name.substring(0, name.length() - IMAGE_EXTENSION.length()) : name;
+        return new File(imageFile.getParentFile(), base + THUMBNAIL_SUFFIX);
+    }
+
+    //the thumbnail if there is one, otherwise the image itself (older images were saved without thumbnails)
+    public static String getThumbnailPath(String localPath){
+        File thumbnail = getThumbnailFile(new File(localPath));
+        return thumbnail.exists() ? thumbnail.getPath() : localPath;
+    }
+}
@@ -0,0 +1,169 @@
+package com.wearableintelligencesystem.androidsmartphone.voicecommand;
+
+//decides when the user has finished saying a voice command, so it runs as soon as they stop rather than after a fixed pause
+//it combines:
+//  - Vosk's final results - Vosk only finalizes an utterance once it has heard the speaker stop
+//  - silence, from an energy VAD over the same audio Vosk gets
+//  - the command's argument grammar (VoiceCommand.closedArgs and argsComplete) - a command whose arguments come from a known set is over
+//    the moment one is heard, free text needs a pause, and nothing ends before its arguments are complete
+//the pause free text needs adapts to the user: it's kept above the pauses they take in the middle of a command and then keep talking after
+//not thread safe, VoiceCommandServer uses it from its handler thread
+public class CommandEndpointer {
+    //a command that's woken but never completed is given up on after this long without speech, the old fixed pause
+    public static final long ABANDON_MS = 8000;
+
+    //trailing silence that ends a command with free text arguments
+    private static final long MIN_PAUSE_MS = 700;
+    private static final long MAX_PAUSE_MS = 2500;
+    //once Vosk has finalized the utterance it has already waited out some silence of its own, so we need less
+    private static final double FINALIZED_PAUSE_FRACTION = 0.5;
+    //trailing silence that ends a command whose arguments are from a known set, just enough to see the word isn't still growing
+    private static final long CLOSED_ARGS_PAUSE_MS = 300;
+
+    //pause learning - pauses shorter than this are between words, not the user stopping to think
+    private static final long MIN_LEARNED_GAP_MS = 150;
+    private static final double GAP_SMOOTHING = 0.2;
+    private static final double GAP_DEVIATIONS = 3;
+    //before we've learned anything, mid-command pauses of about 400 +- 270ms, so free text ends after 1.2s of silence
+    private static final double DEFAULT_GAP_MEAN_MS = 400;
+    private static final double DEFAULT_GAP_DEVIATION_MS = 270;
+
+    //VAD, over 20ms frames of the 16kHz 16 bit little endian mono audio from the ASG
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME_SAMPLES = SAMPLE_RATE / 50;
+    private static final double SPEECH_OVER_NOISE = 2.5; //frame rms this many times the noise floor is speech
+    private static final double MIN_SPEECH_RMS = 150;
+    private static final int MIN_SPEECH_FRAMES = 2; //in a row, so a click isn't speech
+    private static final double NOISE_FALL = 0.5;
+    private static final double NOISE_RISE = 0.005;
+
+    //state of the command currently being said
+    private boolean active = false;
+    private boolean commanded = false;
+    private boolean closedArgs = false;
+    private boolean argsComplete = false;
+    private long lastTextChangeTime = 0;
+    private long lastFinalTime = 0;
+    private String lastText = "";
+
+    //VAD state, kept between commands
+    private double noiseFloor = -1;
+    private int speechFrames = 0;
+    private long lastSpeechTime = 0;
+    private boolean inGap = false;
+
+    //learned pause length, kept between commands
+    private double gapMean = DEFAULT_GAP_MEAN_MS;
+    private double gapVariance = DEFAULT_GAP_DEVIATION_MS * DEFAULT_GAP_DEVIATION_MS;
+
+    public void onWake(long now){
+        active = true;
+        commanded = false;
+        closedArgs = false;
+        argsComplete = false;
+        lastTextChangeTime = now;
+        lastFinalTime = 0;
+    }
+
+    //the command that's been heard, and whether the arguments said after it so far are enough to run it
+    public void onCommand(boolean closedArgs, boolean argsComplete){
+        commanded = true;
+        this.closedArgs = closedArgs;
+        this.argsComplete = argsComplete;
+    }
+
+    public void reset(){
+        active = false;
+        commanded = false;
+        argsComplete = false;
+    }
+
+    public boolean isActive(){
+        return active;
+    }
+
+    public boolean isComplete(){
+        return commanded && argsComplete;
+    }
+
+    //every transcript. Vosk repeats the same partial result while the user is quiet, so only a change counts as them talking
+    public void onTranscript(String text, boolean isFinal, long now){
+        if (!text.equals(lastText)) {
+            lastTextChangeTime = now;
+            lastText = text;
+        }
+        if (isFinal) {
+            lastFinalTime = now;
+            lastText = "";
+        }
+    }
+
+    //a chunk of audio that finished arriving at now
+    public void onAudio(byte[] pcm, long now){
+        int frames = pcm.length / (FRAME_SAMPLES * 2);
+        for (int f = 0; f < frames; f++) {
+            long sumSquares = 0;
+            int offset = f * FRAME_SAMPLES * 2;
+            for (int i = 0; i < FRAME_SAMPLES; i++) {
+                int sample = (short) ((pcm[offset + i * 2] & 0xff) | (pcm[offset + i * 2 + 1] << 8));
+                sumSquares += sample * sample;
+            }
+            double rms = Math.sqrt((double) sumSquares / FRAME_SAMPLES);
+            long frameEnd = now - (long) (frames - 1 - f) * 1000 * FRAME_SAMPLES / SAMPLE_RATE;
+            onFrame(rms, frameEnd);
+        }
+    }
+
+    //how long until the command should be ended, 0 if it should be now, or -1 if there's no command being said
+    public long millisUntilEnd(long now){
+        if (!active) {
+            return -1;
+        }
+        long lastActivity = Math.max(lastTextChangeTime, lastSpeechTime);
+        boolean finalized = lastFinalTime >= lastActivity; //and they haven't started talking again since
+        long pause;
+        if (!commanded || !argsComplete) {
+            pause = ABANDON_MS;
+        } else if (closedArgs) {
+            pause = finalized ? 0 : CLOSED_ARGS_PAUSE_MS;
+        } else {
+            pause = learnedPause();
+            if (finalized) {
+                pause = (long) (pause * FINALIZED_PAUSE_FRACTION);
+            }
+        }
+        return Math.max(0, lastActivity + pause - now);
+    }
+
+    //the trailing silence that ends free text, a few deviations above the user's usual mid-command pause
+    public long learnedPause(){
+        long pause = (long) (gapMean + GAP_DEVIATIONS * Math.sqrt(gapVariance));
+        return Math.min(MAX_PAUSE_MS, Math.max(MIN_PAUSE_MS, pause));
+    }
+
+    private void onFrame(double rms, long frameEnd){
+        if (noiseFloor < 0) {
+            noiseFloor = rms;
+        }
+        boolean speech = rms > MIN_SPEECH_RMS && rms > noiseFloor * SPEECH_OVER_NOISE;
+        if (!speech) {
+            //follow the noise down quickly, and up slowly so speech doesn't drag it up
+            noiseFloor += (rms - noiseFloor) * (rms < noiseFloor ? NOISE_FALL : NOISE_RISE);
+            speechFrames = 0;
+            inGap = true;
+            return;
+        }
+        if (++speechFrames < MIN_SPEECH_FRAMES) {
+            return;
+        }
+        //the user started talking again part way through a command, that gap is one they don't mean as the end
+        long gap = frameEnd - lastSpeechTime;
+        if (inGap && active && commanded && gap >= MIN_LEARNED_GAP_MS && gap < ABANDON_MS) {
+            double delta = gap - gapMean;
+            gapMean += GAP_SMOOTHING * delta;
+            gapVariance = (1 - GAP_SMOOTHING) * (gapVariance + GAP_SMOOTHING * delta * delta);
+        }
+        inGap = false;
+        lastSpeechTime = frameEnd;
+    }
+}
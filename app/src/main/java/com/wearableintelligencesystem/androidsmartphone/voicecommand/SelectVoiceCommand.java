@@ -22,6 +22,7 @@ class SelectVoiceCommand extends VoiceCommand {
         this.commandList = new ArrayList<>(Arrays.asList(new String [] {"select"}));
         this.wakeWordList = new ArrayList<>(Arrays.asList(new String [] {}));
         this.isPrimary = false; //not a primary command that can be run at any time
+        this.closedArgs = true; //one word, the thing being selected
     }
 
     @Override
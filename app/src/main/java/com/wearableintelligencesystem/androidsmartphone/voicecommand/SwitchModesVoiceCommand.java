@@ -18,12 +18,16 @@ import com.wearableintelligencesystem.androidsmartphone.comms.MessageTypes;
 import com.wearableintelligencesystem.androidsmartphone.database.voicecommand.VoiceCommandCreator;
 import com.wearableintelligencesystem.androidsmartphone.database.voicecommand.VoiceCommandEntity;
 import com.wearableintelligencesystem.androidsmartphone.nlp.FuzzyMatch;
+import com.wearableintelligencesystem.androidsmartphone.nlp.SimilarityMemo;
 
 class SwitchModesVoiceCommand extends VoiceCommand {
     private String TAG = "WearableAi_SwitchModesVoiceCommand";
 
     protected ArrayList<Pair<String, String>> modesList;
 
+    //argsComplete looks for every mode in the arguments again on each partial transcript, and most of the windows are the same as last time
+    private final SimilarityMemo modeMemo = new SimilarityMemo(512);
+
     SwitchModesVoiceCommand(Context context){
         super(context);
         this.commandName = "switch modes";
@@ -48,11 +52,37 @@ class SwitchModesVoiceCommand extends VoiceCommand {
         modesList.add(Pair.create("speech translate", MessageTypes.MODE_LANGUAGE_TRANSLATE));
         modesList.add(Pair.create("contextual search", MessageTypes.MODE_CONTEXTUAL_SEARCH));
 
+        this.closedArgs = true; //the argument is one of the modes
+    }
+
+    @Override
+    public ArrayList<String> getArgPhrases(){
+        ArrayList<String> modes = new ArrayList<>();
+        for (Pair<String, String> mode : modesList){
+            modes.add(mode.first);
+        }
+        return modes;
+    }
+
+    //a mode has been named, and for speech translate, the language after it
+    @Override
+    public boolean argsComplete(String postArgs){
+        for (int i = 0; i < modesList.size(); i++){
+            FuzzyMatch modeMatch = nlpUtils.findNearMatches(postArgs, modesList.get(i).first, 0.85, modeMemo);
+            if (modeMatch != null && modeMatch.getIndex() != -1){
+                if (!modesList.get(i).second.equals(MessageTypes.MODE_LANGUAGE_TRANSLATE)){
+                    return true;
+                }
+                return !getFirstArg(postArgs.substring(Math.min(postArgs.length(), modeMatch.getIndex() + modesList.get(i).first.length()))).isEmpty();
+            }
+        }
+        return false;
     }
 
     @Override
     public boolean runCommand(VoiceCommandServer vcServer, String preArgs, String wakeWord, int command, String postArgs, long commandTime, long transcriptId){
         Log.d(TAG, "Running command: " + this.commandList.get(command)); 
+        Log.d(TAG, "Mode memo so far: " + modeMemo.getHits() + " hits, " + modeMemo.getMisses() + " misses");
 
         //parse command
         String commandSpoken = this.commandList.get(command);
@@ -26,6 +26,7 @@ public abstract class VoiceCommand {
 
     public boolean isPrimary = true; //is this a primary command that can be run at any time
     public boolean noArgs = false; //does this take no arguments?
+    public boolean closedArgs = false; //are the arguments from a known set, so the command is over as soon as one is heard? see CommandEndpointer
 
     public VoiceCommand(Context context){
         nlpUtils = NlpUtils.getInstance(context);
@@ -39,6 +40,24 @@ public abstract class VoiceCommand {
         this.requiredArgOptions = requiredArgOptions;
     }
 
+    //has enough been said after the command to run it? The endpointer won't end a command until it has
+    //by default that's a word, or with a required argument, the argument and a word after it
+    public boolean argsComplete(String postArgs){
+        if (noArgs) {
+            return true;
+        }
+        String trimmed = postArgs.trim();
+        if (trimmed.isEmpty()) {
+            return false;
+        }
+        return !requiredArg || trimmed.split("\\s+").length >= 2;
+    }
+
+    //the words the arguments can be, if they're from a known set, for the command mode recognizer's grammar
+    public ArrayList<String> getArgPhrases(){
+        return requiredArg ? requiredArgOptions : new ArrayList<>();
+    }
+
     public void sendResult(VoiceCommandServer vcServer, boolean success, String commandName, String displayString){
         try{
             //build json object to send command result
@@ -0,0 +1,143 @@
+package com.wearableintelligencesystem.androidsmartphone.voicecommand;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+
+import com.wearableintelligencesystem.androidsmartphone.nlp.PhraseSetMatcher;
+
+//the voice commands the server listens for. Commands can be registered and unregistered while it's running, e.g. loading a pack of commands for one user
+//everything finding a command needs is built once per change rather than per utterance - every phrasing compiled into one PhraseSetMatcher, the
+//command list the ASG is sent when it wakes, each command's required argument options, and the phrases for the command mode recognizer's
+//grammar - and kept in an immutable Snapshot
+//a change copies the commands into a new snapshot and swaps it in, so any thread can use the current one without locking
+public class VoiceCommandRegistry {
+
+    public static final class Snapshot {
+        private final List<VoiceCommand> commands;
+        private final PhraseSetMatcher commandMatcher;
+        private final String primaryCommandList;
+        private final List<JSONArray> requiredArgOptions;
+        private final List<String> grammarPhrases;
+
+        private Snapshot(List<VoiceCommand> commands){
+            this.commands = Collections.unmodifiableList(commands);
+
+            ArrayList<ArrayList<String>> commandPhrasings = new ArrayList<>();
+            JSONArray commandList = new JSONArray();
+            List<JSONArray> requiredArgOptions = new ArrayList<>();
+            List<String> grammarPhrases = new ArrayList<>();
+            for (VoiceCommand vc : commands){
+                commandPhrasings.add(vc.getCommands());
+                grammarPhrases.addAll(vc.getCommands());
+                grammarPhrases.addAll(vc.getArgPhrases());
+                if (vc.isPrimary) {
+                    for (String command : vc.getCommands()) {
+                        commandList.put(command);
+                    }
+                }
+                JSONArray options = new JSONArray();
+                if (vc.requiredArg) {
+                    for (String option : vc.requiredArgOptions) {
+                        options.put(option);
+                    }
+                }
+                requiredArgOptions.add(options);
+            }
+            commandMatcher = new PhraseSetMatcher(commandPhrasings);
+            primaryCommandList = commandList.toString();
+            this.requiredArgOptions = Collections.unmodifiableList(requiredArgOptions);
+            this.grammarPhrases = Collections.unmodifiableList(grammarPhrases);
+        }
+
+        public int size(){
+            return commands.size();
+        }
+
+        public VoiceCommand get(int index){
+            return commands.get(index);
+        }
+
+        public List<VoiceCommand> getCommands(){
+            return commands;
+        }
+
+        //a Match's group is the index of its command in this snapshot
+        public PhraseSetMatcher getCommandMatcher(){
+            return commandMatcher;
+        }
+
+        //every phrasing of every primary command, serialized for the ASG's wake word event
+        public String getPrimaryCommandList(){
+            return primaryCommandList;
+        }
+
+        //every command phrasing and every argument from a known set, what the command mode recognizer needs to know
+        public List<String> getGrammarPhrases(){
+            return grammarPhrases;
+        }
+
+        //the options of the command's required argument, shared, so don't modify it
+        public JSONArray getRequiredArgOptions(int index){
+            return requiredArgOptions.get(index);
+        }
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(new ArrayList<>());
+
+    public Snapshot getSnapshot(){
+        return snapshot;
+    }
+
+    public void register(VoiceCommand voiceCommand){
+        registerAll(Collections.singletonList(voiceCommand));
+    }
+
+    //adds them all with one rebuild. A command with the same name as one already registered replaces it
+    public synchronized void registerAll(Collection<? extends VoiceCommand> voiceCommands){
+        List<VoiceCommand> commands = new ArrayList<>(snapshot.getCommands());
+        for (VoiceCommand voiceCommand : voiceCommands){
+            int existing = indexOf(commands, voiceCommand.getCommandName());
+            if (existing != -1) {
+                commands.set(existing, voiceCommand);
+            } else {
+                commands.add(voiceCommand);
+            }
+        }
+        snapshot = new Snapshot(commands);
+    }
+
+    //returns whether a command of that name was registered
+    public boolean unregister(String commandName){
+        return unregisterAll(Collections.singletonList(commandName)) > 0;
+    }
+
+    //removes them all with one rebuild, returns how many were registered
+    public synchronized int unregisterAll(Collection<String> commandNames){
+        List<VoiceCommand> commands = new ArrayList<>(snapshot.getCommands());
+        int removed = 0;
+        for (String commandName : commandNames){
+            int existing = indexOf(commands, commandName);
+            if (existing != -1) {
+                commands.remove(existing);
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            snapshot = new Snapshot(commands);
+        }
+        return removed;
+    }
+
+    private static int indexOf(List<VoiceCommand> commands, String commandName){
+        for (int i = 0; i < commands.size(); i++){
+            if (commands.get(i).getCommandName().equals(commandName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -24,6 +24,7 @@ import com.wearableintelligencesystem.androidsmartphone.comms.MessageTypes;
 
 import com.wearableintelligencesystem.androidsmartphone.database.memorycache.MemoryCacheRepository;
 import com.wearableintelligencesystem.androidsmartphone.database.voicecommand.VoiceCommandRepository;
+import com.wearableintelligencesystem.androidsmartphone.utils.LatencyHistogram;
 
 import java.util.ArrayList;
 
@@ -32,6 +33,7 @@ import android.os.HandlerThread;
 import android.util.Log;
 import android.content.Context;
 import android.util.Pair;
+import android.util.Base64;
 
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.subjects.PublishSubject;
@@ -45,6 +47,8 @@ import java.util.Arrays;
 //nlp
 import com.wearableintelligencesystem.androidsmartphone.nlp.FuzzyMatch;
 import com.wearableintelligencesystem.androidsmartphone.nlp.NlpUtils;
+import com.wearableintelligencesystem.androidsmartphone.nlp.PhraseSetMatcher;
+import com.wearableintelligencesystem.androidsmartphone.nlp.StreamingFuzzyMatcher;
 
 //parse, interpret, run commands
 //low pass filter on speech to text so user can say voice command slowly
@@ -62,18 +66,35 @@ public class VoiceCommandServer {
     private NlpUtils nlpUtils;
 
     //voice command stuff
-    private ArrayList<VoiceCommand> voiceCommands;
+    private VoiceCommandRegistry registry = new VoiceCommandRegistry();
     private ArrayList<String> wakeWords;
     private ArrayList<String> endWords;
+    //the buffer is searched for these on every partial transcript, so each keeps what it already scanned, see StreamingFuzzyMatcher
+    private ArrayList<StreamingFuzzyMatcher> wakeWordMatchers;
+    private ArrayList<StreamingFuzzyMatcher> endWordMatchers;
 
     //timing of voice command system
-    private long voiceCommandPauseTime = 8000; //milliseconds //amount of time user must pause speaking before we consider the command to be finished
     private long lastParseTime = 0; //milliseconds //since last time we parse a command (executing or not)
-    private long lastTranscriptTime = 0; //milliseconds since we last received a transcript
     private int partialTranscriptBufferIdx = 0; //this is set true when an end word is found, so we don't keep trying to process incoming INTERMEDIATE_TRANSCRIPTs if we have already processing the current buffer - we need to wait for the next transcript
-    private boolean newTranscriptSinceRun = false; //has a new transcript come in since we last parsed a voice command?
     private boolean currentlyParsing = false; //are we currently parsing? if so, don't try to parse again at the same time
 
+    //decides when the user has finished saying a command, from transcripts, audio, and what the command takes. Rather than waiting for a fixed pause, we check again whenever it says the command could next be over
+    private CommandEndpointer endpointer = new CommandEndpointer();
+    private final Runnable endpointCheck = this::checkEndpoint;
+    private String lastTranscriptToParse = ""; //the buffer as of the latest transcript, final or not
+    private int lastPartialTranscriptLength = 0; //how much of the utterance Vosk is still working on we've already seen, 0 if it's been finalized
+    //while a command is being said, a second recognizer that only knows the commands (a Vosk grammar) runs in SpeechRecVosk. What it hears is
+    //faster and more accurate for commands and arguments from a known set, free text still comes from the main recognizer
+    private VoiceCommandRegistry.Snapshot commandGrammarSnapshot; //the snapshot commandGrammar was built from, it's rebuilt when the registry changes
+    private String commandGrammar;
+    private boolean commandRecognitionOn = false;
+    //time from hearing the wake word to running the command
+    private LatencyHistogram commandLatency = new LatencyHistogram();
+    private long wakeWordTime = 0;
+    //when the keyword spotter last heard the wake word end, in the audio. If the wake word we then find is that one, latency is counted from it
+    private static final long KEYWORD_SPOT_MATCH_MS = 3000;
+    private long keywordSpotTime = 0;
+
     //the current voice buffer that we are processing, with metadata about the lastest phrase/transcript which makes up that voice buffer
     private String lowPassTranscriptString = "";
     long lowPassTranscriptTime = 0l;
@@ -100,7 +121,7 @@ public class VoiceCommandServer {
     int wakeWordEndIdx = -1;
     boolean commanded = false;
     String commandGiven = "";
-    int commandEndIdx = -1;
+    int commandEndIdx = -1; //where the command ends in the main buffer, -1 if the command recognizer found it
     boolean requiredArged = false;
     boolean needArg = false;
     boolean ended = false;
@@ -122,53 +143,70 @@ public class VoiceCommandServer {
         dataObservable = observable;
         dataSubscriber = dataObservable.subscribe(i -> handleDataStream(i));
 
-        //get all voice commands
-        voiceCommands = new ArrayList<VoiceCommand>();
-        voiceCommands.add(new MemoryCacheStartVoiceCommand(context));
-        voiceCommands.add(new MemoryCacheStopVoiceCommand(context));
-        voiceCommands.add(new SearchEngineVoiceCommand(context));
-        voiceCommands.add(new NaturalLanguageQueryVoiceCommand(context));
-        voiceCommands.add(new SwitchModesVoiceCommand(context));
-        voiceCommands.add(new VoiceNoteVoiceCommand(context));
-        voiceCommands.add(new ReferenceTranslateVoiceCommand(context));
-        voiceCommands.add(new SelectVoiceCommand(context));
+        //the built in voice commands, more can be registered at any time through getRegistry()
+        registry.registerAll(Arrays.asList(
+                new MemoryCacheStartVoiceCommand(context),
+                new MemoryCacheStopVoiceCommand(context),
+                new SearchEngineVoiceCommand(context),
+                new NaturalLanguageQueryVoiceCommand(context),
+                new SwitchModesVoiceCommand(context),
+                new VoiceNoteVoiceCommand(context),
+                new ReferenceTranslateVoiceCommand(context),
+                new SelectVoiceCommand(context)));
 
         wakeWords = new ArrayList<>(Arrays.asList(new String [] {"hey computer"}));
         endWords = new ArrayList<>(Arrays.asList(new String [] {"finish command"}));
-
-//        startSittingCommandHitter(); //keep checking to see if there is a command to be run
+        wakeWordMatchers = new ArrayList<>();
+        for (String wakeWord : wakeWords){
+            wakeWordMatchers.add(new StreamingFuzzyMatcher(wakeWord));
+        }
+        endWordMatchers = new ArrayList<>();
+        for (String endWord : endWords){
+            endWordMatchers.add(new StreamingFuzzyMatcher(endWord));
+        }
     }
 
-    private void startSittingCommandHitter(){
-        //every n milliseconds, check if there is a command that has been input via voice command (voice CLI) that is ready to be run
-        lastTranscriptTime = System.currentTimeMillis();
-        vcHandler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                long currTime = System.currentTimeMillis();
+    //the commands we listen for, e.g. to load a user's own
+    public VoiceCommandRegistry getRegistry(){
+        return registry;
+    }
 
-                if (newTranscriptSinceRun && (((currTime - lastParseTime) > voiceCommandPauseTime)) && ((currTime - lastTranscriptTime) > voiceCommandPauseTime)){
-                    parseVoiceCommmandBuffer(lowPassTranscriptString, true, lowPassTranscriptId);
-                    restartTranscriptBuffer(0, true);
-                    if (waked){ //if we had already woken up, but no command has run, let ASG know to go exit the command
-                        cancelVoiceCommand();
-                        resetVoiceCommand();
-                    }
-                }
+    //wake word to command run times, for seeing how responsive voice commands are
+    public LatencyHistogram getCommandLatencyHistogram(){
+        return commandLatency;
+    }
 
-                long waitTime;
-                if (!newTranscriptSinceRun) {
-                    waitTime = voiceCommandPauseTime + 10;
-                } else {
-                    waitTime = ((voiceCommandPauseTime + lastTranscriptTime) - currTime) + 10; //plus 10 milliseconds for potential OS jitter (I don't know if it's actually needed)
-                }
+    //arm (or re-arm) the one check for the end of the command, for when the endpointer says it could next be over
+    private void scheduleEndpointCheck(){
+        vcHandler.removeCallbacks(endpointCheck);
+        long wait = endpointer.millisUntilEnd(System.currentTimeMillis());
+        if (wait >= 0) {
+            vcHandler.postDelayed(endpointCheck, wait);
+        }
+    }
 
-                vcHandler.postDelayed(this, waitTime);
-            }
-        }, voiceCommandPauseTime + 10);
+    //the user has stopped talking. Run the command if it's complete, or give up on it if not
+    private void checkEndpoint(){
+        long wait = endpointer.millisUntilEnd(System.currentTimeMillis());
+        if (wait != 0) {
+            scheduleEndpointCheck();
+            return;
+        }
+        Log.d(TAG, "End of command, complete: " + endpointer.isComplete());
+        endCommand();
+    }
 
+    //run the command if it's complete, or give up on it if not
+    private void endCommand(){
+        parseVoiceCommmandBuffer(lastTranscriptToParse, true, lowPassTranscriptId);
+        //skip what Vosk later gives us of this utterance, we've used it
+        restartTranscriptBuffer(lastPartialTranscriptLength, true);
+        if (waked){ //if we had already woken up, but no command has run, let ASG know to go exit the command
+            cancelVoiceCommand();
+            resetVoiceCommand();
+        }
     }
-    
+
     public void setObservable(PublishSubject observable){
         dataObservable = observable;
     }
@@ -180,6 +218,13 @@ public class VoiceCommandServer {
                 throwHandleNewTranscript(data);
             } else if (dataType.equals(MessageTypes.INTERMEDIATE_TRANSCRIPT)){
                 throwHandleNewTranscript(data);
+            } else if (dataType.equals(MessageTypes.FINAL_COMMAND_TRANSCRIPT)){
+                vcHandler.post(() -> handleCommandTranscript(data));
+            } else if (dataType.equals(MessageTypes.AUDIO_CHUNK_DECRYPTED)){
+                vcHandler.post(() -> handleAudio(data));
+            } else if (dataType.equals(MessageTypes.KEYWORD_SPOTTED)){
+                long spotTime = data.getLong(MessageTypes.TIMESTAMP);
+                vcHandler.post(() -> keywordSpotTime = spotTime);
             }
         } catch (JSONException e){
             e.printStackTrace();
@@ -195,19 +240,121 @@ public class VoiceCommandServer {
         });
     }
 
+    //what the command mode recognizer heard. It only knows commands, so anything else comes out as [unk], and what it does hear it hears exactly
+    //commands that need nothing else, or whose arguments are from a known set, are run from this as soon as it's final, and an end word ends the
+    //command. Free text arguments are left to the main recognizer
+    private void handleCommandTranscript(JSONObject data){
+        if (!waked) {
+            return;
+        }
+        try {
+            String text = data.getString(MessageTypes.TRANSCRIPT_TEXT).toLowerCase();
+            //it heard a little from before the wake word was found, start after the wake word
+            int wakeWordIdx = text.lastIndexOf(wakeWordGiven);
+            String rest = wakeWordIdx == -1 ? text : text.substring(wakeWordIdx + wakeWordGiven.length());
+            if (rest.trim().isEmpty() || rest.contains("[unk]")) {
+                return;
+            }
+            Log.d(TAG, "Command recognizer heard: " + rest);
+
+            for (String endWord : endWords) {
+                if (rest.contains(endWord)) {
+                    endCommand();
+                    return;
+                }
+            }
+
+            VoiceCommandRegistry.Snapshot commands = registry.getSnapshot();
+            PhraseSetMatcher.Match match = commands.getCommandMatcher().findBest(rest, commandThreshold);
+            if (match == null) {
+                return;
+            }
+            VoiceCommand vc = commands.get(match.group);
+            if (!vc.noArgs && !vc.closedArgs) {
+                return;
+            }
+            long currTime = System.currentTimeMillis();
+            parseCommand("", wakeWordGiven, rest, -1, currTime, lowPassTranscriptId, false);
+            if (waked && endpointer.isComplete()) {
+                parseCommand("", wakeWordGiven, rest, -1, currTime, lowPassTranscriptId, true);
+                //skip what the main recognizer later gives us of this utterance
+                restartTranscriptBuffer(lastPartialTranscriptLength, true);
+            }
+        } catch (JSONException e){
+            e.printStackTrace();
+        }
+    }
+
+    private void startCommandRecognition(){
+        VoiceCommandRegistry.Snapshot commands = registry.getSnapshot();
+        if (commandGrammarSnapshot != commands) {
+            //a Vosk grammar is a JSON list of phrases, any sequence of which can be recognized. [unk] is everything else
+            JSONArray grammar = new JSONArray();
+            for (String phrase : wakeWords) {
+                grammar.put(phrase);
+            }
+            for (String phrase : commands.getGrammarPhrases()) {
+                grammar.put(phrase);
+            }
+            for (String phrase : endWords) {
+                grammar.put(phrase);
+            }
+            grammar.put("[unk]");
+            commandGrammar = grammar.toString();
+            commandGrammarSnapshot = commands;
+        }
+        try {
+            JSONObject startCommandRecognition = new JSONObject();
+            startCommandRecognition.put(MessageTypes.MESSAGE_TYPE_LOCAL, MessageTypes.START_COMMAND_RECOGNITION);
+            startCommandRecognition.put(MessageTypes.COMMAND_GRAMMAR, commandGrammar);
+            dataObservable.onNext(startCommandRecognition);
+            commandRecognitionOn = true;
+        } catch (JSONException e){
+            e.printStackTrace();
+        }
+    }
+
+    private void stopCommandRecognition(){
+        if (!commandRecognitionOn) {
+            return;
+        }
+        commandRecognitionOn = false;
+        try {
+            JSONObject stopCommandRecognition = new JSONObject();
+            stopCommandRecognition.put(MessageTypes.MESSAGE_TYPE_LOCAL, MessageTypes.STOP_COMMAND_RECOGNITION);
+            dataObservable.onNext(stopCommandRecognition);
+        } catch (JSONException e){
+            e.printStackTrace();
+        }
+    }
+
+    //the VAD in the endpointer listens to the same audio Vosk does
+    private void handleAudio(JSONObject data){
+        try {
+            byte [] audio = Base64.decode(data.getString(MessageTypes.AUDIO_DATA), Base64.DEFAULT);
+            endpointer.onAudio(audio, System.currentTimeMillis());
+            if (endpointer.isActive()) {
+                scheduleEndpointCheck();
+            }
+        } catch (JSONException e){
+            e.printStackTrace();
+        }
+    }
+
     //handles timing of transcripts and keeping a proper buffer that is delineated by voice commands
     // allows users to have plenty of time to speak to enter commands
     private void handleNewTranscript(JSONObject data){ long currTime = System.currentTimeMillis();
-
-        //set last transcript heard time
-        lastTranscriptTime = currTime;
-
         //parse incoming data object
         String transcript = "";
         try{
             //get basic data about transcript
             transcript = data.getString(MessageTypes.TRANSCRIPT_TEXT).toLowerCase();
             String dataType = data.getString(MessageTypes.MESSAGE_TYPE_LOCAL);
+            boolean isFinal = dataType.equals(MessageTypes.FINAL_TRANSCRIPT);
+
+            //tell the endpointer the user is still talking, or that Vosk thinks they've stopped
+            endpointer.onTranscript(transcript, isFinal, currTime);
+            lastPartialTranscriptLength = isFinal ? 0 : transcript.length();
 
             //if the current partial transcript idx is greater than the current transcript, ignore this transcript
             if ((partialTranscriptBufferIdx + 1) > transcript.length()){
@@ -216,6 +363,7 @@ public class VoiceCommandServer {
                     partialTranscriptBufferIdx = 0;
                 }
                 lowPassTranscriptString = "";
+                scheduleEndpointCheck();
                 return;
             }
 
@@ -225,8 +373,6 @@ public class VoiceCommandServer {
                 startNewVoiceCliBuffer = false;
             }
 
-            newTranscriptSinceRun = true;
-
             //get current passed in transcript starting from the start point
             String partialTranscript = transcript.substring(partialTranscriptBufferIdx);
 
@@ -248,10 +394,12 @@ public class VoiceCommandServer {
                 partialTranscriptBufferIdx = 0;
             }
 
-            //parse transcript - but don't run too often
-            if ((System.currentTimeMillis() - lastParseTime) > 50) {
+            //parse transcript - but don't run too often. Always parse final ones, the endpointer may be waiting on them
+            lastTranscriptToParse = transcriptToParse;
+            if (isFinal || (System.currentTimeMillis() - lastParseTime) > 50) {
                 parseVoiceCommmandBuffer(transcriptToParse, false, lowPassTranscriptId);
             }
+            scheduleEndpointCheck();
         } catch (JSONException e){
             e.printStackTrace();
             return;
@@ -271,7 +419,7 @@ public class VoiceCommandServer {
     private void parseVoiceCommmandBuffer(String transcript, boolean run, long transcriptId) {
         //if we have already found a wake word and a command, but the command is not yet finished, then send a stream of the argument text to the ASG
         if (waked && commanded){
-            if (transcript.length() > commandEndIdx) { //don't send if there's no args
+            if (commandEndIdx != -1 && transcript.length() > commandEndIdx) { //don't send if there's no args, or the command isn't in this buffer
                 try {
                     JSONObject commandArgsEvent = new JSONObject();
                     commandArgsEvent.put(MessageTypes.MESSAGE_TYPE_LOCAL, MessageTypes.VOICE_COMMAND_STREAM_EVENT);
@@ -325,7 +473,7 @@ public class VoiceCommandServer {
             //loop through all global wake words to see if any match
             for (int i = 0; i < wakeWords.size(); i++){
                 String currWakeWord = wakeWords.get(i);
-                FuzzyMatch wakeWordLocation = nlpUtils.findNearMatches(transcript, currWakeWord, wakeWordThreshold); //transcript.indexOf(currWakeWord);
+                FuzzyMatch wakeWordLocation = wakeWordMatchers.get(i).find(transcript, wakeWordThreshold); //transcript.indexOf(currWakeWord);
                 if (wakeWordLocation != null && wakeWordLocation.getIndex() != -1){ //if the substring "wake word" is in the larger string "transcript"
                     //we found a command, now get its arguments and run it
                     foundWakeWord(currWakeWord, wakeWordLocation.getIndex() + currWakeWord.length());
@@ -353,14 +501,14 @@ public class VoiceCommandServer {
             }
 
             //search for a command. If it's found, we'll show the arguments screen and save what command was found
-            parseCommand(preArgs, wakeWordGiven, rest, currTime, transcriptId, run);
+            parseCommand(preArgs, wakeWordGiven, rest, wakeWordEndIdx, currTime, transcriptId, run);
 
             //if we find an "end command" voice command, execute now
             //loop through all global endwords to see if any match
             Log.d(TAG, "SEARCH FOR END");
             for (int i = 0; i < endWords.size(); i++) {
                 String currEndWord = endWords.get(i);
-                FuzzyMatch endWordLocation = nlpUtils.findNearMatches(transcript, currEndWord, endWordThreshold); //transcript.indexOf(currEndWord);
+                FuzzyMatch endWordLocation = endWordMatchers.get(i).find(transcript, endWordThreshold); //transcript.indexOf(currEndWord);
                 if (endWordLocation != null && endWordLocation.getIndex() != -1) { //if the substring "end word" is in the larger string "transcript"
                     //we detected an end word, so act on it if we've been commanded, or cancel if not
                     Log.d(TAG, "Detected end word");
@@ -379,7 +527,7 @@ public class VoiceCommandServer {
 
                     //find the command and run it
                     Log.d(TAG, "RUN PARSE " + preArgs + ",  " + rest);
-                    parseCommand(preArgs, wakeWordGiven, rest, currTime, transcriptId, run);
+                    parseCommand(preArgs, wakeWordGiven, rest, wakeWordEndIdx, currTime, transcriptId, run);
 
                     //restart voice transcript buffer now that we've run a command
                     restartTranscriptBuffer(partialIdx, null);
@@ -388,34 +536,24 @@ public class VoiceCommandServer {
             }
         }
 
-        if (run){
-            newTranscriptSinceRun = false;
-        }
-
         currentlyParsing = false;
     }
 
-    private void parseCommand(String preArgs, String wakeWord, String rest, long commandTime, long transcriptId, boolean run){
-        FuzzyMatch bestMatch = new FuzzyMatch(-1,0);
-        int bestMatchIdx = -1;
-        int vcIdx = -1;
-        for (int i = 0; i < voiceCommands.size(); i++) {
-            Pair<FuzzyMatch, Integer> commandBestMatch = nlpUtils.findBestMatch(rest, voiceCommands.get(i).getCommands(), commandThreshold);
-            if (commandBestMatch != null) {
-                FuzzyMatch commandMatch = commandBestMatch.first;
-                int commandMatchIdx = commandBestMatch.second;
-                if (commandMatch.getSimilarity() > bestMatch.getSimilarity()) {
-                    bestMatch = commandMatch;
-                    bestMatchIdx = commandMatchIdx;
-                    vcIdx = i;
-                }
-            }
-        }
+    //restIdx is where rest starts in the main buffer, or -1 if it's the command recognizer's text, whose offsets mean nothing in the main buffer
+    private void parseCommand(String preArgs, String wakeWord, String rest, int restIdx, long commandTime, long transcriptId, boolean run){
+        //same result as running nlpUtils.findBestMatch over each command's phrasings and keeping the best
+        //one snapshot for the whole search, so the command the match points to can't change under us
+        VoiceCommandRegistry.Snapshot commands = registry.getSnapshot();
+        PhraseSetMatcher.Match commandBestMatch = commands.getCommandMatcher().findBest(rest, commandThreshold);
+        FuzzyMatch bestMatch = commandBestMatch != null ? commandBestMatch.match : new FuzzyMatch(-1,0);
+        int bestMatchIdx = commandBestMatch != null ? commandBestMatch.phrase : -1;
+        int vcIdx = commandBestMatch != null ? commandBestMatch.group : -1;
         if (bestMatch.getIndex() != -1){
             FuzzyMatch commandMatch = bestMatch;
             Log.d(TAG, "BEST MATCH COMMAND: " + bestMatch);
             int commandMatchIdx = bestMatchIdx;
-            String commandMatchString = voiceCommands.get(vcIdx).getCommands().get(commandMatchIdx);
+            VoiceCommand vc = commands.get(vcIdx);
+            String commandMatchString = vc.getCommands().get(commandMatchIdx);
 
             Log.d(TAG, "3FOUND: " + commandMatchString);
             String postArgs;
@@ -439,23 +577,25 @@ public class VoiceCommandServer {
 
             //show the user the next menu
             if (commanded) { //if we've already found a command, just check if we are still waiting on a required argument
-                if (voiceCommands.get(vcIdx).requiredArg && needArg && requiredArged){
+                if (vc.requiredArg && needArg && requiredArged){
                     needNaturalLanguageArgs(commandMatchString);
                     needArg = false;
                 }
             } else { //else, this is the first time we found a command, and we either prompt for a required argument or send user straight to the natural language query selection
-                if (voiceCommands.get(vcIdx).requiredArg) {
-                    needRequiredArg(voiceCommands.get(vcIdx).requiredArgString, voiceCommands.get(vcIdx).requiredArgOptions);
+                if (vc.requiredArg) {
+                    needRequiredArg(vc.requiredArgString, commands.getRequiredArgOptions(vcIdx));
                 } else {
                     needNaturalLanguageArgs(commandMatchString);
                 }
             }
 
-            foundCommand(commandMatchString, wakeWordEndIdx + commandMatch.getIndex() + commandMatchString.length());
+            foundCommand(commandMatchString, restIdx == -1 ? -1 : restIdx + commandMatch.getIndex() + commandMatchString.length());
+            endpointer.onCommand(vc.closedArgs, vc.argsComplete(postArgs));
 
-            if (run || voiceCommands.get(vcIdx).noArgs) {
-                restartTranscriptBuffer(commandEndIdx, true);
-                runCommand(voiceCommands.get(vcIdx), preArgs, wakeWord, commandMatchIdx, postArgs, commandTime, transcriptId);
+            if (run || vc.noArgs) {
+                //from the command recognizer, we don't know where in the main buffer the command ended, so skip all it has of this utterance
+                restartTranscriptBuffer(commandEndIdx == -1 ? lastPartialTranscriptLength : commandEndIdx, true);
+                runCommand(vc, preArgs, wakeWord, commandMatchIdx, postArgs, commandTime, transcriptId);
             }
             currentlyParsing = false;
             return;
@@ -490,16 +630,10 @@ public class VoiceCommandServer {
         }
     }
 
-    private void needRequiredArg(String argName, ArrayList<String> possibleArgs){
+    private void needRequiredArg(String argName, JSONArray argsList){
         needArg = true;
         //tell ASG that we have found a command but now need a required argument
         try {
-            //generate args list
-            JSONArray argsList = new JSONArray();
-            possibleArgs.forEach(argPossibility -> {
-                argsList.put(argPossibility);
-            });
-
             JSONObject wakeWordFoundEvent = new JSONObject();
             wakeWordFoundEvent.put(MessageTypes.MESSAGE_TYPE_LOCAL, MessageTypes.VOICE_COMMAND_STREAM_EVENT);
             wakeWordFoundEvent.put(MessageTypes.VOICE_COMMAND_STREAM_EVENT_TYPE, MessageTypes.REQUIRED_ARG_EVENT_TYPE);
@@ -536,23 +670,20 @@ public class VoiceCommandServer {
         waked = true;
         this.wakeWordGiven = wakeWord;
         this.wakeWordEndIdx = wakeWordEndIdx;
+        long now = System.currentTimeMillis();
+        wakeWordTime = now - keywordSpotTime < KEYWORD_SPOT_MATCH_MS ? keywordSpotTime : now;
+        endpointer.onWake(now);
+        startCommandRecognition();
 
-        //generate commandlist for all commands
-        JSONArray commandList = new JSONArray();
-        voiceCommands.forEach(voiceCommand -> {
-            if (voiceCommand.isPrimary) {
-                voiceCommand.getCommands().forEach(command -> {
-                    commandList.put(command);
-                });
-            }
-        });
+        //the commandlist for all commands is built by the registry when they change, not on every wake
+        String commandList = registry.getSnapshot().getPrimaryCommandList();
 
         //tell ASG that we have found this wake word and to display the following command options
         try {
             JSONObject wakeWordFoundEvent = new JSONObject();
             wakeWordFoundEvent.put(MessageTypes.MESSAGE_TYPE_LOCAL, MessageTypes.VOICE_COMMAND_STREAM_EVENT);
             wakeWordFoundEvent.put(MessageTypes.VOICE_COMMAND_STREAM_EVENT_TYPE, MessageTypes.WAKE_WORD_EVENT_TYPE);
-            wakeWordFoundEvent.put(MessageTypes.VOICE_COMMAND_LIST,commandList.toString());
+            wakeWordFoundEvent.put(MessageTypes.VOICE_COMMAND_LIST,commandList);
             wakeWordFoundEvent.put(MessageTypes.INPUT_WAKE_WORD, wakeWord);
             dataObservable.onNext(wakeWordFoundEvent);
         } catch (JSONException e){
@@ -574,6 +705,8 @@ public class VoiceCommandServer {
 
     private void runCommand(VoiceCommand vc, String preArgs, String wakeWord, int commandIdx, String postArgs, long commandTime, long transcriptId){
         Log.d(TAG, "running commmand: " + vc.getCommandName());
+        commandLatency.record(System.currentTimeMillis() - wakeWordTime);
+        Log.d(TAG, "Wake word to command latency: " + commandLatency);
         //the voice command itself will handle sending the appropriate response to the ASG
         resetVoiceCommand();
         boolean result = vc.runCommand(this, preArgs, wakeWord, commandIdx, postArgs, commandTime, transcriptId);
@@ -586,6 +719,8 @@ public class VoiceCommandServer {
     private void resetVoiceCommand(){
         Log.d(TAG, "RESET VOICE COMMAND BUFFER FLAGS");
         waked = false;
+        endpointer.reset();
+        stopCommandRecognition();
         this.wakeWordGiven = "";
         commanded = false;
         this.commandGiven = "";
@@ -0,0 +1,63 @@
+package com.wearableintelligencesystem.androidsmartphone.contextualsearch;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The fingerprint HnswIndex keeps in its header must survive a reopen and be what an owner works out from its own (key, node) sequence.
+ */
+public class HnswIndexTest {
+    private static final int DIMENSION = 8;
+
+    @Test
+    public void fingerprintSurvivesReopen() throws Exception {
+        File file = File.createTempFile("hnsw", ".index");
+        try {
+            HnswIndex index = HnswIndex.open(file, DIMENSION);
+            assertEquals(0L, index.getFingerprint());
+            Random random = new Random(50);
+            long expected = 0;
+            for (int node = 0; node < 300; node++) {
+                long key = random.nextInt(20);
+                index.add(key, randomUnitVector(random));
+                expected = HnswIndex.fingerprint(expected, key, node);
+                assertEquals(expected, index.getFingerprint());
+            }
+            index.close();
+
+            index = HnswIndex.open(file, DIMENSION);
+            assertEquals(300, index.size());
+            assertEquals(expected, index.getFingerprint());
+            index.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void fingerprintDependsOnOrderAndKeys() {
+        long ab = HnswIndex.fingerprint(HnswIndex.fingerprint(0, 1, 0), 2, 1);
+        long ba = HnswIndex.fingerprint(HnswIndex.fingerprint(0, 2, 0), 1, 1);
+        long aa = HnswIndex.fingerprint(HnswIndex.fingerprint(0, 1, 0), 1, 1);
+        assertTrue(ab != ba);
+        assertTrue(ab != aa);
+        assertTrue(HnswIndex.fingerprint(0, 0, 0) != 0);
+    }
+
+    private static float[] randomUnitVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        double norm = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] /= (float) Math.sqrt(norm);
+        }
+        return vector;
+    }
+}
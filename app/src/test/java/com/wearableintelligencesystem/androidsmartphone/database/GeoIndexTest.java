@@ -0,0 +1,77 @@
+package com.wearableintelligencesystem.androidsmartphone.database;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The boxes GeoIndex.boundingBoxes gives back must hold every point within the radius, including across the antimeridian and over the poles.
+ */
+public class GeoIndexTest {
+
+    @Test
+    public void splitsAtTheAntimeridian() {
+        List<double[]> boxes = GeoIndex.boundingBoxes(0.0, 179.99, 5000);
+        assertEquals(2, boxes.size());
+        assertEquals(180.0, boxes.get(0)[3], 0.0);
+        assertEquals(-180.0, boxes.get(1)[2], 0.0);
+        assertTrue(inAny(boxes, 0.0, -179.99));
+
+        boxes = GeoIndex.boundingBoxes(0.0, -179.99, 5000);
+        assertEquals(2, boxes.size());
+        assertTrue(inAny(boxes, 0.0, 179.99));
+    }
+
+    @Test
+    public void oneBoxAwayFromTheAntimeridian() {
+        List<double[]> boxes = GeoIndex.boundingBoxes(43.65, -79.38, 1000);
+        assertEquals(1, boxes.size());
+        assertTrue(boxes.get(0)[2] < -79.38 && boxes.get(0)[3] > -79.38);
+    }
+
+    @Test
+    public void takesEveryLongitudeOverAPole() {
+        List<double[]> boxes = GeoIndex.boundingBoxes(89.99, 10.0, 5000);
+        assertEquals(1, boxes.size());
+        assertArrayEquals(new double[]{boxes.get(0)[0], 90.0, -180.0, 180.0}, boxes.get(0), 0.0);
+        assertTrue(inAny(boxes, 89.99, -170.0));
+    }
+
+    @Test
+    public void holdsEveryPointInTheRadius() {
+        Random random = new Random(29);
+        for (int trial = 0; trial < 20000; trial++) {
+            double latitude = -89.0 + random.nextDouble() * 178.0;
+            double longitude = -180.0 + random.nextDouble() * 360.0;
+            double radius = random.nextBoolean() ? random.nextDouble() * 1000 : random.nextDouble() * 500000;
+            List<double[]> boxes = GeoIndex.boundingBoxes(latitude, longitude, radius);
+            for (int i = 0; i < 10; i++) {
+                double pointLat = Math.max(-90.0, Math.min(90.0, latitude + (random.nextDouble() * 2 - 1) * radius / 100000.0));
+                double pointLon = GeoIndex.wrapLongitude(longitude + (random.nextDouble() * 2 - 1) * radius / 10000.0);
+                if (GeoIndex.distanceMeters(latitude, longitude, pointLat, pointLon) <= radius) {
+                    assertTrue(latitude + "," + longitude + " r=" + radius + " missed " + pointLat + "," + pointLon, inAny(boxes, pointLat, pointLon));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void wrapsLongitude() {
+        assertEquals(-179.0, GeoIndex.wrapLongitude(181.0), 1e-9);
+        assertEquals(179.0, GeoIndex.wrapLongitude(-181.0), 1e-9);
+        assertEquals(-180.0, GeoIndex.wrapLongitude(180.0), 1e-9);
+        assertEquals(10.0, GeoIndex.wrapLongitude(370.0), 1e-9);
+    }
+
+    private static boolean inAny(List<double[]> boxes, double latitude, double longitude) {
+        for (double[] box : boxes) {
+            if (latitude >= box[0] && latitude <= box[1] && longitude >= box[2] && longitude <= box[3]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,110 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * FuzzyTermIndex.findAll must find exactly the terms NlpUtils.findNearMatches finds in the text at the index's threshold.
+ */
+public class FuzzyTermIndexTest {
+    private static final String[] WORDS = {"memory", "palace", "smith", "john", "neural", "network", "networks", "attention", "transformer",
+            "memories", "learning", "deep", "wearable", "é", "augmented", "cognition", "", "nural", "smyth"};
+
+    private final NlpUtils nlpUtils = new NlpUtils(null);
+
+    @Test
+    public void findsWhatFindNearMatchesFinds() {
+        Random random = new Random(41);
+        for (int round = 0; round < 300; round++) {
+            double threshold = round % 3 == 0 ? 0.95 : 0.6 + random.nextDouble() * 0.39;
+            List<String> terms = randomTerms(random);
+            FuzzyTermIndex index = new FuzzyTermIndex(terms, threshold);
+            for (int trial = 0; trial < 40; trial++) {
+                assertFindsSame(index, terms, randomText(random), threshold);
+            }
+        }
+    }
+
+    @Test
+    public void thresholdIsExclusive() {
+        Random random = new Random(410);
+        for (int round = 0; round < 300; round++) {
+            List<String> terms = randomTerms(random);
+            String text = randomText(random);
+            //an index at exactly the similarity one of the terms has, and one just under it
+            FuzzyMatch match = nlpUtils.findNearMatches(text, terms.get(random.nextInt(terms.size())), 0);
+            if (match == null) {
+                continue;
+            }
+            double similarity = match.getSimilarity();
+            BitSet atSimilarity = assertFindsSame(new FuzzyTermIndex(terms, similarity), terms, text, similarity);
+            BitSet justUnder = assertFindsSame(new FuzzyTermIndex(terms, Math.nextDown(similarity)), terms, text, Math.nextDown(similarity));
+            assertTrue(justUnder.cardinality() > atSimilarity.cardinality());
+        }
+    }
+
+    @Test
+    public void emptyAndPaddedTerms() {
+        List<String> terms = Arrays.asList("", "  ", "memory ", " memory", "memory");
+        FuzzyTermIndex index = new FuzzyTermIndex(terms, 0.9);
+        for (String text : new String[]{"", " ", "memory", "a memory palace", "memries"}) {
+            assertFindsSame(index, terms, text, 0.9);
+        }
+    }
+
+    private BitSet assertFindsSame(FuzzyTermIndex index, List<String> terms, String text, double threshold) {
+        BitSet found = index.findAll(text);
+        for (int i = 0; i < terms.size(); i++) {
+            boolean expected = nlpUtils.findNearMatches(text, terms.get(i), threshold) != null;
+            assertEquals("'" + text + "' term '" + terms.get(i) + "' at " + threshold, expected, found.get(i));
+        }
+        assertTrue(found.length() <= terms.size());
+        return found;
+    }
+
+    //one or two word terms, some with trailing or leading spaces
+    private static List<String> randomTerms(Random random) {
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            StringBuilder term = new StringBuilder();
+            for (int j = 1 + random.nextInt(2); j > 0; j--) {
+                if (term.length() > 0) {
+                    term.append(' ');
+                }
+                term.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            if (random.nextInt(10) == 0) {
+                term.append("  ");
+            }
+            if (random.nextInt(15) == 0) {
+                term.insert(0, ' ');
+            }
+            terms.add(term.toString());
+        }
+        return terms;
+    }
+
+    //words with the odd misheard letter
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = random.nextInt(15); i > 0; i--) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (random.nextInt(4) == 0 && word.length() > 1) {
+                int at = random.nextInt(word.length());
+                word = word.substring(0, at) + (char) ('a' + random.nextInt(26)) + word.substring(at + 1);
+            }
+            text.append(word);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp;
+
+import com.wearableintelligencesystem.androidsmartphone.nlp.similarity.JaroWinklerKernel;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The bound and floor PhraseSetMatcher and FuzzyTermIndex prune with must never be under the real JaroWinkler score, and a window must
+ * count the same shared characters as counting them from scratch.
+ */
+public class JaroWinklerBoundTest {
+    private static final String[] ALPHABETS = {"ab", "abc ", "abcdefgh", "aé ü"};
+
+    private final JaroWinklerKernel jw = new JaroWinklerKernel();
+
+    @Test
+    public void boundAndFloorAreNeverUnderTheScore() {
+        Random random = new Random(41);
+        for (int trial = 0; trial < 100000; trial++) {
+            String alphabet = ALPHABETS[random.nextInt(ALPHABETS.length)];
+            int length = 1 + random.nextInt(12);
+            String pattern = randomString(random, alphabet, length);
+            String window = random.nextInt(10) == 0 ? pattern : randomString(random, alphabet, length);
+            double similarity = jw.similarity(window, pattern);
+            int shared = shared(window, pattern);
+            assertTrue("'" + window + "' '" + pattern + "'", similarity <= JaroWinklerBound.upperBound(window, 0, pattern, length, shared));
+            double threshold = random.nextDouble();
+            if (shared < JaroWinklerBound.floor(length, threshold)) {
+                assertTrue("'" + window + "' '" + pattern + "' at " + threshold, similarity <= threshold);
+            }
+        }
+    }
+
+    @Test
+    public void windowCountsWhatCountingFromScratchCounts() {
+        Random random = new Random(410);
+        for (int trial = 0; trial < 2000; trial++) {
+            String alphabet = ALPHABETS[random.nextInt(ALPHABETS.length)];
+            int length = 1 + random.nextInt(8);
+            String[] patterns = new String[1 + random.nextInt(6)];
+            for (int k = 0; k < patterns.length; k++) {
+                patterns[k] = randomString(random, alphabet, length);
+            }
+            JaroWinklerBound.Alphabet ids = new JaroWinklerBound.Alphabet(patterns);
+            JaroWinklerBound.Postings postings = new JaroWinklerBound.Postings(ids, patterns, length);
+            JaroWinklerBound.Window window = new JaroWinklerBound.Window(ids);
+            int floor = random.nextInt(length + 1);
+            String text = randomString(random, alphabet + "xyz", length + random.nextInt(30));
+            int[] textIds = ids.ids(text);
+
+            window.reset(postings, floor);
+            for (int i = 0; i < length; i++) {
+                window.add(textIds[i]);
+            }
+            for (int start = 0; start + length <= text.length(); start++) {
+                if (start > 0) {
+                    window.remove(textIds[start - 1]);
+                    window.add(textIds[start + length - 1]);
+                }
+                String region = text.substring(start, start + length);
+                int hot = 0;
+                for (int k = 0; k < patterns.length; k++) {
+                    assertEquals(region + " " + patterns[k], shared(region, patterns[k]), window.shared(k));
+                    if (window.shared(k) >= floor) {
+                        hot++;
+                    }
+                }
+                assertEquals(hot, window.hotCount());
+                for (int h = 0; h < window.hotCount(); h++) {
+                    assertTrue(window.shared(window.hot(h)) >= floor);
+                }
+            }
+        }
+    }
+
+    //characters the two have in common, counting repeats
+    private static int shared(String a, String b) {
+        int shared = 0;
+        StringBuilder rest = new StringBuilder(b);
+        for (int i = 0; i < a.length(); i++) {
+            int at = rest.indexOf(String.valueOf(a.charAt(i)));
+            if (at != -1) {
+                rest.setCharAt(at, '\u0000');
+                shared++;
+            }
+        }
+        return shared;
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,120 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * PhraseSetMatcher must find the same group, phrase and match as looping NlpUtils.findNearMatches over every group the way
+ * findBestMatch does, including which one wins a tie.
+ */
+public class PhraseSetMatcherTest {
+    //"ask" and "search" are in two groups, and "save speech" twice in one, so there are ties between groups and within one
+    private static final List<List<String>> GROUPS = Arrays.asList(
+            Arrays.asList("start memory cache", "memory cache start"),
+            Arrays.asList("stop memory cache "),
+            Arrays.asList("search for", "search"),
+            Arrays.asList("question", "ask"),
+            Arrays.asList("switch modes", "switch mode"),
+            Arrays.asList("save speech", "save note", "savé", "save speech"),
+            Arrays.asList("translate"),
+            Arrays.asList("select"),
+            Arrays.asList("ask", "search"));
+    private static final String[] WORDS = {"start", "memory", "cache", "stop", "search", "for", "question", "ask", "switch", "mode", "modes",
+            "save", "speech", "note", "translate", "select", "the", "a", "x", "sélect", "asks", "serch"};
+
+    private final NlpUtils nlpUtils = new NlpUtils(null);
+    private final PhraseSetMatcher matcher = new PhraseSetMatcher(GROUPS);
+
+    @Test
+    public void matchesFindNearMatchesOnRandomText() {
+        Random random = new Random(39);
+        for (int trial = 0; trial < 20000; trial++) {
+            String text = randomText(random);
+            double threshold = random.nextBoolean() ? 0.82 : 0.5 + random.nextDouble() * 0.5;
+            assertSameMatch(text, threshold);
+        }
+    }
+
+    @Test
+    public void tiesGoToTheFirstGroupThenPhraseThenPosition() {
+        //"ask" is in groups 3 and 8, and said twice
+        PhraseSetMatcher.Match match = matcher.findBest("ask him to ask", 0.5);
+        assertSameMatch("ask him to ask", 0.5);
+        assertEquals(3, match.group);
+        assertEquals(1, match.phrase);
+        assertEquals(0, match.match.getIndex());
+
+        //"search" is in group 2 as well, which comes first
+        match = matcher.findBest("ask me to search", 0.5);
+        assertSameMatch("ask me to search", 0.5);
+        assertEquals(2, match.group);
+        assertEquals(1, match.phrase);
+
+        match = matcher.findBest("please save speech", 0.5);
+        assertSameMatch("please save speech", 0.5);
+        assertEquals(5, match.group);
+        assertEquals(0, match.phrase);
+    }
+
+    @Test
+    public void thresholdIsExclusive() {
+        Random random = new Random(390);
+        for (int trial = 0; trial < 2000; trial++) {
+            String text = randomText(random);
+            PhraseSetMatcher.Match best = matcher.findBest(text, 0);
+            if (best == null) {
+                continue;
+            }
+            double similarity = best.match.getSimilarity();
+            assertNull(matcher.findBest(text, similarity));
+            assertSameMatch(text, similarity);
+            assertSameMatch(text, Math.nextDown(similarity));
+        }
+    }
+
+    private void assertSameMatch(String text, double threshold) {
+        //findBestMatch per group, then the best of the groups, the first one winning a tie each time
+        FuzzyMatch expected = null;
+        int expectedGroup = -1;
+        int expectedPhrase = -1;
+        for (int g = 0; g < GROUPS.size(); g++) {
+            for (int p = 0; p < GROUPS.get(g).size(); p++) {
+                FuzzyMatch match = nlpUtils.findNearMatches(text, GROUPS.get(g).get(p), threshold);
+                if (match != null && match.getSimilarity() > (expected == null ? 0 : expected.getSimilarity())) {
+                    expected = match;
+                    expectedGroup = g;
+                    expectedPhrase = p;
+                }
+            }
+        }
+
+        PhraseSetMatcher.Match actual = matcher.findBest(text, threshold);
+        String message = "'" + text + "' at " + threshold;
+        if (expected == null) {
+            assertNull(message, actual);
+            return;
+        }
+        assertNotNull(message, actual);
+        assertEquals(message + " group", expectedGroup, actual.group);
+        assertEquals(message + " phrase", expectedPhrase, actual.phrase);
+        assertEquals(message + " index", expected.getIndex(), actual.match.getIndex());
+        assertEquals(message + " similarity", expected.getSimilarity(), actual.match.getSimilarity(), 0);
+        assertEquals(message + " phrase text", expected.getToFindString(), actual.match.getToFindString());
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = random.nextInt(12); i > 0; i--) {
+            if (text.length() > 0 || random.nextBoolean()) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
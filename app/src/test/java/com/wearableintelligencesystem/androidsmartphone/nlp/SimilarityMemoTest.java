@@ -0,0 +1,82 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * findNearMatches must give exactly the same match with a SimilarityMemo as without one, however small the memo, and on the partial
+ * transcripts SwitchModesVoiceCommand.argsComplete sees, most windows should come from the memo.
+ */
+public class SimilarityMemoTest {
+    //SwitchModesVoiceCommand's modes
+    private static final String[] MODES = {"live life captions", "social mode", "visual search", "conversation", "object translate", "blank",
+            "speech translate", "contextual search"};
+    private static final String[] PATTERNS = {"social mode", "blank", "speech translate ", "a", "a pattern longer than the memo keeps windows of"};
+    private static final String[] WORDS = {"social", "mode", "blank", "speech", "translate", "french", "to", "the", "a", "visual", "serch",
+            "a pattern longer than the memo keeps windows of"};
+    private static final String[] ARGUMENTS = {"to social mode", "speech translate french", "uh visual search please", "conversation",
+            "the live life captions mode", "object translate", "contextual search now", "blank"};
+
+    private final NlpUtils nlpUtils = new NlpUtils(null);
+
+    @Test
+    public void sameMatchWithAndWithoutTheMemo() {
+        Random random = new Random(45);
+        for (int capacity : new int[]{1, 8, 512}) {
+            SimilarityMemo memo = new SimilarityMemo(capacity);
+            String text = "";
+            for (int step = 0; step < 20000; step++) {
+                int edit = random.nextInt(10);
+                if (edit == 0) {
+                    text = "";
+                } else if (edit < 3 && !text.isEmpty()) {
+                    text = text.substring(0, random.nextInt(text.length()));
+                } else if (edit < 4 && !text.isEmpty()) {
+                    int at = random.nextInt(text.length());
+                    text = text.substring(0, at) + (char) ('a' + random.nextInt(26)) + text.substring(at + 1);
+                } else {
+                    text = text + " " + WORDS[random.nextInt(WORDS.length)];
+                }
+                String pattern = PATTERNS[random.nextInt(PATTERNS.length)];
+                double threshold = random.nextDouble();
+                FuzzyMatch expected = nlpUtils.findNearMatches(text, pattern, threshold);
+                FuzzyMatch actual = nlpUtils.findNearMatches(text, pattern, threshold, memo);
+                String message = "'" + text + "' '" + pattern + "' capacity " + capacity;
+                if (expected == null) {
+                    assertNull(message, actual);
+                    continue;
+                }
+                assertNotNull(message, actual);
+                assertEquals(message, expected.getIndex(), actual.getIndex());
+                assertEquals(message, expected.getSimilarity(), actual.getSimilarity(), 0);
+                assertEquals(message, expected.getToFindString(), actual.getToFindString());
+            }
+        }
+    }
+
+    //each argument said a word at a time and then finalized, with every mode looked for on every transcript, the way argsComplete does it.
+    //each partial here is new text, Vosk often sends the same partial more than once, which would only hit
+    @Test
+    public void mostWindowsHitOnGrowingArguments() {
+        SimilarityMemo memo = new SimilarityMemo(512);
+        for (String arguments : ARGUMENTS) {
+            String[] words = arguments.split(" ");
+            String partial = "";
+            for (String word : words) {
+                partial = partial.isEmpty() ? word : partial + " " + word;
+                for (String mode : MODES) {
+                    nlpUtils.findNearMatches(partial, mode, 0.85, memo);
+                }
+            }
+            for (String mode : MODES) {
+                nlpUtils.findNearMatches(partial, mode, 0.85, memo);
+            }
+        }
+        double hitRate = memo.getHits() / (double) (memo.getHits() + memo.getMisses());
+        System.out.println("SimilarityMemo on growing arguments: " + memo.getHits() + " hits, " + memo.getMisses() + " misses, hit rate " + hitRate);
+        assertTrue("hit rate " + hitRate, hitRate > 0.5);
+    }
+}
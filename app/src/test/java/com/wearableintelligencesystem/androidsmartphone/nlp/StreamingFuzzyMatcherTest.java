@@ -0,0 +1,91 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * StreamingFuzzyMatcher must give exactly what NlpUtils.findNearMatches gives for the same text and threshold, however the text got there.
+ */
+public class StreamingFuzzyMatcherTest {
+    private static final String[] PATTERNS = {"hey computer", "finish command ", "aa", "a"};
+    private static final String[] WORDS = {"hey", "computer", "hay", "compute", "finish", "command", "finnish", "the", "a", "aa", "a a", "memory", "hey computer"};
+
+    private final NlpUtils nlpUtils = new NlpUtils(null);
+
+    @Test
+    public void matchesFindNearMatchesAsTheBufferChanges() {
+        Random random = new Random(38);
+        for (int trial = 0; trial < 200; trial++) {
+            String pattern = PATTERNS[random.nextInt(PATTERNS.length)];
+            StreamingFuzzyMatcher matcher = new StreamingFuzzyMatcher(pattern);
+            String text = "";
+            for (int step = 0; step < 50; step++) {
+                int edit = random.nextInt(10);
+                if (edit == 0) {
+                    text = "";
+                } else if (edit < 3 && !text.isEmpty()) {
+                    //a later partial transcript took some of the end back
+                    text = text.substring(0, random.nextInt(text.length()));
+                } else if (edit < 4 && !text.isEmpty()) {
+                    //or changed a word in the middle
+                    int at = random.nextInt(text.length());
+                    text = text.substring(0, at) + (char) ('a' + random.nextInt(26)) + text.substring(at + 1);
+                } else {
+                    text = text + " " + WORDS[random.nextInt(WORDS.length)];
+                }
+                double threshold = random.nextDouble();
+                assertSameMatch(text, nlpUtils.findNearMatches(text, pattern, threshold), matcher.find(text, threshold));
+            }
+        }
+    }
+
+    @Test
+    public void tiesGoToTheFirstWindow() {
+        StreamingFuzzyMatcher matcher = new StreamingFuzzyMatcher("hey");
+        String text = "hey there hey";
+        FuzzyMatch match = matcher.find(text, 0.5);
+        assertSameMatch(text, nlpUtils.findNearMatches(text, "hey", 0.5), match);
+        assertEquals(0, match.getIndex());
+
+        //still the first one after the text grows past the second
+        text = text + " hey";
+        match = matcher.find(text, 0.5);
+        assertSameMatch(text, nlpUtils.findNearMatches(text, "hey", 0.5), match);
+        assertEquals(0, match.getIndex());
+    }
+
+    @Test
+    public void thresholdIsExclusive() {
+        Random random = new Random(380);
+        for (int trial = 0; trial < 500; trial++) {
+            String pattern = PATTERNS[random.nextInt(PATTERNS.length)];
+            StringBuilder text = new StringBuilder();
+            for (int i = random.nextInt(6); i > 0; i--) {
+                text.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            FuzzyMatch best = nlpUtils.findNearMatches(text.toString(), pattern, -1);
+            if (best == null) {
+                continue;
+            }
+            double similarity = best.getSimilarity();
+            assertNull(new StreamingFuzzyMatcher(pattern).find(text.toString(), similarity));
+            assertNull(nlpUtils.findNearMatches(text.toString(), pattern, similarity));
+            double justUnder = Math.nextDown(similarity);
+            assertSameMatch(text.toString(), nlpUtils.findNearMatches(text.toString(), pattern, justUnder), new StreamingFuzzyMatcher(pattern).find(text.toString(), justUnder));
+        }
+    }
+
+    private static void assertSameMatch(String text, FuzzyMatch expected, FuzzyMatch actual) {
+        if (expected == null) {
+            assertNull("'" + text + "'", actual);
+            return;
+        }
+        assertNotNull("'" + text + "'", actual);
+        assertEquals("'" + text + "' index", expected.getIndex(), actual.getIndex());
+        assertEquals("'" + text + "' similarity", expected.getSimilarity(), actual.getSimilarity(), 0);
+        assertEquals("'" + text + "' phrase", expected.getToFindString(), actual.getToFindString());
+    }
+}
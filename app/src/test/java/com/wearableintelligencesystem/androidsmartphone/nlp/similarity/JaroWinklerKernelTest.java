@@ -0,0 +1,64 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp.similarity;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import info.debatty.java.stringsimilarity.JaroWinkler;
+
+import static org.junit.Assert.*;
+
+/**
+ * JaroWinklerKernel must score exactly what info.debatty JaroWinkler scores, for whole strings and for regions of longer ones.
+ */
+public class JaroWinklerKernelTest {
+    //small alphabets, so strings share characters, transpose them and have common prefixes often
+    private static final String[] ALPHABETS = {"ab", "abc ", "abcdefgh", "abcdefghijklmnopqrstuvwxyz ", "aé ü"};
+
+    private final JaroWinkler library = new JaroWinkler();
+    private final JaroWinklerKernel kernel = new JaroWinklerKernel();
+
+    @Test
+    public void matchesTheLibraryOnRandomStrings() {
+        Random random = new Random(40);
+        for (int trial = 0; trial < 100000; trial++) {
+            String alphabet = ALPHABETS[random.nextInt(ALPHABETS.length)];
+            String s1 = randomString(random, alphabet, random.nextInt(20));
+            String s2 = random.nextInt(10) == 0 ? s1 : randomString(random, alphabet, random.nextInt(20));
+            assertEquals("'" + s1 + "' '" + s2 + "'", library.similarity(s1, s2), kernel.similarity(s1, s2), 0);
+        }
+    }
+
+    @Test
+    public void matchesTheLibraryOnRegions() {
+        Random random = new Random(400);
+        for (int trial = 0; trial < 100000; trial++) {
+            String alphabet = ALPHABETS[random.nextInt(ALPHABETS.length)];
+            String text = randomString(random, alphabet, 1 + random.nextInt(40));
+            String pattern = randomString(random, alphabet, 1 + random.nextInt(15));
+            int start = random.nextInt(text.length());
+            int length = random.nextInt(text.length() - start + 1);
+            String window = text.substring(start, start + length);
+            assertEquals("'" + window + "' '" + pattern + "'", library.similarity(window, pattern),
+                    kernel.similarity(text, start, length, pattern, 0, pattern.length()), 0);
+            //and with the sides swapped, which changes which one is the longer
+            assertEquals("'" + pattern + "' '" + window + "'", library.similarity(pattern, window),
+                    kernel.similarity(pattern, 0, pattern.length(), text, start, length), 0);
+        }
+    }
+
+    @Test
+    public void emptyStrings() {
+        assertEquals(library.similarity("", ""), kernel.similarity("", ""), 0);
+        assertEquals(library.similarity("", "abc"), kernel.similarity("", "abc"), 0);
+        assertEquals(library.similarity("abc", ""), kernel.similarity("abc", ""), 0);
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder string = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            string.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return string.toString();
+    }
+}
@@ -0,0 +1,63 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp.similarity;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import info.debatty.java.stringsimilarity.NormalizedLevenshtein;
+
+import static org.junit.Assert.*;
+
+/**
+ * NormalizedLevenshteinKernel must score exactly what info.debatty NormalizedLevenshtein scores, for whole strings and for regions of longer ones.
+ */
+public class NormalizedLevenshteinKernelTest {
+    private static final String[] ALPHABETS = {"ab", "abc ", "abcdefgh", "abcdefghijklmnopqrstuvwxyz ", "aé ü"};
+
+    private final NormalizedLevenshtein library = new NormalizedLevenshtein();
+    private final NormalizedLevenshteinKernel kernel = new NormalizedLevenshteinKernel();
+
+    @Test
+    public void matchesTheLibraryOnRandomStrings() {
+        Random random = new Random(41);
+        for (int trial = 0; trial < 100000; trial++) {
+            String alphabet = ALPHABETS[random.nextInt(ALPHABETS.length)];
+            //long enough now and then to grow the scratch rows
+            String s1 = randomString(random, alphabet, random.nextInt(random.nextInt(50) == 0 ? 80 : 20));
+            String s2 = random.nextInt(10) == 0 ? s1 : randomString(random, alphabet, random.nextInt(random.nextInt(50) == 0 ? 80 : 20));
+            assertEquals("'" + s1 + "' '" + s2 + "'", library.similarity(s1, s2), kernel.similarity(s1, s2), 0);
+        }
+    }
+
+    @Test
+    public void matchesTheLibraryOnRegions() {
+        Random random = new Random(410);
+        for (int trial = 0; trial < 100000; trial++) {
+            String alphabet = ALPHABETS[random.nextInt(ALPHABETS.length)];
+            String text = randomString(random, alphabet, 1 + random.nextInt(40));
+            String pattern = randomString(random, alphabet, 1 + random.nextInt(15));
+            int start = random.nextInt(text.length());
+            int length = random.nextInt(text.length() - start + 1);
+            String window = text.substring(start, start + length);
+            assertEquals("'" + window + "' '" + pattern + "'", library.similarity(window, pattern),
+                    kernel.similarity(text, start, length, pattern, 0, pattern.length()), 0);
+            assertEquals("'" + pattern + "' '" + window + "'", library.similarity(pattern, window),
+                    kernel.similarity(pattern, 0, pattern.length(), text, start, length), 0);
+        }
+    }
+
+    @Test
+    public void emptyStrings() {
+        assertEquals(library.similarity("", ""), kernel.similarity("", ""), 0);
+        assertEquals(library.similarity("", "abc"), kernel.similarity("", "abc"), 0);
+        assertEquals(library.similarity("abc", ""), kernel.similarity("abc", ""), 0);
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder string = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            string.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return string.toString();
+    }
+}
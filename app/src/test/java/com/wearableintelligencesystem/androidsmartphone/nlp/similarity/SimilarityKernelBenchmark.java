@@ -0,0 +1,141 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp.similarity;
+
+import com.wearableintelligencesystem.androidsmartphone.nlp.FuzzyMatch;
+import com.wearableintelligencesystem.androidsmartphone.nlp.NlpUtils;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import info.debatty.java.stringsimilarity.JaroWinkler;
+import info.debatty.java.stringsimilarity.NormalizedLevenshtein;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Times the kernels against the substring + info.debatty path they replaced, on the voice command workload: every window of a partial
+ * transcript scored against every command phrase. Not a JMH suite (the app module has no benchmark source set), so it does its own warm
+ * up and takes the median of several timed rounds. Only runs when asked for:
+ *   BENCHMARK=1 ./gradlew :app:testDebugUnitTest --tests '*SimilarityKernelBenchmark'
+ */
+public class SimilarityKernelBenchmark {
+    private static final String TRANSCRIPT = "okay so i was telling john about the memory palace idea and hey computer save speech "
+            + "remember to ask him about the neural network paper tomorrow";
+    private static final String[] PHRASES = {"hey computer", "start memory cache", "stop memory cache ", "search for", "question",
+            "switch modes", "save speech", "save note", "translate", "select", "finish command"};
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 11;
+    private static final int CALLS_PER_ROUND = 100;
+
+    private final NlpUtils nlpUtils = new NlpUtils(null);
+    private final JaroWinkler jaroWinkler = new JaroWinkler();
+    private final NormalizedLevenshtein normalizedLevenshtein = new NormalizedLevenshtein();
+    private final NormalizedLevenshteinKernel levenshteinKernel = new NormalizedLevenshteinKernel();
+
+    private double sink;
+
+    @Test
+    public void kernelsAgainstSubstringAndLibrary() {
+        assumeTrue(System.getenv("BENCHMARK") != null);
+
+        //both sides have to be doing the same work
+        for (String phrase : PHRASES) {
+            FuzzyMatch kernel = nlpUtils.findNearMatches(TRANSCRIPT, phrase, 0);
+            FuzzyMatch library = libraryFindNearMatches(TRANSCRIPT, phrase, 0);
+            assertEquals(library.getIndex(), kernel.getIndex());
+            assertEquals(library.getSimilarity(), kernel.getSimilarity(), 0);
+        }
+        assertEquals(libraryLevenshteinWindows(), kernelLevenshteinWindows(), 0);
+
+        report("findNearMatches, substring + JaroWinkler", () -> {
+            for (String phrase : PHRASES) {
+                sink += libraryFindNearMatches(TRANSCRIPT, phrase, 0).getSimilarity();
+            }
+        });
+        report("findNearMatches, JaroWinklerKernel", () -> {
+            for (String phrase : PHRASES) {
+                sink += nlpUtils.findNearMatches(TRANSCRIPT, phrase, 0).getSimilarity();
+            }
+        });
+        report("windows, substring + NormalizedLevenshtein", () -> sink += libraryLevenshteinWindows());
+        report("windows, NormalizedLevenshteinKernel", () -> sink += kernelLevenshteinWindows());
+    }
+
+    //NlpUtils.findNearMatches as it was before the kernels
+    private FuzzyMatch libraryFindNearMatches(String incomingString, String toFindString, double threshold) {
+        int highestIndex = -1;
+        double lowestSimilarity = -1d;
+        toFindString = toFindString.replaceAll("\\s+$", "");
+        incomingString = incomingString + " ";
+        for (int i = 0; i <= (incomingString.length() - toFindString.length()); i++) {
+            String substring = incomingString.substring(i, i + toFindString.length());
+            double similarity = jaroWinkler.similarity(substring, toFindString);
+            if (similarity > lowestSimilarity) {
+                highestIndex = i;
+                lowestSimilarity = similarity;
+            }
+        }
+        if (lowestSimilarity > threshold) {
+            FuzzyMatch match = new FuzzyMatch(Math.min(highestIndex, incomingString.length() - 1), lowestSimilarity);
+            match.setToFindString(toFindString);
+            return match;
+        }
+        return null;
+    }
+
+    private double libraryLevenshteinWindows() {
+        double best = 0;
+        for (String phrase : PHRASES) {
+            for (int i = 0; i + phrase.length() <= TRANSCRIPT.length(); i++) {
+                best = Math.max(best, normalizedLevenshtein.similarity(TRANSCRIPT.substring(i, i + phrase.length()), phrase));
+            }
+        }
+        return best;
+    }
+
+    private double kernelLevenshteinWindows() {
+        double best = 0;
+        for (String phrase : PHRASES) {
+            for (int i = 0; i + phrase.length() <= TRANSCRIPT.length(); i++) {
+                best = Math.max(best, levenshteinKernel.similarity(TRANSCRIPT, i, phrase.length(), phrase, 0, phrase.length()));
+            }
+        }
+        return best;
+    }
+
+    private void report(String name, Runnable call) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            time(call);
+        }
+        long[] nanos = new long[ROUNDS];
+        long allocated = allocatedBytes();
+        for (int round = 0; round < ROUNDS; round++) {
+            nanos[round] = time(call);
+        }
+        allocated = allocatedBytes() - allocated;
+        Arrays.sort(nanos);
+        long calls = (long) ROUNDS * CALLS_PER_ROUND;
+        System.out.println(String.format("%-45s %10.1f us/call %10d bytes/call", name, nanos[ROUNDS / 2] / 1000.0 / CALLS_PER_ROUND,
+                allocated < 0 ? -1 : allocated / calls));
+        assertFalse(Double.isNaN(sink));
+    }
+
+    private static long time(Runnable call) {
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS_PER_ROUND; i++) {
+            call.run();
+        }
+        return System.nanoTime() - start;
+    }
+
+    //-1 where the JVM can't say
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,97 @@
+package com.wearableintelligencesystem.androidsmartphone.nlp.similarity;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import info.debatty.java.stringsimilarity.NormalizedLevenshtein;
+
+import static org.junit.Assert.*;
+
+/**
+ * TokenSetRatioKernel must score exactly what token set ratio gives when it's done the obvious way, with sorted sets of split tokens
+ * and info.debatty NormalizedLevenshtein on the joined strings.
+ */
+public class TokenSetRatioKernelTest {
+    private static final String[] WORDS = {"john", "smith", "jon", "smyth", "memory", "palace", "a", "b", "ab", "é", "the", "theory"};
+    private static final String[] SPACES = {" ", "  ", "\t", "\n "};
+
+    private final NormalizedLevenshtein library = new NormalizedLevenshtein();
+    private final TokenSetRatioKernel kernel = new TokenSetRatioKernel();
+
+    @Test
+    public void matchesTheLibraryOnRandomWordLists() {
+        Random random = new Random(4100);
+        for (int trial = 0; trial < 100000; trial++) {
+            String s1 = randomWords(random);
+            String s2 = random.nextInt(10) == 0 ? s1 : randomWords(random);
+            assertEquals("'" + s1 + "' '" + s2 + "'", tokenSetRatio(s1, s2), kernel.similarity(s1, s2), 0);
+        }
+    }
+
+    @Test
+    public void wordOrderAndRepeatsDontMatter() {
+        assertEquals(1, kernel.similarity("smith john", "john smith"), 0);
+        assertEquals(1, kernel.similarity("john john smith", " smith  john"), 0);
+        //every token of one side is in the other
+        assertEquals(1, kernel.similarity("john smith", "john q smith"), 0);
+        assertEquals(0, kernel.similarity("", "john"), 0);
+        assertEquals(0, kernel.similarity("  ", "  "), 0);
+    }
+
+    //the reference: shared tokens, and shared tokens then each side's leftovers, compared pairwise and the best kept
+    private double tokenSetRatio(String s1, String s2) {
+        TreeSet<String> tokens1 = tokens(s1);
+        TreeSet<String> tokens2 = tokens(s2);
+        if (tokens1.isEmpty() || tokens2.isEmpty()) {
+            return 0;
+        }
+        TreeSet<String> shared = new TreeSet<>(tokens1);
+        shared.retainAll(tokens2);
+        TreeSet<String> only1 = new TreeSet<>(tokens1);
+        only1.removeAll(shared);
+        TreeSet<String> only2 = new TreeSet<>(tokens2);
+        only2.removeAll(shared);
+
+        String sharedString = String.join(" ", shared);
+        String combined1 = join(sharedString, String.join(" ", only1));
+        String combined2 = join(sharedString, String.join(" ", only2));
+        double best = library.similarity(combined1, combined2);
+        if (!shared.isEmpty()) {
+            best = Math.max(best, library.similarity(sharedString, combined1));
+            best = Math.max(best, library.similarity(sharedString, combined2));
+        }
+        return best;
+    }
+
+    private static TreeSet<String> tokens(String s) {
+        TreeSet<String> tokens = new TreeSet<>();
+        for (String token : s.split("\\s+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static String join(String a, String b) {
+        if (a.isEmpty()) {
+            return b;
+        }
+        return b.isEmpty() ? a : a + " " + b;
+    }
+
+    //enough words now and then to grow the token buffers
+    private static String randomWords(Random random) {
+        StringBuilder words = new StringBuilder();
+        if (random.nextInt(5) == 0) {
+            words.append(SPACES[random.nextInt(SPACES.length)]);
+        }
+        for (int i = random.nextInt(random.nextInt(30) == 0 ? 40 : 6); i > 0; i--) {
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+            words.append(SPACES[random.nextInt(SPACES.length)]);
+        }
+        return words.toString();
+    }
+}